@@ -0,0 +1,215 @@
+package com.hpham.database.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the point and range operations of both b-tree implementations, for every
+ * {@link KeyType} and tree size.
+ * <br>
+ * Reads share one tree between all benchmark threads, so running with {@code -t} measures how
+ * reads scale. Neither tree is thread-safe for writes, so writes run against a tree per thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class BTreeBenchmark {
+  private static final int SCAN_LENGTH = 100;
+  private static final int BATCH_SIZE = 1_000;
+
+  @State(Scope.Benchmark)
+  public static class Params {
+    @Param({"CORE", "DISK"})
+    TreeType treeType;
+
+    @Param({"INT", "LONG", "STRING"})
+    KeyType keyType;
+
+    @Param({"10000", "1000000"})
+    int treeSize;
+  }
+
+  /**
+   * Tree shared by all benchmark threads, which must not modify it.
+   */
+  @State(Scope.Benchmark)
+  public static class SharedTree {
+    BenchmarkTree tree;
+    int size;
+
+    @Setup(Level.Trial)
+    public void setup(Params params) {
+      tree = BenchmarkTree.create(params.treeType, params.keyType, params.treeSize);
+      size = params.treeSize;
+    }
+  }
+
+  /**
+   * Tree owned by a single benchmark thread.
+   * <br>
+   * Inserted keys are taken from a shuffled list of the free odd sequence numbers, and deleted
+   * again oldest first, so that the tree size stays within {@code treeSize} and
+   * {@code 2 * treeSize}.
+   */
+  @State(Scope.Thread)
+  public static class ThreadTree {
+    BenchmarkTree tree;
+    int size;
+    int[] freeSequences;
+    int[] presentSequences;
+    long insertedCount;
+    long deletedCount;
+
+    @Setup(Level.Trial)
+    public void setup(Params params) {
+      tree = BenchmarkTree.create(params.treeType, params.keyType, params.treeSize);
+      size = params.treeSize;
+      Random rand = new Random(42);
+      freeSequences = shuffledSequences(size, 1, rand);
+      presentSequences = shuffledSequences(size, 0, rand);
+    }
+
+    /**
+     * Insert the next free key, or delete the oldest inserted key if all of them are in.
+     */
+    void insertNext() {
+      if (insertedCount - deletedCount == size) {
+        deleteOldest();
+        return;
+      }
+      tree.insert(freeSequences[(int) (insertedCount++ % size)]);
+    }
+
+    /**
+     * Delete the oldest inserted key, or insert the next free key if none is left.
+     */
+    void deleteOldest() {
+      if (insertedCount == deletedCount) {
+        insertNext();
+        return;
+      }
+      tree.delete(freeSequences[(int) (deletedCount++ % size)]);
+    }
+
+    private static int[] shuffledSequences(int size, int parity, Random rand) {
+      int[] sequences = new int[size];
+      for (int i = 0; i < size; i++) {
+        sequences[i] = 2 * i + parity;
+      }
+      for (int i = size - 1; i > 0; i--) {
+        int j = rand.nextInt(i + 1);
+        int tmp = sequences[i];
+        sequences[i] = sequences[j];
+        sequences[j] = tmp;
+      }
+      return sequences;
+    }
+  }
+
+  /**
+   * Tree owned by a single benchmark thread, for the operations that are measured a batch at a
+   * time and undone after every batch.
+   */
+  @State(Scope.Thread)
+  public static class BatchTree extends ThreadTree {
+    int batchStart;
+    boolean isInsertBatch;
+
+    @TearDown(Level.Invocation)
+    public void undoBatch() {
+      for (int i = batchStart; i < batchStart + BATCH_SIZE; i++) {
+        if (isInsertBatch) {
+          tree.delete(freeSequences[i]);
+        } else {
+          tree.insert(presentSequences[i]);
+        }
+      }
+      batchStart = batchStart + 2 * BATCH_SIZE > size ? 0 : batchStart + BATCH_SIZE;
+    }
+  }
+
+  @Benchmark
+  public Object get(SharedTree shared) {
+    return shared.tree.get(randomPresentSequence(shared.size));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SCAN_LENGTH)
+  public void scan(SharedTree shared, Blackhole blackhole) {
+    shared.tree.scan(randomPresentSequence(shared.size), SCAN_LENGTH, blackhole);
+  }
+
+  @Benchmark
+  public Object update(ThreadTree threadTree) {
+    return threadTree.tree.update(randomPresentSequence(threadTree.size));
+  }
+
+  /**
+   * Insert {@link #BATCH_SIZE} random absent keys, which are deleted again outside of the
+   * measurement.
+   */
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void insert(BatchTree batchTree) {
+    batchTree.isInsertBatch = true;
+    for (int i = batchTree.batchStart; i < batchTree.batchStart + BATCH_SIZE; i++) {
+      batchTree.tree.insert(batchTree.freeSequences[i]);
+    }
+  }
+
+  /**
+   * Delete {@link #BATCH_SIZE} random present keys, which are inserted again outside of the
+   * measurement.
+   */
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void delete(BatchTree batchTree) {
+    batchTree.isInsertBatch = false;
+    for (int i = batchTree.batchStart; i < batchTree.batchStart + BATCH_SIZE; i++) {
+      batchTree.tree.delete(batchTree.presentSequences[i]);
+    }
+  }
+
+  /**
+   * 80% point reads, 10% updates, 5% inserts and 5% deletes.
+   */
+  @Benchmark
+  public Object mixed(ThreadTree threadTree) {
+    int operation = ThreadLocalRandom.current().nextInt(100);
+    if (operation < 80) {
+      return threadTree.tree.get(randomPresentSequence(threadTree.size));
+    }
+    if (operation < 90) {
+      return threadTree.tree.update(randomPresentSequence(threadTree.size));
+    }
+    if (operation < 95) {
+      threadTree.insertNext();
+    } else {
+      threadTree.deleteOldest();
+    }
+    return threadTree;
+  }
+
+  private static int randomPresentSequence(int size) {
+    return 2 * ThreadLocalRandom.current().nextInt(size);
+  }
+}
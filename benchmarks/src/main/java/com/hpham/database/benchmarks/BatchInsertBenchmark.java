@@ -0,0 +1,79 @@
+package com.hpham.database.benchmarks;
+
+import com.hpham.database.btree.BTree;
+import com.hpham.database.btree.Record;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Time to ingest a batch of random keys into a pre-filled {@link BTree}, one record at a time
+ * against {@link BTree#insertAll}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchInsertBenchmark {
+  private static final int NUMBER_OF_RECORDS = 100_000;
+
+  @Param({"1000", "10000"})
+  int batchSize;
+
+  private List<Record<Long, Object>> batch;
+  private BTree<Long> bTree;
+
+  /**
+   * Odd keys, so that they never collide with the even keys the tree is filled with.
+   */
+  @Setup(Level.Trial)
+  public void createBatch() {
+    Random rand = new Random(42);
+    batch = rand.longs(0, NUMBER_OF_RECORDS)
+        .map(i -> i * 2 + 1)
+        .distinct()
+        .limit(batchSize)
+        .mapToObj(BatchInsertBenchmark::recordOf)
+        .toList();
+  }
+
+  @Setup(Level.Invocation)
+  public void fillTree() {
+    bTree = new BTree<>();
+    bTree.bulkLoad(LongStream.range(0, NUMBER_OF_RECORDS)
+        .mapToObj(i -> recordOf(i * 2))
+        .iterator());
+  }
+
+  @Benchmark
+  public BTree<Long> insertOneByOne() {
+    batch.forEach(bTree::insert);
+    return bTree;
+  }
+
+  @Benchmark
+  public BTree<Long> insertAll() {
+    bTree.insertAll(batch);
+    return bTree;
+  }
+
+  private static Record<Long, Object> recordOf(long key) {
+    return Record.<Long, Object>builder().key(key).value(key).build();
+  }
+}
@@ -0,0 +1,142 @@
+package com.hpham.database.benchmarks;
+
+import com.hpham.database.btree.BTree;
+import com.hpham.database.btree.Record;
+import com.hpham.database.btree_disk.RecordValue;
+import com.hpham.database.btree_disk.data_types.IntField;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * One of the b-tree implementations under benchmark, so that the same workloads run against
+ * both of them.
+ * <br>
+ * Records are addressed by sequence numbers in {@code [0, 2 * size)}, see {@link KeyType}. The
+ * tree is filled with the even sequence numbers, the odd ones are left free for inserts. All
+ * records are created up front, so that operations only measure the tree.
+ */
+abstract class BenchmarkTree {
+  static BenchmarkTree create(TreeType treeType, KeyType keyType, int size) {
+    return switch (treeType) {
+      case CORE -> new CoreTree<>(keyType, size);
+      case DISK -> new DiskTree<>(keyType, size);
+    };
+  }
+
+  abstract Object get(int sequence);
+
+  abstract Object update(int sequence);
+
+  abstract void insert(int sequence);
+
+  abstract void delete(int sequence);
+
+  /**
+   * Consume {@code length} records in key order, starting from the record of {@code sequence}.
+   */
+  abstract void scan(int sequence, int length, Blackhole blackhole);
+
+  /**
+   * Iterate over the elements at even indexes of {@code array}.
+   */
+  private static <T> Iterator<T> evenElements(T[] array) {
+    return IntStream.range(0, (array.length + 1) / 2).mapToObj(i -> array[2 * i]).iterator();
+  }
+
+  private static class CoreTree<K extends Comparable<K>> extends BenchmarkTree {
+    private final BTree<K> bTree = new BTree<>();
+    private final Record<K, Object>[] records;
+
+    @SuppressWarnings("unchecked")
+    CoreTree(KeyType keyType, int size) {
+      records = (Record<K, Object>[]) new Record<?, ?>[2 * size];
+      for (int i = 0; i < records.length; i++) {
+        records[i] = Record.<K, Object>builder().key(keyType.key(i)).value(i).build();
+      }
+
+      bTree.bulkLoad(evenElements(records));
+    }
+
+    @Override
+    Object get(int sequence) {
+      return bTree.findRecord(records[sequence].getKey());
+    }
+
+    @Override
+    Object update(int sequence) {
+      return bTree.update(records[sequence]);
+    }
+
+    @Override
+    void insert(int sequence) {
+      bTree.insert(records[sequence]);
+    }
+
+    @Override
+    void delete(int sequence) {
+      bTree.delete(records[sequence].getKey());
+    }
+
+    @Override
+    void scan(int sequence, int length, Blackhole blackhole) {
+      Iterator<Record<K, Object>> iterator = bTree.scan(records[sequence].getKey(), null);
+      for (int i = 0; i < length && iterator.hasNext(); i++) {
+        blackhole.consume(iterator.next());
+      }
+    }
+  }
+
+  private static class DiskTree<K extends Comparable<K>> extends BenchmarkTree {
+    private final com.hpham.database.btree_disk.BTree<K> bTree;
+    private final com.hpham.database.btree_disk.Record<K>[] records;
+
+    @SuppressWarnings("unchecked")
+    DiskTree(KeyType keyType, int size) {
+      bTree = new com.hpham.database.btree_disk.BTree<>(keyType.getTypeSignal());
+      // the value is not what is measured, so all records share one
+      RecordValue value = RecordValue.recordValueWithFields(Map.of("value", IntField.fromValue(0)));
+      records = (com.hpham.database.btree_disk.Record<K>[])
+          new com.hpham.database.btree_disk.Record<?>[2 * size];
+      for (int i = 0; i < records.length; i++) {
+        records[i] = com.hpham.database.btree_disk.Record.<K>builder()
+            .key(keyType.field(i))
+            .value(value)
+            .build();
+      }
+
+      bTree.bulkLoad(evenElements(records));
+    }
+
+    @Override
+    Object get(int sequence) {
+      return bTree.findRecord(records[sequence].getKey());
+    }
+
+    @Override
+    Object update(int sequence) {
+      return bTree.update(records[sequence]);
+    }
+
+    @Override
+    void insert(int sequence) {
+      bTree.insert(records[sequence]);
+    }
+
+    @Override
+    void delete(int sequence) {
+      bTree.delete(records[sequence].getKey());
+    }
+
+    @Override
+    void scan(int sequence, int length, Blackhole blackhole) {
+      Iterator<com.hpham.database.btree_disk.Record<K>> iterator =
+          bTree.scan(records[sequence].getKey(), null);
+      for (int i = 0; i < length && iterator.hasNext(); i++) {
+        blackhole.consume(iterator.next());
+      }
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package com.hpham.database.benchmarks;
+
+import com.hpham.database.btree_disk.BTreeNode;
+import com.hpham.database.btree_disk.Record;
+import com.hpham.database.btree_disk.RecordView;
+import com.hpham.database.btree_disk.data_types.IntField;
+import com.hpham.database.btree_disk.util.ScratchBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static com.hpham.database.btree_disk.constants.DataConstants.PAGE_SIZE_BYTES;
+
+/**
+ * Time to serialize and deserialize a {@link Record} and a full leaf {@link BTreeNode} of the
+ * disk b-tree, for every {@link KeyType}, to write them into a reused buffer instead, and to
+ * read a single field of a record, decoding the whole record or through a {@link RecordView}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+  @Param({"INT", "LONG", "STRING"})
+  KeyType keyType;
+
+  private Record<?> record;
+  private ByteBuffer serializedRecord;
+  private BTreeNode<?> leafNode;
+  private ByteBuffer serializedLeafNode;
+  private final ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE_BYTES);
+
+  @Setup(Level.Trial)
+  public void setup() {
+    record = DiskFixtures.record(keyType);
+    serializedRecord = record.serialize();
+    leafNode = DiskFixtures.fullLeafNode(keyType);
+    serializedLeafNode = leafNode.serialize();
+  }
+
+  @Benchmark
+  public ByteBuffer serializeRecord() {
+    return record.serialize();
+  }
+
+  @Benchmark
+  public ByteBuffer writeRecordToScratchBuffer() {
+    ByteBuffer bb = ScratchBuffer.get(record.getSerializedSize());
+    record.writeTo(bb);
+    return bb.flip();
+  }
+
+  @Benchmark
+  public Record<?> deserializeRecord() {
+    serializedRecord.position(0);
+    return Record.deserialize(serializedRecord);
+  }
+
+  @Benchmark
+  public int readFieldOfRecord() {
+    serializedRecord.position(0);
+    return ((IntField) Record.deserialize(serializedRecord).getValue().getField("count"))
+        .getValue();
+  }
+
+  @Benchmark
+  public int readFieldOfRecordView() {
+    serializedRecord.position(0);
+    return RecordView.of(serializedRecord).getInt("count");
+  }
+
+  @Benchmark
+  public ByteBuffer serializeLeafNode() {
+    return leafNode.serialize();
+  }
+
+  @Benchmark
+  public ByteBuffer writeLeafNodeToPage() {
+    leafNode.writeTo(page.clear());
+    return page.flip();
+  }
+
+  @Benchmark
+  public BTreeNode<?> deserializeLeafNode() {
+    serializedLeafNode.position(0);
+    return BTreeNode.deserialize(serializedLeafNode, keyType.getTypeSignal());
+  }
+}
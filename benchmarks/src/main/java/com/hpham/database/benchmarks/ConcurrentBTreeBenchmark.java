@@ -0,0 +1,164 @@
+package com.hpham.database.benchmarks;
+
+import com.hpham.database.btree.BTree;
+import com.hpham.database.btree.ConcurrentBTree;
+import com.hpham.database.btree.Record;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Throughput of {@link ConcurrentBTree} against a {@link BTree} guarded by a single lock, which
+ * is how the tree has to be shared between threads otherwise.
+ * <br>
+ * Both trees use {@link BTree#FANOUT}, so that only the locking strategy differs. Run
+ * {@link #main(String[])} to measure at 1, 4, 16 and 64 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentBTreeBenchmark {
+  private static final int NUMBER_OF_RECORDS = 1_000_000;
+  private static final int[] THREAD_COUNTS = {1, 4, 16, 64};
+
+  /**
+   * Trees pre-filled with the even keys in {@code [0, 2 * NUMBER_OF_RECORDS)}.
+   */
+  @State(Scope.Benchmark)
+  public static class Trees {
+    ConcurrentBTree<Long> concurrentBTree;
+    BTree<Long> bTree;
+    final ReentrantLock bTreeLock = new ReentrantLock();
+
+    @Setup(Level.Trial)
+    public void setup() {
+      concurrentBTree = new ConcurrentBTree<>(BTree.FANOUT);
+      bTree = new BTree<>();
+      for (long i = 0; i < NUMBER_OF_RECORDS; i++) {
+        concurrentBTree.insert(recordOf(i * 2));
+        bTree.insert(recordOf(i * 2));
+      }
+    }
+  }
+
+  /**
+   * Odd keys owned by a single benchmark thread, so that inserts from different threads never
+   * collide with each other nor with the pre-filled keys. Keys keep growing across iterations,
+   * as the trees are only filled once per trial.
+   */
+  @State(Scope.Thread)
+  public static class InsertKeys {
+    long nextKey;
+    long stride;
+
+    @Setup(Level.Trial)
+    public void setup(ThreadParams threadParams) {
+      nextKey = 2L * NUMBER_OF_RECORDS + 2L * threadParams.getThreadIndex() + 1;
+      stride = 2L * threadParams.getThreadCount();
+    }
+
+    long next() {
+      long key = nextKey;
+      nextKey += stride;
+      return key;
+    }
+  }
+
+  @Benchmark
+  public Record<Long, Object> findRecordConcurrent(Trees trees) {
+    return trees.concurrentBTree.findRecord(randomExistingKey());
+  }
+
+  @Benchmark
+  public Record<Long, Object> findRecordGlobalLock(Trees trees) {
+    long key = randomExistingKey();
+    trees.bTreeLock.lock();
+    try {
+      return trees.bTree.findRecord(key);
+    } finally {
+      trees.bTreeLock.unlock();
+    }
+  }
+
+  /**
+   * 90% point reads, 10% updates of random existing records.
+   */
+  @Benchmark
+  public Record<Long, Object> readMostlyConcurrent(Trees trees) {
+    long key = randomExistingKey();
+    if (ThreadLocalRandom.current().nextInt(10) == 0) {
+      return trees.concurrentBTree.update(recordOf(key));
+    }
+    return trees.concurrentBTree.findRecord(key);
+  }
+
+  /**
+   * 90% point reads, 10% updates of random existing records.
+   */
+  @Benchmark
+  public Record<Long, Object> readMostlyGlobalLock(Trees trees) {
+    long key = randomExistingKey();
+    boolean isUpdate = ThreadLocalRandom.current().nextInt(10) == 0;
+    trees.bTreeLock.lock();
+    try {
+      return isUpdate ? trees.bTree.update(recordOf(key)) : trees.bTree.findRecord(key);
+    } finally {
+      trees.bTreeLock.unlock();
+    }
+  }
+
+  @Benchmark
+  public Record<Long, Object> insertConcurrent(Trees trees, InsertKeys keys) {
+    return trees.concurrentBTree.insert(recordOf(keys.next()));
+  }
+
+  @Benchmark
+  public Record<Long, Object> insertGlobalLock(Trees trees, InsertKeys keys) {
+    Record<Long, Object> record = recordOf(keys.next());
+    trees.bTreeLock.lock();
+    try {
+      return trees.bTree.insert(record);
+    } finally {
+      trees.bTreeLock.unlock();
+    }
+  }
+
+  private static long randomExistingKey() {
+    return ThreadLocalRandom.current().nextLong(NUMBER_OF_RECORDS) * 2;
+  }
+
+  private static Record<Long, Object> recordOf(long key) {
+    return Record.<Long, Object>builder().key(key).value(key).build();
+  }
+
+  /**
+   * Run every benchmark of this class once per thread count in {@link #THREAD_COUNTS}.
+   */
+  public static void main(String[] args) throws RunnerException {
+    for (int threads : THREAD_COUNTS) {
+      new Runner(new OptionsBuilder()
+          .include(ConcurrentBTreeBenchmark.class.getSimpleName())
+          .threads(threads)
+          .build()
+      ).run();
+    }
+  }
+}
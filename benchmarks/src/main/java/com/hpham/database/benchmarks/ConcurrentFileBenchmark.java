@@ -0,0 +1,119 @@
+package com.hpham.database.benchmarks;
+
+import com.hpham.database.btree_disk.BTreeNode;
+import com.hpham.database.btree_disk.buffer_pool.BufferPool;
+import com.hpham.database.btree_disk.file_formats.index.IndexFile;
+import com.hpham.database.btree_disk.file_formats.record.RecordFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of random reads from an {@link IndexFile} and a {@link RecordFile} shared by all
+ * benchmark threads, for every {@link FileBenchmark.Storage}.
+ * <br>
+ * With {@link FileBenchmark.Storage#SMALL_BUFFER_POOL}, most reads miss the pool and read their page from the
+ * file, which threads do in parallel. Run {@link #main(String[])} to measure at 1, 4 and 16
+ * threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentFileBenchmark {
+  private static final int NUMBER_OF_PAGES = 10_000;
+  private static final int NUMBER_OF_RECORDS = 100_000;
+  private static final int LARGE_BUFFER_POOL_FRAMES = 16_384;
+  private static final int[] THREAD_COUNTS = {1, 4, 16};
+
+  @Param({"SMALL_BUFFER_POOL", "LARGE_BUFFER_POOL", "MEMORY_MAPPED"})
+  FileBenchmark.Storage storage;
+
+  private Path directory;
+  private IndexFile indexFile;
+  private RecordFile recordFile;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("tomcache-benchmark");
+
+    ByteBuffer page = DiskFixtures.fullLeafNode(KeyType.LONG).serialize();
+    indexFile = switch (storage) {
+      case SMALL_BUFFER_POOL -> new IndexFile(new BufferPool());
+      case LARGE_BUFFER_POOL -> new IndexFile(new BufferPool(LARGE_BUFFER_POOL_FRAMES));
+      case MEMORY_MAPPED -> IndexFile.memoryMapped();
+      case COMPRESSED -> IndexFile.compressed();
+    };
+    indexFile.openFile(directory.resolve("index.tc").toString());
+    int fanout = BTreeNode.maxFanout(KeyType.LONG.getTypeSignal());
+    for (int i = 0; i < NUMBER_OF_PAGES; i++) {
+      indexFile.append(page.duplicate(), KeyType.LONG.getTypeSignal(), fanout);
+    }
+    indexFile.flush();
+
+    ByteBuffer serializedRecord = DiskFixtures.record(KeyType.LONG).serialize();
+    recordFile = switch (storage) {
+      case SMALL_BUFFER_POOL -> new RecordFile(new BufferPool());
+      case LARGE_BUFFER_POOL -> new RecordFile(new BufferPool(LARGE_BUFFER_POOL_FRAMES));
+      case MEMORY_MAPPED -> RecordFile.memoryMapped();
+      case COMPRESSED -> RecordFile.compressed();
+    };
+    recordFile.openFile(directory.resolve("record.tc").toString());
+    for (int i = 0; i < NUMBER_OF_RECORDS; i++) {
+      recordFile.append(serializedRecord.duplicate());
+    }
+    recordFile.flush();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    indexFile.deleteAll();
+    recordFile.delete();
+    Files.delete(directory);
+  }
+
+  @Benchmark
+  public ByteBuffer readIndexPage() throws IOException {
+    return indexFile.read(ThreadLocalRandom.current().nextInt(NUMBER_OF_PAGES));
+  }
+
+  @Benchmark
+  public ByteBuffer readRecord() throws IOException {
+    return recordFile.read(ThreadLocalRandom.current().nextInt(NUMBER_OF_RECORDS));
+  }
+
+  /**
+   * Run every benchmark of this class once per thread count in {@link #THREAD_COUNTS}.
+   */
+  public static void main(String[] args) throws RunnerException {
+    for (int threads : THREAD_COUNTS) {
+      new Runner(new OptionsBuilder()
+          .include(ConcurrentFileBenchmark.class.getSimpleName())
+          .threads(threads)
+          .build()
+      ).run();
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package com.hpham.database.benchmarks;
+
+import com.hpham.database.btree_disk.BTreeNode;
+import com.hpham.database.btree_disk.Record;
+import com.hpham.database.btree_disk.RecordValue;
+import com.hpham.database.btree_disk.data_types.Field;
+import com.hpham.database.btree_disk.data_types.IntField;
+import com.hpham.database.btree_disk.data_types.LongField;
+import com.hpham.database.btree_disk.data_types.StringField;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Objects of the disk b-tree that the codec and file benchmarks encode.
+ */
+final class DiskFixtures {
+  private DiskFixtures() {
+  }
+
+  /**
+   * A record with one field of every type.
+   */
+  static <K extends Comparable<K>> Record<K> record(KeyType keyType) {
+    Map<String, Field<?>> fields = new LinkedHashMap<>();
+    fields.put("id", LongField.fromValue(42L));
+    fields.put("name", StringField.fromValue("benchmark"));
+    fields.put("count", IntField.fromValue(7));
+
+    return Record.<K>builder()
+        .key(keyType.field(42))
+        .value(RecordValue.recordValueWithFields(fields))
+        .build();
+  }
+
+  /**
+   * A leaf node holding as many keys as fit in a page.
+   */
+  static <K extends Comparable<K>> BTreeNode<K> fullLeafNode(KeyType keyType) {
+    int fanout = BTreeNode.maxFanout(keyType.getTypeSignal());
+    BTreeNode<K> node = BTreeNode.createLeafNode(fanout);
+    for (int i = 0; i < fanout; i++) {
+      node.getKeys().add(keyType.field(i));
+      node.getRecordOffsets().add(LongField.fromValue((long) i));
+    }
+    return node;
+  }
+}
@@ -0,0 +1,138 @@
+package com.hpham.database.benchmarks;
+
+import com.hpham.database.btree_disk.BTreeNode;
+import com.hpham.database.btree_disk.Record;
+import com.hpham.database.btree_disk.buffer_pool.BufferPool;
+import com.hpham.database.btree_disk.file_formats.index.IndexFile;
+import com.hpham.database.btree_disk.file_formats.record.RecordFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to read and overwrite random pages of an {@link IndexFile} and random records of a
+ * {@link RecordFile}, for every {@link KeyType} and {@link Storage}.
+ * <br>
+ * Every benchmark thread gets its own files. Files are never synced, so this measures the file
+ * layer rather than the storage device.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FileBenchmark {
+  private static final int NUMBER_OF_PAGES = 10_000;
+  private static final int NUMBER_OF_RECORDS = 100_000;
+  private static final int LARGE_BUFFER_POOL_FRAMES = 16_384;
+
+  @Param({"INT", "LONG", "STRING"})
+  KeyType keyType;
+
+  public enum Storage {
+    /**
+     * {@link BufferPool} of the default size, holding a small part of the files.
+     */
+    SMALL_BUFFER_POOL,
+    /**
+     * {@link BufferPool} holding all of the files.
+     */
+    LARGE_BUFFER_POOL,
+    /**
+     * Files mapped into memory, so reads are views of the mapping rather than copies.
+     */
+    MEMORY_MAPPED,
+    /**
+     * Files compressed on disk, so reads and writes of pages that are not cached decompress and
+     * compress them.
+     */
+    COMPRESSED
+  }
+
+  @Param({"SMALL_BUFFER_POOL", "LARGE_BUFFER_POOL", "MEMORY_MAPPED", "COMPRESSED"})
+  Storage storage;
+
+  private Path directory;
+  private IndexFile indexFile;
+  private RecordFile recordFile;
+  private ByteBuffer page;
+  private ByteBuffer serializedRecord;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("tomcache-benchmark");
+
+    page = DiskFixtures.fullLeafNode(keyType).serialize();
+    indexFile = switch (storage) {
+      case SMALL_BUFFER_POOL -> new IndexFile(new BufferPool());
+      case LARGE_BUFFER_POOL -> new IndexFile(new BufferPool(LARGE_BUFFER_POOL_FRAMES));
+      case MEMORY_MAPPED -> IndexFile.memoryMapped();
+      case COMPRESSED -> IndexFile.compressed();
+    };
+    indexFile.openFile(directory.resolve("index.tc").toString());
+    int fanout = BTreeNode.maxFanout(keyType.getTypeSignal());
+    for (int i = 0; i < NUMBER_OF_PAGES; i++) {
+      indexFile.append(page.duplicate(), keyType.getTypeSignal(), fanout);
+    }
+
+    serializedRecord = DiskFixtures.record(keyType).serialize();
+    recordFile = switch (storage) {
+      case SMALL_BUFFER_POOL -> new RecordFile(new BufferPool());
+      case LARGE_BUFFER_POOL -> new RecordFile(new BufferPool(LARGE_BUFFER_POOL_FRAMES));
+      case MEMORY_MAPPED -> RecordFile.memoryMapped();
+      case COMPRESSED -> RecordFile.compressed();
+    };
+    recordFile.openFile(directory.resolve("record.tc").toString());
+    for (int i = 0; i < NUMBER_OF_RECORDS; i++) {
+      recordFile.append(serializedRecord.duplicate());
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    indexFile.deleteAll();
+    recordFile.delete();
+    Files.delete(directory);
+  }
+
+  @Benchmark
+  public ByteBuffer readIndexPage() throws IOException {
+    return indexFile.read(ThreadLocalRandom.current().nextInt(NUMBER_OF_PAGES));
+  }
+
+  @Benchmark
+  public Long updateIndexPage() throws IOException {
+    return indexFile.update(page.duplicate(), ThreadLocalRandom.current().nextInt(NUMBER_OF_PAGES));
+  }
+
+  @Benchmark
+  public ByteBuffer readRecord() throws IOException {
+    return recordFile.read(ThreadLocalRandom.current().nextInt(NUMBER_OF_RECORDS));
+  }
+
+  @Benchmark
+  public Long updateRecord() throws IOException {
+    return recordFile.update(
+        serializedRecord.duplicate(),
+        ThreadLocalRandom.current().nextInt(NUMBER_OF_RECORDS)
+    );
+  }
+}
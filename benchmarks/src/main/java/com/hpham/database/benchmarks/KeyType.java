@@ -0,0 +1,56 @@
+package com.hpham.database.benchmarks;
+
+import com.hpham.database.btree_disk.constants.DataConstants;
+import com.hpham.database.btree_disk.data_types.IntField;
+import com.hpham.database.btree_disk.data_types.LongField;
+import com.hpham.database.btree_disk.data_types.SortableField;
+import com.hpham.database.btree_disk.data_types.StringField;
+import lombok.Getter;
+
+/**
+ * Key types the benchmarks are parameterized by.
+ * <br>
+ * Keys are generated from sequence numbers, and sort in the same order as them, so that sorted
+ * input for bulk loading is just increasing sequence numbers.
+ */
+@Getter
+public enum KeyType {
+  INT(DataConstants.INT_TYPE_SIGNAL),
+  LONG(DataConstants.LONG_TYPE_SIGNAL),
+  STRING(DataConstants.STRING_TYPE_SIGNAL);
+
+  private final byte typeSignal;
+
+  KeyType(byte typeSignal) {
+    this.typeSignal = typeSignal;
+  }
+
+  /**
+   * Key of a {@link com.hpham.database.btree.BTree}.
+   */
+  @SuppressWarnings("unchecked")
+  <K extends Comparable<K>> K key(int sequence) {
+    return (K) switch (this) {
+      case INT -> Integer.valueOf(sequence);
+      case LONG -> Long.valueOf(sequence);
+      case STRING -> stringKey(sequence);
+    };
+  }
+
+  /**
+   * Key of a {@link com.hpham.database.btree_disk.BTree}.
+   */
+  @SuppressWarnings("unchecked")
+  <K extends Comparable<K>> SortableField<K> field(int sequence) {
+    return (SortableField<K>) switch (this) {
+      case INT -> IntField.fromValue(sequence);
+      case LONG -> LongField.fromValue((long) sequence);
+      case STRING -> StringField.fromValue(stringKey(sequence));
+    };
+  }
+
+  private static String stringKey(int sequence) {
+    // zero-padded, so that string order matches sequence order
+    return String.format("key-%016d", sequence);
+  }
+}
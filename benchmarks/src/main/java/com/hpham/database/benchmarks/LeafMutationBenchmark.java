@@ -0,0 +1,116 @@
+package com.hpham.database.benchmarks;
+
+import com.hpham.database.btree.BTree;
+import com.hpham.database.btree.Record;
+import com.hpham.database.btree_disk.RecordValue;
+import com.hpham.database.btree_disk.constants.DataConstants;
+import com.hpham.database.btree_disk.data_types.LongField;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the leaf mutations that neither split nor merge a node, in both b-tree modules.
+ * <br>
+ * Run with {@code -prof gc}: all records and keys are created up front, so
+ * {@code gc.alloc.rate.norm} is what the trees themselves allocate per operation.
+ * <br>
+ * Leaf nodes are bulk loaded half full with even keys, so inserting an odd key never splits its
+ * leaf node, and deleting it right after never merges it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LeafMutationBenchmark {
+  private static final int NUMBER_OF_RECORDS = 1 << 16;
+  private static final double FILL_FACTOR = 0.5;
+
+  private BTree<Long> bTree;
+  private Record<Long, Object>[] existingRecords;
+  private Record<Long, Object>[] newRecords;
+
+  private com.hpham.database.btree_disk.BTree<Long> diskBTree;
+  private com.hpham.database.btree_disk.Record<Long>[] existingDiskRecords;
+  private com.hpham.database.btree_disk.Record<Long>[] newDiskRecords;
+
+  private int next;
+
+  @Setup(Level.Trial)
+  @SuppressWarnings("unchecked")
+  public void setup() {
+    existingRecords = (Record<Long, Object>[]) new Record<?, ?>[NUMBER_OF_RECORDS];
+    newRecords = (Record<Long, Object>[]) new Record<?, ?>[NUMBER_OF_RECORDS];
+    existingDiskRecords = (com.hpham.database.btree_disk.Record<Long>[])
+        new com.hpham.database.btree_disk.Record<?>[NUMBER_OF_RECORDS];
+    newDiskRecords = (com.hpham.database.btree_disk.Record<Long>[])
+        new com.hpham.database.btree_disk.Record<?>[NUMBER_OF_RECORDS];
+    for (int i = 0; i < NUMBER_OF_RECORDS; i++) {
+      existingRecords[i] = recordOf(2L * i);
+      newRecords[i] = recordOf(2L * i + 1);
+      existingDiskRecords[i] = diskRecordOf(2L * i);
+      newDiskRecords[i] = diskRecordOf(2L * i + 1);
+    }
+
+    bTree = new BTree<>();
+    bTree.bulkLoad(Arrays.asList(existingRecords).iterator(), FILL_FACTOR);
+    diskBTree = new com.hpham.database.btree_disk.BTree<>(DataConstants.LONG_TYPE_SIGNAL);
+    diskBTree.bulkLoad(Arrays.asList(existingDiskRecords).iterator(), FILL_FACTOR);
+  }
+
+  @Benchmark
+  public Record<Long, Object> update() {
+    return bTree.update(existingRecords[nextIndex()]);
+  }
+
+  @Benchmark
+  public BTree<Long> insertAndDelete() {
+    Record<Long, Object> record = newRecords[nextIndex()];
+    bTree.insert(record);
+    bTree.delete(record.getKey());
+    return bTree;
+  }
+
+  @Benchmark
+  public com.hpham.database.btree_disk.Record<Long> updateDisk() {
+    return diskBTree.update(existingDiskRecords[nextIndex()]);
+  }
+
+  @Benchmark
+  public com.hpham.database.btree_disk.BTree<Long> insertAndDeleteDisk() {
+    com.hpham.database.btree_disk.Record<Long> record = newDiskRecords[nextIndex()];
+    diskBTree.insert(record);
+    diskBTree.delete(record.getKey());
+    return diskBTree;
+  }
+
+  private int nextIndex() {
+    next = (next + 1) & (NUMBER_OF_RECORDS - 1);
+    return next;
+  }
+
+  private static Record<Long, Object> recordOf(long key) {
+    return Record.<Long, Object>builder().key(key).value(key).build();
+  }
+
+  private static com.hpham.database.btree_disk.Record<Long> diskRecordOf(long key) {
+    return com.hpham.database.btree_disk.Record.<Long>builder()
+        .key(LongField.fromValue(key))
+        .value(RecordValue.recordValueWithFields(Map.of()))
+        .build();
+  }
+}
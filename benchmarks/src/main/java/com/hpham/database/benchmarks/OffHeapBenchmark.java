@@ -0,0 +1,150 @@
+package com.hpham.database.benchmarks;
+
+import com.hpham.database.btree.BTree;
+import com.hpham.database.btree.LongBTree;
+import com.hpham.database.btree.OffHeapLongBTree;
+import com.hpham.database.btree.Record;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap footprint and garbage collection cost of holding {@code treeSize} records of random
+ * {@code long} keys in a {@link BTree}, a {@link LongBTree} and an {@link OffHeapLongBTree}.
+ * <br>
+ * Every invocation builds a tree from scratch, which is kept alive until the footprint of the
+ * tree has been measured. Besides the build time, it reports, summed over the measurement
+ * iterations:
+ * <ul>
+ *   <li>{@code heapBytes}: heap still used by the tree after a full collection</li>
+ *   <li>{@code gcMillis}: time spent in garbage collection while building the tree</li>
+ *   <li>{@code gcCount}: number of collections while building the tree</li>
+ *   <li>{@code fullGcMillis}: duration of a full collection with the tree alive, which is
+ *   about how long an old generation collection pauses for</li>
+ * </ul>
+ * Run with {@code -prof gc} for allocation rates, and with e.g. {@code -jvmArgsAppend -Xlog:gc}
+ * to see individual pauses.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-XX:+UseG1GC"})
+@State(Scope.Thread)
+public class OffHeapBenchmark {
+  public enum Implementation {
+    BTREE,
+    LONG_BTREE,
+    OFF_HEAP
+  }
+
+  @Param({"BTREE", "LONG_BTREE", "OFF_HEAP"})
+  Implementation implementation;
+
+  @Param({"1000000", "10000000"})
+  int treeSize;
+
+  private long[] keys;
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Footprint {
+    public long heapBytes;
+    public long gcMillis;
+    public long gcCount;
+    public long fullGcMillis;
+
+    private Object liveTree;
+    private long gcMillisBefore;
+    private long gcCountBefore;
+
+    @Setup(Level.Invocation)
+    public void before() {
+      System.gc();
+      gcMillisBefore = totalGcMillis();
+      gcCountBefore = totalGcCount();
+    }
+
+    @TearDown(Level.Invocation)
+    public void after() {
+      gcMillis = totalGcMillis() - gcMillisBefore;
+      gcCount = totalGcCount() - gcCountBefore;
+
+      long start = System.nanoTime();
+      long usedHeapWithTree = usedHeapAfterFullGc();
+      fullGcMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+      liveTree = null;
+      heapBytes = usedHeapWithTree - usedHeapAfterFullGc();
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void createKeys() {
+    keys = new Random(42).longs(treeSize).toArray();
+  }
+
+  /**
+   * Build a tree into {@link Footprint#liveTree}. Nothing is returned, so that the tree is only
+   * reachable from there once it has been measured.
+   */
+  @Benchmark
+  public void build(Footprint footprint) {
+    footprint.liveTree = switch (implementation) {
+      case BTREE -> {
+        BTree<Long> bTree = new BTree<>();
+        for (long key : keys) {
+          bTree.insert(Record.<Long, Object>builder().key(key).value(key).build());
+        }
+        yield bTree;
+      }
+      case LONG_BTREE -> {
+        LongBTree<Long> bTree = new LongBTree<>();
+        for (long key : keys) {
+          bTree.insert(key, key);
+        }
+        yield bTree;
+      }
+      case OFF_HEAP -> {
+        OffHeapLongBTree bTree = new OffHeapLongBTree();
+        for (long key : keys) {
+          bTree.insert(key, key);
+        }
+        yield bTree;
+      }
+    };
+  }
+
+  private static long usedHeapAfterFullGc() {
+    System.gc();
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  private static long totalGcMillis() {
+    return ManagementFactory.getGarbageCollectorMXBeans().stream()
+        .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+        .sum();
+  }
+
+  private static long totalGcCount() {
+    return ManagementFactory.getGarbageCollectorMXBeans().stream()
+        .mapToLong(GarbageCollectorMXBean::getCollectionCount)
+        .sum();
+  }
+}
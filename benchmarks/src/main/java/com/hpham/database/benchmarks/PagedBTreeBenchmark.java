@@ -0,0 +1,173 @@
+package com.hpham.database.benchmarks;
+
+import com.hpham.database.btree_disk.BTree;
+import com.hpham.database.btree_disk.BTreeNode;
+import com.hpham.database.btree_disk.NodeCache;
+import com.hpham.database.btree_disk.Record;
+import com.hpham.database.btree_disk.RecordValue;
+import com.hpham.database.btree_disk.data_types.IntField;
+import com.hpham.database.btree_disk.data_types.SortableField;
+import com.hpham.database.btree_disk.file_formats.index.IndexFile;
+import com.hpham.database.btree_disk.file_formats.record.SlottedRecordFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Point lookups and short scans on a disk b-tree loaded from its files, whose nodes are read on
+ * demand through a {@link NodeCache} of {@code nodeCacheSize} nodes.
+ * <br>
+ * The tree of {@code treeSize} records is built in memory and saved once per trial, then loaded
+ * back, so only the loaded tree is measured. With the {@code CLUSTERED} layout, the records are
+ * saved in the leaf pages, and the fanout is lowered so that a full leaf has room for them.
+ * {@code multiGet} finds {@value #MULTI_GET_SIZE} random keys at once with
+ * {@link BTree#findRecords}, whose record reads overlap, against one by one with
+ * {@code multiGetOneByOne}.
+ * <br>
+ * Once {@code compressed}, the pages of both files are compressed on disk, and a node missing
+ * from the cache is decompressed when it is read.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PagedBTreeBenchmark {
+  private static final int SCAN_LENGTH = 100;
+  private static final int MULTI_GET_SIZE = 16;
+
+  @Param({"INT", "LONG", "STRING"})
+  KeyType keyType;
+
+  @Param({"1000000"})
+  int treeSize;
+
+  @Param({"16", "1024", "65536"})
+  int nodeCacheSize;
+
+  @Param({"SEPARATE", "CLUSTERED"})
+  BTree.RecordLayout layout;
+
+  @Param({"false", "true"})
+  boolean compressed;
+
+  private Path directory;
+  private IndexFile indexFile;
+  private SlottedRecordFile recordFile;
+  private BTree<?> bTree;
+  private SortableField<?>[] keys;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("tomcache-benchmark");
+    keys = IntStream.range(0, treeSize).mapToObj(keyType::field).toArray(SortableField[]::new);
+    bTree = save(keyType);
+    bTree = BTree.load(indexFile, recordFile, nodeCacheSize);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    indexFile.deleteAll();
+    recordFile.delete();
+    Files.delete(directory);
+  }
+
+  @Benchmark
+  public Object get() {
+    return findRecord(bTree, keys[ThreadLocalRandom.current().nextInt(treeSize)]);
+  }
+
+  @Benchmark
+  public void multiGetOneByOne(Blackhole blackhole) {
+    for (int i = 0; i < MULTI_GET_SIZE; i++) {
+      blackhole.consume(get());
+    }
+  }
+
+  @Benchmark
+  public Object multiGet() {
+    List<SortableField<?>> multiGetKeys = new ArrayList<>(MULTI_GET_SIZE);
+    for (int i = 0; i < MULTI_GET_SIZE; i++) {
+      multiGetKeys.add(keys[ThreadLocalRandom.current().nextInt(treeSize)]);
+    }
+    return findRecords(bTree, multiGetKeys);
+  }
+
+  @Benchmark
+  public void scan(Blackhole blackhole) {
+    Iterator<? extends Record<?>> iterator =
+        scan(bTree, keys[ThreadLocalRandom.current().nextInt(treeSize)]);
+    for (int i = 0; i < SCAN_LENGTH && iterator.hasNext(); i++) {
+      blackhole.consume(iterator.next());
+    }
+  }
+
+  private <K extends Comparable<K>> BTree<K> save(KeyType keyType) throws IOException {
+    RecordValue value = RecordValue.recordValueWithFields(Map.of("value", IntField.fromValue(0)));
+    int recordSize = Record.<K>builder()
+        .key(keyType.field(treeSize))
+        .value(value)
+        .build()
+        .serialize()
+        .remaining();
+    int fanout = layout == BTree.RecordLayout.CLUSTERED
+        ? BTreeNode.maxClusteredFanout(keyType.getTypeSignal(), recordSize)
+        : BTreeNode.maxFanout(keyType.getTypeSignal());
+    BTree<K> memoryTree = new BTree<>(keyType.getTypeSignal(), fanout);
+    memoryTree.bulkLoad(IntStream.range(0, treeSize)
+        .mapToObj(i -> Record.<K>builder().key(keyType.<K>field(i)).value(value).build())
+        .iterator()
+    );
+
+    indexFile = compressed ? IndexFile.compressed() : new IndexFile();
+    indexFile.openFile(directory.resolve("index.tc").toString());
+    recordFile = compressed ? SlottedRecordFile.compressed() : new SlottedRecordFile();
+    recordFile.openFile(directory.resolve("records.tc").toString());
+    memoryTree.save(indexFile, recordFile, layout);
+    indexFile.flush();
+    recordFile.flush();
+
+    return memoryTree;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K extends Comparable<K>> Record<K> findRecord(BTree<K> bTree, Object key) {
+    return bTree.findRecord((SortableField<K>) key);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K extends Comparable<K>> List<Record<K>> findRecords(
+      BTree<K> bTree,
+      List<SortableField<?>> keys
+  ) {
+    return bTree.findRecords(keys.stream().map(key -> (SortableField<K>) key).toList());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K extends Comparable<K>> Iterator<Record<K>> scan(BTree<K> bTree, Object key) {
+    return bTree.scan((SortableField<K>) key, null);
+  }
+}
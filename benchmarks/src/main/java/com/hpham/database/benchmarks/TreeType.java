@@ -0,0 +1,15 @@
+package com.hpham.database.benchmarks;
+
+/**
+ * B-tree implementations the benchmarks are parameterized by.
+ */
+public enum TreeType {
+  /**
+   * {@link com.hpham.database.btree.BTree}.
+   */
+  CORE,
+  /**
+   * {@link com.hpham.database.btree_disk.BTree}.
+   */
+  DISK
+}
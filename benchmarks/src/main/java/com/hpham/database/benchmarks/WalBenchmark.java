@@ -0,0 +1,137 @@
+package com.hpham.database.benchmarks;
+
+import com.hpham.database.btree_disk.BTreeNode;
+import com.hpham.database.btree_disk.buffer_pool.BufferPool;
+import com.hpham.database.btree_disk.file_formats.index.IndexFile;
+import com.hpham.database.btree_disk.storage.BufferedFileStorage;
+import com.hpham.database.btree_disk.storage.LoggedFileStorage;
+import com.hpham.database.btree_disk.wal.WriteAheadLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of durable updates of random pages of an {@link IndexFile}, each update being
+ * flushed on its own as a commit.
+ * <br>
+ * Every benchmark thread gets its own file. With {@link Durability#WRITE_AHEAD_LOG}, all of the
+ * files share a {@link WriteAheadLog}, so that the commits of different threads are synced
+ * together; compare with {@link Durability#SYNC_FILE} at several thread counts, e.g.
+ * {@code -t 8}. Unlike the other suites, this one measures the storage device.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WalBenchmark {
+  private static final int NUMBER_OF_PAGES = 1_000;
+
+  public enum Durability {
+    /**
+     * Commits are logged, and the log is synced once for every commit queued at the time.
+     */
+    WRITE_AHEAD_LOG,
+    /**
+     * Every commit writes back its pages and syncs the file.
+     */
+    SYNC_FILE
+  }
+
+  @State(Scope.Benchmark)
+  public static class Log {
+    @Param({"WRITE_AHEAD_LOG", "SYNC_FILE"})
+    Durability durability;
+
+    Path directory;
+    WriteAheadLog writeAheadLog;
+    final List<IndexFile> indexFiles = new CopyOnWriteArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+      directory = Files.createTempDirectory("tomcache-benchmark");
+      writeAheadLog = new WriteAheadLog();
+      writeAheadLog.openFile(directory.resolve("wal.tc").toString());
+    }
+
+    /**
+     * Keep the log from growing across iterations.
+     */
+    @TearDown(Level.Iteration)
+    public void checkpoint() throws IOException {
+      writeAheadLog.checkpoint();
+    }
+
+    /**
+     * Delete the files of every thread here, as this may run before the threads are torn down.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      for (IndexFile indexFile : indexFiles) {
+        indexFile.deleteAll();
+      }
+      writeAheadLog.close();
+      Files.delete(directory.resolve("wal.tc"));
+      Files.delete(directory);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ThreadFile {
+    IndexFile indexFile;
+    ByteBuffer page;
+
+    @Setup(Level.Trial)
+    public void setup(Log log, ThreadParams threadParams) throws IOException {
+      int fileId = threadParams.getThreadIndex();
+      BufferPool bufferPool = new BufferPool();
+      indexFile = switch (log.durability) {
+        case WRITE_AHEAD_LOG -> new IndexFile(LoggedFileStorage.factory(
+            log.writeAheadLog,
+            fileId,
+            channel -> new BufferedFileStorage(bufferPool, channel)
+        ));
+        case SYNC_FILE -> new IndexFile(bufferPool);
+      };
+      indexFile.openFile(log.directory.resolve("index" + fileId + ".tc").toString());
+
+      page = DiskFixtures.fullLeafNode(KeyType.LONG).serialize();
+      int fanout = BTreeNode.maxFanout(KeyType.LONG.getTypeSignal());
+      for (int i = 0; i < NUMBER_OF_PAGES; i++) {
+        indexFile.append(page.duplicate(), KeyType.LONG.getTypeSignal(), fanout);
+      }
+      indexFile.flush();
+      log.indexFiles.add(indexFile);
+    }
+  }
+
+  @Benchmark
+  public Long commitPageUpdate(ThreadFile threadFile) throws IOException {
+    Long position = threadFile.indexFile.update(
+        threadFile.page.duplicate(),
+        ThreadLocalRandom.current().nextInt(NUMBER_OF_PAGES)
+    );
+    threadFile.indexFile.flush();
+    return position;
+  }
+}
@@ -1,7 +1,14 @@
 package com.hpham.database.btree;
 
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 
+import com.hpham.database.btree.exceptions.RecordAlreadyExistException;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
@@ -13,13 +20,72 @@ import lombok.Setter;
 @Setter
 public class BTree<K extends Comparable<K>> {
   public static final Integer FANOUT = 5;
+  /**
+   * Leave some room in every node after a bulk load, so that the first inserts do not split.
+   */
+  public static final double DEFAULT_BULK_LOAD_FILL_FACTOR = 0.9;
   private BTreeNode<K> root;
 
+  /**
+   * Whether nodes shared with snapshots are copied rather than modified, see
+   * {@link #withSnapshots()}.
+   */
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private final boolean copyOnWrite;
+
+  /**
+   * Bumped by every modification of a copy-on-write tree, so that nodes of an older epoch are
+   * known to be shared with snapshots. Always {@code 0} otherwise.
+   */
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private long epoch;
+
+  /**
+   * Root as of the last completed modification, handed out to snapshots.
+   */
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private volatile BTreeNode<K> publishedRoot;
+
   /**
    * Initialize a b-tree.
    * */
   public BTree() {
-    root = BTreeNode.createLeafNode();
+    this(false);
+  }
+
+  private BTree(boolean copyOnWrite) {
+    this.copyOnWrite = copyOnWrite;
+    root = BTreeNode.createLeafNode(epoch);
+    publish();
+  }
+
+  /**
+   * Initialize a b-tree that supports {@link #snapshot()}.
+   * <br>
+   * Modifications copy the nodes on the path from the root to the changed leaf nodes instead of
+   * modifying them, so they allocate more than on a tree created with {@link #BTree()}. Writes
+   * must still come from a single thread at a time.
+   */
+  public static <K extends Comparable<K>> BTree<K> withSnapshots() {
+    return new BTree<>(true);
+  }
+
+  /**
+   * Take a read-only view of the tree as of the last completed modification, in constant time.
+   * <br>
+   * The snapshot never changes, and can be read from any thread without locking while the tree
+   * is being modified.
+   *
+   * @throws IllegalStateException if the tree was not created with {@link #withSnapshots()}
+   */
+  public BTreeSnapshot<K> snapshot() {
+    if (!copyOnWrite) {
+      throw new IllegalStateException("Snapshots need a tree created with BTree.withSnapshots()");
+    }
+    return new BTreeSnapshot<>(publishedRoot);
   }
 
   /**
@@ -29,27 +95,64 @@ public class BTree<K extends Comparable<K>> {
    * @return added record
    */
   public Record<K, Object> insert(@NonNull Record<K, Object> record) {
+    startModification();
     K key = record.getKey();
-    BTreeNode<K> targetLeafNode = findTargetLeafNode(key);
+    BTreeNode<K> targetLeafNode = findWritableLeafNode(key);
 
-    Optional<BTreeNode<K>> newRootOptional = targetLeafNode.addNewRecord(record);
-
-    newRootOptional.ifPresent(newRoot -> this.root = newRoot);
+    BTreeNode<K> newRoot = targetLeafNode.addNewRecord(record);
+    if (newRoot != null) {
+      this.root = newRoot;
+    }
+    publish();
 
     return record;
   }
 
+  /**
+   * Insert a batch of records into a b-tree.
+   * <br>
+   * The batch is sorted and split by target leaf node in a single walk down the tree, then all
+   * the records of a leaf node are added together, so every leaf node is split at most once.
+   * Either all records are inserted, or none is.
+   *
+   * @param records Records to be added, in any order
+   * @throws RecordAlreadyExistException if a key is already in the tree, or appears twice in
+   *                                     the batch
+   */
+  public void insertAll(@NonNull Collection<Record<K, Object>> records) {
+    addAll(records, false);
+  }
+
+  /**
+   * Insert a batch of records into a b-tree, updating the records whose key is already in the
+   * tree. If a key appears more than once in the batch, its last record wins.
+   *
+   * @param records Records to be added or updated, in any order
+   * @see #insertAll(Collection)
+   */
+  public void upsertAll(@NonNull Collection<Record<K, Object>> records) {
+    addAll(records, true);
+  }
+
   /**
    * Update a record.
+   * <br>
+   * The value of the stored record is changed in place, so a record returned by an earlier
+   * {@link #findRecord} sees the new value. On a tree created with {@link #withSnapshots()}, the
+   * stored record is replaced by {@code record} instead, since snapshots may share it.
    *
    * @param record new record to update
    * @return updated record
    */
   public Record<K, Object> update(@NonNull Record<K, Object> record) {
+    startModification();
     K key = record.getKey();
-    BTreeNode<K> targetLeafNode = findTargetLeafNode(key);
+    BTreeNode<K> targetLeafNode = findWritableLeafNode(key);
 
-    return targetLeafNode.updateRecord(record);
+    Record<K, Object> updatedRecord = targetLeafNode.updateRecord(record, copyOnWrite);
+    publish();
+
+    return updatedRecord;
   }
 
   /**
@@ -58,21 +161,68 @@ public class BTree<K extends Comparable<K>> {
    * @param key key of the record to delete
    */
   public void delete(@NonNull K key) {
-    BTreeNode<K> targetLeafNode = findTargetLeafNode(key);
-
-    Optional<BTreeNode<K>> newRootOptional = targetLeafNode.deleteRecord(key);
+    startModification();
+    BTreeNode<K> targetLeafNode = findWritableLeafNode(key);
 
-    newRootOptional.ifPresent(newRoot -> {
+    BTreeNode<K> newRoot = targetLeafNode.deleteRecord(key);
+    if (newRoot != null) {
       boolean isNewRootEmpty = newRoot.getIsLeaf()
           ? newRoot.getRecords().isEmpty() : newRoot.getKeys().isEmpty();
 
       if (isNewRootEmpty) {
-        this.root = null;
+        // an empty leaf node, rather than no root, so that the tree can be written to again
+        this.root = BTreeNode.createLeafNode(epoch);
       } else {
         this.root = newRoot;
         this.root.setParent(null);
       }
-    });
+    }
+    publish();
+  }
+
+  /**
+   * Build the tree from records sorted by key, filling leaf nodes to
+   * {@link #DEFAULT_BULK_LOAD_FILL_FACTOR}.
+   *
+   * @see #bulkLoad(Iterator, double)
+   */
+  public void bulkLoad(@NonNull Iterator<Record<K, Object>> sortedRecords) {
+    bulkLoad(sortedRecords, DEFAULT_BULK_LOAD_FILL_FACTOR);
+  }
+
+  /**
+   * Build the tree from records sorted by key.
+   * <br>
+   * Nodes are packed bottom-up in a single pass over the input by a {@link BulkLoader}, which
+   * only keeps the last few nodes of every level in memory, so no record is ever inserted
+   * through the root and no node is split. Every node ends up holding about
+   * {@code fillFactor * fanout} entries, but never fewer than the minimum occupancy (except for
+   * the root) so that later inserts and deletes keep working as usual.
+   *
+   * @param sortedRecords records in strictly ascending key order
+   * @param fillFactor    fraction of each node to fill, in {@code (0, 1]}
+   * @throws IllegalStateException    if the tree is not empty
+   * @throws IllegalArgumentException if the fill factor is out of range, or the records are not
+   *                                  in strictly ascending key order
+   */
+  public void bulkLoad(@NonNull Iterator<Record<K, Object>> sortedRecords, double fillFactor) {
+    if (fillFactor <= 0 || fillFactor > 1) {
+      throw new IllegalArgumentException(
+          String.format("Fill factor must be in (0, 1], got %s", fillFactor)
+      );
+    }
+    if (!isEmpty()) {
+      throw new IllegalStateException("Cannot bulk load into a non-empty tree");
+    }
+
+    startModification();
+    BulkLoader<K> bulkLoader = new BulkLoader<>(FANOUT, minOccupancy(), fillFactor, epoch);
+    sortedRecords.forEachRemaining(bulkLoader::add);
+    BTreeNode<K> newRoot = bulkLoader.finish();
+
+    this.root = newRoot == null ? BTreeNode.createLeafNode(epoch) : newRoot;
+    this.root.setParent(null);
+    publish();
   }
 
   /**
@@ -85,10 +235,7 @@ public class BTree<K extends Comparable<K>> {
       return null;
     }
     BTreeNode<K> targetLeafNode = findTargetLeafNode(key);
-    int recordIndex = SearchUtil.searchForIndex(
-        key,
-        targetLeafNode.getRecords().stream().map(Record::getKey).toList()
-    );
+    int recordIndex = SearchUtil.searchForIndex(key, targetLeafNode.getKeys());
 
     if (recordIndex == -1) {
       return null;
@@ -97,6 +244,30 @@ public class BTree<K extends Comparable<K>> {
     return targetLeafNode.getRecords().get(recordIndex);
   }
 
+  /**
+   * Iterate over the records whose keys are in {@code [fromKey, toKey)}, in key order.
+   * <br>
+   * Only the first leaf node is found by descending from the root, the following ones are
+   * reached through the links between leaf nodes.
+   *
+   * @param fromKey inclusive lower bound, {@code null} to start from the smallest key
+   * @param toKey   exclusive upper bound, {@code null} to iterate up to the largest key
+   */
+  public Iterator<Record<K, Object>> scan(K fromKey, K toKey) {
+    if (this.root == null) {
+      return Collections.emptyIterator();
+    }
+
+    if (fromKey == null) {
+      return new RangeScanIterator<>(findLeftMostLeafNode(), 0, toKey);
+    }
+
+    BTreeNode<K> startLeafNode = findTargetLeafNode(fromKey);
+    int startIndex = SearchUtil.findFirstNotSmallerIndex(fromKey, startLeafNode.getKeys());
+
+    return new RangeScanIterator<>(startLeafNode, startIndex, toKey);
+  }
+
   /**
    * Find the leaf node that possibly contain a record with key {@code key}.
    *
@@ -112,4 +283,181 @@ public class BTree<K extends Comparable<K>> {
 
     return currentNode;
   }
+
+  /**
+   * Find the leaf node that possibly contain a record with key {@code key}, making it and all
+   * the nodes above it modifiable on the way down.
+   *
+   * @param key the search key
+   */
+  private BTreeNode<K> findWritableLeafNode(K key) {
+    BTreeNode<K> currentNode = writableRoot();
+
+    while (!currentNode.getIsLeaf()) {
+      int pointerIndex = SearchUtil.findFirstLargerIndex(key, currentNode.getKeys());
+      currentNode = currentNode.writablePointer(pointerIndex);
+    }
+
+    return currentNode;
+  }
+
+  /**
+   * Replace the root with a copy if it may be shared with snapshots.
+   */
+  private BTreeNode<K> writableRoot() {
+    if (root.getEpoch() != epoch) {
+      root = root.copy(epoch);
+    }
+    return root;
+  }
+
+  /**
+   * Start a new epoch, so that no node reachable from a published root is modified from now on.
+   */
+  private void startModification() {
+    if (copyOnWrite) {
+      epoch++;
+    }
+  }
+
+  /**
+   * Hand the current root out to snapshots. Must only be called once the tree is consistent.
+   */
+  private void publish() {
+    if (copyOnWrite) {
+      publishedRoot = root;
+    }
+  }
+
+  /**
+   * Find the leaf node holding the smallest keys.
+   */
+  private BTreeNode<K> findLeftMostLeafNode() {
+    BTreeNode<K> currentNode = root;
+
+    while (!currentNode.getIsLeaf()) {
+      currentNode = currentNode.getPointers().getFirst();
+    }
+
+    return currentNode;
+  }
+
+  private boolean isEmpty() {
+    return this.root == null
+        || (this.root.getIsLeaf() && this.root.getRecords().isEmpty());
+  }
+
+  /**
+   * Minimum number of records of a leaf node, or of pointers of an internal node, before it has
+   * to be merged or rebalanced.
+   */
+  private int minOccupancy() {
+    return (int) Math.ceil(((double) FANOUT) / 2);
+  }
+
+  private void addAll(Collection<Record<K, Object>> records, boolean replaceExisting) {
+    if (records.isEmpty()) {
+      return;
+    }
+    startModification();
+    if (this.root == null) {
+      this.root = BTreeNode.createLeafNode(epoch);
+    }
+
+    // a stable sort keeps the records of a duplicated key in batch order
+    List<Record<K, Object>> sortedRecords = new ArrayList<>(records);
+    if (!isSortedByKey(sortedRecords)) {
+      sortedRecords.sort(Comparator.comparing(Record::getKey));
+    }
+    List<Record<K, Object>> uniqueRecords = new ArrayList<>(sortedRecords.size());
+    for (Record<K, Object> record : sortedRecords) {
+      if (!uniqueRecords.isEmpty()
+          && uniqueRecords.getLast().getKey().compareTo(record.getKey()) == 0) {
+        if (!replaceExisting) {
+          throw new RecordAlreadyExistException(record.getKey());
+        }
+        uniqueRecords.removeLast();
+      }
+      uniqueRecords.add(record);
+    }
+
+    List<LeafNodeBatch<K>> leafNodeBatches = new ArrayList<>();
+    groupByLeafNode(writableRoot(), uniqueRecords, 0, uniqueRecords.size(), leafNodeBatches);
+
+    if (!replaceExisting) {
+      // check every key before changing anything
+      for (LeafNodeBatch<K> batch : leafNodeBatches) {
+        for (Record<K, Object> record : batch.records()) {
+          if (SearchUtil.searchForIndex(record.getKey(), batch.leafNode().getKeys()) != -1) {
+            throw new RecordAlreadyExistException(record.getKey());
+          }
+        }
+      }
+    }
+
+    // leaf nodes stay valid targets when other leaf nodes, or their parents, are split
+    for (LeafNodeBatch<K> batch : leafNodeBatches) {
+      BTreeNode<K> newRoot = batch.leafNode()
+          .addNewRecords(batch.records(), replaceExisting, copyOnWrite);
+      if (newRoot != null) {
+        this.root = newRoot;
+      }
+    }
+    publish();
+  }
+
+  private static <K extends Comparable<K>> boolean isSortedByKey(List<Record<K, Object>> records) {
+    for (int i = 1; i < records.size(); i++) {
+      if (records.get(i - 1).getKey().compareTo(records.get(i).getKey()) > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Split {@code sortedRecords[from, to)} by the leaf node they belong to, among the leaf nodes
+   * of the subtree rooted at {@code node}. The nodes that records are added under are made
+   * modifiable on the way down.
+   */
+  private void groupByLeafNode(
+      BTreeNode<K> node,
+      List<Record<K, Object>> sortedRecords,
+      int from,
+      int to,
+      List<LeafNodeBatch<K>> leafNodeBatches
+  ) {
+    if (node.getIsLeaf()) {
+      leafNodeBatches.add(new LeafNodeBatch<>(node, sortedRecords.subList(from, to)));
+      return;
+    }
+
+    int start = from;
+    for (int i = 0; i < node.getPointers().size() && start < to; i++) {
+      int end = start;
+      if (i < node.getKeys().size()) {
+        // keys smaller than the i-th key belong to the i-th pointer
+        K upperBound = node.getKeys().get(i);
+        while (end < to && sortedRecords.get(end).getKey().compareTo(upperBound) < 0) {
+          end++;
+        }
+      } else {
+        end = to;
+      }
+
+      if (end > start) {
+        groupByLeafNode(node.writablePointer(i), sortedRecords, start, end, leafNodeBatches);
+      }
+      start = end;
+    }
+  }
+
+  /**
+   * Records of a batch that belong to the same leaf node.
+   */
+  private record LeafNodeBatch<K extends Comparable<K>>(
+      BTreeNode<K> leafNode,
+      List<Record<K, Object>> records
+  ) {
+  }
 }
@@ -8,10 +8,7 @@ import lombok.NonNull;
 import lombok.Setter;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Optional;
 
 import static com.hpham.database.btree.BTree.FANOUT;
 
@@ -30,8 +27,25 @@ public class BTreeNode<K extends Comparable<K>> {
   private List<Record<K, Object>> records;
   private BTreeNode<K> parent;
 
-  private BTreeNode(Boolean isLeaf) {
+  /**
+   * Neighbouring leaf nodes, in key order. Always {@code null} for internal nodes.
+   */
+  private BTreeNode<K> prev;
+  private BTreeNode<K> next;
+
+  /**
+   * Epoch of the tree when the node was created. A node of an older epoch than its tree may be
+   * shared with snapshots, so its keys, pointers and records must not be modified; it is copied
+   * instead, see {@link #writablePointer(int)}.
+   * <br>
+   * Snapshots never follow {@link #parent}, {@link #prev} nor {@link #next}, so these are kept
+   * up to date on shared nodes too.
+   */
+  private final long epoch;
+
+  private BTreeNode(Boolean isLeaf, long epoch) {
     this.isLeaf = isLeaf;
+    this.epoch = epoch;
     keys = new ArrayList<>();
     if (isLeaf) {
       records = new ArrayList<>();
@@ -43,108 +57,177 @@ public class BTreeNode<K extends Comparable<K>> {
   /**
    * Create a leaf node.
    */
-  static <K extends Comparable<K>> BTreeNode<K> createLeafNode() {
-    return new BTreeNode<>(true);
+  static <K extends Comparable<K>> BTreeNode<K> createLeafNode(long epoch) {
+    return new BTreeNode<>(true, epoch);
   }
 
   /**
    * Create an internal node.
    */
-  static <K extends Comparable<K>> BTreeNode<K> createInternalNode() {
-    return new BTreeNode<>(false);
+  static <K extends Comparable<K>> BTreeNode<K> createInternalNode(long epoch) {
+    return new BTreeNode<>(false, epoch);
+  }
+
+  /**
+   * Make the child at {@code pointerIndex} of this node modifiable, by replacing it with a copy
+   * of the current epoch if it belongs to an older one.
+   * <br>
+   * This node must be modifiable itself, i.e. be of the current epoch.
+   *
+   * @return the child, or its copy
+   */
+  BTreeNode<K> writablePointer(int pointerIndex) {
+    BTreeNode<K> child = pointers.get(pointerIndex);
+    if (child.epoch == this.epoch) {
+      return child;
+    }
+
+    BTreeNode<K> copy = child.copy(this.epoch);
+    copy.parent = this;
+    pointers.set(pointerIndex, copy);
+    return copy;
+  }
+
+  /**
+   * Copy this node into {@code newEpoch}, and point its children and neighbouring leaf nodes to
+   * the copy.
+   */
+  BTreeNode<K> copy(long newEpoch) {
+    BTreeNode<K> copy = new BTreeNode<>(isLeaf, newEpoch);
+    copy.keys.addAll(keys);
+    copy.parent = parent;
+
+    if (isLeaf) {
+      copy.records.addAll(records);
+      copy.prev = prev;
+      copy.next = next;
+      if (prev != null) {
+        prev.next = copy;
+      }
+      if (next != null) {
+        next.prev = copy;
+      }
+    } else {
+      copy.pointers.addAll(pointers);
+      for (BTreeNode<K> pointer : pointers) {
+        pointer.parent = copy;
+      }
+    }
+
+    return copy;
   }
 
   /**
    * Update an existing record.
+   * <br>
+   * The value of the existing record is changed, so references to it returned by earlier
+   * lookups see the new value. When {@code replaceRecord} is set, the existing record is replaced
+   * by {@code newRecord} instead, leaving it unchanged for the snapshots that may share it.
    *
+   * @param replaceRecord whether to replace rather than modify the existing record
+   * @return the record now stored in the node
    * @throws InvalidMethodInvocationException if the record key is not found
    */
-  Record<K, Object> updateRecord(@NonNull Record<K, Object> newRecord) {
+  Record<K, Object> updateRecord(@NonNull Record<K, Object> newRecord, boolean replaceRecord) {
     if (!this.isLeaf) {
       throw new InvalidMethodInvocationException("Cannot update record in an internal node");
     }
 
-    Optional<Record<K, Object>> existingRecordOptional = this.records.stream()
-        .filter(record -> record.getKey().equals(newRecord.getKey()))
-        .findAny();
-
-    if (existingRecordOptional.isEmpty()) {
+    int index = SearchUtil.searchForIndex(newRecord.getKey(), keys);
+    if (index == -1) {
       throw new RecordNotFoundException(newRecord.getKey());
     }
 
-    return existingRecordOptional.map(r -> {
-      r.setValue(newRecord.getValue());
-      return r;
-    }).get();
+    return storeRecord(index, newRecord, replaceRecord);
+  }
+
+  /**
+   * Store the value of {@code newRecord} in the existing record at {@code index}, or store
+   * {@code newRecord} itself there if {@code replaceRecord} is set.
+   */
+  private Record<K, Object> storeRecord(
+      int index,
+      Record<K, Object> newRecord,
+      boolean replaceRecord
+  ) {
+    if (replaceRecord) {
+      records.set(index, newRecord);
+      return newRecord;
+    }
+
+    Record<K, Object> existingRecord = records.get(index);
+    existingRecord.setValue(newRecord.getValue());
+    return existingRecord;
   }
 
   /**
    * Add new record to the current leaf node.
+   * <br>
+   * The record is inserted at its position found by binary search, so the keys and records stay
+   * sorted without being re-sorted.
    *
    * @param newRecord new record to add
    * @return New root of the B-Tree, {@code null} if the root does not change
    * @throws InvalidMethodInvocationException if this is not a leaf node
    */
-  Optional<BTreeNode<K>> addNewRecord(@NonNull Record<K, Object> newRecord) {
+  BTreeNode<K> addNewRecord(@NonNull Record<K, Object> newRecord) {
     if (!this.isLeaf) {
       throw new InvalidMethodInvocationException("Cannot add new record to an internal node");
     }
 
-    // check for duplicate
-    boolean hasDuplicate = this.records.stream().anyMatch(
-        record -> record.getKey().equals(newRecord.getKey())
-    );
-
-    if (hasDuplicate) {
+    int index = SearchUtil.findFirstNotSmallerIndex(newRecord.getKey(), keys);
+    if (index < keys.size() && keys.get(index).compareTo(newRecord.getKey()) == 0) {
       throw new RecordAlreadyExistException(newRecord.getKey());
     }
 
     if (this.records.size() == FANOUT) {
       // The leaf node is full, so we need to split
-      return splitLeafNode(this, newRecord);
+      return splitLeafNode(this, newRecord, index);
     } else {
-      this.records.add(newRecord);
-      this.keys.add(newRecord.getKey());
-      this.records.sort(Comparator.comparing(Record::getKey));
-      Collections.sort(this.keys);
+      this.keys.add(index, newRecord.getKey());
+      this.records.add(index, newRecord);
 
-      return Optional.empty();
+      return null;
     }
   }
 
   /**
    * Split the overflowed node, then add new record.
+   *
+   * @param newRecordIndex position of the new record among the records of {@code nodeToSplit}
    */
-  private Optional<BTreeNode<K>> splitLeafNode(
+  private BTreeNode<K> splitLeafNode(
       @NonNull BTreeNode<K> nodeToSplit,
-      @NonNull Record<K, Object> newRecord
+      @NonNull Record<K, Object> newRecord,
+      int newRecordIndex
   ) {
-    final BTreeNode<K> newLeafNode = createLeafNode();
-    List<Record<K, Object>> combinedRecords = nodeToSplit.records;
-    nodeToSplit.records = new ArrayList<>();
-    nodeToSplit.keys = new ArrayList<>();
-    combinedRecords.add(newRecord);
-    combinedRecords.sort(Comparator.comparing(Record::getKey));
-
-    // split records into 2 halves
-    for (int i = 0; i <= FANOUT; i++) {
-      Record<K, Object> currentRecord = combinedRecords.get(i);
-      if (i < FANOUT / 2) {
-        nodeToSplit.keys.add(currentRecord.getKey());
-        nodeToSplit.records.add(currentRecord);
-      } else {
-        newLeafNode.keys.add(currentRecord.getKey());
-        newLeafNode.records.add(currentRecord);
-      }
-    }
+    final BTreeNode<K> newLeafNode = createLeafNode(epoch);
+    nodeToSplit.keys.add(newRecordIndex, newRecord.getKey());
+    nodeToSplit.records.add(newRecordIndex, newRecord);
+
+    // move the upper half of the records into the new leaf node
+    List<K> keysToMove = nodeToSplit.keys.subList(FANOUT / 2, FANOUT + 1);
+    List<Record<K, Object>> recordsToMove = nodeToSplit.records.subList(FANOUT / 2, FANOUT + 1);
+    newLeafNode.keys.addAll(keysToMove);
+    newLeafNode.records.addAll(recordsToMove);
+    keysToMove.clear();
+    recordsToMove.clear();
+
+    // link the new leaf node right after the split one
+    newLeafNode.prev = nodeToSplit;
+    newLeafNode.next = nodeToSplit.next;
+    if (nodeToSplit.next != null) {
+      nodeToSplit.next.prev = newLeafNode;
+    }
+    nodeToSplit.next = newLeafNode;
 
     // bubble the key up to parent node
-    K keyBubbledUp = combinedRecords.get(FANOUT / 2).getKey();
+    K keyBubbledUp = newLeafNode.keys.getFirst();
 
     if (nodeToSplit.parent == null) {
       // parent == null implies that nodeToSplit is the root,
       // thus we need to create a new parent node
-      BTreeNode<K> newParent = createInternalNode();
+      BTreeNode<K> newParent = createInternalNode(epoch);
       nodeToSplit.parent = newParent;
       newLeafNode.parent = newParent;
 
@@ -152,13 +235,234 @@ public class BTreeNode<K extends Comparable<K>> {
       nodeToSplit.parent.pointers.add(newLeafNode);
       nodeToSplit.parent.keys.add(keyBubbledUp);
 
-      return Optional.ofNullable(nodeToSplit.parent);
+      return nodeToSplit.parent;
     }
 
     newLeafNode.parent = nodeToSplit.parent;
     return nodeToSplit.parent.addNewKey(keyBubbledUp, newLeafNode);
   }
 
+  /**
+   * Add a batch of records to the current leaf node at once.
+   * <br>
+   * The existing and new records are merged in a single pass. If they do not fit in one node,
+   * they are spread evenly over as many leaf nodes as needed, and all the new leaf nodes are
+   * handed to the parent together, so there is at most one split cascade per batch.
+   *
+   * @param newRecords      records sorted by key, without duplicates, that all belong to this node
+   * @param replaceExisting whether a new record updates the existing record with the same key,
+   *                        instead of being rejected
+   * @param replaceRecords  whether an update replaces rather than modifies the existing record,
+   *                        see {@link #updateRecord(Record, boolean)}
+   * @return New root of the B-Tree, {@code null} if the root does not change
+   * @throws InvalidMethodInvocationException if this is not a leaf node
+   * @throws RecordAlreadyExistException      if a key already exists and
+   *                                          {@code replaceExisting} is {@code false}
+   */
+  BTreeNode<K> addNewRecords(
+      @NonNull List<Record<K, Object>> newRecords,
+      boolean replaceExisting,
+      boolean replaceRecords
+  ) {
+    if (!this.isLeaf) {
+      throw new InvalidMethodInvocationException("Cannot add new records to an internal node");
+    }
+
+    if (records.size() + newRecords.size() <= FANOUT) {
+      // everything fits, no need to split
+      for (Record<K, Object> newRecord : newRecords) {
+        addOrReplaceRecord(newRecord, replaceExisting, replaceRecords);
+      }
+      return null;
+    }
+
+    List<Record<K, Object>> mergedRecords = new ArrayList<>(records.size() + newRecords.size());
+    int existingIndex = 0;
+    int newIndex = 0;
+    while (existingIndex < records.size() || newIndex < newRecords.size()) {
+      if (newIndex == newRecords.size()) {
+        mergedRecords.add(records.get(existingIndex++));
+      } else if (existingIndex == records.size()) {
+        mergedRecords.add(newRecords.get(newIndex++));
+      } else {
+        Record<K, Object> existingRecord = records.get(existingIndex);
+        Record<K, Object> newRecord = newRecords.get(newIndex);
+        int comparison = existingRecord.getKey().compareTo(newRecord.getKey());
+
+        if (comparison < 0) {
+          mergedRecords.add(existingRecord);
+          existingIndex++;
+        } else if (comparison > 0) {
+          mergedRecords.add(newRecord);
+          newIndex++;
+        } else {
+          if (!replaceExisting) {
+            throw new RecordAlreadyExistException(newRecord.getKey());
+          }
+          mergedRecords.add(storeRecord(existingIndex, newRecord, replaceRecords));
+          existingIndex++;
+          newIndex++;
+        }
+      }
+    }
+
+    int numNodes = (mergedRecords.size() + FANOUT - 1) / FANOUT;
+    List<K> keysBubbledUp = new ArrayList<>(numNodes - 1);
+    List<BTreeNode<K>> newLeafNodes = new ArrayList<>(numNodes - 1);
+    BTreeNode<K> previousLeafNode = this;
+
+    for (int i = 0; i < numNodes; i++) {
+      BTreeNode<K> leafNode = i == 0 ? this : createLeafNode(epoch);
+      leafNode.records = new ArrayList<>(mergedRecords.subList(
+          i * mergedRecords.size() / numNodes,
+          (i + 1) * mergedRecords.size() / numNodes
+      ));
+      leafNode.keys = new ArrayList<>(leafNode.records.size());
+      leafNode.records.forEach(record -> leafNode.keys.add(record.getKey()));
+
+      if (i > 0) {
+        // link the new leaf node right after the previous one
+        leafNode.prev = previousLeafNode;
+        leafNode.next = previousLeafNode.next;
+        if (previousLeafNode.next != null) {
+          previousLeafNode.next.prev = leafNode;
+        }
+        previousLeafNode.next = leafNode;
+
+        keysBubbledUp.add(leafNode.keys.getFirst());
+        newLeafNodes.add(leafNode);
+      }
+      previousLeafNode = leafNode;
+    }
+
+    if (newLeafNodes.isEmpty()) {
+      return null;
+    }
+
+    return addNewNodesToParent(keysBubbledUp, newLeafNodes);
+  }
+
+  private void addOrReplaceRecord(
+      Record<K, Object> newRecord,
+      boolean replaceExisting,
+      boolean replaceRecords
+  ) {
+    int index = SearchUtil.findFirstNotSmallerIndex(newRecord.getKey(), keys);
+
+    if (index < keys.size() && keys.get(index).compareTo(newRecord.getKey()) == 0) {
+      if (!replaceExisting) {
+        throw new RecordAlreadyExistException(newRecord.getKey());
+      }
+      storeRecord(index, newRecord, replaceRecords);
+      return;
+    }
+
+    keys.add(index, newRecord.getKey());
+    records.add(index, newRecord);
+  }
+
+  /**
+   * Add new keys to the current internal node at once, each with the child node to its right.
+   * <br>
+   * If the node overflows, it is split evenly into as many nodes as needed, and the new nodes
+   * are handed to the parent together.
+   *
+   * @param newKeys       new keys to add, in ascending order
+   * @param newChildNodes new child nodes bubbling up, one per key
+   * @return New root of the B-Tree, {@code null} if the root does not change
+   * @throws InvalidMethodInvocationException if the current node is not an internal node
+   */
+  private BTreeNode<K> addNewKeys(
+      @NonNull List<K> newKeys,
+      @NonNull List<BTreeNode<K>> newChildNodes
+  ) {
+    if (isLeaf) {
+      throw new InvalidMethodInvocationException("Cannot call addNewKeys on a leaf node");
+    }
+
+    if (pointers.size() + newKeys.size() <= FANOUT) {
+      // everything fits, no need to split
+      for (int i = 0; i < newKeys.size(); i++) {
+        int newKeyIndex = SearchUtil.findFirstNotSmallerIndex(newKeys.get(i), keys);
+        keys.add(newKeyIndex, newKeys.get(i));
+        pointers.add(newKeyIndex + 1, newChildNodes.get(i));
+        newChildNodes.get(i).setParent(this);
+      }
+      return null;
+    }
+
+    // merge the sorted keys, every key keeping the pointer to its right
+    List<K> combinedKeys = new ArrayList<>(keys.size() + newKeys.size());
+    List<BTreeNode<K>> combinedPointers = new ArrayList<>(pointers.size() + newKeys.size());
+    combinedPointers.add(pointers.getFirst());
+    int existingIndex = 0;
+    int newIndex = 0;
+    while (existingIndex < keys.size() || newIndex < newKeys.size()) {
+      if (newIndex == newKeys.size()
+          || (existingIndex < keys.size()
+          && keys.get(existingIndex).compareTo(newKeys.get(newIndex)) < 0)) {
+        combinedKeys.add(keys.get(existingIndex));
+        combinedPointers.add(pointers.get(existingIndex + 1));
+        existingIndex++;
+      } else {
+        combinedKeys.add(newKeys.get(newIndex));
+        combinedPointers.add(newChildNodes.get(newIndex));
+        newChildNodes.get(newIndex).setParent(this);
+        newIndex++;
+      }
+    }
+
+    keys = combinedKeys;
+    pointers = combinedPointers;
+    if (pointers.size() <= FANOUT) {
+      return null;
+    }
+
+    int numNodes = (pointers.size() + FANOUT - 1) / FANOUT;
+    List<K> keysBubbledUp = new ArrayList<>(numNodes - 1);
+    List<BTreeNode<K>> newNodes = new ArrayList<>(numNodes - 1);
+
+    for (int i = 0; i < numNodes; i++) {
+      BTreeNode<K> node = i == 0 ? this : createInternalNode(epoch);
+      int start = i * combinedPointers.size() / numNodes;
+      int end = (i + 1) * combinedPointers.size() / numNodes;
+
+      // the key between two consecutive nodes moves up to the parent
+      node.pointers = new ArrayList<>(combinedPointers.subList(start, end));
+      node.keys = new ArrayList<>(combinedKeys.subList(start, end - 1));
+      node.pointers.forEach(pointer -> pointer.setParent(node));
+
+      if (i > 0) {
+        keysBubbledUp.add(combinedKeys.get(start - 1));
+        newNodes.add(node);
+      }
+    }
+
+    return addNewNodesToParent(keysBubbledUp, newNodes);
+  }
+
+  /**
+   * Hand the nodes split off the current node to its parent, creating a new root if the
+   * current node is the root.
+   */
+  private BTreeNode<K> addNewNodesToParent(
+      List<K> keysBubbledUp,
+      List<BTreeNode<K>> newNodes
+  ) {
+    if (parent != null) {
+      return parent.addNewKeys(keysBubbledUp, newNodes);
+    }
+
+    // parent == null implies that this node is the root,
+    // thus we need to create a new parent node
+    BTreeNode<K> newParent = createInternalNode(epoch);
+    newParent.pointers.add(this);
+    this.parent = newParent;
+
+    BTreeNode<K> newRoot = newParent.addNewKeys(keysBubbledUp, newNodes);
+    return newRoot != null ? newRoot : newParent;
+  }
+
   public Boolean isRootNode() {
     return this.parent == null;
   }
@@ -171,7 +475,7 @@ public class BTreeNode<K extends Comparable<K>> {
    * @return New root of the B-Tree, {@code null} if the root does not change
    * @throws InvalidMethodInvocationException if the current node is not an internal node
    */
-  private Optional<BTreeNode<K>> addNewKey(@NonNull K newKey, @NonNull BTreeNode<K> newChildNode) {
+  private BTreeNode<K> addNewKey(@NonNull K newKey, @NonNull BTreeNode<K> newChildNode) {
     if (isLeaf) {
       throw new InvalidMethodInvocationException("Cannot call addNewKey on an internal node");
     }
@@ -185,7 +489,7 @@ public class BTreeNode<K extends Comparable<K>> {
     }
   }
 
-  private Optional<BTreeNode<K>> addNewKeyWithoutSplitting(
+  private BTreeNode<K> addNewKeyWithoutSplitting(
       BTreeNode<K> node,
       K newKey,
       BTreeNode<K> newChildNode
@@ -194,18 +498,18 @@ public class BTreeNode<K extends Comparable<K>> {
     node.keys.add(newKeyIndex, newKey);
     newChildNode.setParent(node);
     node.pointers.add(newKeyIndex + 1, newChildNode);
-    return Optional.empty();
+    return null;
   }
 
   /**
    * Split an internal node.
    */
-  private Optional<BTreeNode<K>> splitInternalNodeAndAddNewKey(
+  private BTreeNode<K> splitInternalNodeAndAddNewKey(
       @NonNull BTreeNode<K> nodeToSplit,
       @NonNull K newKey,
       @NonNull BTreeNode<K> newChildNode
   ) {
-    final BTreeNode<K> newNode = createInternalNode();
+    final BTreeNode<K> newNode = createInternalNode(epoch);
     List<K> combinedKeys = nodeToSplit.keys;
     final List<BTreeNode<K>> combinedPointers = nodeToSplit.pointers;
 
@@ -243,7 +547,7 @@ public class BTreeNode<K extends Comparable<K>> {
     if (parent == null) {
       // parent == null implies that nodeToSplit is the root,
       // thus we need to create a new parent node
-      BTreeNode<K> newParent = createInternalNode();
+      BTreeNode<K> newParent = createInternalNode(epoch);
       nodeToSplit.parent = newParent;
       newNode.parent = newParent;
 
@@ -251,7 +555,7 @@ public class BTreeNode<K extends Comparable<K>> {
       nodeToSplit.parent.pointers.add(newNode);
       nodeToSplit.parent.keys.add(keyBubbledUp);
 
-      return Optional.of(nodeToSplit.parent);
+      return nodeToSplit.parent;
     } else {
       return nodeToSplit.parent.addNewKey(keyBubbledUp, newNode);
     }
@@ -265,27 +569,22 @@ public class BTreeNode<K extends Comparable<K>> {
    * @throws InvalidMethodInvocationException if the current node is not a leaf node
    * @throws RecordNotFoundException if there is no record associated with the given {@code key}.
    */
-  Optional<BTreeNode<K>> deleteRecord(@NonNull K key) {
+  BTreeNode<K> deleteRecord(@NonNull K key) {
     if (!isLeaf) {
       throw new InvalidMethodInvocationException("Cannot call deleteRecord on an internal node");
     }
 
-    Record<K, Object> recordToDelete = records
-        .stream()
-        .filter(r -> r.getKey().equals(key))
-        .findAny()
-        .orElse(null);
-
-    if (recordToDelete == null) {
+    int index = SearchUtil.searchForIndex(key, keys);
+    if (index == -1) {
       throw new RecordNotFoundException(key);
     }
 
-    this.records.remove(recordToDelete);
-    this.keys.remove(recordToDelete.getKey());
+    this.keys.remove(index);
+    this.records.remove(index);
 
     // This is the case where the current leaf node is also a root
     if (this.parent == null) {
-      return Optional.of(this);
+      return this;
     }
 
     if (this.records.size() < Math.ceil(((double) FANOUT) / 2)) {
@@ -298,15 +597,15 @@ public class BTreeNode<K extends Comparable<K>> {
         if (nodeToRebalanceWith == null) {
           throw new RuntimeException("Tree in invalid state");
         }
-        return reBalanceLeafNode(this, nodeToRebalanceWith);
+        return reBalanceLeafNode(this, writableSibling(nodeToRebalanceWith));
       }
 
-      return mergeLeafNodes(this, nodeToMergeWith);
+      return mergeLeafNodes(this, writableSibling(nodeToMergeWith));
     }
-    return Optional.empty();
+    return null;
   }
 
-  private Optional<BTreeNode<K>> reBalanceLeafNode(
+  private BTreeNode<K> reBalanceLeafNode(
       @NonNull BTreeNode<K> underflowNode,
       @NonNull BTreeNode<K> nodeToRebalanceWith
   ) {
@@ -334,10 +633,10 @@ public class BTreeNode<K extends Comparable<K>> {
       underflowNode.parent.keys.set(parentKeyIndexToChange, keyToPromote);
     }
 
-    return Optional.empty();
+    return null;
   }
 
-  private Optional<BTreeNode<K>> mergeLeafNodes(
+  private BTreeNode<K> mergeLeafNodes(
       @NonNull BTreeNode<K> underFlowNode,
       @NonNull BTreeNode<K> nodeToMergeWith
   ) {
@@ -354,36 +653,60 @@ public class BTreeNode<K extends Comparable<K>> {
       nodeToMergeWith.records.addAll(underFlowNode.records);
       nodeToMergeWith.keys.addAll(underFlowNode.keys);
       parentPointerIndexToDelete = this.parent.pointers.indexOf(this);
+      unlinkLeafNode(underFlowNode);
     } else {
       // Merge into the sibling
       nodeToPossiblyBeRoot = underFlowNode;
       underFlowNode.records.addAll(nodeToMergeWith.records);
       underFlowNode.keys.addAll(nodeToMergeWith.keys);
       parentPointerIndexToDelete = underFlowNode.parent.pointers.indexOf(nodeToMergeWith);
+      unlinkLeafNode(nodeToMergeWith);
     }
 
     underFlowNode.parent.pointers.remove(parentPointerIndexToDelete);
     underFlowNode.parent.keys.remove(parentPointerIndexToDelete - 1);
     if (underFlowNode.parent.parent == null && underFlowNode.parent.keys.isEmpty()) {
       underFlowNode.parent = null;
-      return Optional.of(nodeToPossiblyBeRoot);
+      return nodeToPossiblyBeRoot;
     }
 
     return this.parent.mergeOrRebalance();
   }
 
+  /**
+   * Make a sibling of this node modifiable before merging or rebalancing with it, see
+   * {@link #writablePointer(int)}.
+   */
+  private BTreeNode<K> writableSibling(@NonNull BTreeNode<K> sibling) {
+    return parent.writablePointer(parent.pointers.indexOf(sibling));
+  }
+
+  /**
+   * Remove a merged leaf node from the linked list of leaf nodes.
+   */
+  private void unlinkLeafNode(@NonNull BTreeNode<K> mergedNode) {
+    if (mergedNode.prev != null) {
+      mergedNode.prev.next = mergedNode.next;
+    }
+    if (mergedNode.next != null) {
+      mergedNode.next.prev = mergedNode.prev;
+    }
+    mergedNode.prev = null;
+    mergedNode.next = null;
+  }
+
   /**
    * Merge or rebalance a non-leaf node.
    *
    * @return a node that will be a new root, null if root does not change
    */
-  private Optional<BTreeNode<K>> mergeOrRebalance() {
+  private BTreeNode<K> mergeOrRebalance() {
     if (isLeaf) {
       throw new InvalidMethodInvocationException("Cannot call mergeOrRebalance on leaf node");
     }
 
     if (this.parent == null) {
-      return Optional.empty();
+      return null;
     }
 
     // in case this is not root
@@ -399,16 +722,16 @@ public class BTreeNode<K extends Comparable<K>> {
         if (nodeToRebalanceWith == null) {
           throw new RuntimeException("Tree in invalid state");
         }
-        return rebalanceInternalNode(this, nodeToRebalanceWith);
+        return rebalanceInternalNode(this, writableSibling(nodeToRebalanceWith));
       }
 
-      return mergeInternalNodes(this, nodeToMergeWith);
+      return mergeInternalNodes(this, writableSibling(nodeToMergeWith));
     }
 
-    return Optional.empty();
+    return null;
   }
 
-  private Optional<BTreeNode<K>> mergeInternalNodes(
+  private BTreeNode<K> mergeInternalNodes(
       @NonNull BTreeNode<K> underflowNode,
       @NonNull BTreeNode<K> nodeToMergeWith
   ) {
@@ -431,7 +754,7 @@ public class BTreeNode<K extends Comparable<K>> {
       underflowNode.parent.keys.remove(keyToDemoteFromParent);
       if (underflowNode.parent.parent == null && underflowNode.parent.keys.isEmpty()) {
         nodeToMergeWith.parent = null;
-        return Optional.of(nodeToMergeWith);
+        return nodeToMergeWith;
       }
     } else {
       // Merge into the current node
@@ -447,7 +770,7 @@ public class BTreeNode<K extends Comparable<K>> {
       underflowNode.parent.keys.remove(keyToDemoteFromParent);
       if (underflowNode.parent.parent == null && underflowNode.parent.keys.isEmpty()) {
         underflowNode.parent = null;
-        return Optional.of(underflowNode);
+        return underflowNode;
       }
     }
     return underflowNode.parent.mergeOrRebalance();
@@ -456,7 +779,7 @@ public class BTreeNode<K extends Comparable<K>> {
   /**
    * Rebalance internal node.
    */
-  private Optional<BTreeNode<K>> rebalanceInternalNode(
+  private BTreeNode<K> rebalanceInternalNode(
       @NonNull BTreeNode<K> underflowNode,
       @NonNull BTreeNode<K> nodeToRebalanceWith
   ) {
@@ -490,7 +813,7 @@ public class BTreeNode<K extends Comparable<K>> {
       underflowNode.parent.keys.set(parentKeyIndexToChange, keyToMove);
     }
 
-    return Optional.empty();
+    return null;
   }
 
   private BTreeNode<K> findNodeToRebalanceWith(@NonNull BTreeNode<K> node) {
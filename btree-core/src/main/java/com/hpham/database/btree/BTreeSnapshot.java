@@ -0,0 +1,145 @@
+package com.hpham.database.btree;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only view of a {@link BTree} as of the moment it was taken, see {@link BTree#snapshot()}.
+ * <br>
+ * The nodes of a snapshot are never modified by the tree afterwards, so a snapshot can be read
+ * from any number of threads without locking. Only keys, pointers and records are followed:
+ * the parent and leaf links of the nodes keep changing with the tree.
+ */
+public class BTreeSnapshot<K extends Comparable<K>> {
+  private final BTreeNode<K> root;
+
+  BTreeSnapshot(BTreeNode<K> root) {
+    this.root = root;
+  }
+
+  /**
+   * Find a record in the snapshot, given a {@code key}.
+   *
+   * @param key the search key
+   */
+  public Record<K, Object> findRecord(K key) {
+    if (this.root == null) {
+      return null;
+    }
+
+    BTreeNode<K> currentNode = root;
+    while (!currentNode.getIsLeaf()) {
+      int pointerIndex = SearchUtil.findFirstLargerIndex(key, currentNode.getKeys());
+      currentNode = currentNode.getPointers().get(pointerIndex);
+    }
+
+    int recordIndex = SearchUtil.searchForIndex(key, currentNode.getKeys());
+    if (recordIndex == -1) {
+      return null;
+    }
+
+    return currentNode.getRecords().get(recordIndex);
+  }
+
+  /**
+   * Iterate over the records whose keys are in {@code [fromKey, toKey)}, in key order.
+   *
+   * @param fromKey inclusive lower bound, {@code null} to start from the smallest key
+   * @param toKey   exclusive upper bound, {@code null} to iterate up to the largest key
+   */
+  public Iterator<Record<K, Object>> scan(K fromKey, K toKey) {
+    if (this.root == null) {
+      return Collections.emptyIterator();
+    }
+
+    return new SnapshotScanIterator<>(root, fromKey, toKey);
+  }
+
+  /**
+   * Iterator that moves between leaf nodes through the internal nodes above them, which it
+   * keeps on a stack, since the links between leaf nodes may already point to newer nodes.
+   */
+  private static class SnapshotScanIterator<K extends Comparable<K>>
+      implements Iterator<Record<K, Object>> {
+    private final K toKey;
+    private final Deque<PathEntry<K>> path = new ArrayDeque<>();
+    private BTreeNode<K> currentNode;
+    private int currentIndex;
+
+    SnapshotScanIterator(BTreeNode<K> root, K fromKey, K toKey) {
+      this.toKey = toKey;
+
+      BTreeNode<K> node = root;
+      while (!node.getIsLeaf()) {
+        int pointerIndex = fromKey == null
+            ? 0 : SearchUtil.findFirstLargerIndex(fromKey, node.getKeys());
+        path.push(new PathEntry<>(node, pointerIndex));
+        node = node.getPointers().get(pointerIndex);
+      }
+
+      this.currentNode = node;
+      this.currentIndex = fromKey == null
+          ? 0 : SearchUtil.findFirstNotSmallerIndex(fromKey, node.getKeys());
+      skipExhaustedNodes();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return currentNode != null
+          && (toKey == null || currentNode.getKeys().get(currentIndex).compareTo(toKey) < 0);
+    }
+
+    @Override
+    public Record<K, Object> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      Record<K, Object> record = currentNode.getRecords().get(currentIndex);
+      currentIndex++;
+      skipExhaustedNodes();
+
+      return record;
+    }
+
+    private void skipExhaustedNodes() {
+      while (currentNode != null && currentIndex >= currentNode.getRecords().size()) {
+        currentNode = nextLeafNode();
+        currentIndex = 0;
+      }
+    }
+
+    /**
+     * Climb up to the closest internal node with a pointer to the right of the current path,
+     * then descend to the left-most leaf node under that pointer.
+     *
+     * @return the next leaf node, {@code null} if the current one is the last
+     */
+    private BTreeNode<K> nextLeafNode() {
+      while (!path.isEmpty()) {
+        PathEntry<K> entry = path.pop();
+        int pointerIndex = entry.pointerIndex() + 1;
+        if (pointerIndex < entry.node().getPointers().size()) {
+          path.push(new PathEntry<>(entry.node(), pointerIndex));
+          BTreeNode<K> node = entry.node().getPointers().get(pointerIndex);
+          while (!node.getIsLeaf()) {
+            path.push(new PathEntry<>(node, 0));
+            node = node.getPointers().getFirst();
+          }
+          return node;
+        }
+      }
+
+      return null;
+    }
+  }
+
+  /**
+   * Internal node on the path to the current leaf node, with the index of the pointer taken.
+   */
+  private record PathEntry<K extends Comparable<K>>(BTreeNode<K> node, int pointerIndex) {
+  }
+}
@@ -0,0 +1,158 @@
+package com.hpham.database.btree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the nodes of a {@link BTree} bottom-up, in a single pass over records sorted by key.
+ * <br>
+ * Every level buffers the entries of its next nodes: records for the leaf level, children for
+ * the levels above. Once a level holds a full node of entries plus the minimum occupancy of
+ * another, a node is packed from its first entries and added to the level above. When the input
+ * ends, the entries left at each level are packed into one node, or two if they do not fit, so
+ * that no node but the root holds fewer entries than the minimum occupancy. At most two nodes of
+ * entries are buffered per level, however many records are loaded.
+ * <br>
+ * The bulk loader of btree-disk packs its own nodes the same way.
+ */
+final class BulkLoader<K extends Comparable<K>> {
+  private final int fanout;
+  private final int minOccupancy;
+  private final int entriesPerNode;
+  private final long epoch;
+  private final List<Record<K, Object>> records = new ArrayList<>();
+  /**
+   * Children not packed into a node yet, per internal level from the lowest one.
+   */
+  private final List<List<BTreeNode<K>>> children = new ArrayList<>();
+  /**
+   * Smallest key of the subtree of every child in {@link #children}.
+   */
+  private final List<List<K>> smallestKeys = new ArrayList<>();
+  private BTreeNode<K> previousLeafNode;
+  private K lastKey;
+
+  /**
+   * Prepare to build nodes holding about {@code fillFactor * fanout} entries each.
+   *
+   * @param fillFactor fraction of each node to fill, in {@code (0, 1]}
+   * @param epoch      epoch of the new nodes
+   */
+  BulkLoader(int fanout, int minOccupancy, double fillFactor, long epoch) {
+    this.fanout = fanout;
+    this.minOccupancy = minOccupancy;
+    this.entriesPerNode = Math.min(fanout, Math.max(
+        minOccupancy,
+        (int) Math.round(fanout * fillFactor)
+    ));
+    this.epoch = epoch;
+  }
+
+  /**
+   * Add the record following the ones added so far.
+   *
+   * @throws IllegalArgumentException if its key is not larger than the key of the last record
+   */
+  void add(Record<K, Object> record) {
+    if (lastKey != null && lastKey.compareTo(record.getKey()) >= 0) {
+      throw new IllegalArgumentException(String.format(
+          "Records must be in strictly ascending key order, got %s after %s",
+          record.getKey(), lastKey
+      ));
+    }
+    lastKey = record.getKey();
+
+    records.add(record);
+    if (records.size() == entriesPerNode + minOccupancy) {
+      packLeafNode(entriesPerNode);
+    }
+  }
+
+  /**
+   * Pack the entries left at every level, from the leaf level up.
+   *
+   * @return root of the tree, {@code null} if no record was added
+   */
+  BTreeNode<K> finish() {
+    if (lastKey == null) {
+      return null;
+    }
+
+    while (!records.isEmpty()) {
+      packLeafNode(lastNodeSize(records.size()));
+    }
+    for (int level = 0; ; level++) {
+      List<BTreeNode<K>> levelChildren = children.get(level);
+      if (level == children.size() - 1 && levelChildren.size() == 1) {
+        return levelChildren.getFirst();
+      }
+      while (!levelChildren.isEmpty()) {
+        packInternalNode(level, lastNodeSize(levelChildren.size()));
+      }
+    }
+  }
+
+  /**
+   * Size of the next of the last nodes of a level, whose {@code remaining} entries are split in
+   * two halves if they do not fit in one node.
+   */
+  private int lastNodeSize(int remaining) {
+    return remaining <= fanout ? remaining : remaining / 2;
+  }
+
+  /**
+   * Pack the first {@code size} records into a leaf node, linked after the previous one.
+   */
+  private void packLeafNode(int size) {
+    List<Record<K, Object>> group = records.subList(0, size);
+    BTreeNode<K> leafNode = BTreeNode.createLeafNode(epoch);
+    group.forEach(record -> {
+      leafNode.getRecords().add(record);
+      leafNode.getKeys().add(record.getKey());
+    });
+    if (previousLeafNode != null) {
+      previousLeafNode.setNext(leafNode);
+      leafNode.setPrev(previousLeafNode);
+    }
+    previousLeafNode = leafNode;
+
+    K smallestKey = group.getFirst().getKey();
+    group.clear();
+    addChild(0, leafNode, smallestKey);
+  }
+
+  /**
+   * Pack the first {@code size} children of {@code level} into an internal node.
+   */
+  private void packInternalNode(int level, int size) {
+    List<BTreeNode<K>> group = children.get(level).subList(0, size);
+    List<K> groupKeys = smallestKeys.get(level).subList(0, size);
+    BTreeNode<K> internalNode = BTreeNode.createInternalNode(epoch);
+    for (int i = 0; i < group.size(); i++) {
+      BTreeNode<K> child = group.get(i);
+      child.setParent(internalNode);
+      internalNode.getPointers().add(child);
+      if (i > 0) {
+        // separator is the smallest key of the subtree to its right
+        internalNode.getKeys().add(groupKeys.get(i));
+      }
+    }
+
+    K smallestKey = groupKeys.getFirst();
+    group.clear();
+    groupKeys.clear();
+    addChild(level + 1, internalNode, smallestKey);
+  }
+
+  private void addChild(int level, BTreeNode<K> child, K smallestKey) {
+    if (children.size() == level) {
+      children.add(new ArrayList<>());
+      smallestKeys.add(new ArrayList<>());
+    }
+    children.get(level).add(child);
+    smallestKeys.get(level).add(smallestKey);
+    if (children.get(level).size() == entriesPerNode + minOccupancy) {
+      packInternalNode(level, entriesPerNode);
+    }
+  }
+}
@@ -0,0 +1,437 @@
+package com.hpham.database.btree;
+
+import com.hpham.database.btree.exceptions.RecordAlreadyExistException;
+import com.hpham.database.btree.exceptions.RecordNotFoundException;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Thread-safe B+-Tree using optimistic lock coupling.
+ * <br>
+ * Every node has its own {@link java.util.concurrent.locks.StampedLock}. Traversals never
+ * block: they read a node optimistically, then validate its stamp before moving on to a child
+ * and again after taking the child's stamp, and restart from the root whenever validation
+ * fails. Only writers take exclusive locks, and only on the nodes they modify, by upgrading the
+ * stamps they read on the way down. Point reads therefore never write to shared memory, and
+ * writers on different leaf nodes do not wait for each other.
+ * <br>
+ * Full nodes are split eagerly on the way down, so a split only ever locks a node and its
+ * parent, which is known to have room for one more key.
+ * <br>
+ * Likewise, deletes merge or rebalance underfull nodes eagerly on the way down, so a merge only
+ * ever locks a node, one of its siblings and their parent, which is known to have a key to
+ * spare. Readers that reached a node being merged away fail validation and restart, and a root
+ * left with a single child is replaced by it.
+ */
+public class ConcurrentBTree<K extends Comparable<K>> {
+  public static final int DEFAULT_FANOUT = 64;
+  public static final int MIN_FANOUT = 3;
+  @Getter
+  private final int fanout;
+  @Getter
+  private volatile ConcurrentBTreeNode<K> root;
+
+  /**
+   * Initialize a b-tree with {@link #DEFAULT_FANOUT}.
+   */
+  public ConcurrentBTree() {
+    this(DEFAULT_FANOUT);
+  }
+
+  /**
+   * Initialize a b-tree.
+   *
+   * @param fanout maximum number of children of an internal node, and of records of a leaf node
+   */
+  public ConcurrentBTree(int fanout) {
+    if (fanout < MIN_FANOUT) {
+      throw new IllegalArgumentException(
+          String.format("Fanout must be at least %d, got %d", MIN_FANOUT, fanout)
+      );
+    }
+    this.fanout = fanout;
+    this.root = ConcurrentBTreeNode.createLeafNode(fanout);
+  }
+
+  /**
+   * Insert a record into a b-tree.
+   *
+   * @param record Record to be added
+   * @return added record
+   * @throws RecordAlreadyExistException if there is already a record with the same key
+   */
+  public Record<K, Object> insert(@NonNull Record<K, Object> record) {
+    K key = record.getKey();
+
+    restart:
+    while (true) {
+      ConcurrentBTreeNode<K> parent = null;
+      long parentStamp = 0;
+      int pointerIndex = 0;
+      ConcurrentBTreeNode<K> node = root;
+      long stamp = node.getLock().tryOptimisticRead();
+      if (stamp == 0 || node != root) {
+        Thread.onSpinWait();
+        continue;
+      }
+
+      while (true) {
+        if (node.isFull()) {
+          // split eagerly, so that the parent always has room for the key bubbled up
+          if (!split(parent, parentStamp, pointerIndex, node, stamp)) {
+            Thread.onSpinWait();
+          }
+          continue restart;
+        }
+
+        if (node.getIsLeaf()) {
+          break;
+        }
+
+        int childIndex = node.findChildIndex(key);
+        ConcurrentBTreeNode<K> child = childIndex == ConcurrentBTreeNode.RESTART
+            ? null : node.getChild(childIndex);
+        if (child == null || !node.getLock().validate(stamp)) {
+          continue restart;
+        }
+        long childStamp = child.getLock().tryOptimisticRead();
+        if (childStamp == 0 || !node.getLock().validate(stamp)) {
+          Thread.onSpinWait();
+          continue restart;
+        }
+
+        parent = node;
+        parentStamp = stamp;
+        pointerIndex = childIndex;
+        node = child;
+        stamp = childStamp;
+      }
+
+      long writeStamp = node.getLock().tryConvertToWriteLock(stamp);
+      if (writeStamp == 0) {
+        Thread.onSpinWait();
+        continue;
+      }
+
+      try {
+        int index = node.findKeyIndex(key);
+        if (index >= 0) {
+          throw new RecordAlreadyExistException(key);
+        }
+        node.insertRecord(-(index + 1), record);
+      } finally {
+        node.getLock().unlockWrite(writeStamp);
+      }
+
+      return record;
+    }
+  }
+
+  /**
+   * Replace the record that has the same key as {@code record}.
+   * <br>
+   * The existing record is not modified, so that concurrent readers see either the old or the
+   * new record, never a mix of both.
+   *
+   * @param record new record to update
+   * @return updated record
+   * @throws RecordNotFoundException if there is no record with the given key
+   */
+  public Record<K, Object> update(@NonNull Record<K, Object> record) {
+    K key = record.getKey();
+
+    while (true) {
+      OptimisticLeaf<K> leaf = findTargetLeafNode(key);
+      if (leaf == null) {
+        Thread.onSpinWait();
+        continue;
+      }
+      ConcurrentBTreeNode<K> leafNode = leaf.node();
+
+      long writeStamp = leafNode.getLock().tryConvertToWriteLock(leaf.stamp());
+      if (writeStamp == 0) {
+        Thread.onSpinWait();
+        continue;
+      }
+
+      try {
+        int index = leafNode.findKeyIndex(key);
+        if (index < 0) {
+          throw new RecordNotFoundException(key);
+        }
+        leafNode.setRecord(index, record);
+      } finally {
+        leafNode.getLock().unlockWrite(writeStamp);
+      }
+
+      return record;
+    }
+  }
+
+  /**
+   * Delete a record, given a key.
+   *
+   * @param key key of the record to delete
+   * @throws RecordNotFoundException if there is no record with the given key
+   */
+  public void delete(@NonNull K key) {
+    restart:
+    while (true) {
+      ConcurrentBTreeNode<K> parent = null;
+      long parentStamp = 0;
+      int pointerIndex = 0;
+      ConcurrentBTreeNode<K> node = root;
+      long stamp = node.getLock().tryOptimisticRead();
+      if (stamp == 0 || node != root) {
+        Thread.onSpinWait();
+        continue;
+      }
+
+      while (true) {
+        if (parent != null && node.isUnderfull()) {
+          // merge or rebalance eagerly, so that the parent always has a key to spare
+          if (!mergeOrRebalance(parent, parentStamp, pointerIndex, node, stamp)) {
+            Thread.onSpinWait();
+          }
+          continue restart;
+        }
+
+        if (node.getIsLeaf()) {
+          break;
+        }
+
+        int childIndex = node.findChildIndex(key);
+        ConcurrentBTreeNode<K> child = childIndex == ConcurrentBTreeNode.RESTART
+            ? null : node.getChild(childIndex);
+        if (child == null || !node.getLock().validate(stamp)) {
+          continue restart;
+        }
+        long childStamp = child.getLock().tryOptimisticRead();
+        if (childStamp == 0 || !node.getLock().validate(stamp)) {
+          Thread.onSpinWait();
+          continue restart;
+        }
+
+        parent = node;
+        parentStamp = stamp;
+        pointerIndex = childIndex;
+        node = child;
+        stamp = childStamp;
+      }
+
+      long writeStamp = node.getLock().tryConvertToWriteLock(stamp);
+      if (writeStamp == 0) {
+        Thread.onSpinWait();
+        continue;
+      }
+
+      try {
+        int index = node.findKeyIndex(key);
+        if (index < 0) {
+          throw new RecordNotFoundException(key);
+        }
+        node.removeRecord(index);
+      } finally {
+        node.getLock().unlockWrite(writeStamp);
+      }
+
+      return;
+    }
+  }
+
+  /**
+   * Find a record in the tree, given a {@code key}.
+   *
+   * @param key the search key
+   * @return the record, {@code null} if not found
+   */
+  public Record<K, Object> findRecord(@NonNull K key) {
+    while (true) {
+      OptimisticLeaf<K> leaf = findTargetLeafNode(key);
+      if (leaf == null) {
+        Thread.onSpinWait();
+        continue;
+      }
+      ConcurrentBTreeNode<K> leafNode = leaf.node();
+
+      int index = leafNode.findKeyIndex(key);
+      Record<K, Object> record = index >= 0 ? leafNode.getRecord(index) : null;
+      if (index == ConcurrentBTreeNode.RESTART
+          || !leafNode.getLock().validate(leaf.stamp())) {
+        continue;
+      }
+
+      return record;
+    }
+  }
+
+  /**
+   * Find the leaf node that possibly contain a record with key {@code key}, without locking.
+   *
+   * @return the leaf node together with the stamp that validates what is read from it,
+   *     {@code null} if the traversal ran into a concurrent write and has to be restarted
+   */
+  private OptimisticLeaf<K> findTargetLeafNode(K key) {
+    ConcurrentBTreeNode<K> node = root;
+    long stamp = node.getLock().tryOptimisticRead();
+    if (stamp == 0 || node != root) {
+      return null;
+    }
+
+    while (!node.getIsLeaf()) {
+      int childIndex = node.findChildIndex(key);
+      ConcurrentBTreeNode<K> child = childIndex == ConcurrentBTreeNode.RESTART
+          ? null : node.getChild(childIndex);
+      if (child == null || !node.getLock().validate(stamp)) {
+        return null;
+      }
+      long childStamp = child.getLock().tryOptimisticRead();
+      // the parent must still point to the child when its stamp is taken
+      if (childStamp == 0 || !node.getLock().validate(stamp)) {
+        return null;
+      }
+
+      node = child;
+      stamp = childStamp;
+    }
+
+    return new OptimisticLeaf<>(node, stamp);
+  }
+
+  /**
+   * Split the full {@code node}, whose parent is {@code parent}, or create a new root if
+   * {@code node} is the root.
+   *
+   * @param pointerIndex index of {@code node} among the children of {@code parent}
+   * @return {@code false} if a concurrent write got in the way and nothing was split
+   */
+  private boolean split(
+      ConcurrentBTreeNode<K> parent,
+      long parentStamp,
+      int pointerIndex,
+      ConcurrentBTreeNode<K> node,
+      long stamp
+  ) {
+    long parentWriteStamp = 0;
+    if (parent != null) {
+      parentWriteStamp = parent.getLock().tryConvertToWriteLock(parentStamp);
+      if (parentWriteStamp == 0) {
+        return false;
+      }
+    }
+
+    try {
+      long writeStamp = node.getLock().tryConvertToWriteLock(stamp);
+      if (writeStamp == 0) {
+        return false;
+      }
+
+      try {
+        if (parent == null && node != root) {
+          return false;
+        }
+
+        ConcurrentBTreeNode<K> newNode = node.split(fanout);
+        K keyBubbledUp = node.getIsLeaf() ? newNode.getKey(0) : node.getKey(node.getSize());
+
+        if (parent == null) {
+          ConcurrentBTreeNode<K> newRoot = ConcurrentBTreeNode.createInternalNode(fanout);
+          newRoot.getChildren()[0] = node;
+          newRoot.insertChild(0, keyBubbledUp, newNode);
+          root = newRoot;
+        } else {
+          parent.insertChild(pointerIndex, keyBubbledUp, newNode);
+        }
+
+        return true;
+      } finally {
+        node.getLock().unlockWrite(writeStamp);
+      }
+    } finally {
+      if (parent != null) {
+        parent.getLock().unlockWrite(parentWriteStamp);
+      }
+    }
+  }
+
+  /**
+   * Fix the underfull {@code node}, whose parent is {@code parent}, either by borrowing an entry
+   * from a sibling that has enough, or by merging with a sibling. A root left with
+   * {@code node} as its only child is replaced by it.
+   *
+   * @param pointerIndex index of {@code node} among the children of {@code parent}
+   * @return {@code false} if a concurrent write got in the way and nothing was changed
+   */
+  private boolean mergeOrRebalance(
+      ConcurrentBTreeNode<K> parent,
+      long parentStamp,
+      int pointerIndex,
+      ConcurrentBTreeNode<K> node,
+      long stamp
+  ) {
+    long parentWriteStamp = parent.getLock().tryConvertToWriteLock(parentStamp);
+    if (parentWriteStamp == 0) {
+      return false;
+    }
+
+    try {
+      long writeStamp = node.getLock().tryConvertToWriteLock(stamp);
+      if (writeStamp == 0) {
+        return false;
+      }
+
+      try {
+        if (parent.getSize() == 0) {
+          // only the root is left with a single child, other nodes are fixed on the way down
+          if (parent != root) {
+            return false;
+          }
+          root = node;
+          return true;
+        }
+
+        boolean isLeftSibling = pointerIndex > 0;
+        int separatorIndex = isLeftSibling ? pointerIndex - 1 : pointerIndex;
+        ConcurrentBTreeNode<K> sibling =
+            parent.getChild(isLeftSibling ? pointerIndex - 1 : pointerIndex + 1);
+        // siblings are only ever locked under the lock of their parent, which is held here
+        long siblingWriteStamp = sibling.getLock().tryWriteLock();
+        if (siblingWriteStamp == 0) {
+          return false;
+        }
+
+        try {
+          ConcurrentBTreeNode<K> left = isLeftSibling ? sibling : node;
+          ConcurrentBTreeNode<K> right = isLeftSibling ? node : sibling;
+          K separator = parent.getKey(separatorIndex);
+
+          if (left.canMergeWith(right)) {
+            left.mergeWithRight(right, separator);
+            parent.removeChild(separatorIndex);
+            if (parent.getSize() == 0 && parent == root) {
+              root = left;
+            }
+          } else if (isLeftSibling) {
+            parent.setKey(separatorIndex, node.borrowFromLeft(sibling, separator));
+          } else {
+            parent.setKey(separatorIndex, node.borrowFromRight(sibling, separator));
+          }
+
+          return true;
+        } finally {
+          sibling.getLock().unlockWrite(siblingWriteStamp);
+        }
+      } finally {
+        node.getLock().unlockWrite(writeStamp);
+      }
+    } finally {
+      parent.getLock().unlockWrite(parentWriteStamp);
+    }
+  }
+
+  /**
+   * Leaf node reached by an optimistic traversal, with the stamp to validate it against.
+   */
+  private record OptimisticLeaf<K extends Comparable<K>>(ConcurrentBTreeNode<K> node, long stamp) {
+  }
+}
@@ -0,0 +1,319 @@
+package com.hpham.database.btree;
+
+import lombok.Getter;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Node of a {@link ConcurrentBTree}.
+ * <br>
+ * Keys live in a fixed-size array. A leaf node keeps its records in a parallel array, where
+ * {@code records[i]} belongs to {@code keys[i]}. An internal node keeps its children in a
+ * parallel array, where {@code children[i]} holds the keys smaller than {@code keys[i]} and
+ * {@code children[size]} holds the rest.
+ * <br>
+ * Readers access a node without holding its {@link #lock}, and only trust what they read once
+ * the lock validates their stamp. Until then they may see a node in the middle of a write, so
+ * lookups must not fail on inconsistent content: sizes are clamped to the array length, and a
+ * {@code null} key makes the lookup return {@link #RESTART} instead of throwing.
+ */
+@Getter
+public class ConcurrentBTreeNode<K extends Comparable<K>> {
+  /**
+   * Returned by lookups that ran into an inconsistent node.
+   */
+  static final int RESTART = Integer.MIN_VALUE;
+
+  private final Boolean isLeaf;
+  private final StampedLock lock = new StampedLock();
+  private final Object[] keys;
+  private final Object[] records;
+  private final ConcurrentBTreeNode<K>[] children;
+  private int size;
+
+  @SuppressWarnings("unchecked")
+  private ConcurrentBTreeNode(Boolean isLeaf, int fanout) {
+    this.isLeaf = isLeaf;
+    if (isLeaf) {
+      keys = new Object[fanout];
+      records = new Object[fanout];
+      children = null;
+    } else {
+      keys = new Object[fanout - 1];
+      records = null;
+      children = (ConcurrentBTreeNode<K>[]) new ConcurrentBTreeNode<?>[fanout];
+    }
+  }
+
+  /**
+   * Create a leaf node.
+   */
+  static <K extends Comparable<K>> ConcurrentBTreeNode<K> createLeafNode(int fanout) {
+    return new ConcurrentBTreeNode<>(true, fanout);
+  }
+
+  /**
+   * Create an internal node.
+   */
+  static <K extends Comparable<K>> ConcurrentBTreeNode<K> createInternalNode(int fanout) {
+    return new ConcurrentBTreeNode<>(false, fanout);
+  }
+
+  @SuppressWarnings("unchecked")
+  public K getKey(int index) {
+    return (K) keys[index];
+  }
+
+  @SuppressWarnings("unchecked")
+  public Record<K, Object> getRecord(int index) {
+    return (Record<K, Object>) records[index];
+  }
+
+  public ConcurrentBTreeNode<K> getChild(int index) {
+    return children[index];
+  }
+
+  /**
+   * A full node has to be split before anything is added to it.
+   */
+  boolean isFull() {
+    return size >= keys.length;
+  }
+
+  /**
+   * Deletes merge or rebalance the underfull nodes they go through, so that deleted records do
+   * not leave nodes behind.
+   */
+  boolean isUnderfull() {
+    return size < keys.length / 2;
+  }
+
+  /**
+   * Whether the entries of this node and of its {@code right} sibling fit in one node that is
+   * not full.
+   */
+  boolean canMergeWith(ConcurrentBTreeNode<K> right) {
+    int mergedSize = isLeaf ? size + right.size : size + right.size + 1;
+    return mergedSize < keys.length;
+  }
+
+  /**
+   * Binary search for {@code key} among the keys of this node.
+   *
+   * @return index of the key if found, {@code -(insertionPoint + 1)} otherwise,
+   *     or {@link #RESTART} if the node is inconsistent
+   */
+  @SuppressWarnings("unchecked")
+  int findKeyIndex(K key) {
+    int low = 0;
+    int high = Math.min(size, keys.length) - 1;
+
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      K midKey = (K) keys[mid];
+      if (midKey == null) {
+        return RESTART;
+      }
+
+      int comparison = midKey.compareTo(key);
+      if (comparison < 0) {
+        low = mid + 1;
+      } else if (comparison > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+
+    return -(low + 1);
+  }
+
+  /**
+   * Find the index of the child of this internal node that possibly contains {@code key}.
+   *
+   * @return index of the child, or {@link #RESTART} if the node is inconsistent
+   */
+  int findChildIndex(K key) {
+    int index = findKeyIndex(key);
+    if (index == RESTART) {
+      return RESTART;
+    }
+
+    // keys equal to a separator live in the subtree to its right
+    return index >= 0 ? index + 1 : -(index + 1);
+  }
+
+  void setKey(int index, K key) {
+    keys[index] = key;
+  }
+
+  void setRecord(int index, Record<K, Object> record) {
+    records[index] = record;
+  }
+
+  /**
+   * Insert a record at {@code index} of a leaf node, shifting the larger entries.
+   */
+  void insertRecord(int index, Record<K, Object> record) {
+    System.arraycopy(keys, index, keys, index + 1, size - index);
+    System.arraycopy(records, index, records, index + 1, size - index);
+    keys[index] = record.getKey();
+    records[index] = record;
+    size++;
+  }
+
+  /**
+   * Remove the record at {@code index} of a leaf node.
+   */
+  void removeRecord(int index) {
+    System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+    System.arraycopy(records, index + 1, records, index, size - index - 1);
+    size--;
+    keys[size] = null;
+    records[size] = null;
+  }
+
+  /**
+   * Insert a key at {@code index} of an internal node, together with the child to its right.
+   */
+  void insertChild(int index, K key, ConcurrentBTreeNode<K> rightChild) {
+    System.arraycopy(keys, index, keys, index + 1, size - index);
+    System.arraycopy(children, index + 1, children, index + 2, size - index);
+    keys[index] = key;
+    children[index + 1] = rightChild;
+    size++;
+  }
+
+  /**
+   * Remove the key at {@code index} of an internal node, together with the child to its right.
+   */
+  void removeChild(int index) {
+    System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+    System.arraycopy(children, index + 2, children, index + 1, size - index - 1);
+    keys[size - 1] = null;
+    children[size] = null;
+    size--;
+  }
+
+  /**
+   * Move the last entry of the {@code left} sibling to the front of this node.
+   *
+   * @param separator parent key between the two nodes, used only for internal nodes
+   * @return new parent key between the two nodes
+   */
+  K borrowFromLeft(ConcurrentBTreeNode<K> left, K separator) {
+    if (isLeaf) {
+      insertRecord(0, left.getRecord(left.size - 1));
+      left.removeRecord(left.size - 1);
+      return getKey(0);
+    }
+
+    System.arraycopy(keys, 0, keys, 1, size);
+    System.arraycopy(children, 0, children, 1, size + 1);
+    keys[0] = separator;
+    children[0] = left.children[left.size];
+    size++;
+
+    K newSeparator = left.getKey(left.size - 1);
+    left.keys[left.size - 1] = null;
+    left.children[left.size] = null;
+    left.size--;
+    return newSeparator;
+  }
+
+  /**
+   * Move the first entry of the {@code right} sibling to the end of this node.
+   *
+   * @param separator parent key between the two nodes, used only for internal nodes
+   * @return new parent key between the two nodes
+   */
+  K borrowFromRight(ConcurrentBTreeNode<K> right, K separator) {
+    if (isLeaf) {
+      insertRecord(size, right.getRecord(0));
+      right.removeRecord(0);
+      return right.getKey(0);
+    }
+
+    keys[size] = separator;
+    children[size + 1] = right.children[0];
+    size++;
+
+    K newSeparator = right.getKey(0);
+    System.arraycopy(right.keys, 1, right.keys, 0, right.size - 1);
+    System.arraycopy(right.children, 1, right.children, 0, right.size);
+    right.keys[right.size - 1] = null;
+    right.children[right.size] = null;
+    right.size--;
+    return newSeparator;
+  }
+
+  /**
+   * Append all entries of the {@code right} sibling to this node. The caller unlinks the
+   * sibling while holding its write lock, so readers that reached it before fail validation.
+   *
+   * @param separator parent key between the two nodes, used only for internal nodes
+   */
+  void mergeWithRight(ConcurrentBTreeNode<K> right, K separator) {
+    if (isLeaf) {
+      System.arraycopy(right.keys, 0, keys, size, right.size);
+      System.arraycopy(right.records, 0, records, size, right.size);
+      size += right.size;
+      return;
+    }
+
+    keys[size] = separator;
+    System.arraycopy(right.keys, 0, keys, size + 1, right.size);
+    System.arraycopy(right.children, 0, children, size + 1, right.size + 1);
+    size += right.size + 1;
+  }
+
+  /**
+   * Move the upper half of this full node into a new right sibling.
+   * <br>
+   * The new sibling is not reachable until the caller links it into the parent, so it can be
+   * filled without holding its lock.
+   *
+   * @return the new right sibling. The key to insert into the parent is its first key for a
+   *     leaf node, and is left at {@code keys[size]} of this node for an internal node.
+   */
+  ConcurrentBTreeNode<K> split(int fanout) {
+    if (isLeaf) {
+      ConcurrentBTreeNode<K> newLeafNode = createLeafNode(fanout);
+      int leftSize = (size + 1) / 2;
+      int rightSize = size - leftSize;
+
+      System.arraycopy(keys, leftSize, newLeafNode.keys, 0, rightSize);
+      System.arraycopy(records, leftSize, newLeafNode.records, 0, rightSize);
+      newLeafNode.size = rightSize;
+      clear(leftSize);
+
+      return newLeafNode;
+    }
+
+    ConcurrentBTreeNode<K> newNode = createInternalNode(fanout);
+    int leftChildren = (size + 2) / 2;
+    int rightChildren = size + 1 - leftChildren;
+
+    System.arraycopy(keys, leftChildren, newNode.keys, 0, rightChildren - 1);
+    System.arraycopy(children, leftChildren, newNode.children, 0, rightChildren);
+    newNode.size = rightChildren - 1;
+    // keep the middle key at keys[size] for the caller to bubble up
+    for (int i = leftChildren; i <= size; i++) {
+      children[i] = null;
+    }
+    for (int i = leftChildren; i < size; i++) {
+      keys[i] = null;
+    }
+    size = leftChildren - 1;
+
+    return newNode;
+  }
+
+  private void clear(int newSize) {
+    for (int i = newSize; i < size; i++) {
+      keys[i] = null;
+      records[i] = null;
+    }
+    size = newSize;
+  }
+}
@@ -0,0 +1,154 @@
+package com.hpham.database.btree;
+
+import com.hpham.database.btree.exceptions.RecordAlreadyExistException;
+import com.hpham.database.btree.exceptions.RecordNotFoundException;
+import lombok.NonNull;
+
+/**
+ * B+-Tree specialized for primitive {@code int} keys.
+ * <br>
+ * It has the same contract as {@link BTree}, but nodes keep their keys in an {@code int[]} and
+ * their values/children in parallel arrays, so lookups do not chase pointers to boxed keys and
+ * mutations do not allocate unless a node is split.
+ */
+public class IntBTree<V> extends PrimitiveBTree<IntBTreeNode<V>, V> {
+  /**
+   * Initialize a b-tree with {@link #DEFAULT_FANOUT}.
+   */
+  public IntBTree() {
+    this(DEFAULT_FANOUT);
+  }
+
+  /**
+   * Initialize a b-tree.
+   *
+   * @param fanout maximum number of children of an internal node, and of values of a leaf node
+   */
+  public IntBTree(int fanout) {
+    super(fanout);
+  }
+
+  /**
+   * Insert a record into a b-tree.
+   *
+   * @return added value
+   * @throws RecordAlreadyExistException if there is already a record with the same key
+   */
+  public V insert(int key, @NonNull V value) {
+    growRoot(insert(getRoot(), key, value));
+    return value;
+  }
+
+  /**
+   * Update the value of a record.
+   *
+   * @return updated value
+   * @throws RecordNotFoundException if there is no record with the given key
+   */
+  public V update(int key, @NonNull V value) {
+    IntBTreeNode<V> targetLeafNode = findTargetLeafNode(key);
+    int index = targetLeafNode.findKeyIndex(key);
+
+    if (index < 0) {
+      throw new RecordNotFoundException(key);
+    }
+
+    targetLeafNode.setValue(index, value);
+    return value;
+  }
+
+  /**
+   * Delete a record, given a key.
+   *
+   * @throws RecordNotFoundException if there is no record with the given key
+   */
+  public void delete(int key) {
+    delete(getRoot(), key);
+    shrinkRoot();
+  }
+
+  /**
+   * Find the value of a record in the tree, given a {@code key}.
+   *
+   * @return the value, {@code null} if not found
+   */
+  public V findRecord(int key) {
+    IntBTreeNode<V> targetLeafNode = findTargetLeafNode(key);
+    int index = targetLeafNode.findKeyIndex(key);
+
+    if (index < 0) {
+      return null;
+    }
+
+    return targetLeafNode.getValue(index);
+  }
+
+  @Override
+  IntBTreeNode<V> createNode(boolean isLeaf) {
+    return isLeaf
+        ? IntBTreeNode.createLeafNode(getFanout())
+        : IntBTreeNode.createInternalNode(getFanout());
+  }
+
+  /**
+   * Find the leaf node that possibly contain a record with key {@code key}.
+   */
+  private IntBTreeNode<V> findTargetLeafNode(int key) {
+    IntBTreeNode<V> currentNode = getRoot();
+
+    while (!currentNode.getIsLeaf()) {
+      currentNode = currentNode.getChild(currentNode.findChildIndex(key));
+    }
+
+    return currentNode;
+  }
+
+  /**
+   * Insert into the subtree rooted at {@code node}.
+   *
+   * @return new right sibling of {@code node} if it had to be split, {@code null} otherwise
+   */
+  private IntBTreeNode<V> insert(IntBTreeNode<V> node, int key, V value) {
+    if (node.getIsLeaf()) {
+      int index = node.findKeyIndex(key);
+      if (index >= 0) {
+        throw new RecordAlreadyExistException(key);
+      }
+
+      node.insertEntry(-(index + 1), key, value);
+      return splitIfOverflowed(node);
+    }
+
+    int pointerIndex = node.findChildIndex(key);
+    IntBTreeNode<V> newChildNode = insert(node.getChild(pointerIndex), key, value);
+    if (newChildNode == null) {
+      return null;
+    }
+
+    return insertSplitChild(node, pointerIndex, newChildNode);
+  }
+
+  /**
+   * Delete from the subtree rooted at {@code node}.
+   *
+   * @return {@code true} if {@code node} underflows and needs to be merged or rebalanced
+   */
+  private boolean delete(IntBTreeNode<V> node, int key) {
+    if (node.getIsLeaf()) {
+      int index = node.findKeyIndex(key);
+      if (index < 0) {
+        throw new RecordNotFoundException(key);
+      }
+
+      node.removeEntry(index);
+      return isUnderflowed(node);
+    }
+
+    int pointerIndex = node.findChildIndex(key);
+    if (delete(node.getChild(pointerIndex), key)) {
+      mergeOrRebalance(node, pointerIndex);
+    }
+
+    return isUnderflowed(node);
+  }
+}
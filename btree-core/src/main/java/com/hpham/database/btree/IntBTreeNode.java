@@ -0,0 +1,70 @@
+package com.hpham.database.btree;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Node of a {@link IntBTree}.
+ * <br>
+ * Keys live in an {@code int[]}, next to the values or children kept by
+ * {@link PrimitiveBTreeNode}.
+ */
+@Getter
+public class IntBTreeNode<V> extends PrimitiveBTreeNode<IntBTreeNode<V>, V> {
+  private final int[] keys;
+
+  @SuppressWarnings("unchecked")
+  private IntBTreeNode(Boolean isLeaf, int fanout) {
+    super(isLeaf, fanout, isLeaf ? null : (IntBTreeNode<V>[]) new IntBTreeNode<?>[fanout + 1]);
+    keys = new int[isLeaf ? fanout + 1 : fanout];
+  }
+
+  /**
+   * Create a leaf node.
+   */
+  static <V> IntBTreeNode<V> createLeafNode(int fanout) {
+    return new IntBTreeNode<>(true, fanout);
+  }
+
+  /**
+   * Create an internal node.
+   */
+  static <V> IntBTreeNode<V> createInternalNode(int fanout) {
+    return new IntBTreeNode<>(false, fanout);
+  }
+
+  /**
+   * Binary search for {@code key} among the keys of this node.
+   *
+   * @return index of the key if found, {@code -(insertionPoint + 1)} otherwise
+   */
+  int findKeyIndex(int key) {
+    return Arrays.binarySearch(keys, 0, getSize(), key);
+  }
+
+  /**
+   * Find the index of the child of this internal node that possibly contains {@code key}.
+   */
+  int findChildIndex(int key) {
+    return SearchUtil.findFirstLargerIndex(key, keys, getSize());
+  }
+
+  /**
+   * Insert a key and its value at {@code index} of a leaf node, shifting the larger entries.
+   */
+  void insertEntry(int index, int key, V value) {
+    openEntry(index, value);
+    keys[index] = key;
+  }
+
+  @Override
+  Object keyArray() {
+    return keys;
+  }
+
+  @Override
+  IntBTreeNode<V> createSibling(int fanout) {
+    return new IntBTreeNode<>(getIsLeaf(), fanout);
+  }
+}
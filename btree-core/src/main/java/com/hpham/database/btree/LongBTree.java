@@ -0,0 +1,154 @@
+package com.hpham.database.btree;
+
+import com.hpham.database.btree.exceptions.RecordAlreadyExistException;
+import com.hpham.database.btree.exceptions.RecordNotFoundException;
+import lombok.NonNull;
+
+/**
+ * B+-Tree specialized for primitive {@code long} keys.
+ * <br>
+ * It has the same contract as {@link BTree}, but nodes keep their keys in a {@code long[]} and
+ * their values/children in parallel arrays, so lookups do not chase pointers to boxed keys and
+ * mutations do not allocate unless a node is split.
+ */
+public class LongBTree<V> extends PrimitiveBTree<LongBTreeNode<V>, V> {
+  /**
+   * Initialize a b-tree with {@link #DEFAULT_FANOUT}.
+   */
+  public LongBTree() {
+    this(DEFAULT_FANOUT);
+  }
+
+  /**
+   * Initialize a b-tree.
+   *
+   * @param fanout maximum number of children of an internal node, and of values of a leaf node
+   */
+  public LongBTree(int fanout) {
+    super(fanout);
+  }
+
+  /**
+   * Insert a record into a b-tree.
+   *
+   * @return added value
+   * @throws RecordAlreadyExistException if there is already a record with the same key
+   */
+  public V insert(long key, @NonNull V value) {
+    growRoot(insert(getRoot(), key, value));
+    return value;
+  }
+
+  /**
+   * Update the value of a record.
+   *
+   * @return updated value
+   * @throws RecordNotFoundException if there is no record with the given key
+   */
+  public V update(long key, @NonNull V value) {
+    LongBTreeNode<V> targetLeafNode = findTargetLeafNode(key);
+    int index = targetLeafNode.findKeyIndex(key);
+
+    if (index < 0) {
+      throw new RecordNotFoundException(key);
+    }
+
+    targetLeafNode.setValue(index, value);
+    return value;
+  }
+
+  /**
+   * Delete a record, given a key.
+   *
+   * @throws RecordNotFoundException if there is no record with the given key
+   */
+  public void delete(long key) {
+    delete(getRoot(), key);
+    shrinkRoot();
+  }
+
+  /**
+   * Find the value of a record in the tree, given a {@code key}.
+   *
+   * @return the value, {@code null} if not found
+   */
+  public V findRecord(long key) {
+    LongBTreeNode<V> targetLeafNode = findTargetLeafNode(key);
+    int index = targetLeafNode.findKeyIndex(key);
+
+    if (index < 0) {
+      return null;
+    }
+
+    return targetLeafNode.getValue(index);
+  }
+
+  @Override
+  LongBTreeNode<V> createNode(boolean isLeaf) {
+    return isLeaf
+        ? LongBTreeNode.createLeafNode(getFanout())
+        : LongBTreeNode.createInternalNode(getFanout());
+  }
+
+  /**
+   * Find the leaf node that possibly contain a record with key {@code key}.
+   */
+  private LongBTreeNode<V> findTargetLeafNode(long key) {
+    LongBTreeNode<V> currentNode = getRoot();
+
+    while (!currentNode.getIsLeaf()) {
+      currentNode = currentNode.getChild(currentNode.findChildIndex(key));
+    }
+
+    return currentNode;
+  }
+
+  /**
+   * Insert into the subtree rooted at {@code node}.
+   *
+   * @return new right sibling of {@code node} if it had to be split, {@code null} otherwise
+   */
+  private LongBTreeNode<V> insert(LongBTreeNode<V> node, long key, V value) {
+    if (node.getIsLeaf()) {
+      int index = node.findKeyIndex(key);
+      if (index >= 0) {
+        throw new RecordAlreadyExistException(key);
+      }
+
+      node.insertEntry(-(index + 1), key, value);
+      return splitIfOverflowed(node);
+    }
+
+    int pointerIndex = node.findChildIndex(key);
+    LongBTreeNode<V> newChildNode = insert(node.getChild(pointerIndex), key, value);
+    if (newChildNode == null) {
+      return null;
+    }
+
+    return insertSplitChild(node, pointerIndex, newChildNode);
+  }
+
+  /**
+   * Delete from the subtree rooted at {@code node}.
+   *
+   * @return {@code true} if {@code node} underflows and needs to be merged or rebalanced
+   */
+  private boolean delete(LongBTreeNode<V> node, long key) {
+    if (node.getIsLeaf()) {
+      int index = node.findKeyIndex(key);
+      if (index < 0) {
+        throw new RecordNotFoundException(key);
+      }
+
+      node.removeEntry(index);
+      return isUnderflowed(node);
+    }
+
+    int pointerIndex = node.findChildIndex(key);
+    if (delete(node.getChild(pointerIndex), key)) {
+      mergeOrRebalance(node, pointerIndex);
+    }
+
+    return isUnderflowed(node);
+  }
+}
@@ -0,0 +1,70 @@
+package com.hpham.database.btree;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Node of a {@link LongBTree}.
+ * <br>
+ * Keys live in a {@code long[]}, next to the values or children kept by
+ * {@link PrimitiveBTreeNode}.
+ */
+@Getter
+public class LongBTreeNode<V> extends PrimitiveBTreeNode<LongBTreeNode<V>, V> {
+  private final long[] keys;
+
+  @SuppressWarnings("unchecked")
+  private LongBTreeNode(Boolean isLeaf, int fanout) {
+    super(isLeaf, fanout, isLeaf ? null : (LongBTreeNode<V>[]) new LongBTreeNode<?>[fanout + 1]);
+    keys = new long[isLeaf ? fanout + 1 : fanout];
+  }
+
+  /**
+   * Create a leaf node.
+   */
+  static <V> LongBTreeNode<V> createLeafNode(int fanout) {
+    return new LongBTreeNode<>(true, fanout);
+  }
+
+  /**
+   * Create an internal node.
+   */
+  static <V> LongBTreeNode<V> createInternalNode(int fanout) {
+    return new LongBTreeNode<>(false, fanout);
+  }
+
+  /**
+   * Binary search for {@code key} among the keys of this node.
+   *
+   * @return index of the key if found, {@code -(insertionPoint + 1)} otherwise
+   */
+  int findKeyIndex(long key) {
+    return Arrays.binarySearch(keys, 0, getSize(), key);
+  }
+
+  /**
+   * Find the index of the child of this internal node that possibly contains {@code key}.
+   */
+  int findChildIndex(long key) {
+    return SearchUtil.findFirstLargerIndex(key, keys, getSize());
+  }
+
+  /**
+   * Insert a key and its value at {@code index} of a leaf node, shifting the larger entries.
+   */
+  void insertEntry(int index, long key, V value) {
+    openEntry(index, value);
+    keys[index] = key;
+  }
+
+  @Override
+  Object keyArray() {
+    return keys;
+  }
+
+  @Override
+  LongBTreeNode<V> createSibling(int fanout) {
+    return new LongBTreeNode<>(getIsLeaf(), fanout);
+  }
+}
@@ -0,0 +1,295 @@
+package com.hpham.database.btree;
+
+import com.hpham.database.btree.exceptions.RecordAlreadyExistException;
+import com.hpham.database.btree.exceptions.RecordNotFoundException;
+import lombok.Getter;
+
+/**
+ * B+-Tree of primitive {@code long} keys to {@code long} values, whose nodes live off-heap.
+ * <br>
+ * It has the same contract as {@link LongBTree}, but nodes are stored in an
+ * {@link OffHeapNodeStore} instead of as Java objects, so a tree of any size costs the garbage
+ * collector a handful of objects. Values are plain {@code long}s, e.g. record ids or offsets in
+ * a record file, since arbitrary objects have no binary layout.
+ * <br>
+ * Off-heap memory is returned to the operating system once the tree is garbage collected.
+ */
+public class OffHeapLongBTree {
+  @Getter
+  private final int fanout;
+  @Getter
+  private final OffHeapNodeStore nodeStore;
+  @Getter
+  private int root;
+
+  /**
+   * Key bubbled up by the last split, so that splitting does not need to allocate a result.
+   */
+  private long keyBubbledUp;
+
+  /**
+   * Initialize a b-tree with {@link LongBTree#DEFAULT_FANOUT}.
+   */
+  public OffHeapLongBTree() {
+    this(LongBTree.DEFAULT_FANOUT);
+  }
+
+  /**
+   * Initialize a b-tree.
+   *
+   * @param fanout maximum number of children of an internal node, and of values of a leaf node
+   */
+  public OffHeapLongBTree(int fanout) {
+    if (fanout < LongBTree.MIN_FANOUT) {
+      throw new IllegalArgumentException(
+          String.format("Fanout must be at least %d, got %d", LongBTree.MIN_FANOUT, fanout)
+      );
+    }
+    this.fanout = fanout;
+    this.nodeStore = new OffHeapNodeStore(fanout);
+    this.root = nodeStore.allocate(true);
+  }
+
+  /**
+   * Insert a record into a b-tree.
+   *
+   * @return added value
+   * @throws RecordAlreadyExistException if there is already a record with the same key
+   */
+  public long insert(long key, long value) {
+    int newNode = insert(root, key, value);
+
+    if (newNode != -1) {
+      int newRoot = nodeStore.allocate(false);
+      nodeStore.setChild(newRoot, 0, root);
+      nodeStore.insertChild(newRoot, 0, keyBubbledUp, newNode);
+      root = newRoot;
+    }
+
+    return value;
+  }
+
+  /**
+   * Update the value of a record.
+   *
+   * @return updated value
+   * @throws RecordNotFoundException if there is no record with the given key
+   */
+  public long update(long key, long value) {
+    int targetLeafNode = findTargetLeafNode(key);
+    int index = searchLeafNode(targetLeafNode, key);
+
+    if (index < 0) {
+      throw new RecordNotFoundException(key);
+    }
+
+    nodeStore.setValue(targetLeafNode, index, value);
+    return value;
+  }
+
+  /**
+   * Delete a record, given a key.
+   *
+   * @throws RecordNotFoundException if there is no record with the given key
+   */
+  public void delete(long key) {
+    delete(root, key);
+
+    if (!nodeStore.isLeaf(root) && nodeStore.getSize(root) == 0) {
+      int oldRoot = root;
+      root = nodeStore.getChild(oldRoot, 0);
+      nodeStore.free(oldRoot);
+    }
+  }
+
+  /**
+   * Find the value of a record in the tree, given a {@code key}.
+   *
+   * @return the value, {@code null} if not found
+   */
+  public Long findRecord(long key) {
+    int targetLeafNode = findTargetLeafNode(key);
+    int index = searchLeafNode(targetLeafNode, key);
+
+    if (index < 0) {
+      return null;
+    }
+
+    return nodeStore.getValue(targetLeafNode, index);
+  }
+
+  /**
+   * Find the leaf node that possibly contain a record with key {@code key}.
+   */
+  private int findTargetLeafNode(long key) {
+    int currentNode = root;
+
+    while (!nodeStore.isLeaf(currentNode)) {
+      currentNode = nodeStore.getChild(currentNode, findFirstLargerIndex(currentNode, key));
+    }
+
+    return currentNode;
+  }
+
+  /**
+   * Insert into the subtree rooted at {@code node}.
+   *
+   * @return new right sibling of {@code node} if it had to be split, {@code -1} otherwise.
+   *     The key to bubble up is left in {@link #keyBubbledUp}.
+   */
+  private int insert(int node, long key, long value) {
+    if (nodeStore.isLeaf(node)) {
+      int index = searchLeafNode(node, key);
+      if (index >= 0) {
+        throw new RecordAlreadyExistException(key);
+      }
+
+      nodeStore.insertEntry(node, -(index + 1), key, value);
+      if (nodeStore.getSize(node) <= fanout) {
+        return -1;
+      }
+
+      int newLeafNode = nodeStore.splitLeafNode(node);
+      keyBubbledUp = nodeStore.getKey(newLeafNode, 0);
+      return newLeafNode;
+    }
+
+    int pointerIndex = findFirstLargerIndex(node, key);
+    int newChildNode = insert(nodeStore.getChild(node, pointerIndex), key, value);
+    if (newChildNode == -1) {
+      return -1;
+    }
+
+    nodeStore.insertChild(node, pointerIndex, keyBubbledUp, newChildNode);
+    if (nodeStore.getSize(node) < fanout) {
+      return -1;
+    }
+
+    int newNode = nodeStore.splitInternalNode(node);
+    keyBubbledUp = nodeStore.getKey(node, nodeStore.getSize(node));
+    return newNode;
+  }
+
+  /**
+   * Delete from the subtree rooted at {@code node}.
+   *
+   * @return {@code true} if {@code node} underflows and needs to be merged or rebalanced
+   */
+  private boolean delete(int node, long key) {
+    if (nodeStore.isLeaf(node)) {
+      int index = searchLeafNode(node, key);
+      if (index < 0) {
+        throw new RecordNotFoundException(key);
+      }
+
+      nodeStore.removeEntry(node, index);
+      return nodeStore.getSize(node) < minOccupancy();
+    }
+
+    int pointerIndex = findFirstLargerIndex(node, key);
+    if (delete(nodeStore.getChild(node, pointerIndex), key)) {
+      mergeOrRebalance(node, pointerIndex);
+    }
+
+    // an internal node with n keys has n + 1 children
+    return nodeStore.getSize(node) + 1 < minOccupancy();
+  }
+
+  /**
+   * Fix the underflowed child at {@code pointerIndex} of {@code parent}, either by borrowing an
+   * entry from a sibling that has more than enough, or by merging with a sibling.
+   */
+  private void mergeOrRebalance(int parent, int pointerIndex) {
+    int underflowNode = nodeStore.getChild(parent, pointerIndex);
+    int leftSibling = pointerIndex > 0
+        ? nodeStore.getChild(parent, pointerIndex - 1) : -1;
+    int rightSibling = pointerIndex < nodeStore.getSize(parent)
+        ? nodeStore.getChild(parent, pointerIndex + 1) : -1;
+
+    if (leftSibling != -1 && occupancy(leftSibling) > minOccupancy()) {
+      nodeStore.setKey(parent, pointerIndex - 1, nodeStore.borrowFromLeft(
+          underflowNode,
+          leftSibling,
+          nodeStore.getKey(parent, pointerIndex - 1)
+      ));
+    } else if (rightSibling != -1 && occupancy(rightSibling) > minOccupancy()) {
+      nodeStore.setKey(parent, pointerIndex, nodeStore.borrowFromRight(
+          underflowNode,
+          rightSibling,
+          nodeStore.getKey(parent, pointerIndex)
+      ));
+    } else if (leftSibling != -1) {
+      nodeStore.mergeWithRight(
+          leftSibling,
+          underflowNode,
+          nodeStore.getKey(parent, pointerIndex - 1)
+      );
+      nodeStore.removeChild(parent, pointerIndex - 1);
+    } else if (rightSibling != -1) {
+      nodeStore.mergeWithRight(
+          underflowNode,
+          rightSibling,
+          nodeStore.getKey(parent, pointerIndex)
+      );
+      nodeStore.removeChild(parent, pointerIndex);
+    }
+  }
+
+  /**
+   * Binary search for {@code key} among the keys of a leaf node.
+   *
+   * @return index of the key if found, {@code -(insertion point) - 1} otherwise, as
+   *     {@link java.util.Arrays#binarySearch(long[], long)}
+   */
+  private int searchLeafNode(int node, long key) {
+    int start = 0;
+    int end = nodeStore.getSize(node) - 1;
+
+    while (start <= end) {
+      int mid = (start + end) >>> 1;
+      long midKey = nodeStore.getKey(node, mid);
+
+      if (midKey < key) {
+        start = mid + 1;
+      } else if (midKey > key) {
+        end = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+
+    return -(start + 1);
+  }
+
+  /**
+   * Index of the first key of an internal node that is larger than {@code key}, or its size if
+   * there is none, as {@link SearchUtil#findFirstLargerIndex(long, long[], int)}.
+   */
+  private int findFirstLargerIndex(int node, long key) {
+    int start = 0;
+    int end = nodeStore.getSize(node);
+
+    while (start < end) {
+      int mid = (start + end) >>> 1;
+
+      if (nodeStore.getKey(node, mid) <= key) {
+        start = mid + 1;
+      } else {
+        end = mid;
+      }
+    }
+
+    return start;
+  }
+
+  /**
+   * Number of values of a leaf node, or number of children of an internal node.
+   */
+  private int occupancy(int node) {
+    return nodeStore.isLeaf(node) ? nodeStore.getSize(node) : nodeStore.getSize(node) + 1;
+  }
+
+  private int minOccupancy() {
+    return (fanout + 1) / 2;
+  }
+}
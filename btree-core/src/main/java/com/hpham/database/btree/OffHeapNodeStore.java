@@ -0,0 +1,343 @@
+package com.hpham.database.btree;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Nodes of an {@link OffHeapLongBTree}, kept outside the Java heap.
+ * <br>
+ * Nodes are fixed-size blocks in direct {@link ByteBuffer} slabs and are addressed by an
+ * {@code int} id, so the tree holds no Java object per node and the garbage collector only ever
+ * sees the slabs. A node with room for {@code capacity = fanout + 1} entries is laid out as:
+ * <pre>
+ * offset 0                      int               1 for a leaf node, 0 for an internal node
+ * offset 4                      int               size, i.e. number of keys
+ * offset 8                      long[capacity]    keys
+ * offset 8 + 8 * capacity       long[capacity]    values of a leaf node, or child ids of an
+ *                                                 internal node
+ * </pre>
+ * As in {@link LongBTreeNode}, {@code child[i]} holds the keys smaller than {@code key[i]},
+ * {@code child[size]} holds the rest, and every node has room for one extra entry so that it
+ * can overflow before it is split.
+ * <br>
+ * Freed nodes are chained through their size field and reused before the store grows.
+ */
+public class OffHeapNodeStore {
+  /**
+   * Size of a slab, unless a single node is larger.
+   */
+  public static final int SLAB_SIZE_BYTES = 1 << 20;
+  private static final int IS_LEAF_OFFSET = 0;
+  private static final int SIZE_OFFSET = 4;
+  private static final int KEYS_OFFSET = 8;
+  private static final int NO_NODE = -1;
+
+  private final int valuesOffset;
+  private final int nodeSizeBytes;
+  private final int nodesPerSlabShift;
+  private final int nodeIndexMask;
+  private final List<ByteBuffer> slabs = new ArrayList<>();
+
+  /**
+   * Number of node ids handed out so far, including freed ones.
+   */
+  private int allocatedNodes;
+  private int freeListHead = NO_NODE;
+
+  /**
+   * Number of nodes currently in use.
+   */
+  @Getter
+  private int nodeCount;
+
+  OffHeapNodeStore(int fanout) {
+    int capacity = fanout + 1;
+    valuesOffset = KEYS_OFFSET + Long.BYTES * capacity;
+    nodeSizeBytes = valuesOffset + Long.BYTES * capacity;
+    // a power of two nodes per slab turns a node id into a slab and an offset without dividing
+    int nodesPerSlab = Integer.highestOneBit(Math.max(1, SLAB_SIZE_BYTES / nodeSizeBytes));
+    nodesPerSlabShift = Integer.numberOfTrailingZeros(nodesPerSlab);
+    nodeIndexMask = nodesPerSlab - 1;
+  }
+
+  /**
+   * Off-heap memory reserved by the store, in bytes.
+   */
+  public long getReservedBytes() {
+    return (long) slabs.size() * (nodeSizeBytes << nodesPerSlabShift);
+  }
+
+  public boolean isLeaf(int node) {
+    return slab(node).getInt(offset(node) + IS_LEAF_OFFSET) == 1;
+  }
+
+  public int getSize(int node) {
+    return slab(node).getInt(offset(node) + SIZE_OFFSET);
+  }
+
+  public long getKey(int node, int index) {
+    return slab(node).getLong(offset(node) + KEYS_OFFSET + Long.BYTES * index);
+  }
+
+  public long getValue(int node, int index) {
+    return slab(node).getLong(offset(node) + valuesOffset + Long.BYTES * index);
+  }
+
+  public int getChild(int node, int index) {
+    return (int) getValue(node, index);
+  }
+
+  void setSize(int node, int size) {
+    slab(node).putInt(offset(node) + SIZE_OFFSET, size);
+  }
+
+  void setKey(int node, int index, long key) {
+    slab(node).putLong(offset(node) + KEYS_OFFSET + Long.BYTES * index, key);
+  }
+
+  void setValue(int node, int index, long value) {
+    slab(node).putLong(offset(node) + valuesOffset + Long.BYTES * index, value);
+  }
+
+  void setChild(int node, int index, int child) {
+    setValue(node, index, child);
+  }
+
+  /**
+   * Create an empty node, reusing a freed one if there is any.
+   *
+   * @return id of the node
+   */
+  int allocate(boolean isLeaf) {
+    int node;
+    if (freeListHead != NO_NODE) {
+      node = freeListHead;
+      freeListHead = getSize(node);
+    } else {
+      node = allocatedNodes++;
+      if ((node >>> nodesPerSlabShift) == slabs.size()) {
+        slabs.add(ByteBuffer.allocateDirect(nodeSizeBytes << nodesPerSlabShift)
+            .order(ByteOrder.nativeOrder()));
+      }
+    }
+
+    slab(node).putInt(offset(node) + IS_LEAF_OFFSET, isLeaf ? 1 : 0);
+    setSize(node, 0);
+    nodeCount++;
+    return node;
+  }
+
+  /**
+   * Give a node that is no longer referenced back to the store.
+   */
+  void free(int node) {
+    setSize(node, freeListHead);
+    freeListHead = node;
+    nodeCount--;
+  }
+
+  /**
+   * Insert a key and its value at {@code index} of a leaf node, shifting the larger entries.
+   */
+  void insertEntry(int node, int index, long key, long value) {
+    int size = getSize(node);
+    moveKeys(node, index, node, index + 1, size - index);
+    moveValues(node, index, node, index + 1, size - index);
+    setKey(node, index, key);
+    setValue(node, index, value);
+    setSize(node, size + 1);
+  }
+
+  /**
+   * Remove the key and value at {@code index} of a leaf node.
+   */
+  void removeEntry(int node, int index) {
+    int size = getSize(node);
+    moveKeys(node, index + 1, node, index, size - index - 1);
+    moveValues(node, index + 1, node, index, size - index - 1);
+    setSize(node, size - 1);
+  }
+
+  /**
+   * Insert a key at {@code index} of an internal node, together with the child to its right.
+   */
+  void insertChild(int node, int index, long key, int rightChild) {
+    int size = getSize(node);
+    moveKeys(node, index, node, index + 1, size - index);
+    moveValues(node, index + 1, node, index + 2, size - index);
+    setKey(node, index, key);
+    setChild(node, index + 1, rightChild);
+    setSize(node, size + 1);
+  }
+
+  /**
+   * Remove the key at {@code index} of an internal node, together with the child to its right.
+   */
+  void removeChild(int node, int index) {
+    int size = getSize(node);
+    moveKeys(node, index + 1, node, index, size - index - 1);
+    moveValues(node, index + 2, node, index + 1, size - index - 1);
+    setSize(node, size - 1);
+  }
+
+  /**
+   * Move the upper half of an overflowed leaf node into a new right sibling.
+   *
+   * @return the new right sibling
+   */
+  int splitLeafNode(int node) {
+    int newLeafNode = allocate(true);
+    int size = getSize(node);
+    int leftSize = (size + 1) / 2;
+    int rightSize = size - leftSize;
+
+    moveKeys(node, leftSize, newLeafNode, 0, rightSize);
+    moveValues(node, leftSize, newLeafNode, 0, rightSize);
+    setSize(newLeafNode, rightSize);
+    setSize(node, leftSize);
+
+    return newLeafNode;
+  }
+
+  /**
+   * Move the upper half of an overflowed internal node into a new right sibling.
+   * The middle key is left at {@code key[size]} of the node for the caller to bubble up.
+   *
+   * @return the new right sibling
+   */
+  int splitInternalNode(int node) {
+    int newNode = allocate(false);
+    int size = getSize(node);
+    int leftChildren = (size + 2) / 2;
+    int rightChildren = size + 1 - leftChildren;
+
+    moveKeys(node, leftChildren, newNode, 0, rightChildren - 1);
+    moveValues(node, leftChildren, newNode, 0, rightChildren);
+    setSize(newNode, rightChildren - 1);
+    setSize(node, leftChildren - 1);
+
+    return newNode;
+  }
+
+  /**
+   * Move the last entry of the {@code left} sibling to the front of {@code node}.
+   *
+   * @param separator parent key between the two nodes, used only for internal nodes
+   * @return new parent key between the two nodes
+   */
+  long borrowFromLeft(int node, int left, long separator) {
+    int leftSize = getSize(left);
+    if (isLeaf(node)) {
+      insertEntry(node, 0, getKey(left, leftSize - 1), getValue(left, leftSize - 1));
+      removeEntry(left, leftSize - 1);
+      return getKey(node, 0);
+    }
+
+    int size = getSize(node);
+    moveKeys(node, 0, node, 1, size);
+    moveValues(node, 0, node, 1, size + 1);
+    setKey(node, 0, separator);
+    setChild(node, 0, getChild(left, leftSize));
+    setSize(node, size + 1);
+
+    long newSeparator = getKey(left, leftSize - 1);
+    setSize(left, leftSize - 1);
+    return newSeparator;
+  }
+
+  /**
+   * Move the first entry of the {@code right} sibling to the end of {@code node}.
+   *
+   * @param separator parent key between the two nodes, used only for internal nodes
+   * @return new parent key between the two nodes
+   */
+  long borrowFromRight(int node, int right, long separator) {
+    int size = getSize(node);
+    if (isLeaf(node)) {
+      insertEntry(node, size, getKey(right, 0), getValue(right, 0));
+      removeEntry(right, 0);
+      return getKey(right, 0);
+    }
+
+    int rightSize = getSize(right);
+    setKey(node, size, separator);
+    setChild(node, size + 1, getChild(right, 0));
+    setSize(node, size + 1);
+
+    long newSeparator = getKey(right, 0);
+    moveKeys(right, 1, right, 0, rightSize - 1);
+    moveValues(right, 1, right, 0, rightSize);
+    setSize(right, rightSize - 1);
+    return newSeparator;
+  }
+
+  /**
+   * Append all entries of the {@code right} sibling to {@code node}, then free {@code right}.
+   *
+   * @param separator parent key between the two nodes, used only for internal nodes
+   */
+  void mergeWithRight(int node, int right, long separator) {
+    int size = getSize(node);
+    int rightSize = getSize(right);
+    if (isLeaf(node)) {
+      moveKeys(right, 0, node, size, rightSize);
+      moveValues(right, 0, node, size, rightSize);
+      setSize(node, size + rightSize);
+    } else {
+      setKey(node, size, separator);
+      moveKeys(right, 0, node, size + 1, rightSize);
+      moveValues(right, 0, node, size + 1, rightSize + 1);
+      setSize(node, size + rightSize + 1);
+    }
+
+    free(right);
+  }
+
+  private void moveKeys(int fromNode, int fromIndex, int toNode, int toIndex, int length) {
+    moveLongs(fromNode, KEYS_OFFSET, fromIndex, toNode, toIndex, length);
+  }
+
+  private void moveValues(int fromNode, int fromIndex, int toNode, int toIndex, int length) {
+    moveLongs(fromNode, valuesOffset, fromIndex, toNode, toIndex, length);
+  }
+
+  /**
+   * Copy {@code length} longs of the same region of two nodes. Overlapping ranges of the same
+   * node are copied in the direction that does not overwrite the source before it is read.
+   */
+  private void moveLongs(
+      int fromNode,
+      int regionOffset,
+      int fromIndex,
+      int toNode,
+      int toIndex,
+      int length
+  ) {
+    ByteBuffer fromSlab = slab(fromNode);
+    ByteBuffer toSlab = slab(toNode);
+    int from = offset(fromNode) + regionOffset + Long.BYTES * fromIndex;
+    int to = offset(toNode) + regionOffset + Long.BYTES * toIndex;
+
+    if (fromSlab == toSlab && to > from) {
+      for (int i = length - 1; i >= 0; i--) {
+        toSlab.putLong(to + Long.BYTES * i, fromSlab.getLong(from + Long.BYTES * i));
+      }
+    } else {
+      for (int i = 0; i < length; i++) {
+        toSlab.putLong(to + Long.BYTES * i, fromSlab.getLong(from + Long.BYTES * i));
+      }
+    }
+  }
+
+  private ByteBuffer slab(int node) {
+    return slabs.get(node >>> nodesPerSlabShift);
+  }
+
+  private int offset(int node) {
+    return (node & nodeIndexMask) * nodeSizeBytes;
+  }
+}
@@ -0,0 +1,135 @@
+package com.hpham.database.btree;
+
+import lombok.Getter;
+
+/**
+ * B+-Tree keyed by a primitive type, such as a {@link LongBTree} or an {@link IntBTree}.
+ * <br>
+ * Subclasses only search their nodes for keys of their own type. Splitting, merging and
+ * rebalancing nodes, and growing or shrinking the tree at its root, does not depend on the type
+ * of the keys, since a node copies its keys with {@link System#arraycopy}.
+ */
+public abstract class PrimitiveBTree<N extends PrimitiveBTreeNode<N, V>, V> {
+  public static final int DEFAULT_FANOUT = 64;
+  public static final int MIN_FANOUT = 3;
+  @Getter
+  private final int fanout;
+  @Getter
+  private N root;
+
+  /**
+   * Initialize a b-tree.
+   *
+   * @param fanout maximum number of children of an internal node, and of values of a leaf node
+   */
+  PrimitiveBTree(int fanout) {
+    if (fanout < MIN_FANOUT) {
+      throw new IllegalArgumentException(
+          String.format("Fanout must be at least %d, got %d", MIN_FANOUT, fanout)
+      );
+    }
+    this.fanout = fanout;
+    this.root = createNode(true);
+  }
+
+  /**
+   * Create an empty leaf or internal node.
+   */
+  abstract N createNode(boolean isLeaf);
+
+  /**
+   * Put a new root above the root and {@code newNode}, the new right sibling it was split into.
+   */
+  void growRoot(N newNode) {
+    if (newNode == null) {
+      return;
+    }
+
+    N newRoot = createNode(false);
+    newRoot.setChild(0, root);
+    root = newRoot;
+    insertSplitChild(newRoot, 0, newNode);
+  }
+
+  /**
+   * Make the only child of the root the new root, once deletes left the root without keys.
+   */
+  void shrinkRoot() {
+    if (!root.getIsLeaf() && root.getSize() == 0) {
+      root = root.getChild(0);
+    }
+  }
+
+  /**
+   * Split {@code node} if the last insert overflowed it.
+   *
+   * @return new right sibling of {@code node}, {@code null} if it was not split
+   */
+  N splitIfOverflowed(N node) {
+    if (node.getIsLeaf()) {
+      return node.getSize() <= fanout ? null : node.splitLeafNode(fanout);
+    }
+
+    return node.getSize() < fanout ? null : node.splitInternalNode(fanout);
+  }
+
+  /**
+   * Link {@code newChild}, the new right sibling that the child at {@code pointerIndex} of
+   * {@code parent} was split into, then split {@code parent} in turn if it overflows.
+   *
+   * @return new right sibling of {@code parent}, {@code null} if it was not split
+   */
+  N insertSplitChild(N parent, int pointerIndex, N newChild) {
+    N child = parent.getChild(pointerIndex);
+    // a leaf node split copies its first key up, an internal node split leaves its middle key
+    if (child.getIsLeaf()) {
+      parent.insertChild(pointerIndex, newChild, newChild, 0);
+    } else {
+      parent.insertChild(pointerIndex, newChild, child, child.getSize());
+    }
+
+    return splitIfOverflowed(parent);
+  }
+
+  /**
+   * Whether {@code node} lost too many entries and needs to be merged or rebalanced.
+   */
+  boolean isUnderflowed(N node) {
+    return occupancy(node) < minOccupancy();
+  }
+
+  /**
+   * Fix the underflowed child at {@code pointerIndex} of {@code parent}, either by borrowing an
+   * entry from a sibling that has more than enough, or by merging with a sibling.
+   */
+  void mergeOrRebalance(N parent, int pointerIndex) {
+    N underflowNode = parent.getChild(pointerIndex);
+    N leftSibling = pointerIndex > 0
+        ? parent.getChild(pointerIndex - 1) : null;
+    N rightSibling = pointerIndex < parent.getSize()
+        ? parent.getChild(pointerIndex + 1) : null;
+
+    if (leftSibling != null && occupancy(leftSibling) > minOccupancy()) {
+      underflowNode.borrowFromLeft(leftSibling, parent, pointerIndex - 1);
+    } else if (rightSibling != null && occupancy(rightSibling) > minOccupancy()) {
+      underflowNode.borrowFromRight(rightSibling, parent, pointerIndex);
+    } else if (leftSibling != null) {
+      leftSibling.mergeWithRight(underflowNode, parent, pointerIndex - 1);
+      parent.removeChild(pointerIndex - 1);
+    } else if (rightSibling != null) {
+      underflowNode.mergeWithRight(rightSibling, parent, pointerIndex);
+      parent.removeChild(pointerIndex);
+    }
+  }
+
+  /**
+   * Number of values of a leaf node, or number of children of an internal node.
+   */
+  private int occupancy(N node) {
+    return node.getIsLeaf() ? node.getSize() : node.getSize() + 1;
+  }
+
+  private int minOccupancy() {
+    return (fanout + 1) / 2;
+  }
+}
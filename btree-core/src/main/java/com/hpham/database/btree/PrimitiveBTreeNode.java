@@ -0,0 +1,230 @@
+package com.hpham.database.btree;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Node of a {@link PrimitiveBTree}, whose keys live in a primitive array of the subclass.
+ * <br>
+ * A leaf node keeps its values in a parallel {@code Object[]}, where {@code values[i]} belongs
+ * to {@code keys[i]}. An internal node keeps its children in a parallel array, where
+ * {@code children[i]} holds the keys smaller than {@code keys[i]} and {@code children[size]}
+ * holds the rest.
+ * <br>
+ * Keys are only ever moved with {@link System#arraycopy}, which copies any primitive array, so
+ * shifting, splitting and merging nodes does not depend on the type of the keys. Arrays have
+ * room for one extra entry, so that a node can overflow before it is split.
+ */
+@Getter
+public abstract class PrimitiveBTreeNode<N extends PrimitiveBTreeNode<N, V>, V> {
+  private final Boolean isLeaf;
+  private final Object[] values;
+  private final N[] children;
+  private int size;
+
+  PrimitiveBTreeNode(Boolean isLeaf, int fanout, N[] children) {
+    this.isLeaf = isLeaf;
+    this.values = isLeaf ? new Object[fanout + 1] : null;
+    this.children = children;
+  }
+
+  /**
+   * Array of the keys, {@code fanout + 1} long for a leaf node and {@code fanout} long for an
+   * internal node.
+   */
+  abstract Object keyArray();
+
+  /**
+   * Create an empty node of the same kind and type of keys.
+   */
+  abstract N createSibling(int fanout);
+
+  @SuppressWarnings("unchecked")
+  public V getValue(int index) {
+    return (V) values[index];
+  }
+
+  public N getChild(int index) {
+    return children[index];
+  }
+
+  void setValue(int index, V value) {
+    values[index] = value;
+  }
+
+  void setChild(int index, N child) {
+    children[index] = child;
+  }
+
+  /**
+   * Shift the entries from {@code index} of a leaf node to make room for {@code value}, whose
+   * key the caller writes at {@code index}.
+   */
+  void openEntry(int index, V value) {
+    System.arraycopy(keyArray(), index, keyArray(), index + 1, size - index);
+    System.arraycopy(values, index, values, index + 1, size - index);
+    values[index] = value;
+    size++;
+  }
+
+  /**
+   * Remove the key and value at {@code index} of a leaf node.
+   */
+  void removeEntry(int index) {
+    System.arraycopy(keyArray(), index + 1, keyArray(), index, size - index - 1);
+    System.arraycopy(values, index + 1, values, index, size - index - 1);
+    size--;
+    values[size] = null;
+  }
+
+  /**
+   * Insert a key at {@code index} of an internal node, together with the child to its right.
+   * The key is copied from {@code keySource}, the node a split left it in.
+   */
+  void insertChild(int index, N rightChild, PrimitiveBTreeNode<N, V> keySource, int keyIndex) {
+    System.arraycopy(keyArray(), index, keyArray(), index + 1, size - index);
+    System.arraycopy(children, index + 1, children, index + 2, size - index);
+    copyKey(keySource, keyIndex, this, index);
+    children[index + 1] = rightChild;
+    size++;
+  }
+
+  /**
+   * Remove the key at {@code index} of an internal node, together with the child to its right.
+   */
+  void removeChild(int index) {
+    System.arraycopy(keyArray(), index + 1, keyArray(), index, size - index - 1);
+    System.arraycopy(children, index + 2, children, index + 1, size - index - 1);
+    children[size] = null;
+    size--;
+  }
+
+  /**
+   * Move the upper half of this overflowed leaf node into a new right sibling.
+   *
+   * @return the new right sibling
+   */
+  N splitLeafNode(int fanout) {
+    N newLeafNode = createSibling(fanout);
+    PrimitiveBTreeNode<N, V> newNode = newLeafNode;
+    int leftSize = (size + 1) / 2;
+    int rightSize = size - leftSize;
+
+    System.arraycopy(keyArray(), leftSize, newNode.keyArray(), 0, rightSize);
+    System.arraycopy(values, leftSize, newNode.values, 0, rightSize);
+    Arrays.fill(values, leftSize, size, null);
+    newNode.size = rightSize;
+    size = leftSize;
+
+    return newLeafNode;
+  }
+
+  /**
+   * Move the upper half of this overflowed internal node into a new right sibling.
+   * The middle key is left at {@code keys[size]} of this node for the caller to bubble up.
+   *
+   * @return the new right sibling
+   */
+  N splitInternalNode(int fanout) {
+    N newInternalNode = createSibling(fanout);
+    PrimitiveBTreeNode<N, V> newNode = newInternalNode;
+    int leftChildren = (size + 2) / 2;
+    int rightChildren = size + 1 - leftChildren;
+
+    System.arraycopy(keyArray(), leftChildren, newNode.keyArray(), 0, rightChildren - 1);
+    System.arraycopy(children, leftChildren, newNode.children, 0, rightChildren);
+    Arrays.fill(children, leftChildren, size + 1, null);
+    newNode.size = rightChildren - 1;
+    size = leftChildren - 1;
+
+    return newInternalNode;
+  }
+
+  /**
+   * Move the last entry of the {@code left} sibling to the front of this node, updating the
+   * key at {@code separatorIndex} of their {@code parent}.
+   */
+  void borrowFromLeft(
+      PrimitiveBTreeNode<N, V> left,
+      PrimitiveBTreeNode<N, V> parent,
+      int separatorIndex
+  ) {
+    if (isLeaf) {
+      openEntry(0, left.getValue(left.size - 1));
+      copyKey(left, left.size - 1, this, 0);
+      left.removeEntry(left.size - 1);
+      copyKey(this, 0, parent, separatorIndex);
+      return;
+    }
+
+    System.arraycopy(keyArray(), 0, keyArray(), 1, size);
+    System.arraycopy(children, 0, children, 1, size + 1);
+    copyKey(parent, separatorIndex, this, 0);
+    children[0] = left.children[left.size];
+    size++;
+
+    copyKey(left, left.size - 1, parent, separatorIndex);
+    left.children[left.size] = null;
+    left.size--;
+  }
+
+  /**
+   * Move the first entry of the {@code right} sibling to the end of this node, updating the
+   * key at {@code separatorIndex} of their {@code parent}.
+   */
+  void borrowFromRight(
+      PrimitiveBTreeNode<N, V> right,
+      PrimitiveBTreeNode<N, V> parent,
+      int separatorIndex
+  ) {
+    if (isLeaf) {
+      openEntry(size, right.getValue(0));
+      copyKey(right, 0, this, size - 1);
+      right.removeEntry(0);
+      copyKey(right, 0, parent, separatorIndex);
+      return;
+    }
+
+    copyKey(parent, separatorIndex, this, size);
+    children[size + 1] = right.children[0];
+    size++;
+
+    copyKey(right, 0, parent, separatorIndex);
+    System.arraycopy(right.keyArray(), 1, right.keyArray(), 0, right.size - 1);
+    System.arraycopy(right.children, 1, right.children, 0, right.size);
+    right.children[right.size] = null;
+    right.size--;
+  }
+
+  /**
+   * Append all entries of the {@code right} sibling to this node. For internal nodes, the key
+   * at {@code separatorIndex} of their {@code parent} comes down between them.
+   */
+  void mergeWithRight(
+      PrimitiveBTreeNode<N, V> right,
+      PrimitiveBTreeNode<N, V> parent,
+      int separatorIndex
+  ) {
+    if (isLeaf) {
+      System.arraycopy(right.keyArray(), 0, keyArray(), size, right.size);
+      System.arraycopy(right.values, 0, values, size, right.size);
+      size += right.size;
+      return;
+    }
+
+    copyKey(parent, separatorIndex, this, size);
+    System.arraycopy(right.keyArray(), 0, keyArray(), size + 1, right.size);
+    System.arraycopy(right.children, 0, children, size + 1, right.size + 1);
+    size += right.size + 1;
+  }
+
+  private static void copyKey(
+      PrimitiveBTreeNode<?, ?> source,
+      int sourceIndex,
+      PrimitiveBTreeNode<?, ?> destination,
+      int destinationIndex
+  ) {
+    System.arraycopy(source.keyArray(), sourceIndex, destination.keyArray(), destinationIndex, 1);
+  }
+}
@@ -0,0 +1,56 @@
+package com.hpham.database.btree;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over the records of a B-Tree, in key order, that walks the linked list of leaf nodes
+ * instead of descending from the root for every record.
+ * <br>
+ * The iterator does not support concurrent modification of the tree.
+ */
+class RangeScanIterator<K extends Comparable<K>> implements Iterator<Record<K, Object>> {
+  private final K toKey;
+  private BTreeNode<K> currentNode;
+  private int currentIndex;
+
+  /**
+   * Create an iterator.
+   *
+   * @param startNode  leaf node containing the first record
+   * @param startIndex index of the first record in {@code startNode}
+   * @param toKey      exclusive upper bound, {@code null} for no upper bound
+   */
+  RangeScanIterator(BTreeNode<K> startNode, int startIndex, K toKey) {
+    this.currentNode = startNode;
+    this.currentIndex = startIndex;
+    this.toKey = toKey;
+    skipExhaustedNodes();
+  }
+
+  @Override
+  public boolean hasNext() {
+    return currentNode != null
+        && (toKey == null || currentNode.getKeys().get(currentIndex).compareTo(toKey) < 0);
+  }
+
+  @Override
+  public Record<K, Object> next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    Record<K, Object> record = currentNode.getRecords().get(currentIndex);
+    currentIndex++;
+    skipExhaustedNodes();
+
+    return record;
+  }
+
+  private void skipExhaustedNodes() {
+    while (currentNode != null && currentIndex >= currentNode.getRecords().size()) {
+      currentNode = currentNode.getNext();
+      currentIndex = 0;
+    }
+  }
+}
@@ -34,6 +34,28 @@ public class SearchUtil {
   }
 
 
+  /**
+   * Find the index of the first key that is larger than or equal to the search key,
+   * using binary search. Returns the size of the list if there is no such key.
+   */
+  public static <K extends Comparable<K>> int findFirstNotSmallerIndex(K key, List<K> keyList) {
+    int start = 0;
+    int end = keyList.size();
+
+    while (start < end) {
+      int mid = (start + end) >>> 1;
+
+      if (keyList.get(mid).compareTo(key) < 0) {
+        start = mid + 1;
+      } else {
+        end = mid;
+      }
+    }
+
+    return start;
+  }
+
+
   /**
    * Find the index of the first key that is larger than the search key,
    * using binary search. Returns <code>-1</code> if there is no key in the list larger
@@ -64,4 +86,48 @@ public class SearchUtil {
 
     return start;
   }
+
+  /**
+   * Find the index of the first key that is larger than the search key among the first
+   * {@code size} keys of a sorted {@code long[]}, using binary search. Returns {@code size}
+   * if there is no such key.
+   */
+  public static int findFirstLargerIndex(long key, long[] keys, int size) {
+    int start = 0;
+    int end = size;
+
+    while (start < end) {
+      int mid = (start + end) >>> 1;
+
+      if (keys[mid] <= key) {
+        start = mid + 1;
+      } else {
+        end = mid;
+      }
+    }
+
+    return start;
+  }
+
+  /**
+   * Find the index of the first key that is larger than the search key among the first
+   * {@code size} keys of a sorted {@code int[]}, using binary search. Returns {@code size}
+   * if there is no such key.
+   */
+  public static int findFirstLargerIndex(int key, int[] keys, int size) {
+    int start = 0;
+    int end = size;
+
+    while (start < end) {
+      int mid = (start + end) >>> 1;
+
+      if (keys[mid] <= key) {
+        start = mid + 1;
+      } else {
+        end = mid;
+      }
+    }
+
+    return start;
+  }
 }
@@ -2,20 +2,28 @@ package btree;
 
 import com.hpham.database.btree.BTree;
 import com.hpham.database.btree.BTreeNode;
+import com.hpham.database.btree.BTreeSnapshot;
 import com.hpham.database.btree.Record;
 import com.hpham.database.btree.exceptions.RecordAlreadyExistException;
 import com.hpham.database.btree.exceptions.RecordNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -67,16 +75,19 @@ public class BTreeTest {
   }
 
   private <K extends Comparable<K>> void checkTreeIntegrity(BTreeNode<K> root) {
-    if (root == null) {
+    // an empty tree is a single empty leaf node
+    if (root.getIsLeaf() && root.getRecords().isEmpty()) {
       return;
     }
     Queue<BTreeNode<K>> queue = new LinkedList<>();
+    List<BTreeNode<K>> leafNodes = new ArrayList<>();
     queue.offer(root);
 
     while (!queue.isEmpty()) {
       // check for ordering, occupancies, and parent-child relationship
       BTreeNode<K> currentNode = queue.poll();
       if (currentNode.getIsLeaf()) {
+        leafNodes.add(currentNode);
         var records = currentNode.getRecords();
         var keys = currentNode.getKeys();
         assertThat(records.size()).isEqualTo(keys.size());
@@ -121,6 +132,14 @@ public class BTreeTest {
         }
       }
     }
+
+    // leaf nodes are visited from left to right, so they must be linked in the same order
+    assertThat(leafNodes.getFirst().getPrev()).isNull();
+    assertThat(leafNodes.getLast().getNext()).isNull();
+    for (int i = 1; i < leafNodes.size(); i++) {
+      assertThat(leafNodes.get(i - 1).getNext()).isSameAs(leafNodes.get(i));
+      assertThat(leafNodes.get(i).getPrev()).isSameAs(leafNodes.get(i - 1));
+    }
   }
 
   @ParameterizedTest
@@ -180,6 +199,25 @@ public class BTreeTest {
         .toList();
   }
 
+  @Test
+  void insertAfterDeletingLastRecord() {
+    for (BTree<Integer> tree : List.of(bTree, BTree.<Integer>withSnapshots())) {
+      IntStream.range(0, FANOUT * 3).forEach(
+          key -> tree.insert(Record.<Integer, Object>builder().key(key).value(key).build())
+      );
+      IntStream.range(0, FANOUT * 3).forEach(tree::delete);
+      assertThat(tree.findRecord(0)).isNull();
+      assertThat(tree.scan(null, null).hasNext()).isFalse();
+
+      tree.insert(Record.<Integer, Object>builder().key(1).value("val-1").build());
+      tree.update(Record.<Integer, Object>builder().key(1).value("val-2").build());
+      assertThat(tree.findRecord(1).getValue()).isEqualTo("val-2");
+      tree.delete(1);
+      assertThrows(RecordNotFoundException.class, () -> tree.delete(1));
+      checkTreeIntegrity(tree.getRoot());
+    }
+  }
+
   @Test
   void insertNewRecordWithExistingKey() {
     bTree.insert(com.hpham.database.btree.Record.<Integer, Object>builder().key(1).value("val-1").build());
@@ -211,6 +249,18 @@ public class BTreeTest {
     assertThat(bTree.findRecord(1).getValue()).isEqualTo("val-2");
   }
 
+  @Test
+  void updateChangesFoundRecordInPlace() {
+    bTree.insert(Record.<Integer, Object>builder().key(1).value("val-1").build());
+    Record<Integer, Object> foundRecord = bTree.findRecord(1);
+
+    bTree.update(Record.<Integer, Object>builder().key(1).value("val-2").build());
+    bTree.upsertAll(List.of(Record.<Integer, Object>builder().key(1).value("val-3").build()));
+
+    assertThat(bTree.findRecord(1)).isSameAs(foundRecord);
+    assertThat(foundRecord.getValue()).isEqualTo("val-3");
+  }
+
   @Test
   void updateInvalidRecord() {
     bTree.insert(Record.<Integer, Object>builder().key(1).value("val-1").build());
@@ -219,4 +269,273 @@ public class BTreeTest {
         () -> bTree.delete(2)
     );
   }
+
+  @ParameterizedTest
+  @MethodSource("testRecords")
+  void testScan(List<com.hpham.database.btree.Record<Integer, Object>> records) {
+    records.forEach(record -> bTree.insert(record));
+    List<Integer> sortedKeys = records.stream().map(com.hpham.database.btree.Record::getKey).sorted().toList();
+
+    assertThat(scanKeys(bTree.scan(null, null))).containsExactlyElementsOf(sortedKeys);
+
+    int fromKey = sortedKeys.get(sortedKeys.size() / 4);
+    int toKey = sortedKeys.get(sortedKeys.size() / 2);
+    assertThat(scanKeys(bTree.scan(fromKey, toKey)))
+        .containsExactlyElementsOf(sortedKeys.subList(sortedKeys.size() / 4, sortedKeys.size() / 2));
+    assertThat(scanKeys(bTree.scan(toKey, null)))
+        .containsExactlyElementsOf(sortedKeys.subList(sortedKeys.size() / 2, sortedKeys.size()));
+    assertThat(scanKeys(bTree.scan(toKey, fromKey))).isEmpty();
+  }
+
+  @ParameterizedTest
+  @MethodSource("testRecords")
+  void testScanAfterDelete(List<com.hpham.database.btree.Record<Integer, Object>> records) {
+    records.forEach(record -> bTree.insert(record));
+    records.subList(0, records.size() / 2).forEach(record -> bTree.delete(record.getKey()));
+    checkTreeIntegrity(bTree.getRoot());
+
+    List<Integer> remainingKeys = records.subList(records.size() / 2, records.size()).stream()
+        .map(com.hpham.database.btree.Record::getKey)
+        .sorted()
+        .toList();
+    assertThat(scanKeys(bTree.scan(null, null))).containsExactlyElementsOf(remainingKeys);
+  }
+
+  @Test
+  void scanEmptyTree() {
+    assertThat(bTree.scan(null, null).hasNext()).isFalse();
+  }
+
+  private static List<Integer> scanKeys(Iterator<com.hpham.database.btree.Record<Integer, Object>> iterator) {
+    List<Integer> keys = new ArrayList<>();
+    iterator.forEachRemaining(record -> keys.add(record.getKey()));
+    return keys;
+  }
+
+  @ParameterizedTest
+  @MethodSource("testRecords")
+  void testBulkLoad(List<Record<Integer, Object>> records) {
+    List<Record<Integer, Object>> sortedRecords = records.stream()
+        .sorted(Comparator.comparing(Record::getKey))
+        .toList();
+    bTree.bulkLoad(sortedRecords.iterator());
+
+    checkTreeIntegrity(bTree.getRoot());
+    records.forEach(record -> assertThat(bTree.findRecord(record.getKey())).isEqualTo(record));
+    assertThat(scanKeys(bTree.scan(null, null)))
+        .containsExactlyElementsOf(sortedRecords.stream().map(Record::getKey).toList());
+
+    // the tree must still support regular updates after a bulk load
+    records.subList(0, records.size() / 2).forEach(record -> bTree.delete(record.getKey()));
+    checkTreeIntegrity(bTree.getRoot());
+    records.subList(0, records.size() / 2).forEach(record -> bTree.insert(record));
+    checkTreeIntegrity(bTree.getRoot());
+    records.forEach(record -> assertThat(bTree.findRecord(record.getKey())).isEqualTo(record));
+  }
+
+  @ParameterizedTest
+  @MethodSource("bulkLoadSizes")
+  void testBulkLoadSizesAndFillFactors(int numberOfRecords, double fillFactor) {
+    List<Record<Integer, Object>> records = IntStream.range(0, numberOfRecords)
+        .mapToObj(key -> Record.<Integer, Object>builder().key(key).value(key).build())
+        .toList();
+    bTree.bulkLoad(records.iterator(), fillFactor);
+
+    checkTreeIntegrity(bTree.getRoot());
+    assertThat(scanKeys(bTree.scan(null, null)))
+        .containsExactlyElementsOf(IntStream.range(0, numberOfRecords).boxed().toList());
+  }
+
+  @Test
+  void bulkLoadNoRecords() {
+    bTree.bulkLoad(Collections.emptyIterator());
+    assertThat(bTree.scan(null, null).hasNext()).isFalse();
+  }
+
+  @Test
+  void bulkLoadIntoNonEmptyTree() {
+    bTree.insert(Record.<Integer, Object>builder().key(1).value("val-1").build());
+    assertThrows(
+        IllegalStateException.class,
+        () -> bTree.bulkLoad(List.of(Record.<Integer, Object>builder().key(2).value("val-2").build())
+            .iterator())
+    );
+  }
+
+  @Test
+  void bulkLoadUnsortedRecords() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> bTree.bulkLoad(List.of(
+            Record.<Integer, Object>builder().key(2).value("val-2").build(),
+            Record.<Integer, Object>builder().key(1).value("val-1").build()
+        ).iterator())
+    );
+  }
+
+  private static Stream<Arguments> bulkLoadSizes() {
+    return Stream.of(1, 2, 3, 5, 6, 7, 11, 26, 126, 1000)
+        .flatMap(size -> Stream.of(0.01, 0.5, 0.7, 1.0).map(fill -> Arguments.of(size, fill)));
+  }
+
+  @ParameterizedTest
+  @MethodSource("testRecords")
+  void testInsertAll(List<Record<Integer, Object>> records) {
+    bTree.insertAll(records);
+
+    checkTreeIntegrity(bTree.getRoot());
+    records.forEach(record -> assertThat(bTree.findRecord(record.getKey())).isEqualTo(record));
+    assertThat(scanKeys(bTree.scan(null, null)))
+        .containsExactlyElementsOf(records.stream().map(Record::getKey).sorted().toList());
+  }
+
+  @ParameterizedTest
+  @MethodSource("testRecords")
+  void testInsertAllInBatches(List<Record<Integer, Object>> records) {
+    int batchSize = 1000;
+    records.subList(0, batchSize).forEach(record -> bTree.insert(record));
+    for (int i = batchSize; i < records.size(); i += batchSize) {
+      bTree.insertAll(records.subList(i, Math.min(i + batchSize, records.size())));
+      checkTreeIntegrity(bTree.getRoot());
+    }
+
+    records.forEach(record -> assertThat(bTree.findRecord(record.getKey())).isEqualTo(record));
+
+    // the tree must still support regular updates after batch inserts
+    records.forEach(record -> bTree.delete(record.getKey()));
+    assertThat(bTree.getRoot().getIsLeaf()).isTrue();
+    assertThat(bTree.getRoot().getRecords()).isEmpty();
+  }
+
+  @Test
+  void insertAllWithExistingKey() {
+    bTree.insert(Record.<Integer, Object>builder().key(1).value("val-1").build());
+    assertThrows(
+        RecordAlreadyExistException.class,
+        () -> bTree.insertAll(List.of(
+            Record.<Integer, Object>builder().key(2).value("val-2").build(),
+            Record.<Integer, Object>builder().key(1).value("val-3").build()
+        ))
+    );
+
+    // nothing is inserted when the batch is rejected
+    assertThat(bTree.findRecord(2)).isNull();
+    assertThat(bTree.findRecord(1).getValue()).isEqualTo("val-1");
+  }
+
+  @Test
+  void insertAllWithDuplicatedKey() {
+    assertThrows(
+        RecordAlreadyExistException.class,
+        () -> bTree.insertAll(List.of(
+            Record.<Integer, Object>builder().key(1).value("val-1").build(),
+            Record.<Integer, Object>builder().key(1).value("val-2").build()
+        ))
+    );
+  }
+
+  @Test
+  void testUpsertAll() {
+    IntStream.range(0, 100).filter(key -> key % 2 == 0)
+        .forEach(key -> bTree.insert(Record.<Integer, Object>builder().key(key).value("old").build()));
+
+    List<Record<Integer, Object>> batch = new ArrayList<>(IntStream.range(0, 100)
+        .mapToObj(key -> Record.<Integer, Object>builder().key(key).value("new").build())
+        .toList());
+    Collections.shuffle(batch);
+    // the last record of a duplicated key wins
+    batch.add(Record.<Integer, Object>builder().key(7).value("last").build());
+    bTree.upsertAll(batch);
+
+    checkTreeIntegrity(bTree.getRoot());
+    IntStream.range(0, 100).filter(key -> key != 7)
+        .forEach(key -> assertThat(bTree.findRecord(key).getValue()).isEqualTo("new"));
+    assertThat(bTree.findRecord(7).getValue()).isEqualTo("last");
+  }
+
+  @ParameterizedTest
+  @MethodSource("testRecords")
+  void testSnapshotIsolation(List<Record<Integer, Object>> records) {
+    bTree = BTree.withSnapshots();
+    List<Record<Integer, Object>> firstHalf = records.subList(0, records.size() / 2);
+    List<Record<Integer, Object>> secondHalf = records.subList(records.size() / 2, records.size());
+    firstHalf.forEach(bTree::insert);
+
+    BTreeSnapshot<Integer> snapshot = bTree.snapshot();
+    secondHalf.forEach(bTree::insert);
+    firstHalf.forEach(record -> bTree.update(
+        Record.<Integer, Object>builder().key(record.getKey()).value("updated").build()
+    ));
+    firstHalf.stream().filter(record -> record.getKey() % 2 == 0)
+        .forEach(record -> bTree.delete(record.getKey()));
+    checkTreeIntegrity(bTree.getRoot());
+
+    firstHalf.forEach(record -> assertThat(snapshot.findRecord(record.getKey())).isEqualTo(record));
+    secondHalf.forEach(record -> assertThat(snapshot.findRecord(record.getKey())).isNull());
+    List<Record<Integer, Object>> scannedRecords = new ArrayList<>();
+    snapshot.scan(null, null).forEachRemaining(scannedRecords::add);
+    assertThat(scannedRecords)
+        .isEqualTo(firstHalf.stream().sorted(Comparator.comparing(Record::getKey)).toList());
+
+    Set<Integer> secondHalfKeys = new HashSet<>(secondHalf.stream().map(Record::getKey).toList());
+    List<Integer> expectedKeys = records.stream()
+        .map(Record::getKey)
+        .filter(key -> key % 2 != 0 || secondHalfKeys.contains(key))
+        .sorted()
+        .toList();
+    List<Integer> liveKeys = new ArrayList<>();
+    bTree.scan(null, null).forEachRemaining(record -> liveKeys.add(record.getKey()));
+    assertThat(liveKeys).isEqualTo(expectedKeys);
+  }
+
+  @Test
+  void testSnapshotScanRange() {
+    bTree = BTree.withSnapshots();
+    IntStream.range(0, 1000)
+        .forEach(key -> bTree.insert(Record.<Integer, Object>builder().key(2 * key).value(key).build()));
+    BTreeSnapshot<Integer> snapshot = bTree.snapshot();
+    IntStream.range(0, 1000).forEach(key -> bTree.delete(2 * key));
+
+    List<Integer> scannedKeys = new ArrayList<>();
+    snapshot.scan(101, 201).forEachRemaining(record -> scannedKeys.add(record.getKey()));
+    assertThat(scannedKeys).isEqualTo(IntStream.range(51, 101).map(key -> 2 * key).boxed().toList());
+    assertThat(bTree.snapshot().scan(null, null).hasNext()).isFalse();
+  }
+
+  @Test
+  void snapshotOfTreeWithoutSnapshots() {
+    assertThrows(IllegalStateException.class, () -> bTree.snapshot());
+  }
+
+  @Test
+  void testSnapshotsWhileWriting() {
+    BTree<Integer> tree = BTree.withSnapshots();
+    AtomicBoolean isWriting = new AtomicBoolean(true);
+
+    // keys are inserted and then deleted in ascending order, so every snapshot holds a range
+    CompletableFuture<Integer> reader = CompletableFuture.supplyAsync(() -> {
+      int snapshotsRead = 0;
+      while (isWriting.get()) {
+        BTreeSnapshot<Integer> snapshot = tree.snapshot();
+        Integer previousKey = null;
+        for (Iterator<Record<Integer, Object>> it = snapshot.scan(null, null); it.hasNext(); ) {
+          Integer key = it.next().getKey();
+          if (previousKey != null) {
+            assertThat(key).isEqualTo(previousKey + 1);
+          }
+          assertThat(snapshot.findRecord(key).getKey()).isEqualTo(key);
+          previousKey = key;
+        }
+        snapshotsRead++;
+      }
+      return snapshotsRead;
+    });
+
+    IntStream.range(0, NUMBER_OF_TEST_RECORDS)
+        .forEach(key -> tree.insert(Record.<Integer, Object>builder().key(key).value(key).build()));
+    IntStream.range(0, NUMBER_OF_TEST_RECORDS).forEach(tree::delete);
+    isWriting.set(false);
+
+    assertThat(reader.join()).isPositive();
+  }
 }
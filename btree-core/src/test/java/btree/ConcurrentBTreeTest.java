@@ -0,0 +1,316 @@
+package btree;
+
+import com.hpham.database.btree.ConcurrentBTree;
+import com.hpham.database.btree.ConcurrentBTreeNode;
+import com.hpham.database.btree.Record;
+import com.hpham.database.btree.exceptions.RecordAlreadyExistException;
+import com.hpham.database.btree.exceptions.RecordNotFoundException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test suite for {@link ConcurrentBTree}.
+ * */
+public class ConcurrentBTreeTest {
+  private static final int NUMBER_OF_TEST_RECORDS = 10000;
+  private static final int FANOUT = 5;
+  private static final int NUMBER_OF_THREADS = 8;
+  private static final int RECORDS_PER_THREAD = 20000;
+
+  @ParameterizedTest
+  @MethodSource("testKeys")
+  void testAdd(List<Integer> keys) {
+    ConcurrentBTree<Integer> bTree = new ConcurrentBTree<>(FANOUT);
+    keys.forEach(key -> {
+      bTree.insert(recordOf(key));
+      assertThat(bTree.findRecord(key).getValue()).isEqualTo(valueOf(key));
+    });
+
+    checkTreeIntegrity(bTree);
+    keys.forEach(key -> assertThat(bTree.findRecord(key).getValue()).isEqualTo(valueOf(key)));
+  }
+
+  @ParameterizedTest
+  @MethodSource("testKeys")
+  void testDelete(List<Integer> keys) {
+    ConcurrentBTree<Integer> bTree = new ConcurrentBTree<>(FANOUT);
+    keys.forEach(key -> bTree.insert(recordOf(key)));
+
+    keys.subList(0, keys.size() / 2).forEach(key -> {
+      bTree.delete(key);
+      assertThat(bTree.findRecord(key)).isNull();
+    });
+    checkTreeIntegrity(bTree);
+    keys.subList(keys.size() / 2, keys.size())
+        .forEach(key -> assertThat(bTree.findRecord(key).getValue()).isEqualTo(valueOf(key)));
+
+    // deleted keys can be inserted again into the merged leaf nodes
+    keys.subList(0, keys.size() / 2).forEach(key -> bTree.insert(recordOf(key)));
+    checkTreeIntegrity(bTree);
+    keys.forEach(key -> assertThat(bTree.findRecord(key).getValue()).isEqualTo(valueOf(key)));
+  }
+
+  @ParameterizedTest
+  @MethodSource("testKeys")
+  void testDeleteMergesNodes(List<Integer> keys) {
+    ConcurrentBTree<Integer> bTree = new ConcurrentBTree<>(FANOUT);
+    keys.forEach(key -> bTree.insert(recordOf(key)));
+
+    List<Integer> remainingKeys = keys.subList(0, keys.size() / 100);
+    keys.subList(keys.size() / 100, keys.size()).forEach(bTree::delete);
+
+    // deletes merge the nodes they leave underfull, so the tree shrinks with its records
+    checkTreeIntegrity(bTree);
+    assertThat(countNodes(bTree.getRoot())).isLessThanOrEqualTo(2 * remainingKeys.size());
+    remainingKeys.forEach(key ->
+        assertThat(bTree.findRecord(key).getValue()).isEqualTo(valueOf(key))
+    );
+
+    remainingKeys.forEach(bTree::delete);
+    assertThat(bTree.getRoot().getIsLeaf()).isTrue();
+    assertThat(bTree.getRoot().getSize()).isZero();
+  }
+
+  @Test
+  void insertNewRecordWithExistingKey() {
+    ConcurrentBTree<Integer> bTree = new ConcurrentBTree<>(FANOUT);
+    bTree.insert(recordOf(1));
+    assertThrows(RecordAlreadyExistException.class, () -> bTree.insert(recordOf(1)));
+  }
+
+  @Test
+  void updateRecordWithExistingKey() {
+    ConcurrentBTree<Integer> bTree = new ConcurrentBTree<>(FANOUT);
+    bTree.insert(recordOf(1));
+
+    bTree.update(Record.<Integer, Object>builder().key(1).value("val-2").build());
+    assertThat(bTree.findRecord(1).getValue()).isEqualTo("val-2");
+  }
+
+  @Test
+  void updateInvalidRecord() {
+    ConcurrentBTree<Integer> bTree = new ConcurrentBTree<>(FANOUT);
+    bTree.insert(recordOf(1));
+    assertThrows(RecordNotFoundException.class, () -> bTree.update(recordOf(2)));
+  }
+
+  @Test
+  void deleteRecordWithInvalidKey() {
+    ConcurrentBTree<Integer> bTree = new ConcurrentBTree<>(FANOUT);
+    bTree.insert(recordOf(1));
+    assertThrows(RecordNotFoundException.class, () -> bTree.delete(2));
+  }
+
+  @Test
+  void concurrentInsertsAndReads() throws Exception {
+    ConcurrentBTree<Integer> bTree = new ConcurrentBTree<>(FANOUT);
+    // keys inserted up front must stay visible to readers while writers split nodes around them
+    List<Integer> existingKeys = IntStream.range(0, RECORDS_PER_THREAD)
+        .map(i -> i * NUMBER_OF_THREADS * 2 + 1)
+        .boxed()
+        .toList();
+    existingKeys.forEach(key -> bTree.insert(recordOf(key)));
+
+    runConcurrently(bTree, existingKeys, thread -> {
+      // writers insert interleaved keys, so they keep splitting the same leaf nodes
+      for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+        int key = i * NUMBER_OF_THREADS * 2 + thread * 2;
+        bTree.insert(recordOf(key));
+        assertThat(bTree.findRecord(key).getValue()).isEqualTo(valueOf(key));
+      }
+    });
+
+    checkTreeIntegrity(bTree);
+    existingKeys.forEach(key -> assertThat(bTree.findRecord(key).getValue()).isEqualTo(valueOf(key)));
+    IntStream.range(0, NUMBER_OF_THREADS).forEach(thread ->
+        IntStream.range(0, RECORDS_PER_THREAD).forEach(i -> {
+          int key = i * NUMBER_OF_THREADS * 2 + thread * 2;
+          assertThat(bTree.findRecord(key).getValue()).isEqualTo(valueOf(key));
+        })
+    );
+  }
+
+  @Test
+  void concurrentDeletesUpdatesAndReads() throws Exception {
+    ConcurrentBTree<Integer> bTree = new ConcurrentBTree<>(FANOUT);
+    List<Integer> existingKeys = IntStream.range(0, RECORDS_PER_THREAD)
+        .map(i -> i * NUMBER_OF_THREADS * 2 + 1)
+        .boxed()
+        .toList();
+    existingKeys.forEach(key -> bTree.insert(recordOf(key)));
+    IntStream.range(0, NUMBER_OF_THREADS * RECORDS_PER_THREAD)
+        .forEach(i -> bTree.insert(recordOf(i * 2)));
+
+    runConcurrently(bTree, existingKeys, thread -> {
+      for (int i = thread; i < NUMBER_OF_THREADS * RECORDS_PER_THREAD; i += NUMBER_OF_THREADS) {
+        int key = i * 2;
+        if (i % 2 == 0) {
+          bTree.delete(key);
+          assertThat(bTree.findRecord(key)).isNull();
+        } else {
+          bTree.update(Record.<Integer, Object>builder().key(key).value("updated").build());
+          assertThat(bTree.findRecord(key).getValue()).isEqualTo("updated");
+        }
+      }
+    });
+
+    checkTreeIntegrity(bTree);
+    IntStream.range(0, NUMBER_OF_THREADS * RECORDS_PER_THREAD).forEach(i -> {
+      if (i % 2 == 0) {
+        assertThat(bTree.findRecord(i * 2)).isNull();
+      } else {
+        assertThat(bTree.findRecord(i * 2).getValue()).isEqualTo("updated");
+      }
+    });
+  }
+
+  /**
+   * Run {@code writer} on {@link #NUMBER_OF_THREADS} threads, while as many reader threads keep
+   * looking up {@code existingKeys}, which must be found at any time.
+   */
+  private static void runConcurrently(
+      ConcurrentBTree<Integer> bTree,
+      List<Integer> existingKeys,
+      WriterTask writer
+  ) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(NUMBER_OF_THREADS * 2);
+    CountDownLatch startSignal = new CountDownLatch(1);
+    AtomicBoolean writersDone = new AtomicBoolean(false);
+    List<Future<?>> writers = new ArrayList<>();
+    List<Future<?>> readers = new ArrayList<>();
+
+    try {
+      for (int thread = 0; thread < NUMBER_OF_THREADS; thread++) {
+        int writerId = thread;
+        writers.add(executor.submit(() -> {
+          startSignal.await();
+          writer.run(writerId);
+          return null;
+        }));
+        readers.add(executor.submit(() -> {
+          startSignal.await();
+          Random rand = new Random();
+          while (!writersDone.get()) {
+            int key = existingKeys.get(rand.nextInt(existingKeys.size()));
+            assertThat(bTree.findRecord(key).getValue()).isEqualTo(valueOf(key));
+          }
+          return null;
+        }));
+      }
+
+      startSignal.countDown();
+      for (Future<?> future : writers) {
+        future.get();
+      }
+      writersDone.set(true);
+      for (Future<?> future : readers) {
+        future.get();
+      }
+    } finally {
+      writersDone.set(true);
+      executor.shutdownNow();
+    }
+  }
+
+  @FunctionalInterface
+  private interface WriterTask {
+    void run(int thread);
+  }
+
+  private static void checkTreeIntegrity(ConcurrentBTree<Integer> bTree) {
+    int fanout = bTree.getFanout();
+    Set<Integer> leafDepths = new HashSet<>();
+    Queue<ConcurrentBTreeNode<Integer>> queue = new LinkedList<>();
+    Queue<Integer> depths = new LinkedList<>();
+    queue.offer(bTree.getRoot());
+    depths.offer(0);
+
+    while (!queue.isEmpty()) {
+      // check for ordering, occupancies, and balance. Leaf nodes may be underfull after deletes
+      ConcurrentBTreeNode<Integer> currentNode = queue.poll();
+      int depth = depths.poll();
+
+      for (int i = 1; i < currentNode.getSize(); i++) {
+        assertThat(currentNode.getKey(i)).isGreaterThan(currentNode.getKey(i - 1));
+      }
+
+      if (currentNode.getIsLeaf()) {
+        leafDepths.add(depth);
+        assertThat(currentNode.getSize()).isLessThanOrEqualTo(fanout);
+        for (int i = 0; i < currentNode.getSize(); i++) {
+          assertThat(currentNode.getRecord(i).getKey()).isEqualTo(currentNode.getKey(i));
+        }
+        continue;
+      }
+
+      assertThat(currentNode.getSize() + 1).isLessThanOrEqualTo(fanout);
+
+      for (int i = 0; i <= currentNode.getSize(); i++) {
+        ConcurrentBTreeNode<Integer> child = currentNode.getChild(i);
+        // every key of a child is bounded by the keys around its pointer
+        if (child.getSize() > 0 && i > 0) {
+          assertThat(child.getKey(0)).isGreaterThanOrEqualTo(currentNode.getKey(i - 1));
+        }
+        if (child.getSize() > 0 && i < currentNode.getSize()) {
+          assertThat(child.getKey(child.getSize() - 1)).isLessThan(currentNode.getKey(i));
+        }
+        queue.offer(child);
+        depths.offer(depth + 1);
+      }
+    }
+
+    assertThat(leafDepths).hasSize(1);
+  }
+
+  private static int countNodes(ConcurrentBTreeNode<Integer> node) {
+    if (node.getIsLeaf()) {
+      return 1;
+    }
+    int numberOfNodes = 1;
+    for (int i = 0; i <= node.getSize(); i++) {
+      numberOfNodes += countNodes(node.getChild(i));
+    }
+    return numberOfNodes;
+  }
+
+  private static Record<Integer, Object> recordOf(int key) {
+    return Record.<Integer, Object>builder().key(key).value(valueOf(key)).build();
+  }
+
+  private static String valueOf(int key) {
+    return String.format("%s - %s", key, "testValue");
+  }
+
+  private static Stream<List<Integer>> testKeys() {
+    Set<Integer> randomKeys = new HashSet<>();
+    Random rand = new Random();
+    while (randomKeys.size() < NUMBER_OF_TEST_RECORDS) {
+      randomKeys.add(rand.nextInt());
+    }
+
+    return Stream.of(
+        IntStream.range(0, NUMBER_OF_TEST_RECORDS).boxed().toList(),
+        IntStream.iterate(NUMBER_OF_TEST_RECORDS, i -> i >= 0, i -> i - 1).boxed().toList(),
+        List.copyOf(randomKeys)
+    );
+  }
+}
@@ -0,0 +1,51 @@
+package btree;
+
+import com.hpham.database.btree.IntBTree;
+import com.hpham.database.btree.IntBTreeNode;
+
+import java.util.Random;
+
+/**
+ * Test suite for {@link IntBTree}.
+ * */
+public class IntBTreeTest extends PrimitiveBTreeTest<IntBTree<String>, IntBTreeNode<String>> {
+  @Override
+  IntBTree<String> createTree() {
+    return new IntBTree<>();
+  }
+
+  @Override
+  IntBTree<String> createTree(int fanout) {
+    return new IntBTree<>(fanout);
+  }
+
+  @Override
+  void insert(IntBTree<String> bTree, long key, String value) {
+    bTree.insert(Math.toIntExact(key), value);
+  }
+
+  @Override
+  String update(IntBTree<String> bTree, long key, String value) {
+    return bTree.update(Math.toIntExact(key), value);
+  }
+
+  @Override
+  void delete(IntBTree<String> bTree, long key) {
+    bTree.delete(Math.toIntExact(key));
+  }
+
+  @Override
+  String findRecord(IntBTree<String> bTree, long key) {
+    return bTree.findRecord(Math.toIntExact(key));
+  }
+
+  @Override
+  long keyAt(IntBTreeNode<String> node, int index) {
+    return node.getKeys()[index];
+  }
+
+  @Override
+  long randomKey(Random rand) {
+    return rand.nextInt();
+  }
+}
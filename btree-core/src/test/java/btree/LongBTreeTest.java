@@ -0,0 +1,51 @@
+package btree;
+
+import com.hpham.database.btree.LongBTree;
+import com.hpham.database.btree.LongBTreeNode;
+
+import java.util.Random;
+
+/**
+ * Test suite for {@link LongBTree}.
+ * */
+public class LongBTreeTest extends PrimitiveBTreeTest<LongBTree<String>, LongBTreeNode<String>> {
+  @Override
+  LongBTree<String> createTree() {
+    return new LongBTree<>();
+  }
+
+  @Override
+  LongBTree<String> createTree(int fanout) {
+    return new LongBTree<>(fanout);
+  }
+
+  @Override
+  void insert(LongBTree<String> bTree, long key, String value) {
+    bTree.insert(key, value);
+  }
+
+  @Override
+  String update(LongBTree<String> bTree, long key, String value) {
+    return bTree.update(key, value);
+  }
+
+  @Override
+  void delete(LongBTree<String> bTree, long key) {
+    bTree.delete(key);
+  }
+
+  @Override
+  String findRecord(LongBTree<String> bTree, long key) {
+    return bTree.findRecord(key);
+  }
+
+  @Override
+  long keyAt(LongBTreeNode<String> node, int index) {
+    return node.getKeys()[index];
+  }
+
+  @Override
+  long randomKey(Random rand) {
+    return rand.nextLong();
+  }
+}
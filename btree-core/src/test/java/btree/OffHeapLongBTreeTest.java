@@ -0,0 +1,198 @@
+package btree;
+
+import com.hpham.database.btree.OffHeapLongBTree;
+import com.hpham.database.btree.OffHeapNodeStore;
+import com.hpham.database.btree.exceptions.RecordAlreadyExistException;
+import com.hpham.database.btree.exceptions.RecordNotFoundException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test suite for {@link OffHeapLongBTree}.
+ * */
+public class OffHeapLongBTreeTest {
+  private static final int NUMBER_OF_TEST_RECORDS = 10000;
+  private static final int FANOUT = 5;
+
+  @ParameterizedTest
+  @MethodSource("testKeys")
+  void testAdd(List<Long> keys) {
+    OffHeapLongBTree bTree = new OffHeapLongBTree(FANOUT);
+    keys.forEach(key -> {
+      bTree.insert(key, valueOf(key));
+      assertThat(bTree.findRecord(key)).isEqualTo(valueOf(key));
+    });
+
+    checkTreeIntegrity(bTree);
+    keys.forEach(key -> assertThat(bTree.findRecord(key)).isEqualTo(valueOf(key)));
+  }
+
+  @ParameterizedTest
+  @MethodSource("testKeys")
+  void testDelete(List<Long> keys) {
+    OffHeapLongBTree bTree = new OffHeapLongBTree(FANOUT);
+    keys.forEach(key -> bTree.insert(key, valueOf(key)));
+
+    for (int i = 0; i < keys.size(); i++) {
+      bTree.delete(keys.get(i));
+      assertThat(bTree.findRecord(keys.get(i))).isNull();
+      if (i % 100 == 0) {
+        checkTreeIntegrity(bTree);
+      }
+    }
+    checkTreeIntegrity(bTree);
+    // merged nodes are freed, so only the empty root is left
+    assertThat(bTree.getNodeStore().getNodeCount()).isEqualTo(1);
+  }
+
+  @ParameterizedTest
+  @MethodSource("testKeys")
+  void testDefaultFanout(List<Long> keys) {
+    OffHeapLongBTree bTree = new OffHeapLongBTree();
+    keys.forEach(key -> bTree.insert(key, valueOf(key)));
+    checkTreeIntegrity(bTree);
+
+    keys.subList(0, keys.size() / 2).forEach(bTree::delete);
+    checkTreeIntegrity(bTree);
+    keys.subList(keys.size() / 2, keys.size())
+        .forEach(key -> assertThat(bTree.findRecord(key)).isEqualTo(valueOf(key)));
+  }
+
+  @Test
+  void testFreedNodesAreReused() {
+    OffHeapLongBTree bTree = new OffHeapLongBTree(FANOUT);
+    LongStream.range(0, NUMBER_OF_TEST_RECORDS).forEach(key -> bTree.insert(key, key));
+    long reservedBytes = bTree.getNodeStore().getReservedBytes();
+
+    for (int round = 0; round < 3; round++) {
+      LongStream.range(0, NUMBER_OF_TEST_RECORDS).forEach(bTree::delete);
+      LongStream.range(0, NUMBER_OF_TEST_RECORDS).forEach(key -> bTree.insert(key, key));
+    }
+
+    checkTreeIntegrity(bTree);
+    assertThat(bTree.getNodeStore().getReservedBytes()).isEqualTo(reservedBytes);
+  }
+
+  @Test
+  void insertNewRecordWithExistingKey() {
+    OffHeapLongBTree bTree = new OffHeapLongBTree(FANOUT);
+    bTree.insert(1L, 1L);
+    assertThrows(RecordAlreadyExistException.class, () -> bTree.insert(1L, 2L));
+  }
+
+  @Test
+  void updateRecordWithExistingKey() {
+    OffHeapLongBTree bTree = new OffHeapLongBTree(FANOUT);
+    bTree.insert(1L, 1L);
+
+    assertThat(bTree.update(1L, 2L)).isEqualTo(2L);
+    assertThat(bTree.findRecord(1L)).isEqualTo(2L);
+  }
+
+  @Test
+  void updateInvalidRecord() {
+    OffHeapLongBTree bTree = new OffHeapLongBTree(FANOUT);
+    bTree.insert(1L, 1L);
+    assertThrows(RecordNotFoundException.class, () -> bTree.update(2L, 2L));
+  }
+
+  @Test
+  void deleteRecordWithInvalidKey() {
+    OffHeapLongBTree bTree = new OffHeapLongBTree(FANOUT);
+    bTree.insert(1L, 1L);
+    assertThrows(RecordNotFoundException.class, () -> bTree.delete(2L));
+  }
+
+  private static void checkTreeIntegrity(OffHeapLongBTree bTree) {
+    OffHeapNodeStore nodeStore = bTree.getNodeStore();
+    int fanout = bTree.getFanout();
+    int minOccupancy = (fanout + 1) / 2;
+    Set<Integer> leafDepths = new HashSet<>();
+    Queue<Integer> queue = new LinkedList<>();
+    Queue<Integer> depths = new LinkedList<>();
+    queue.offer(bTree.getRoot());
+    depths.offer(0);
+    int visitedNodes = 0;
+
+    while (!queue.isEmpty()) {
+      // check for ordering, occupancies, and balance
+      int currentNode = queue.poll();
+      int depth = depths.poll();
+      boolean isRoot = currentNode == bTree.getRoot();
+      int size = nodeStore.getSize(currentNode);
+      visitedNodes++;
+
+      for (int i = 1; i < size; i++) {
+        assertThat(nodeStore.getKey(currentNode, i))
+            .isGreaterThan(nodeStore.getKey(currentNode, i - 1));
+      }
+
+      if (nodeStore.isLeaf(currentNode)) {
+        leafDepths.add(depth);
+        assertThat(size).isLessThanOrEqualTo(fanout);
+        if (!isRoot) {
+          assertThat(size).isGreaterThanOrEqualTo(minOccupancy);
+        }
+        continue;
+      }
+
+      assertThat(size + 1).isLessThanOrEqualTo(fanout);
+      if (!isRoot) {
+        assertThat(size + 1).isGreaterThanOrEqualTo(minOccupancy);
+      } else {
+        assertThat(size).isGreaterThanOrEqualTo(1);
+      }
+
+      for (int i = 0; i <= size; i++) {
+        int child = nodeStore.getChild(currentNode, i);
+        int childSize = nodeStore.getSize(child);
+        // every key of a child is bounded by the keys around its pointer
+        if (i > 0) {
+          assertThat(nodeStore.getKey(child, 0))
+              .isGreaterThanOrEqualTo(nodeStore.getKey(currentNode, i - 1));
+        }
+        if (i < size) {
+          assertThat(nodeStore.getKey(child, childSize - 1))
+              .isLessThan(nodeStore.getKey(currentNode, i));
+        }
+        queue.offer(child);
+        depths.offer(depth + 1);
+      }
+    }
+
+    assertThat(leafDepths).hasSize(1);
+    // no node is leaked
+    assertThat(visitedNodes).isEqualTo(nodeStore.getNodeCount());
+  }
+
+  private static long valueOf(long key) {
+    return ~key;
+  }
+
+  private static Stream<List<Long>> testKeys() {
+    Set<Long> randomKeys = new HashSet<>();
+    Random rand = new Random();
+    while (randomKeys.size() < NUMBER_OF_TEST_RECORDS) {
+      randomKeys.add(rand.nextLong());
+    }
+
+    return Stream.of(
+        LongStream.range(0, NUMBER_OF_TEST_RECORDS).boxed().toList(),
+        LongStream.iterate(NUMBER_OF_TEST_RECORDS, i -> i >= 0, i -> i - 1).boxed().toList(),
+        List.copyOf(randomKeys)
+    );
+  }
+}
@@ -0,0 +1,195 @@
+package btree;
+
+import com.hpham.database.btree.PrimitiveBTree;
+import com.hpham.database.btree.PrimitiveBTreeNode;
+import com.hpham.database.btree.exceptions.RecordAlreadyExistException;
+import com.hpham.database.btree.exceptions.RecordNotFoundException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test suite shared by the subclasses of {@link PrimitiveBTree}, which only differ in the type
+ * of their keys. Keys are passed around as {@code long}s, and subclasses narrow them to the
+ * type of their tree.
+ * */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+abstract class PrimitiveBTreeTest<T extends PrimitiveBTree<N, String>,
+    N extends PrimitiveBTreeNode<N, String>> {
+  private static final int NUMBER_OF_TEST_RECORDS = 10000;
+  private static final int FANOUT = 5;
+
+  abstract T createTree();
+
+  abstract T createTree(int fanout);
+
+  abstract void insert(T bTree, long key, String value);
+
+  abstract String update(T bTree, long key, String value);
+
+  abstract void delete(T bTree, long key);
+
+  abstract String findRecord(T bTree, long key);
+
+  abstract long keyAt(N node, int index);
+
+  /**
+   * Random key of the type of the tree.
+   */
+  abstract long randomKey(Random rand);
+
+  @ParameterizedTest
+  @MethodSource("testKeys")
+  void testAdd(List<Long> keys) {
+    T bTree = createTree(FANOUT);
+    keys.forEach(key -> {
+      insert(bTree, key, valueOf(key));
+      assertThat(findRecord(bTree, key)).isEqualTo(valueOf(key));
+    });
+
+    checkTreeIntegrity(bTree);
+    keys.forEach(key -> assertThat(findRecord(bTree, key)).isEqualTo(valueOf(key)));
+  }
+
+  @ParameterizedTest
+  @MethodSource("testKeys")
+  void testDelete(List<Long> keys) {
+    T bTree = createTree(FANOUT);
+    keys.forEach(key -> insert(bTree, key, valueOf(key)));
+
+    for (int i = 0; i < keys.size(); i++) {
+      delete(bTree, keys.get(i));
+      assertThat(findRecord(bTree, keys.get(i))).isNull();
+      if (i % 100 == 0) {
+        checkTreeIntegrity(bTree);
+      }
+    }
+    checkTreeIntegrity(bTree);
+  }
+
+  @ParameterizedTest
+  @MethodSource("testKeys")
+  void testDefaultFanout(List<Long> keys) {
+    T bTree = createTree();
+    keys.forEach(key -> insert(bTree, key, valueOf(key)));
+    checkTreeIntegrity(bTree);
+
+    keys.subList(0, keys.size() / 2).forEach(key -> delete(bTree, key));
+    checkTreeIntegrity(bTree);
+    keys.subList(keys.size() / 2, keys.size())
+        .forEach(key -> assertThat(findRecord(bTree, key)).isEqualTo(valueOf(key)));
+  }
+
+  @Test
+  void insertNewRecordWithExistingKey() {
+    T bTree = createTree(FANOUT);
+    insert(bTree, 1, "val-1");
+    assertThrows(RecordAlreadyExistException.class, () -> insert(bTree, 1, "val-2"));
+  }
+
+  @Test
+  void updateRecordWithExistingKey() {
+    T bTree = createTree(FANOUT);
+    insert(bTree, 1, "val-1");
+
+    assertThat(update(bTree, 1, "val-2")).isEqualTo("val-2");
+    assertThat(findRecord(bTree, 1)).isEqualTo("val-2");
+  }
+
+  @Test
+  void updateInvalidRecord() {
+    T bTree = createTree(FANOUT);
+    insert(bTree, 1, "val-1");
+    assertThrows(RecordNotFoundException.class, () -> update(bTree, 2, "val-2"));
+  }
+
+  @Test
+  void deleteRecordWithInvalidKey() {
+    T bTree = createTree(FANOUT);
+    insert(bTree, 1, "val-1");
+    assertThrows(RecordNotFoundException.class, () -> delete(bTree, 2));
+  }
+
+  private void checkTreeIntegrity(T bTree) {
+    int fanout = bTree.getFanout();
+    int minOccupancy = (fanout + 1) / 2;
+    Set<Integer> leafDepths = new HashSet<>();
+    Queue<N> queue = new LinkedList<>();
+    Queue<Integer> depths = new LinkedList<>();
+    queue.offer(bTree.getRoot());
+    depths.offer(0);
+
+    while (!queue.isEmpty()) {
+      // check for ordering, occupancies, and balance
+      N currentNode = queue.poll();
+      int depth = depths.poll();
+      boolean isRoot = currentNode == bTree.getRoot();
+
+      for (int i = 1; i < currentNode.getSize(); i++) {
+        assertThat(keyAt(currentNode, i)).isGreaterThan(keyAt(currentNode, i - 1));
+      }
+
+      if (currentNode.getIsLeaf()) {
+        leafDepths.add(depth);
+        assertThat(currentNode.getSize()).isLessThanOrEqualTo(fanout);
+        if (!isRoot) {
+          assertThat(currentNode.getSize()).isGreaterThanOrEqualTo(minOccupancy);
+        }
+        continue;
+      }
+
+      assertThat(currentNode.getSize() + 1).isLessThanOrEqualTo(fanout);
+      if (!isRoot) {
+        assertThat(currentNode.getSize() + 1).isGreaterThanOrEqualTo(minOccupancy);
+      } else {
+        assertThat(currentNode.getSize()).isGreaterThanOrEqualTo(1);
+      }
+
+      for (int i = 0; i <= currentNode.getSize(); i++) {
+        N child = currentNode.getChild(i);
+        // every key of a child is bounded by the keys around its pointer
+        if (i > 0) {
+          assertThat(keyAt(child, 0)).isGreaterThanOrEqualTo(keyAt(currentNode, i - 1));
+        }
+        if (i < currentNode.getSize()) {
+          assertThat(keyAt(child, child.getSize() - 1)).isLessThan(keyAt(currentNode, i));
+        }
+        queue.offer(child);
+        depths.offer(depth + 1);
+      }
+    }
+
+    assertThat(leafDepths).hasSize(1);
+  }
+
+  private static String valueOf(long key) {
+    return String.format("%s - %s", key, "testValue");
+  }
+
+  private Stream<List<Long>> testKeys() {
+    Set<Long> randomKeys = new HashSet<>();
+    Random rand = new Random();
+    while (randomKeys.size() < NUMBER_OF_TEST_RECORDS) {
+      randomKeys.add(randomKey(rand));
+    }
+
+    return Stream.of(
+        LongStream.range(0, NUMBER_OF_TEST_RECORDS).boxed().toList(),
+        LongStream.iterate(NUMBER_OF_TEST_RECORDS, i -> i >= 0, i -> i - 1).boxed().toList(),
+        List.copyOf(randomKeys)
+    );
+  }
+}
@@ -27,6 +27,13 @@ public class SearchUtilTest {
     assertThat(SearchUtil.findFirstLargerIndex(testCase.input, allKeys)).isEqualTo(testCase.output);
   }
 
+  @ParameterizedTest
+  @MethodSource("searchForIndexOfFirstNotSmallerTestCases")
+  void searchForIndexOfFirstNotSmallerTest(TestCase testCase) {
+    assertThat(SearchUtil.findFirstNotSmallerIndex(testCase.input, allKeys))
+        .isEqualTo(testCase.output);
+  }
+
   private static Stream<TestCase> searchForIndexTestCases() {
     return Stream.of(
         new TestCase(0, -1),
@@ -47,6 +54,17 @@ public class SearchUtilTest {
     );
   }
 
+  private static Stream<TestCase> searchForIndexOfFirstNotSmallerTestCases() {
+    return Stream.of(
+        new TestCase(0, 0),
+        new TestCase(1, 0),
+        new TestCase(3, 1),
+        new TestCase(4, 2),
+        new TestCase(9, 4),
+        new TestCase(10, 5)
+    );
+  }
+
   private record TestCase(int input, int output) {
   }
 }
@@ -1,27 +1,442 @@
 package com.hpham.database.btree_disk;
 
-import java.util.Optional;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import com.hpham.database.btree_disk.buffer_pool.BufferPool;
+import com.hpham.database.btree_disk.constants.DataConstants;
+import com.hpham.database.btree_disk.data_types.LongField;
 import com.hpham.database.btree_disk.data_types.SortableField;
+import com.hpham.database.btree_disk.exceptions.InvalidMethodInvocationException;
+import com.hpham.database.btree_disk.exceptions.RecordAlreadyExistException;
+import com.hpham.database.btree_disk.exceptions.RecordNotFoundException;
+import com.hpham.database.btree_disk.file_formats.index.IndexFile;
+import com.hpham.database.btree_disk.file_formats.index.IndexFileHeader;
+import com.hpham.database.btree_disk.file_formats.record.RecordId;
+import com.hpham.database.btree_disk.file_formats.record.SlottedRecordFile;
+import com.hpham.database.btree_disk.file_formats.schema.SchemaCatalog;
+import com.hpham.database.btree_disk.storage.BufferedFileStorage;
+import com.hpham.database.btree_disk.storage.FileStorage;
+import com.hpham.database.btree_disk.storage.LoggedFileStorage;
+import com.hpham.database.btree_disk.util.ScratchBuffer;
 import com.hpham.database.btree_disk.util.SearchUtil;
+import com.hpham.database.btree_disk.wal.WriteAheadLog;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 
 /**
  * Class representing a B-Tree.
+ * <br>
+ * A tree is built in memory, and can be {@link #save saved} to an {@link IndexFile} and a
+ * {@link SlottedRecordFile}. A tree {@link #load loaded} from them is demand paged: its nodes
+ * are read as lookups, scans and writes reach them, through a bounded {@link NodeCache}, and
+ * its records are read from the record file, so the tree does not need to fit in memory.
+ * Records are inserted, updated and deleted in place, in the pages of the files: the nodes they
+ * change are written back as the cache drops them, or when the tree is {@link #flush flushed}
+ * or {@link #close closed}, and the pages of merged nodes and deleted records are freed for
+ * later inserts to reuse.
+ * <br>
+ * A tree saved with {@link RecordLayout#CLUSTERED} keeps its records in its leaf pages, so
+ * that a lookup reads no page other than those of its nodes, and a scan reads records in key
+ * order from consecutive leaves.
+ * <br>
+ * A tree {@link #save(Path) saved} to a directory is {@link #open opened} again after a restart
+ * by reading the header of its index file and its root node, whatever the size of the tree.
+ * A tree saved and opened with a {@link WriteAheadLog} commits its files to the log on every
+ * flush, and is opened again as of its last flush after a crash.
+ * <br>
+ * Any number of threads may read a tree at once, while a write waits for the reads and writes
+ * before it. A scan only holds the tree while it reads its next record, so it must not overlap
+ * writes.
  * */
 @Getter
 @Setter
 public class BTree<K extends Comparable<K>> {
-  public static final Integer FANOUT = 5;
+  /**
+   * Smallest fanout the split/merge/rebalance logic supports.
+   */
+  public static final Integer MIN_FANOUT = 3;
+  /**
+   * Leave some room in every node after a bulk load, so that the first inserts do not split.
+   */
+  public static final double DEFAULT_BULK_LOAD_FILL_FACTOR = 0.9;
+  /**
+   * Files of a tree {@link #save(Path) saved} to a directory.
+   */
+  public static final String INDEX_FILE_NAME = "index.tc";
+  public static final String RECORD_FILE_NAME = "records.tc";
+  public static final String SCHEMA_FILE_NAME = "schema.tc";
+  /**
+   * Ids of the files of a tree in its {@link WriteAheadLog}.
+   */
+  public static final int INDEX_FILE_ID = 0;
+  public static final int RECORD_FILE_ID = 1;
+  /**
+   * Largest record stored inline in a clustered leaf page, so that a few oversized records do
+   * not take the room of many small ones.
+   */
+  public static final int MAX_INLINE_RECORD_SIZE = DataConstants.PAGE_SIZE_BYTES / 4;
+  private final byte keyType;
+  private final int fanout;
   private BTreeNode<K> root;
 
   /**
-   * Initialize a b-tree.
-   * */
-  public BTree() {
-    root = BTreeNode.createLeafNode();
+   * Nodes and records of a tree loaded from disk, {@code null} for a tree in memory.
+   */
+  private final NodeCache<K> nodeCache;
+  private final SlottedRecordFile recordFile;
+
+  /**
+   * Schemas of the records of a tree loaded from disk, {@code null} if every record was saved
+   * with the names and types of its fields.
+   */
+  private final SchemaCatalog schemaCatalog;
+
+  /**
+   * Records of a tree loaded from disk that were deleted or moved since the last flush. They
+   * are only deleted from the record file once the nodes that pointed to them are flushed, so
+   * that a crash in between never leaves the index file pointing to a deleted record.
+   */
+  @Getter(AccessLevel.NONE)
+  private final List<RecordId> deletedRecords = new ArrayList<>();
+
+  /**
+   * Page of the root of a tree loaded from disk, read through the node cache, as the node
+   * in {@link #root} is only the last one read.
+   */
+  @Setter(AccessLevel.NONE)
+  private long rootOffset;
+
+  @Getter(AccessLevel.NONE)
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Initialize a b-tree whose fanout is the largest one that still lets a full node fit in a
+   * single page, given the encoded width of {@code keyType}. String keys are assumed to take up
+   * to {@link DataConstants#STRING_SIZE_BYTES}; see {@link #withMaxKeySize} for shorter or longer
+   * ones.
+   *
+   * @param keyType type signal of the key, see {@link DataConstants}
+   */
+  public BTree(byte keyType) {
+    this(keyType, BTreeNode.maxFanout(keyType));
+  }
+
+  /**
+   * Initialize a b-tree whose fanout is derived from the largest key it will hold, so that a tree
+   * of short string keys gets a larger fanout, and one of long string keys can still hold them.
+   *
+   * @param keyType    type signal of the key, see {@link DataConstants}
+   * @param maxKeySize largest encoded width of a key, see {@link SortableField#getSize()}
+   * @throws IllegalArgumentException if a full node of keys this large would not fit in a page
+   */
+  public static <K extends Comparable<K>> BTree<K> withMaxKeySize(byte keyType, int maxKeySize) {
+    return new BTree<>(keyType, BTreeNode.maxFanout(keyType, maxKeySize));
+  }
+
+  /**
+   * Initialize a b-tree with an explicit fanout.
+   *
+   * @param keyType type signal of the key, see {@link DataConstants}
+   * @param fanout  maximum number of pointers/records per node, which bounds the width of string
+   *                keys, see {@link BTreeNode#maxKeySize}
+   * @throws IllegalArgumentException if a full node would not fit in a single page
+   */
+  public BTree(byte keyType, int fanout) {
+    this(keyType, fanout, null, null, null);
+    root = BTreeNode.createLeafNode(fanout);
+  }
+
+  private BTree(
+      byte keyType,
+      int fanout,
+      NodeCache<K> nodeCache,
+      SlottedRecordFile recordFile,
+      SchemaCatalog schemaCatalog
+  ) {
+    // a string key takes at least the byte of its length
+    int maxFanout = BTreeNode.maxFanout(keyType, 1);
+    if (fanout < MIN_FANOUT || fanout > maxFanout) {
+      throw new IllegalArgumentException(String.format(
+          "Fanout must be between %d and %d for key type %d, got %d",
+          MIN_FANOUT, maxFanout, keyType, fanout
+      ));
+    }
+    this.keyType = keyType;
+    this.fanout = fanout;
+    this.nodeCache = nodeCache;
+    this.recordFile = recordFile;
+    this.schemaCatalog = schemaCatalog;
+  }
+
+  /**
+   * Load a tree saved with {@link #save}, caching up to {@link NodeCache#DEFAULT_CAPACITY}
+   * nodes.
+   *
+   * @see #load(IndexFile, SlottedRecordFile, int)
+   */
+  public static <K extends Comparable<K>> BTree<K> load(
+      IndexFile indexFile,
+      SlottedRecordFile recordFile
+  ) throws IOException {
+    return load(indexFile, recordFile, NodeCache.DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Load a tree saved with {@link #save} without a schema catalog.
+   *
+   * @see #load(IndexFile, SlottedRecordFile, SchemaCatalog, int)
+   */
+  public static <K extends Comparable<K>> BTree<K> load(
+      IndexFile indexFile,
+      SlottedRecordFile recordFile,
+      int nodeCacheSize
+  ) throws IOException {
+    return load(indexFile, recordFile, null, nodeCacheSize);
+  }
+
+  /**
+   * Load a tree saved with {@link #save}. Only the root node is read up front; the other nodes
+   * are read when they are reached, and up to {@code nodeCacheSize} of them are kept in memory.
+   * <br>
+   * Records can be inserted, updated and deleted. The files must stay open while the tree is
+   * used, and the tree is {@link #close closed} or {@link #flush flushed} for the nodes it
+   * changed to reach the index file.
+   *
+   * @param schemaCatalog catalog the tree was saved with, {@code null} if it was saved without
+   */
+  public static <K extends Comparable<K>> BTree<K> load(
+      IndexFile indexFile,
+      SlottedRecordFile recordFile,
+      SchemaCatalog schemaCatalog,
+      int nodeCacheSize
+  ) throws IOException {
+    IndexFileHeader header = indexFile.readHeader();
+    NodeCache<K> nodeCache = new NodeCache<>(
+        indexFile, header.getKeyType(), header.getFanout(), nodeCacheSize
+    );
+    BTree<K> bTree = new BTree<>(
+        header.getKeyType(), header.getFanout(), nodeCache, recordFile, schemaCatalog
+    );
+    bTree.rootOffset = header.getRootOffset();
+    bTree.root = nodeCache.get(bTree.rootOffset);
+
+    return bTree;
+  }
+
+  /**
+   * Open a tree {@link #save(Path) saved} to {@code directory}, caching up to
+   * {@link NodeCache#DEFAULT_CAPACITY} nodes.
+   *
+   * @see #open(Path, int)
+   */
+  public static <K extends Comparable<K>> BTree<K> open(Path directory) throws IOException {
+    return open(directory, NodeCache.DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Open a tree {@link #save(Path) saved} to {@code directory}, like {@link #load}: only the
+   * header of the index file and the root node are read up front. The tree owns its files, and
+   * is {@link #close closed} once it is no longer used.
+   *
+   * @throws IllegalStateException if the index file was not closed cleanly, so it may hold a
+   *                               partly saved tree, until it is {@link #repair repaired}
+   */
+  public static <K extends Comparable<K>> BTree<K> open(
+      Path directory,
+      int nodeCacheSize
+  ) throws IOException {
+    return open(directory, nodeCacheSize, new IndexFile(), new SlottedRecordFile(), false);
+  }
+
+  /**
+   * Open a tree {@link #save(Path, RecordLayout, WriteAheadLog) saved} to {@code directory}
+   * with {@code writeAheadLog}, caching up to {@link NodeCache#DEFAULT_CAPACITY} nodes.
+   *
+   * @see #open(Path, int, WriteAheadLog)
+   */
+  public static <K extends Comparable<K>> BTree<K> open(
+      Path directory,
+      WriteAheadLog writeAheadLog
+  ) throws IOException {
+    return open(directory, NodeCache.DEFAULT_CAPACITY, writeAheadLog);
+  }
+
+  /**
+   * Open a tree {@link #save(Path, RecordLayout, WriteAheadLog) saved} to {@code directory}
+   * with {@code writeAheadLog}, which is {@link WriteAheadLog#openFile opened} beforehand and
+   * logs the files of this tree only.
+   * <br>
+   * The writes the log committed to the files are replayed into them first, so the tree is as
+   * of its last {@link #flush} even if it was not closed cleanly. From then on, every flush
+   * commits the files to the log, and is durable once it returns. The log is
+   * {@link WriteAheadLog#checkpoint checkpointed} by its owner, while the tree is open.
+   */
+  public static <K extends Comparable<K>> BTree<K> open(
+      Path directory,
+      int nodeCacheSize,
+      WriteAheadLog writeAheadLog
+  ) throws IOException {
+    return open(
+        directory,
+        nodeCacheSize,
+        new IndexFile(loggedStorage(writeAheadLog, INDEX_FILE_ID)),
+        new SlottedRecordFile(loggedStorage(writeAheadLog, RECORD_FILE_ID)),
+        true
+    );
+  }
+
+  /**
+   * Open the files of a tree saved to {@code directory}.
+   *
+   * @param isLogged whether the files are written through a write-ahead log, which replays
+   *                 their committed writes as they are opened
+   */
+  private static <K extends Comparable<K>> BTree<K> open(
+      Path directory,
+      int nodeCacheSize,
+      IndexFile indexFile,
+      SlottedRecordFile recordFile,
+      boolean isLogged
+  ) throws IOException {
+    indexFile.openFile(directory.resolve(INDEX_FILE_NAME).toString());
+    recordFile.openFile(directory.resolve(RECORD_FILE_NAME).toString());
+    if (!indexFile.wasClosedCleanly()) {
+      if (!isLogged) {
+        indexFile.close();
+        recordFile.close();
+        throw new IllegalStateException(String.format(
+            "The tree in %s was not closed cleanly, and may be partly saved until it is "
+                + "repaired", directory
+        ));
+      }
+      // the log replayed every committed write, which leaves the files as of the last flush
+      indexFile.markConsistent();
+    }
+    // trees saved before schemas were cataloged have no schema file
+    SchemaCatalog schemaCatalog = null;
+    Path schemaFile = directory.resolve(SCHEMA_FILE_NAME);
+    if (Files.exists(schemaFile)) {
+      schemaCatalog = new SchemaCatalog();
+      schemaCatalog.openFile(schemaFile.toString());
+    }
+
+    return load(indexFile, recordFile, schemaCatalog, nodeCacheSize);
+  }
+
+  /**
+   * Check the tree saved to {@code directory} after it was not closed cleanly, such as after a
+   * crash without a {@link WriteAheadLog}, and rebuild the free pages of its index file, so that
+   * it can be {@link #open opened} again.
+   * <br>
+   * Every page reached from the root must hold a node that is reached once, with its leaves at
+   * the same depth and its records in the record file. Every other page is freed, whatever the
+   * free pages were before. Nodes written back after the last {@link #flush} may have reached
+   * the file, so the tree is only known to be whole, not to be as of a flush.
+   *
+   * @throws IllegalStateException if the tree is damaged beyond its free pages, and cannot be
+   *                               repaired
+   */
+  public static void repair(Path directory) throws IOException {
+    IndexFile indexFile = new IndexFile();
+    indexFile.openFile(directory.resolve(INDEX_FILE_NAME).toString());
+    SlottedRecordFile recordFile = new SlottedRecordFile();
+    recordFile.openFile(directory.resolve(RECORD_FILE_NAME).toString());
+    try {
+      if (indexFile.fragmentation().getTotalSlots() == 0) {
+        throw new IllegalStateException(String.format("%s holds no tree to repair", directory));
+      }
+      indexFile.rebuildFreeList(livePages(directory, indexFile, recordFile));
+    } finally {
+      recordFile.close();
+      indexFile.close();
+    }
+  }
+
+  /**
+   * Find the pages of the nodes reached from the root of a tree, checking that they form a
+   * whole tree.
+   *
+   * @throws IllegalStateException if they do not
+   */
+  private static BitSet livePages(
+      Path directory,
+      IndexFile indexFile,
+      SlottedRecordFile recordFile
+  ) throws IOException {
+    IndexFileHeader header = indexFile.readHeader();
+    long numberOfPages = indexFile.fragmentation().getTotalSlots();
+    BitSet livePages = new BitSet();
+    List<Long> offsets = new ArrayList<>(List.of(header.getRootOffset()));
+    List<Integer> depths = new ArrayList<>(List.of(0));
+    int leafDepth = -1;
+    while (!offsets.isEmpty()) {
+      long offset = offsets.removeLast();
+      int depth = depths.removeLast();
+      if (offset < 0 || offset >= numberOfPages || livePages.get(Math.toIntExact(offset))) {
+        throw new IllegalStateException(String.format(
+            "The tree in %s cannot be repaired, as it reaches page %d, which is not in the "
+                + "file or is reached twice", directory, offset
+        ));
+      }
+      livePages.set(Math.toIntExact(offset));
+
+      BTreeNode<?> node;
+      try {
+        node = BTreeNode.deserialize(
+            indexFile.read(offset), header.getKeyType(), header.getFanout()
+        );
+        if (node.getIsLeaf()) {
+          for (LongField recordOffset : node.getRecordOffsets()) {
+            // inline records have a negative offset, and are in the page of their leaf
+            if (recordOffset.getValue() >= 0) {
+              recordFile.read(RecordId.fromLong(recordOffset.getValue()));
+            }
+          }
+        }
+      } catch (RuntimeException e) {
+        throw new IllegalStateException(String.format(
+            "The tree in %s cannot be repaired, as page %d does not hold a whole node",
+            directory, offset
+        ), e);
+      }
+
+      boolean isWhole = node.getIsLeaf()
+          ? leafDepth == -1 || leafDepth == depth
+          : !node.getKeys().isEmpty()
+              && node.getPointerOffsets().size() == node.getKeys().size() + 1;
+      if (!isWhole) {
+        throw new IllegalStateException(String.format(
+            "The tree in %s cannot be repaired, as the node in page %d does not fit in it",
+            directory, offset
+        ));
+      }
+      if (node.getIsLeaf()) {
+        leafDepth = depth;
+        continue;
+      }
+      for (LongField pointerOffset : node.getPointerOffsets()) {
+        offsets.add(pointerOffset.getValue());
+        depths.add(depth + 1);
+      }
+    }
+    return livePages;
   }
 
   /**
@@ -32,49 +447,144 @@ public class BTree<K extends Comparable<K>> {
    */
   public Record<K> insert(@NonNull Record<K> record) {
     SortableField<K> key = record.getKey();
-    BTreeNode<K> targetLeafNode = findTargetLeafNode(key);
-
-    Optional<BTreeNode<K>> newRootOptional = targetLeafNode.addNewRecord(record);
+    checkKeySize(key);
+    lock.writeLock().lock();
+    try {
+      if (nodeCache != null) {
+        insertIntoPages(record);
+        return record;
+      }
+      BTreeNode<K> targetLeafNode = findTargetLeafNode(key);
 
-    newRootOptional.ifPresent(newRoot -> this.root = newRoot);
+      BTreeNode<K> newRoot = targetLeafNode.addNewRecord(record);
+      if (newRoot != null) {
+        this.root = newRoot;
+      }
 
-    return record;
+      return record;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
   /**
-   * Update a record.
+   * Update a record. The record of a tree loaded from disk is written over in its leaf page or
+   * record file.
    *
    * @param record new record to update
    * @return updated record
    */
   public Record<K> update(@NonNull Record<K> record) {
-    SortableField<K> key = record.getKey();
-    BTreeNode<K> targetLeafNode = findTargetLeafNode(key);
+    lock.writeLock().lock();
+    try {
+      if (nodeCache != null) {
+        updateInPages(record);
+        return record;
+      }
+      SortableField<K> key = record.getKey();
+      BTreeNode<K> targetLeafNode = findTargetLeafNode(key);
 
-    return targetLeafNode.updateRecord(record);
+      return targetLeafNode.updateRecord(record);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
   /**
-   * Delete a record, given a key.
+   * Delete a record, given a key. The record of a tree loaded from disk is removed from its leaf
+   * page, and deleted from the record file if it is not inline.
    *
    * @param key key of the record to delete
    */
   public void delete(@NonNull SortableField<K> key) {
+    lock.writeLock().lock();
+    try {
+      if (nodeCache != null) {
+        deleteFromPages(key);
+        return;
+      }
+      deleteFromMemory(key);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void deleteFromMemory(SortableField<K> key) {
     BTreeNode<K> targetLeafNode = findTargetLeafNode(key);
 
-    Optional<BTreeNode<K>> newRootOptional = targetLeafNode.deleteRecord(key);
+    BTreeNode<K> newRoot = targetLeafNode.deleteRecord(key);
+    if (newRoot == null) {
+      return;
+    }
 
-    newRootOptional.ifPresent(newRoot -> {
-      boolean isNewRootEmpty = newRoot.getIsLeaf()
-          ? newRoot.getRecords().isEmpty() : newRoot.getKeys().isEmpty();
+    boolean isNewRootEmpty = newRoot.getIsLeaf()
+        ? newRoot.getRecords().isEmpty() : newRoot.getKeys().isEmpty();
 
-      if (isNewRootEmpty) {
-        this.root = null;
-      } else {
-        this.root = newRoot;
-        this.root.setParent(null);
+    if (isNewRootEmpty) {
+      this.root = null;
+    } else {
+      this.root = newRoot;
+      this.root.setParent(null);
+    }
+  }
+
+  /**
+   * Build the tree from records sorted by key, filling leaf nodes to
+   * {@link #DEFAULT_BULK_LOAD_FILL_FACTOR}.
+   *
+   * @see #bulkLoad(Iterator, double)
+   */
+  public void bulkLoad(@NonNull Iterator<Record<K>> sortedRecords) {
+    bulkLoad(sortedRecords, DEFAULT_BULK_LOAD_FILL_FACTOR);
+  }
+
+  /**
+   * Build the tree from records sorted by key.
+   * <br>
+   * Nodes are packed bottom-up in a single pass over the input by a {@link BulkLoader}, which
+   * only keeps the last few nodes of every level in memory, so no record is ever inserted
+   * through the root and no node is split. Every node ends up holding about
+   * {@code fillFactor * fanout} entries, but never fewer than the minimum occupancy (except for
+   * the root) so that later inserts and deletes keep working as usual.
+   *
+   * @param sortedRecords records in strictly ascending key order
+   * @param fillFactor    fraction of each node to fill, in {@code (0, 1]}
+   * @throws IllegalStateException            if the tree is not empty
+   * @throws IllegalArgumentException          if the fill factor is out of range, or the records
+   *                                           are not in strictly ascending key order
+   * @throws InvalidMethodInvocationException if the tree was loaded from disk
+   */
+  public void bulkLoad(@NonNull Iterator<Record<K>> sortedRecords, double fillFactor) {
+    if (fillFactor <= 0 || fillFactor > 1) {
+      throw new IllegalArgumentException(
+          String.format("Fill factor must be in (0, 1], got %s", fillFactor)
+      );
+    }
+    checkInMemory();
+    lock.writeLock().lock();
+    try {
+      if (!isEmpty()) {
+        throw new IllegalStateException("Cannot bulk load into a non-empty tree");
       }
-    });
+
+      BulkLoader<K> bulkLoader = new BulkLoader<>(fanout, minOccupancy(), fillFactor);
+      sortedRecords.forEachRemaining(record -> {
+        checkKeySize(record.getKey());
+        bulkLoader.add(record);
+      });
+      BTreeNode<K> newRoot = bulkLoader.finish();
+
+      this.root = newRoot == null ? BTreeNode.createLeafNode(fanout) : newRoot;
+      this.root.setParent(null);
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
   /**
@@ -83,20 +593,857 @@ public class BTree<K extends Comparable<K>> {
    * @param key the search key
    * */
   public Record<K> findRecord(SortableField<K> key) {
-    if (this.root == null) {
-      return null;
+    lock.readLock().lock();
+    try {
+      if (this.root == null) {
+        return null;
+      }
+      BTreeNode<K> targetLeafNode = findTargetLeafNode(key);
+      int recordIndex = SearchUtil.searchForIndex(key, targetLeafNode.getKeys());
+
+      if (recordIndex == -1) {
+        return null;
+      }
+
+      return recordAt(targetLeafNode, recordIndex);
+    } finally {
+      lock.readLock().unlock();
     }
-    BTreeNode<K> targetLeafNode = findTargetLeafNode(key);
-    int recordIndex = SearchUtil.searchForIndex(
-        key,
-        targetLeafNode.getRecords().stream().map(Record::getKey).toList()
+  }
+
+  /**
+   * Find the records of many keys like {@link #findRecord}. For a tree loaded from disk, the
+   * leaf nodes of all the keys are found first, then their records are read from the record
+   * file at once, so that the reads overlap instead of waiting for each other.
+   *
+   * @return the record of each key, in the order of {@code keys}, {@code null} for a key without
+   *     a record
+   */
+  public List<Record<K>> findRecords(List<SortableField<K>> keys) {
+    if (nodeCache == null) {
+      return keys.stream().map(this::findRecord).toList();
+    }
+    lock.readLock().lock();
+    try {
+      return findRecordsInPages(keys);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private List<Record<K>> findRecordsInPages(List<SortableField<K>> keys) {
+    List<Record<K>> records = new ArrayList<>(Collections.nCopies(keys.size(), null));
+    List<Integer> keyIndexes = new ArrayList<>();
+    List<RecordId> recordIds = new ArrayList<>();
+    for (int i = 0; i < keys.size(); i++) {
+      BTreeNode<K> targetLeafNode = findTargetLeafNode(keys.get(i));
+      int recordIndex = SearchUtil.searchForIndex(keys.get(i), targetLeafNode.getKeys());
+      if (recordIndex == -1) {
+        continue;
+      }
+      List<ByteBuffer> inlineRecords = targetLeafNode.getInlineRecords();
+      if (inlineRecords != null && inlineRecords.get(recordIndex) != null) {
+        records.set(i, recordAt(targetLeafNode, recordIndex));
+        continue;
+      }
+      keyIndexes.add(i);
+      recordIds.add(
+          RecordId.fromLong(targetLeafNode.getRecordOffsets().get(recordIndex).getValue())
+      );
+    }
+
+    List<CompletableFuture<ByteBuffer>> reads = recordFile.readAll(recordIds);
+    for (int i = 0; i < reads.size(); i++) {
+      try {
+        records.set(keyIndexes.get(i), deserializeRecord(reads.get(i).join()));
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof IOException ioException) {
+          throw new UncheckedIOException(ioException);
+        }
+        if (e.getCause() instanceof RuntimeException runtimeException) {
+          throw runtimeException;
+        }
+        throw e;
+      }
+    }
+    return records;
+  }
+
+  /**
+   * Find a record like {@link #findRecord}, but only decode the fields that are read from the
+   * returned view. For a tree loaded from disk, the view wraps the bytes of the record as read
+   * from its leaf page or record file; a record of a tree in memory is serialized.
+   *
+   * @return view of the record with key {@code key}, {@code null} if there is none
+   */
+  public RecordView<K> findRecordView(SortableField<K> key) {
+    lock.readLock().lock();
+    try {
+      if (this.root == null) {
+        return null;
+      }
+      BTreeNode<K> targetLeafNode = findTargetLeafNode(key);
+      int recordIndex = SearchUtil.searchForIndex(key, targetLeafNode.getKeys());
+
+      if (recordIndex == -1) {
+        return null;
+      }
+      if (nodeCache == null) {
+        return RecordView.of(targetLeafNode.getRecords().get(recordIndex).serialize());
+      }
+
+      ByteBuffer bytes = recordBytesAt(targetLeafNode, recordIndex);
+      return schemaCatalog == null ? RecordView.of(bytes) : RecordView.of(bytes, schemaCatalog);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Iterate over the records whose keys are in {@code [fromKey, toKey)}, in key order.
+   * <br>
+   * Only the first leaf node is found by descending from the root, the following ones are
+   * reached through the links between leaf nodes.
+   *
+   * @param fromKey inclusive lower bound, {@code null} to start from the smallest key
+   * @param toKey   exclusive upper bound, {@code null} to iterate up to the largest key
+   */
+  public Iterator<Record<K>> scan(SortableField<K> fromKey, SortableField<K> toKey) {
+    lock.readLock().lock();
+    try {
+      if (this.root == null) {
+        return Collections.emptyIterator();
+      }
+
+      if (fromKey == null) {
+        return new RangeScanIterator<>(this, findLeftMostLeafNode(), 0, toKey);
+      }
+
+      BTreeNode<K> startLeafNode = findTargetLeafNode(fromKey);
+      int startIndex = SearchUtil.findFirstNotSmallerIndex(fromKey, startLeafNode.getKeys());
+
+      return new RangeScanIterator<>(this, startLeafNode, startIndex, toKey);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Write the tree to an empty {@link IndexFile}, one node per page, and its records to
+   * {@code recordFile}.
+   *
+   * @see #save(IndexFile, SlottedRecordFile, RecordLayout)
+   */
+  public void save(IndexFile indexFile, SlottedRecordFile recordFile) throws IOException {
+    save(indexFile, recordFile, RecordLayout.SEPARATE);
+  }
+
+  /**
+   * Write the tree to an empty {@link IndexFile}, one node per page, and its records to
+   * {@code recordFile} or into the leaf pages, as {@code layout} tells. The root offset is
+   * recorded in the header of the index file.
+   *
+   * @throws IllegalStateException if the index file is not empty
+   */
+  public void save(
+      IndexFile indexFile,
+      SlottedRecordFile recordFile,
+      RecordLayout layout
+  ) throws IOException {
+    save(indexFile, recordFile, null, layout);
+  }
+
+  /**
+   * Write the tree like {@link #save(IndexFile, SlottedRecordFile, RecordLayout)}, with the
+   * values of every record packed against its schema in {@code schemaCatalog}, rather than with
+   * the names and types of its fields.
+   *
+   * @param schemaCatalog catalog to {@link #load} the tree with, {@code null} to save every
+   *                      record with the names and types of its fields
+   * @throws IllegalStateException            if the index file is not empty
+   * @throws InvalidMethodInvocationException if the tree was loaded from disk, and is thus
+   *                                          already saved
+   */
+  public void save(
+      IndexFile indexFile,
+      SlottedRecordFile recordFile,
+      SchemaCatalog schemaCatalog,
+      RecordLayout layout
+  ) throws IOException {
+    checkInMemory();
+    lock.writeLock().lock();
+    try {
+      saveNodes(indexFile, recordFile, schemaCatalog, layout);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void saveNodes(
+      IndexFile indexFile,
+      SlottedRecordFile recordFile,
+      SchemaCatalog schemaCatalog,
+      RecordLayout layout
+  ) throws IOException {
+    if (indexFile.fragmentation().getTotalSlots() > 0) {
+      throw new IllegalStateException("Cannot save a tree into a non-empty index file");
+    }
+
+    // breadth first, so that the nodes of a level are next to each other in the file
+    List<BTreeNode<K>> nodes = new ArrayList<>();
+    nodes.add(root == null ? BTreeNode.createLeafNode(fanout) : root);
+    for (int i = 0; i < nodes.size(); i++) {
+      if (!nodes.get(i).getIsLeaf()) {
+        nodes.addAll(nodes.get(i).getPointers());
+      }
+    }
+
+    // pages are allocated first, as a node refers to the pages of its parent and siblings
+    Map<BTreeNode<K>, Long> offsets = new IdentityHashMap<>();
+    ByteBuffer emptyPage = ByteBuffer.allocate(DataConstants.PAGE_SIZE_BYTES);
+    for (BTreeNode<K> node : nodes) {
+      offsets.put(node, indexFile.append(emptyPage.duplicate(), keyType, fanout));
+    }
+
+    // one page is reused to serialize every node, as the index file copies what it writes
+    ByteBuffer page = emptyPage;
+    for (BTreeNode<K> node : nodes) {
+      if (node.getIsLeaf()) {
+        node.setPrevOffset(offsetOf(node.getPrev(), offsets));
+        node.setNextOffset(offsetOf(node.getNext(), offsets));
+        saveRecords(node, recordFile, schemaCatalog, layout);
+      } else {
+        node.getPointerOffsets().clear();
+        node.getPointers().forEach(child -> node.getPointerOffsets().add(offsetOf(child, offsets)));
+      }
+      node.writeTo(page.clear());
+      indexFile.update(page.flip(), offsets.get(node));
+      // the serialized records are only needed in the page
+      node.setInlineRecords(null);
+    }
+    indexFile.setRootOffset(offsets.get(nodes.getFirst()));
+  }
+
+  /**
+   * Write the tree to new files in {@code directory}, with its records in the record file.
+   *
+   * @see #save(Path, RecordLayout)
+   */
+  public void save(Path directory) throws IOException {
+    save(directory, RecordLayout.SEPARATE);
+  }
+
+  /**
+   * Write the tree to new files in {@code directory}, to {@link #open} it from later on. The
+   * schemas of the records are cataloged in a file of their own.
+   *
+   * @throws IllegalStateException if the directory already holds a tree
+   */
+  public void save(Path directory, RecordLayout layout) throws IOException {
+    save(directory, layout, new IndexFile(), new SlottedRecordFile());
+  }
+
+  /**
+   * Write the tree to new files in {@code directory} like {@link #save(Path, RecordLayout)},
+   * through {@code writeAheadLog}, to {@link #open(Path, WriteAheadLog)} it with later on.
+   */
+  public void save(
+      Path directory,
+      RecordLayout layout,
+      WriteAheadLog writeAheadLog
+  ) throws IOException {
+    save(
+        directory,
+        layout,
+        new IndexFile(loggedStorage(writeAheadLog, INDEX_FILE_ID)),
+        new SlottedRecordFile(loggedStorage(writeAheadLog, RECORD_FILE_ID))
     );
+  }
+
+  private void save(
+      Path directory,
+      RecordLayout layout,
+      IndexFile indexFile,
+      SlottedRecordFile recordFile
+  ) throws IOException {
+    indexFile.openFile(directory.resolve(INDEX_FILE_NAME).toString());
+    recordFile.openFile(directory.resolve(RECORD_FILE_NAME).toString());
+    if (indexFile.fragmentation().getTotalSlots() > 0) {
+      recordFile.close();
+      indexFile.close();
+      throw new IllegalStateException(String.format("%s already holds a tree", directory));
+    }
+
+    SchemaCatalog schemaCatalog = new SchemaCatalog();
+    schemaCatalog.openFile(directory.resolve(SCHEMA_FILE_NAME).toString());
+    try {
+      save(indexFile, recordFile, schemaCatalog, layout);
+    } catch (IOException | RuntimeException e) {
+      // a partly saved tree must not be opened later
+      schemaCatalog.delete();
+      recordFile.delete();
+      indexFile.deleteAll();
+      throw e;
+    }
+    // the records reach the disk before the index file is marked as closed cleanly, and the
+    // catalog is flushed as schemas are added
+    recordFile.flush();
+    schemaCatalog.close();
+    recordFile.close();
+    indexFile.close();
+  }
+
+  /**
+   * Write the nodes changed since a tree was loaded from disk back to its index file, and make
+   * them and its records reach the disk. Nothing is done for a tree in memory.
+   */
+  public void flush() throws IOException {
+    if (nodeCache == null) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      flushFiles();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Close the files of a tree loaded from disk, once the nodes it changed are written back.
+   * Nothing is done for a tree in memory.
+   */
+  public void close() throws IOException {
+    if (nodeCache == null) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      // the records reach the disk before the index file is marked as closed cleanly
+      flushFiles();
+      nodeCache.close();
+      recordFile.close();
+      if (schemaCatalog != null) {
+        schemaCatalog.close();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Make the records written since the last flush reach the disk, then the nodes pointing to
+   * them, and only then the deletes of the records no node points to anymore.
+   */
+  private void flushFiles() throws IOException {
+    recordFile.flush();
+    nodeCache.flush();
+    if (deletedRecords.isEmpty()) {
+      return;
+    }
+    for (RecordId recordId : deletedRecords) {
+      recordFile.delete(recordId);
+    }
+    deletedRecords.clear();
+    recordFile.flush();
+  }
+
+  /**
+   * Get the {@code index}-th record of a leaf node, reading it if the tree was loaded from disk.
+   */
+  Record<K> recordAt(BTreeNode<K> leafNode, int index) {
+    if (nodeCache == null) {
+      return leafNode.getRecords().get(index);
+    }
+
+    lock.readLock().lock();
+    try {
+      return deserializeRecord(recordBytesAt(leafNode, index));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private Record<K> deserializeRecord(ByteBuffer bytes) {
+    return schemaCatalog == null
+        ? Record.deserialize(bytes)
+        : Record.deserialize(bytes, schemaCatalog);
+  }
+
+  /**
+   * Get the serialized {@code index}-th record of a leaf node of a tree loaded from disk.
+   */
+  private ByteBuffer recordBytesAt(BTreeNode<K> leafNode, int index) {
+    List<ByteBuffer> inlineRecords = leafNode.getInlineRecords();
+    if (inlineRecords != null && inlineRecords.get(index) != null) {
+      return inlineRecords.get(index).duplicate();
+    }
+    RecordId recordId = RecordId.fromLong(leafNode.getRecordOffsets().get(index).getValue());
+    try {
+      return recordFile.read(recordId);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Get the leaf node following {@code leafNode} in key order, {@code null} for the last one.
+   */
+  BTreeNode<K> nextLeafNode(BTreeNode<K> leafNode) {
+    if (nodeCache == null) {
+      return leafNode.getNext();
+    }
+    lock.readLock().lock();
+    try {
+      LongField nextOffset = leafNode.getNextOffset();
+
+      return nextOffset == null ? null : nodeCache.get(nextOffset.getValue());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Insert a record into the pages of a tree loaded from disk. The leaf node it goes to, and
+   * every node above that it overflows, is split into a new page, up to the root.
+   */
+  private void insertIntoPages(Record<K> record) throws IOException {
+    SortableField<K> key = record.getKey();
+    List<Long> path = pathTo(key);
+    long nodeOffset = path.removeLast();
+    BTreeNode<K> node = nodeCache.get(nodeOffset);
+    int index = SearchUtil.findFirstNotSmallerIndex(key, node.getKeys());
+    if (index < node.getKeys().size() && node.getKeys().get(index).compareTo(key) == 0) {
+      throw new RecordAlreadyExistException(key);
+    }
+
+    // the record goes inline if the page still has room for it once its key is added
+    ByteBuffer bytes = serializeRecord(record, schemaCatalog);
+    ByteBuffer inlineRecord = node.getInlineRecords() != null && fitsInline(
+        bytes.remaining(),
+        node.freeInlineRecordSpace() - key.getSize() - DataConstants.POINTER_SIZE_BYTES
+    ) ? copyOf(bytes) : null;
+    long recordOffset = inlineRecord == null
+        ? recordFile.append(bytes).toLong()
+        : BTreeNode.inlineRecordOffset(inlineRecord.remaining());
+    node.getKeys().add(index, key);
+    node.getRecordOffsets().add(index, LongField.fromValue(recordOffset));
+    if (node.getInlineRecords() != null) {
+      node.getInlineRecords().add(index, inlineRecord);
+    }
+
+    while (isOverflowed(node)) {
+      long siblingOffset = nodeCache.allocate();
+      SortableField<K> keyBubbledUp;
+      BTreeNode<K> sibling;
+      if (node.getIsLeaf()) {
+        sibling = splitLeafNode(nodeOffset, node, siblingOffset);
+        keyBubbledUp = sibling.getKeys().getFirst();
+      } else {
+        keyBubbledUp = node.getKeys().get(fanout / 2);
+        sibling = splitInternalNode(node);
+      }
+
+      long parentOffset;
+      BTreeNode<K> parent;
+      if (path.isEmpty()) {
+        // the root was split, so a new root is put above it
+        parentOffset = nodeCache.allocate();
+        parent = BTreeNode.createInternalNode(fanout);
+        parent.getPointerOffsets().add(LongField.fromValue(nodeOffset));
+        nodeCache.setRootOffset(parentOffset);
+        rootOffset = parentOffset;
+      } else {
+        parentOffset = path.removeLast();
+        parent = nodeCache.get(parentOffset);
+      }
+      spillInlineRecords(node);
+      spillInlineRecords(sibling);
+      nodeCache.markDirty(nodeOffset, node);
+      nodeCache.markDirty(siblingOffset, sibling);
+
+      // a new root has no keys yet
+      int keyIndex = parent.getKeys().isEmpty()
+          ? 0 : SearchUtil.findFirstLargerIndex(keyBubbledUp, parent.getKeys());
+      parent.getKeys().add(keyIndex, keyBubbledUp);
+      parent.getPointerOffsets().add(keyIndex + 1, LongField.fromValue(siblingOffset));
+      nodeOffset = parentOffset;
+      node = parent;
+    }
+    spillInlineRecords(node);
+    nodeCache.markDirty(nodeOffset, node);
+    root = nodeCache.get(rootOffset);
+  }
+
+  /**
+   * Move the upper half of an overflowed leaf node of a tree loaded from disk into a new right
+   * sibling, in page {@code siblingOffset}, and link the sibling after it.
+   */
+  private BTreeNode<K> splitLeafNode(
+      long leafOffset,
+      BTreeNode<K> leafNode,
+      long siblingOffset
+  ) {
+    BTreeNode<K> sibling = BTreeNode.createLeafNode(fanout);
+    moveUpperHalf(leafNode.getKeys(), sibling.getKeys(), fanout / 2);
+    moveUpperHalf(leafNode.getRecordOffsets(), sibling.getRecordOffsets(), fanout / 2);
+    if (leafNode.getInlineRecords() != null) {
+      sibling.setInlineRecords(new ArrayList<>());
+      moveUpperHalf(leafNode.getInlineRecords(), sibling.getInlineRecords(), fanout / 2);
+    }
+
+    sibling.setPrevOffset(LongField.fromValue(leafOffset));
+    sibling.setNextOffset(leafNode.getNextOffset());
+    if (leafNode.getNextOffset() != null) {
+      long nextOffset = leafNode.getNextOffset().getValue();
+      BTreeNode<K> next = nodeCache.get(nextOffset);
+      next.setPrevOffset(LongField.fromValue(siblingOffset));
+      nodeCache.markDirty(nextOffset, next);
+    }
+    leafNode.setNextOffset(LongField.fromValue(siblingOffset));
+    return sibling;
+  }
+
+  /**
+   * Move the upper half of an overflowed internal node of a tree loaded from disk into a new
+   * right sibling. The middle key is dropped, for the caller to bubble up. The children that
+   * moved are not read, as a page does not keep the offset of its parent.
+   */
+  private BTreeNode<K> splitInternalNode(BTreeNode<K> internalNode) {
+    BTreeNode<K> sibling = BTreeNode.createInternalNode(fanout);
+    moveUpperHalf(internalNode.getKeys(), sibling.getKeys(), fanout / 2 + 1);
+    internalNode.getKeys().removeLast();
+    moveUpperHalf(internalNode.getPointerOffsets(), sibling.getPointerOffsets(), fanout / 2 + 1);
+    return sibling;
+  }
+
+  /**
+   * Update a record in the pages of a tree loaded from disk. An inline record that no longer
+   * fits in its leaf page moves to the record file, and a record in the record file is
+   * updated there, or appended anew if it no longer fits in its page.
+   */
+  private void updateInPages(Record<K> record) throws IOException {
+    SortableField<K> key = record.getKey();
+    long leafOffset = pathTo(key).getLast();
+    BTreeNode<K> leafNode = nodeCache.get(leafOffset);
+    int index = SearchUtil.searchForIndex(key, leafNode.getKeys());
+    if (index == -1) {
+      throw new RecordNotFoundException(key);
+    }
+
+    ByteBuffer bytes = serializeRecord(record, schemaCatalog);
+    List<ByteBuffer> inlineRecords = leafNode.getInlineRecords();
+    ByteBuffer oldInlineRecord = inlineRecords == null ? null : inlineRecords.get(index);
+    long recordOffset;
+    if (oldInlineRecord != null) {
+      int freeInlineRecordSpace = leafNode.freeInlineRecordSpace() + oldInlineRecord.remaining();
+      ByteBuffer inlineRecord = fitsInline(bytes.remaining(), freeInlineRecordSpace)
+          ? copyOf(bytes) : null;
+      recordOffset = inlineRecord == null
+          ? recordFile.append(bytes).toLong()
+          : BTreeNode.inlineRecordOffset(inlineRecord.remaining());
+      inlineRecords.set(index, inlineRecord);
+    } else {
+      RecordId recordId = RecordId.fromLong(leafNode.getRecordOffsets().get(index).getValue());
+      if (recordFile.updateInPlace(bytes, recordId)) {
+        return;
+      }
+      recordOffset = recordFile.append(bytes).toLong();
+      deletedRecords.add(recordId);
+    }
+    leafNode.getRecordOffsets().set(index, LongField.fromValue(recordOffset));
+    nodeCache.markDirty(leafOffset, leafNode);
+  }
+
+  /**
+   * Delete a record from the pages of a tree loaded from disk. A node it leaves with fewer than
+   * {@link #minOccupancy()} entries borrows one from a sibling, or is merged into one, and so on
+   * up to the root, and the pages of the merged nodes are freed.
+   */
+  private void deleteFromPages(SortableField<K> key) throws IOException {
+    List<Long> path = pathTo(key);
+    long nodeOffset = path.removeLast();
+    BTreeNode<K> node = nodeCache.get(nodeOffset);
+    int index = SearchUtil.searchForIndex(key, node.getKeys());
+    if (index == -1) {
+      throw new RecordNotFoundException(key);
+    }
+
+    long recordOffset = node.getRecordOffsets().get(index).getValue();
+    node.getKeys().remove(index);
+    node.getRecordOffsets().remove(index);
+    if (node.getInlineRecords() != null) {
+      node.getInlineRecords().remove(index);
+    }
+    nodeCache.markDirty(nodeOffset, node);
+    // inline records have a negative offset, and go away with their leaf page
+    if (recordOffset >= 0) {
+      deletedRecords.add(RecordId.fromLong(recordOffset));
+    }
+
+    while (!path.isEmpty() && occupancy(node) < minOccupancy()) {
+      long parentOffset = path.removeLast();
+      BTreeNode<K> parent = nodeCache.get(parentOffset);
+      int pointerIndex = SearchUtil.findFirstLargerIndex(key, parent.getKeys());
+      mergeOrRebalance(parentOffset, parent, pointerIndex);
+      node = parent;
+    }
+
+    // a root left with a single child makes way for it
+    BTreeNode<K> rootNode = nodeCache.get(rootOffset);
+    if (!rootNode.getIsLeaf() && rootNode.getKeys().isEmpty()) {
+      long oldRootOffset = rootOffset;
+      rootOffset = rootNode.getPointerOffsets().getFirst().getValue();
+      nodeCache.setRootOffset(rootOffset);
+      nodeCache.free(oldRootOffset);
+    }
+    root = nodeCache.get(rootOffset);
+  }
+
+  /**
+   * Fix the underfull child at {@code pointerIndex} of the node in page {@code parentOffset},
+   * by borrowing an entry from a sibling that has more than enough, or else by merging it with
+   * a sibling, whose page is freed.
+   */
+  private void mergeOrRebalance(
+      long parentOffset,
+      BTreeNode<K> parent,
+      int pointerIndex
+  ) throws IOException {
+    List<LongField> pointerOffsets = parent.getPointerOffsets();
+    long nodeOffset = pointerOffsets.get(pointerIndex).getValue();
+    BTreeNode<K> node = nodeCache.get(nodeOffset);
+    long leftOffset = pointerIndex > 0 ? pointerOffsets.get(pointerIndex - 1).getValue() : -1;
+    BTreeNode<K> left = leftOffset < 0 ? null : nodeCache.get(leftOffset);
+    long rightOffset = pointerIndex < pointerOffsets.size() - 1
+        ? pointerOffsets.get(pointerIndex + 1).getValue() : -1;
+    BTreeNode<K> right = rightOffset < 0 ? null : nodeCache.get(rightOffset);
+
+    if (left != null && occupancy(left) > minOccupancy()) {
+      borrowFromLeft(node, left, parent, pointerIndex - 1);
+      markDirty(leftOffset, left);
+      markDirty(nodeOffset, node);
+    } else if (right != null && occupancy(right) > minOccupancy()) {
+      borrowFromRight(node, right, parent, pointerIndex);
+      markDirty(rightOffset, right);
+      markDirty(nodeOffset, node);
+    } else if (left != null) {
+      mergeWithRight(leftOffset, left, node, parent, pointerIndex - 1);
+      markDirty(leftOffset, left);
+      nodeCache.free(nodeOffset);
+    } else {
+      mergeWithRight(nodeOffset, node, right, parent, pointerIndex);
+      markDirty(nodeOffset, node);
+      nodeCache.free(rightOffset);
+    }
+    nodeCache.markDirty(parentOffset, parent);
+  }
+
+  /**
+   * Move the last entry of {@code left} to the front of its right sibling {@code node}, through
+   * the key at {@code keyIndex} of their parent for internal nodes.
+   */
+  private void borrowFromLeft(
+      BTreeNode<K> node,
+      BTreeNode<K> left,
+      BTreeNode<K> parent,
+      int keyIndex
+  ) {
+    if (node.getIsLeaf()) {
+      node.getKeys().addFirst(left.getKeys().removeLast());
+      node.getRecordOffsets().addFirst(left.getRecordOffsets().removeLast());
+      if (node.getInlineRecords() != null) {
+        node.getInlineRecords().addFirst(left.getInlineRecords().removeLast());
+      }
+      parent.getKeys().set(keyIndex, node.getKeys().getFirst());
+      return;
+    }
+    node.getKeys().addFirst(parent.getKeys().get(keyIndex));
+    node.getPointerOffsets().addFirst(left.getPointerOffsets().removeLast());
+    parent.getKeys().set(keyIndex, left.getKeys().removeLast());
+  }
+
+  /**
+   * Move the first entry of {@code right} to the end of its left sibling {@code node}, through
+   * the key at {@code keyIndex} of their parent for internal nodes.
+   */
+  private void borrowFromRight(
+      BTreeNode<K> node,
+      BTreeNode<K> right,
+      BTreeNode<K> parent,
+      int keyIndex
+  ) {
+    if (node.getIsLeaf()) {
+      node.getKeys().addLast(right.getKeys().removeFirst());
+      node.getRecordOffsets().addLast(right.getRecordOffsets().removeFirst());
+      if (node.getInlineRecords() != null) {
+        node.getInlineRecords().addLast(right.getInlineRecords().removeFirst());
+      }
+      parent.getKeys().set(keyIndex, right.getKeys().getFirst());
+      return;
+    }
+    node.getKeys().addLast(parent.getKeys().get(keyIndex));
+    node.getPointerOffsets().addLast(right.getPointerOffsets().removeFirst());
+    parent.getKeys().set(keyIndex, right.getKeys().removeFirst());
+  }
+
+  /**
+   * Move every entry of {@code right} into its left sibling {@code left}, in page
+   * {@code leftOffset}, and remove the key at {@code keyIndex} of their parent, and the pointer
+   * to {@code right} after it. Leaf nodes are unlinked from {@code right}.
+   */
+  private void mergeWithRight(
+      long leftOffset,
+      BTreeNode<K> left,
+      BTreeNode<K> right,
+      BTreeNode<K> parent,
+      int keyIndex
+  ) {
+    SortableField<K> separatorKey = parent.getKeys().remove(keyIndex);
+    parent.getPointerOffsets().remove(keyIndex + 1);
+    if (!left.getIsLeaf()) {
+      left.getKeys().add(separatorKey);
+      left.getKeys().addAll(right.getKeys());
+      left.getPointerOffsets().addAll(right.getPointerOffsets());
+      return;
+    }
+
+    left.getKeys().addAll(right.getKeys());
+    left.getRecordOffsets().addAll(right.getRecordOffsets());
+    if (left.getInlineRecords() != null) {
+      left.getInlineRecords().addAll(right.getInlineRecords());
+    }
+    left.setNextOffset(right.getNextOffset());
+    if (right.getNextOffset() != null) {
+      long nextOffset = right.getNextOffset().getValue();
+      BTreeNode<K> next = nodeCache.get(nextOffset);
+      next.setPrevOffset(LongField.fromValue(leftOffset));
+      nodeCache.markDirty(nextOffset, next);
+    }
+  }
+
+  /**
+   * Mark a node that took entries from a sibling dirty, once the inline records it no longer
+   * has room for are moved to the record file.
+   */
+  private void markDirty(long offset, BTreeNode<K> node) throws IOException {
+    spillInlineRecords(node);
+    nodeCache.markDirty(offset, node);
+  }
+
+  /**
+   * Move the last inline records of a clustered leaf node to the record file, until the others
+   * fit in its page again.
+   */
+  private void spillInlineRecords(BTreeNode<K> leafNode) throws IOException {
+    List<ByteBuffer> inlineRecords = leafNode.getInlineRecords();
+    if (!leafNode.getIsLeaf() || inlineRecords == null) {
+      return;
+    }
+    for (int i = inlineRecords.size() - 1; i >= 0 && leafNode.freeInlineRecordSpace() < 0; i--) {
+      if (inlineRecords.get(i) != null) {
+        RecordId recordId = recordFile.append(inlineRecords.get(i).duplicate());
+        leafNode.getRecordOffsets().set(i, LongField.fromValue(recordId.toLong()));
+        inlineRecords.set(i, null);
+      }
+    }
+  }
 
-    if (recordIndex == -1) {
-      return null;
+  /**
+   * Offsets of the pages from the root down to the leaf node that possibly contains a record
+   * with key {@code key}, in a tree loaded from disk.
+   */
+  private List<Long> pathTo(SortableField<K> key) {
+    List<Long> path = new ArrayList<>();
+    path.add(rootOffset);
+    BTreeNode<K> currentNode = nodeCache.get(rootOffset);
+    while (!currentNode.getIsLeaf()) {
+      int pointerIndex = SearchUtil.findFirstLargerIndex(key, currentNode.getKeys());
+      long childOffset = currentNode.getPointerOffsets().get(pointerIndex).getValue();
+      path.add(childOffset);
+      currentNode = nodeCache.get(childOffset);
     }
+    return path;
+  }
+
+  /**
+   * Whether an insert left a leaf node with more than {@link #fanout} records, or an internal
+   * node with more than {@link #fanout} pointers.
+   */
+  private boolean isOverflowed(BTreeNode<K> node) {
+    return occupancy(node) > fanout;
+  }
+
+  private static boolean fitsInline(int length, int freeInlineRecordSpace) {
+    return length <= MAX_INLINE_RECORD_SIZE && length <= freeInlineRecordSpace;
+  }
+
+  private static ByteBuffer copyOf(ByteBuffer bytes) {
+    return ByteBuffer.allocate(bytes.remaining()).put(bytes.duplicate()).flip();
+  }
+
+  /**
+   * Move the entries of {@code entries} from {@code from} on to the end of the empty
+   * {@code upperHalf}.
+   */
+  private static <T> void moveUpperHalf(List<T> entries, List<T> upperHalf, int from) {
+    List<T> entriesToMove = entries.subList(from, entries.size());
+    upperHalf.addAll(entriesToMove);
+    entriesToMove.clear();
+  }
+
+  /**
+   * Serialize a record into the scratch buffer of the current thread, packed against its schema
+   * in {@code schemaCatalog} if there is one.
+   */
+  private static <K extends Comparable<K>> ByteBuffer serializeRecord(
+      Record<K> record,
+      SchemaCatalog schemaCatalog
+  ) throws IOException {
+    ByteBuffer bytes;
+    if (schemaCatalog == null) {
+      bytes = ScratchBuffer.get(record.getSerializedSize());
+      record.writeTo(bytes);
+    } else {
+      bytes = ScratchBuffer.get(record.getPackedSize());
+      record.writeTo(bytes, schemaCatalog);
+    }
+    return bytes.flip();
+  }
+
+  /**
+   * Set the record offsets of a leaf node about to be saved. With {@link RecordLayout#CLUSTERED},
+   * records go inline in key order as long as the page has room for them, and the others, as
+   * well as those over {@link #MAX_INLINE_RECORD_SIZE}, overflow to the record file.
+   */
+  private void saveRecords(
+      BTreeNode<K> leafNode,
+      SlottedRecordFile recordFile,
+      SchemaCatalog schemaCatalog,
+      RecordLayout layout
+  ) throws IOException {
+    boolean isClustered = layout == RecordLayout.CLUSTERED;
+    List<ByteBuffer> inlineRecords = isClustered ? new ArrayList<>() : null;
+    int inlineRecordSpace = leafNode.inlineRecordSpace();
 
-    return targetLeafNode.getRecords().get(recordIndex);
+    leafNode.getRecordOffsets().clear();
+    for (Record<K> record : leafNode.getRecords()) {
+      ByteBuffer bytes = serializeRecord(record, schemaCatalog);
+      int length = bytes.remaining();
+      if (isClustered && fitsInline(length, inlineRecordSpace)) {
+        inlineRecordSpace -= length;
+        // the scratch buffer is reused by the next record, but inline records wait for the page
+        inlineRecords.add(ByteBuffer.allocate(length).put(bytes).flip());
+        leafNode.getRecordOffsets().add(LongField.fromValue(BTreeNode.inlineRecordOffset(length)));
+        continue;
+      }
+      RecordId recordId = recordFile.append(bytes);
+      leafNode.getRecordOffsets().add(LongField.fromValue(recordId.toLong()));
+      if (isClustered) {
+        inlineRecords.add(null);
+      }
+    }
+    leafNode.setInlineRecords(inlineRecords);
   }
 
   /**
@@ -105,13 +1452,126 @@ public class BTree<K extends Comparable<K>> {
    * @param key the search key
    */
   private BTreeNode<K> findTargetLeafNode(SortableField<K> key) {
-    BTreeNode<K> currentNode = root;
+    BTreeNode<K> currentNode = rootNode();
 
     while (!currentNode.getIsLeaf()) {
       int pointerIndex = SearchUtil.findFirstLargerIndex(key, currentNode.getKeys());
-      currentNode = currentNode.getPointers().get(pointerIndex);
+      currentNode = childAt(currentNode, pointerIndex);
+    }
+
+    return currentNode;
+  }
+
+  /**
+   * Find the leaf node holding the smallest keys.
+   */
+  private BTreeNode<K> findLeftMostLeafNode() {
+    BTreeNode<K> currentNode = rootNode();
+
+    while (!currentNode.getIsLeaf()) {
+      currentNode = childAt(currentNode, 0);
     }
 
     return currentNode;
   }
+
+  /**
+   * Get the root, reading it again if the node cache dropped it since the tree was loaded.
+   */
+  private BTreeNode<K> rootNode() {
+    return nodeCache == null ? root : nodeCache.get(rootOffset);
+  }
+
+  /**
+   * Get the {@code index}-th child of an internal node, reading it if the tree was loaded from
+   * disk.
+   */
+  private BTreeNode<K> childAt(BTreeNode<K> internalNode, int index) {
+    if (nodeCache == null) {
+      return internalNode.getPointers().get(index);
+    }
+
+    return nodeCache.get(internalNode.getPointerOffsets().get(index).getValue());
+  }
+
+  /**
+   * @throws IllegalArgumentException if a full node of keys as large as {@code key} would not
+   *                                  fit in a page
+   */
+  private void checkKeySize(SortableField<K> key) {
+    int maxKeySize = BTreeNode.maxKeySize(keyType, fanout);
+    if (key.getSize() > maxKeySize) {
+      throw new IllegalArgumentException(String.format(
+          "A key takes %d bytes, but keys of a tree of fanout %d take at most %d bytes",
+          key.getSize(), fanout, maxKeySize
+      ));
+    }
+  }
+
+  /**
+   * @throws InvalidMethodInvocationException if the tree was loaded from disk
+   */
+  private void checkInMemory() {
+    if (nodeCache != null) {
+      throw new InvalidMethodInvocationException(
+          "Cannot bulk load or save a tree loaded from disk"
+      );
+    }
+  }
+
+  /**
+   * Factory of storages, each with a buffer pool of its own, whose writes are committed to
+   * {@code writeAheadLog} as the file with id {@code fileId}.
+   */
+  private static FileStorage.Factory loggedStorage(WriteAheadLog writeAheadLog, int fileId) {
+    BufferPool bufferPool = new BufferPool();
+    return LoggedFileStorage.factory(
+        writeAheadLog,
+        fileId,
+        channel -> new BufferedFileStorage(bufferPool, channel)
+    );
+  }
+
+  private static <K extends Comparable<K>> LongField offsetOf(
+      BTreeNode<K> node,
+      Map<BTreeNode<K>, Long> offsets
+  ) {
+    return node == null ? null : LongField.fromValue(offsets.get(node));
+  }
+
+  /**
+   * Number of records of a leaf node, or of pointers of an internal node, of a tree loaded from
+   * disk.
+   */
+  private static int occupancy(BTreeNode<?> node) {
+    return (node.getIsLeaf() ? node.getRecordOffsets() : node.getPointerOffsets()).size();
+  }
+
+  private boolean isEmpty() {
+    return this.root == null
+        || (this.root.getIsLeaf() && this.root.getRecords().isEmpty());
+  }
+
+  /**
+   * Minimum number of records of a leaf node, or of pointers of an internal node, before it has
+   * to be merged or rebalanced.
+   */
+  private int minOccupancy() {
+    return (int) Math.ceil(((double) fanout) / 2);
+  }
+
+  /**
+   * Where a saved tree keeps its records.
+   */
+  public enum RecordLayout {
+    /**
+     * Every record in the record file, and its record id in its leaf page.
+     */
+    SEPARATE,
+    /**
+     * Records in their leaf page, after the keys, overflowing to the record file when the page
+     * is full or the record is larger than {@link #MAX_INLINE_RECORD_SIZE}.
+     */
+    CLUSTERED
+  }
 }
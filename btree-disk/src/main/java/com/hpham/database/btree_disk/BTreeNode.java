@@ -16,15 +16,18 @@ import lombok.Setter;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Optional;
+import java.util.Objects;
 import java.util.stream.IntStream;
 
-import static com.hpham.database.btree_disk.BTree.FANOUT;
+import static com.hpham.database.btree_disk.constants.DataConstants.BOOL_SIZE_BYTES;
+import static com.hpham.database.btree_disk.constants.DataConstants.INT_SIZE_BYTES;
 import static com.hpham.database.btree_disk.constants.DataConstants.INT_TYPE_SIGNAL;
+import static com.hpham.database.btree_disk.constants.DataConstants.LONG_SIZE_BYTES;
+import static com.hpham.database.btree_disk.constants.DataConstants.LONG_TYPE_SIGNAL;
 import static com.hpham.database.btree_disk.constants.DataConstants.PAGE_SIZE_BYTES;
+import static com.hpham.database.btree_disk.constants.DataConstants.POINTER_SIZE_BYTES;
+import static com.hpham.database.btree_disk.constants.DataConstants.STRING_SIZE_BYTES;
 import static com.hpham.database.btree_disk.constants.DataConstants.STRING_TYPE_SIGNAL;
 
 /**
@@ -45,15 +48,63 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
   @ForSerialization
   private List<LongField> recordOffsets;
   @ForSerialization
-  LongField parentOffset;
+  LongField prevOffset;
+  @ForSerialization
+  LongField nextOffset;
+
+  /**
+   * Records of a clustered leaf node stored in its own page, after the keys, by index:
+   * {@code null} for a record stored in the record file, and for every record of a node that is
+   * not clustered. The record offset of an inline record is the {@link #inlineRecordOffset} of
+   * its length instead of a record id, and the records follow each other in the page.
+   */
+  @ForSerialization
+  private List<ByteBuffer> inlineRecords;
 
   private List<BTreeNode<K>> pointers;
   private List<Record<K>> records;
   private BTreeNode<K> parent;
 
+  /**
+   * Neighbouring leaf nodes, in key order. Always {@code null} for internal nodes.
+   */
+  private BTreeNode<K> prev;
+  private BTreeNode<K> next;
+
+  /**
+   * Maximum number of pointers (internal node) or records (leaf node) this node can hold.
+   * Not serialized with the node, as it is a property of the whole tree and is stored once in
+   * the {@link com.hpham.database.btree_disk.file_formats.index.IndexFileHeader}.
+   */
+  private int fanout;
+
+  /**
+   * Size of the fixed part of a serialized node: isLeaf, hasParent, parentOffset, hasPrev,
+   * prevOffset, hasNext, nextOffset, numRecordsOrPointers and numKeys.
+   * <br>
+   * hasParent and parentOffset are always zero: a tree read from disk finds the parent of a node
+   * on its way down to it, so keeping the offset of the parent in every child page would only
+   * cost a write of each child that moves to another parent.
+   */
+  static final int NODE_HEADER_SIZE_BYTES = BOOL_SIZE_BYTES
+      + BOOL_SIZE_BYTES
+      + POINTER_SIZE_BYTES
+      + BOOL_SIZE_BYTES
+      + POINTER_SIZE_BYTES
+      + BOOL_SIZE_BYTES
+      + POINTER_SIZE_BYTES
+      + INT_SIZE_BYTES
+      + INT_SIZE_BYTES;
+
+  /**
+   * First byte of a serialized leaf node with {@link #inlineRecords}, instead of 1 for other leaf
+   * nodes and 0 for internal nodes.
+   */
+  static final byte CLUSTERED_LEAF_NODE = 0x02;
 
-  private BTreeNode(Boolean isLeaf) {
+  private BTreeNode(Boolean isLeaf, int fanout) {
     this.isLeaf = isLeaf;
+    this.fanout = fanout;
     keys = new ArrayList<>();
     if (isLeaf) {
       records = new ArrayList<>();
@@ -66,16 +117,120 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
 
   /**
    * Create a leaf node.
+   *
+   * @param fanout maximum number of records the node can hold
    */
-  public static <K extends Comparable<K>> BTreeNode<K> createLeafNode() {
-    return new BTreeNode<>(true);
+  public static <K extends Comparable<K>> BTreeNode<K> createLeafNode(int fanout) {
+    return new BTreeNode<>(true, fanout);
   }
 
   /**
    * Create an internal node.
+   *
+   * @param fanout maximum number of pointers the node can hold
+   */
+  public static <K extends Comparable<K>> BTreeNode<K> createInternalNode(int fanout) {
+    return new BTreeNode<>(false, fanout);
+  }
+
+  /**
+   * Calculate the largest fanout such that a full node still fits in a single page.
+   * <br>
+   * A full leaf node is the biggest node on disk, as it holds {@code fanout} record offsets
+   * and {@code fanout} keys, while a full internal node holds one key less.
+   *
+   * @param keyType type signal of the key, as declared in the index file header
+   * @throws IllegalArgumentException if the key type is not supported
+   */
+  public static int maxFanout(byte keyType) {
+    return maxFanout(keyType, keySize(keyType));
+  }
+
+  /**
+   * Calculate the largest fanout such that a full node still fits in a single page, when no key
+   * takes more than {@code maxKeySize} bytes.
+   * <br>
+   * Only string keys vary in width, so for the other key types this is {@link #maxFanout(byte)}.
+   *
+   * @param keyType    type signal of the key, as declared in the index file header
+   * @param maxKeySize largest encoded width of a key of the tree
+   * @throws IllegalArgumentException if the key type is not supported
    */
-  public static <K extends Comparable<K>> BTreeNode<K> createInternalNode() {
-    return new BTreeNode<>(false);
+  public static int maxFanout(byte keyType, int maxKeySize) {
+    int keySize = keyType == STRING_TYPE_SIGNAL ? maxKeySize : keySize(keyType);
+    return (PAGE_SIZE_BYTES - NODE_HEADER_SIZE_BYTES) / (POINTER_SIZE_BYTES + keySize);
+  }
+
+  /**
+   * Largest encoded width of a key such that a full node of {@code fanout} still fits in a
+   * single page, the inverse of {@link #maxFanout(byte, int)}.
+   *
+   * @throws IllegalArgumentException if the key type is not supported
+   */
+  public static int maxKeySize(byte keyType, int fanout) {
+    if (keyType != STRING_TYPE_SIGNAL) {
+      return keySize(keyType);
+    }
+    return (PAGE_SIZE_BYTES - NODE_HEADER_SIZE_BYTES) / fanout - POINTER_SIZE_BYTES;
+  }
+
+  /**
+   * Calculate the largest fanout such that a full leaf node still fits in a single page with
+   * every record of {@code recordSize} bytes stored inline, for a clustered tree.
+   *
+   * @param keyType type signal of the key, as declared in the index file header
+   * @throws IllegalArgumentException if the key type is not supported
+   */
+  public static int maxClusteredFanout(byte keyType, int recordSize) {
+    return (PAGE_SIZE_BYTES - NODE_HEADER_SIZE_BYTES)
+        / (POINTER_SIZE_BYTES + keySize(keyType) + recordSize);
+  }
+
+  /**
+   * Record offset of a record of {@code length} bytes stored inline, which is negative so that
+   * it is never mistaken for a record id in a clustered leaf node.
+   */
+  static long inlineRecordOffset(int length) {
+    return ~length;
+  }
+
+  /**
+   * Bytes of the page left after the keys and record offsets of this leaf node, for records
+   * stored inline.
+   */
+  int inlineRecordSpace() {
+    int keysSize = keys.stream().mapToInt(Field::getSize).sum();
+    return PAGE_SIZE_BYTES - NODE_HEADER_SIZE_BYTES - keysSize
+        - POINTER_SIZE_BYTES * keys.size();
+  }
+
+  /**
+   * Bytes of {@link #inlineRecordSpace} not taken by the inline records of this leaf node yet,
+   * negative if they no longer fit.
+   */
+  int freeInlineRecordSpace() {
+    int inlineRecordsSize = inlineRecords.stream()
+        .filter(Objects::nonNull)
+        .mapToInt(ByteBuffer::remaining)
+        .sum();
+    return inlineRecordSpace() - inlineRecordsSize;
+  }
+
+  /**
+   * Largest encoded width of a key of the given type. Only string keys may take less, and they
+   * may take more in a tree of a smaller fanout, see {@link #maxKeySize(byte, int)}.
+   *
+   * @throws IllegalArgumentException if the key type is not supported
+   */
+  static int keySize(byte keyType) {
+    return switch (keyType) {
+      case INT_TYPE_SIGNAL -> INT_SIZE_BYTES;
+      case LONG_TYPE_SIGNAL -> LONG_SIZE_BYTES;
+      case STRING_TYPE_SIGNAL -> STRING_SIZE_BYTES;
+      default -> throw new IllegalArgumentException(
+          String.format("Unsupported key type %d", keyType)
+      );
+    };
   }
 
   /**
@@ -88,87 +243,84 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
       throw new InvalidMethodInvocationException("Cannot update record in an internal node");
     }
 
-    Optional<Record<K>> existingRecordOptional = this.records.stream()
-        .filter(record -> record.getKey().equals(newRecord.getKey()))
-        .findAny();
-
-    if (existingRecordOptional.isEmpty()) {
+    int index = SearchUtil.searchForIndex(newRecord.getKey(), keys);
+    if (index == -1) {
       throw new RecordNotFoundException(newRecord.getKey());
     }
 
-    return existingRecordOptional.map(r -> {
-      r.setValue(newRecord.getValue());
-      return r;
-    }).get();
+    Record<K> existingRecord = records.get(index);
+    existingRecord.setValue(newRecord.getValue());
+    return existingRecord;
   }
 
   /**
    * Add new record to the current leaf node.
+   * <br>
+   * The record is inserted at its position found by binary search, so the keys and records stay
+   * sorted without being re-sorted.
    *
    * @param newRecord new record to add
    * @return New root of the B-Tree, {@code null} if the root does not change
    * @throws InvalidMethodInvocationException if this is not a leaf node
    */
-  Optional<BTreeNode<K>> addNewRecord(@NonNull Record<K> newRecord) {
+  BTreeNode<K> addNewRecord(@NonNull Record<K> newRecord) {
     if (!this.isLeaf) {
       throw new InvalidMethodInvocationException("Cannot add new record to an internal node");
     }
 
-    // check for duplicate
-    boolean hasDuplicate = this.records.stream().anyMatch(
-        record -> record.getKey().equals(newRecord.getKey())
-    );
-
-    if (hasDuplicate) {
+    int index = SearchUtil.findFirstNotSmallerIndex(newRecord.getKey(), keys);
+    if (index < keys.size() && keys.get(index).compareTo(newRecord.getKey()) == 0) {
       throw new RecordAlreadyExistException(newRecord.getKey());
     }
 
-    if (this.records.size() == FANOUT) {
+    if (this.records.size() == fanout) {
       // The leaf node is full, so we need to split
-      return splitLeafNode(this, newRecord);
+      return splitLeafNode(this, newRecord, index);
     } else {
-      this.records.add(newRecord);
-      this.keys.add(newRecord.getKey());
-      this.records.sort(Comparator.comparing(Record::getKey));
-      Collections.sort(this.keys);
+      this.keys.add(index, newRecord.getKey());
+      this.records.add(index, newRecord);
 
-      return Optional.empty();
+      return null;
     }
   }
 
   /**
    * Split the overflowed node, then add new record.
+   *
+   * @param newRecordIndex position of the new record among the records of {@code nodeToSplit}
    */
-  private Optional<BTreeNode<K>> splitLeafNode(
+  private BTreeNode<K> splitLeafNode(
       @NonNull BTreeNode<K> nodeToSplit,
-      @NonNull Record<K> newRecord
+      @NonNull Record<K> newRecord,
+      int newRecordIndex
   ) {
-    final BTreeNode<K> newLeafNode = createLeafNode();
-    List<Record<K>> combinedRecords = nodeToSplit.records;
-    nodeToSplit.records = new ArrayList<>();
-    nodeToSplit.keys = new ArrayList<>();
-    combinedRecords.add(newRecord);
-    combinedRecords.sort(Comparator.comparing(Record::getKey));
-
-    // split records into 2 halves
-    for (int i = 0; i <= FANOUT; i++) {
-      Record<K> currentRecord = combinedRecords.get(i);
-      if (i < FANOUT / 2) {
-        nodeToSplit.keys.add(currentRecord.getKey());
-        nodeToSplit.records.add(currentRecord);
-      } else {
-        newLeafNode.keys.add(currentRecord.getKey());
-        newLeafNode.records.add(currentRecord);
-      }
+    final BTreeNode<K> newLeafNode = createLeafNode(nodeToSplit.fanout);
+    nodeToSplit.keys.add(newRecordIndex, newRecord.getKey());
+    nodeToSplit.records.add(newRecordIndex, newRecord);
+
+    // move the upper half of the records into the new leaf node
+    List<SortableField<K>> keysToMove = nodeToSplit.keys.subList(fanout / 2, fanout + 1);
+    List<Record<K>> recordsToMove = nodeToSplit.records.subList(fanout / 2, fanout + 1);
+    newLeafNode.keys.addAll(keysToMove);
+    newLeafNode.records.addAll(recordsToMove);
+    keysToMove.clear();
+    recordsToMove.clear();
+
+    // link the new leaf node right after the split one
+    newLeafNode.prev = nodeToSplit;
+    newLeafNode.next = nodeToSplit.next;
+    if (nodeToSplit.next != null) {
+      nodeToSplit.next.prev = newLeafNode;
     }
+    nodeToSplit.next = newLeafNode;
 
     // bubble the key up to parent node
-    SortableField<K> keyBubbledUp = combinedRecords.get(FANOUT / 2).getKey();
+    SortableField<K> keyBubbledUp = newLeafNode.keys.getFirst();
 
     if (nodeToSplit.parent == null) {
       // parent == null implies that nodeToSplit is the root,
       // thus we need to create a new parent node
-      BTreeNode<K> newParent = createInternalNode();
+      BTreeNode<K> newParent = createInternalNode(nodeToSplit.fanout);
       nodeToSplit.parent = newParent;
       newLeafNode.parent = newParent;
 
@@ -176,7 +328,7 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
       nodeToSplit.parent.pointers.add(newLeafNode);
       nodeToSplit.parent.keys.add(keyBubbledUp);
 
-      return Optional.ofNullable(nodeToSplit.parent);
+      return nodeToSplit.parent;
     }
 
     newLeafNode.parent = nodeToSplit.parent;
@@ -195,12 +347,12 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
    * @return New root of the B-Tree, {@code null} if the root does not change
    * @throws InvalidMethodInvocationException if the current node is not an internal node
    */
-  private Optional<BTreeNode<K>> addNewKey(@NonNull SortableField<K> newKey, @NonNull BTreeNode<K> newChildNode) {
+  private BTreeNode<K> addNewKey(@NonNull SortableField<K> newKey, @NonNull BTreeNode<K> newChildNode) {
     if (isLeaf) {
       throw new InvalidMethodInvocationException("Cannot call addNewKey on an internal node");
     }
 
-    if (pointers.size() == FANOUT) {
+    if (pointers.size() == fanout) {
       // The internal node is full, so we need to split
       return splitInternalNodeAndAddNewKey(this, newKey, newChildNode);
     } else {
@@ -209,7 +361,7 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
     }
   }
 
-  private Optional<BTreeNode<K>> addNewKeyWithoutSplitting(
+  private BTreeNode<K> addNewKeyWithoutSplitting(
       BTreeNode<K> node,
       SortableField<K> newKey,
       BTreeNode<K> newChildNode
@@ -218,18 +370,18 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
     node.keys.add(newKeyIndex, newKey);
     newChildNode.setParent(node);
     node.pointers.add(newKeyIndex + 1, newChildNode);
-    return Optional.empty();
+    return null;
   }
 
   /**
    * Split an internal node.
    */
-  private Optional<BTreeNode<K>> splitInternalNodeAndAddNewKey(
+  private BTreeNode<K> splitInternalNodeAndAddNewKey(
       @NonNull BTreeNode<K> nodeToSplit,
       @NonNull SortableField<K> newKey,
       @NonNull BTreeNode<K> newChildNode
   ) {
-    final BTreeNode<K> newNode = createInternalNode();
+    final BTreeNode<K> newNode = createInternalNode(nodeToSplit.fanout);
     List<SortableField<K>> combinedKeys = nodeToSplit.keys;
     final List<BTreeNode<K>> combinedPointers = nodeToSplit.pointers;
 
@@ -240,10 +392,10 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
     combinedKeys.add(newKeyIndex, newKey);
 
     // split keys into 2 halves
-    for (int i = 0; i < FANOUT; i++) {
-      if (i < FANOUT / 2) {
+    for (int i = 0; i < fanout; i++) {
+      if (i < fanout / 2) {
         nodeToSplit.keys.add(combinedKeys.get(i));
-      } else if (i > FANOUT / 2) {
+      } else if (i > fanout / 2) {
         newNode.keys.add(combinedKeys.get(i));
       }
     }
@@ -251,8 +403,8 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
     combinedPointers.add(newKeyIndex + 1, newChildNode);
 
     // Split pointers
-    for (int i = 0; i <= FANOUT; i++) {
-      if (i <= FANOUT / 2) {
+    for (int i = 0; i <= fanout; i++) {
+      if (i <= fanout / 2) {
         nodeToSplit.pointers.add(combinedPointers.get(i));
         combinedPointers.get(i).setParent(this);
       } else {
@@ -262,12 +414,12 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
     }
 
     // bubble the key up to parent node
-    SortableField<K> keyBubbledUp = combinedKeys.get(FANOUT / 2);
+    SortableField<K> keyBubbledUp = combinedKeys.get(fanout / 2);
 
     if (parent == null) {
       // parent == null implies that nodeToSplit is the root,
       // thus we need to create a new parent node
-      BTreeNode<K> newParent = createInternalNode();
+      BTreeNode<K> newParent = createInternalNode(nodeToSplit.fanout);
       nodeToSplit.parent = newParent;
       newNode.parent = newParent;
 
@@ -275,7 +427,7 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
       nodeToSplit.parent.pointers.add(newNode);
       nodeToSplit.parent.keys.add(keyBubbledUp);
 
-      return Optional.of(nodeToSplit.parent);
+      return nodeToSplit.parent;
     } else {
       return nodeToSplit.parent.addNewKey(keyBubbledUp, newNode);
     }
@@ -289,30 +441,25 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
    * @throws InvalidMethodInvocationException if the current node is not a leaf node
    * @throws RecordNotFoundException          if there is no record associated with the given {@code key}.
    */
-  Optional<BTreeNode<K>> deleteRecord(@NonNull SortableField<K> key) {
+  BTreeNode<K> deleteRecord(@NonNull SortableField<K> key) {
     if (!isLeaf) {
       throw new InvalidMethodInvocationException("Cannot call deleteRecord on an internal node");
     }
 
-    Record<K> recordToDelete = records
-        .stream()
-        .filter(r -> r.getKey().equals(key))
-        .findAny()
-        .orElse(null);
-
-    if (recordToDelete == null) {
+    int index = SearchUtil.searchForIndex(key, keys);
+    if (index == -1) {
       throw new RecordNotFoundException(key);
     }
 
-    this.records.remove(recordToDelete);
-    this.keys.remove(recordToDelete.getKey());
+    this.keys.remove(index);
+    this.records.remove(index);
 
     // This is the case where the current leaf node is also a root
     if (this.parent == null) {
-      return Optional.of(this);
+      return this;
     }
 
-    if (this.records.size() < Math.ceil(((double) FANOUT) / 2)) {
+    if (this.records.size() < Math.ceil(((double) fanout) / 2)) {
       // needs to merge/rebalance
       BTreeNode<K> nodeToMergeWith = findNodeToMerge(this);
 
@@ -327,27 +474,52 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
 
       return mergeLeafNodes(this, nodeToMergeWith);
     }
-    return Optional.empty();
+    return null;
   }
 
-  @SuppressWarnings("unchecked")
+  /**
+   * Deserialize a node, assuming the tree uses the largest fanout allowed for the key type.
+   */
   public static <K extends Comparable<K>> BTreeNode<K> deserialize(
       ByteBuffer byteBuffer,
       byte typeSignal
+  ) {
+    return deserialize(byteBuffer, typeSignal, maxFanout(typeSignal));
+  }
+
+  /**
+   * Deserialize a node of a tree with the given {@code fanout}.
+   */
+  @SuppressWarnings("unchecked")
+  public static <K extends Comparable<K>> BTreeNode<K> deserialize(
+      ByteBuffer byteBuffer,
+      byte typeSignal,
+      int fanout
   ) {
     BTreeNode<K> treeNode;
     byte isLeafByte = byteBuffer.get();
-    if (isLeafByte == 0x01) {
-      treeNode = BTreeNode.createLeafNode();
+    if (isLeafByte == CLUSTERED_LEAF_NODE) {
+      treeNode = BTreeNode.createLeafNode(fanout);
+      treeNode.inlineRecords = new ArrayList<>();
+    } else if (isLeafByte == 0x01) {
+      treeNode = BTreeNode.createLeafNode(fanout);
     } else {
-      treeNode = BTreeNode.createInternalNode();
+      treeNode = BTreeNode.createInternalNode(fanout);
     }
 
-    byte hasParent = byteBuffer.get();
+    // hasParent and parentOffset, which are not used
+    byteBuffer.position(byteBuffer.position() + BOOL_SIZE_BYTES + POINTER_SIZE_BYTES);
+
+    byte hasPrev = byteBuffer.get();
+    long prevOffset = byteBuffer.getLong();
+    if (hasPrev != 0x00) {
+      treeNode.setPrevOffset(LongField.fromValue(prevOffset));
+    }
 
-    long parentOffset = byteBuffer.getLong();
-    if (hasParent != 0x00) {
-      treeNode.setParentOffset(LongField.fromValue(parentOffset));
+    byte hasNext = byteBuffer.get();
+    long nextOffset = byteBuffer.getLong();
+    if (hasNext != 0x00) {
+      treeNode.setNextOffset(LongField.fromValue(nextOffset));
     }
 
     int numRecordsOrPointers = byteBuffer.getInt();
@@ -360,12 +532,6 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
           .forEach(i -> treeNode.getPointerOffsets().add(LongField.fromValue(byteBuffer.getLong())));
     }
 
-
-    // skip the padding
-    for (int i = numRecordsOrPointers; i < FANOUT; i++) {
-      byteBuffer.getLong();
-    }
-
     int numKey = byteBuffer.getInt();
 
     // TODO: expand type support
@@ -376,12 +542,34 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
                 (SortableField<K>) Field.fromValue(byteBuffer.getInt()))
             );
 
+        case LONG_TYPE_SIGNAL -> IntStream.range(0, numKey)
+            .forEach(i -> treeNode.getKeys().add(
+                (SortableField<K>) LongField.fromValue(byteBuffer.getLong()))
+            );
+
         case STRING_TYPE_SIGNAL -> IntStream.range(0, numKey)
             .forEach(i -> {
                   treeNode.getKeys().add(
                       (SortableField<K>) Field.fromValue(StringField.deserialize(byteBuffer, byteBuffer.position())));
                 }
             );
+
+        default -> throw new IllegalArgumentException(
+            String.format("Unsupported key type %d", typeSignal)
+        );
+      }
+    }
+
+    if (treeNode.inlineRecords != null) {
+      // views of the page, rather than copies, as most of them are never read
+      for (LongField recordOffset : treeNode.getRecordOffsets()) {
+        if (recordOffset.getValue() < 0) {
+          int length = (int) ~recordOffset.getValue();
+          treeNode.inlineRecords.add(byteBuffer.slice(byteBuffer.position(), length));
+          byteBuffer.position(byteBuffer.position() + length);
+        } else {
+          treeNode.inlineRecords.add(null);
+        }
       }
     }
 
@@ -397,6 +585,10 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
    * "keys", 0,  //to be overridden
    * "hasParent", BOOL_SIZE_BYTES,
    * "parentOffset", POINTER_SIZE_BYTES,
+   * "hasPrev", BOOL_SIZE_BYTES,
+   * "prevOffset", POINTER_SIZE_BYTES,
+   * "hasNext", BOOL_SIZE_BYTES,
+   * "nextOffset", POINTER_SIZE_BYTES,
    * "numRecords", INT_SIZE_BYTES,
    * "recordsOffset", 0 //to be overridden
    * );
@@ -410,57 +602,88 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
    * "keys", 0,  //to be overridden
    * "hasParent", BOOL_SIZE_BYTES,
    * "parentOffset", POINTER_SIZE_BYTES,
+   * "hasPrev", BOOL_SIZE_BYTES,
+   * "prevOffset", POINTER_SIZE_BYTES,
+   * "hasNext", BOOL_SIZE_BYTES,
+   * "nextOffset", POINTER_SIZE_BYTES,
    * "numPointers", INT_SIZE_BYTES,
    * "pointersOffset", POINTER_SIZE_BYTES   //to be overridden
    * );
    */
   @Override
   public ByteBuffer serialize() {
-    ByteBuffer byteBuffer = ByteBuffer.allocateDirect(PAGE_SIZE_BYTES);
+    ByteBuffer byteBuffer = ByteBuffer.allocate(PAGE_SIZE_BYTES);
+    writeTo(byteBuffer);
+    byteBuffer.flip();
+    return byteBuffer;
+  }
 
-    byteBuffer.put((byte) (this.getIsLeaf() ? 1 : 0));
+  /**
+   * Serialize the node into a whole page of {@code byteBuffer}, from its position on.
+   */
+  @Override
+  public void writeTo(ByteBuffer byteBuffer) {
+    int start = byteBuffer.position();
+
+    if (this.getIsLeaf()) {
+      byteBuffer.put(this.inlineRecords == null ? 0x01 : CLUSTERED_LEAF_NODE);
+    } else {
+      byteBuffer.put((byte) 0x00);
+    }
+
+    // hasParent and parentOffset, which are not used
+    byteBuffer.put((byte) 0x00);
+    byteBuffer.putLong(0);
+
+    // sibling leaf nodes, only known for leaf nodes
+    if (this.getPrevOffset() == null) {
+      byteBuffer.put((byte) 0x00);
+      byteBuffer.putLong(0);
+    } else {
+      byteBuffer.put((byte) 0x01);
+      this.getPrevOffset().writeTo(byteBuffer);
+    }
 
-    if (this.getParent() == null) {
+    if (this.getNextOffset() == null) {
       byteBuffer.put((byte) 0x00);
       byteBuffer.putLong(0);
     } else {
       byteBuffer.put((byte) 0x01);
-      byteBuffer.put(this.getParentOffset().serialize());
+      this.getNextOffset().writeTo(byteBuffer);
     }
 
     if (this.getIsLeaf()) {
       // records
       byteBuffer.putInt(this.getRecordOffsets().size());
-      this.getRecordOffsets().forEach(recordOffset -> byteBuffer.put(recordOffset.serialize()));
-
-      // add padding to make the size constant
-      for (int i = this.getRecordOffsets().size(); i < FANOUT; i++) {
-        byteBuffer.putLong(0);
-      }
+      this.getRecordOffsets().forEach(recordOffset -> recordOffset.writeTo(byteBuffer));
     } else {
       // pointers
       byteBuffer.putInt(this.getPointerOffsets().size());
-      this.getPointerOffsets().forEach(pointerOffset -> byteBuffer.put(pointerOffset.serialize()));
-
-      // add padding to make the size constant
-      for (int i = this.getPointerOffsets().size(); i < FANOUT; i++) {
-        byteBuffer.putLong(0);
-      }
+      this.getPointerOffsets().forEach(pointerOffset -> pointerOffset.writeTo(byteBuffer));
     }
 
     byteBuffer.putInt(this.getKeys().size());
 
-    this.getKeys().forEach(key -> byteBuffer.put(key.serialize()));
-    while (byteBuffer.position() < PAGE_SIZE_BYTES) {
+    this.getKeys().forEach(key -> {
+      int maxKeySize = maxKeySize((byte) (char) key.getTypeSignal(), fanout);
+      if (key.getSize() > maxKeySize) {
+        throw new IllegalArgumentException(String.format(
+            "A key takes %d bytes, but keys take at most %d bytes", key.getSize(), maxKeySize
+        ));
+      }
+      key.writeTo(byteBuffer);
+    });
+    if (this.getIsLeaf() && this.inlineRecords != null) {
+      this.inlineRecords.stream()
+          .filter(Objects::nonNull)
+          .forEach(record -> byteBuffer.put(record.duplicate()));
+    }
+    while (byteBuffer.position() < start + PAGE_SIZE_BYTES) {
       byteBuffer.put((byte) 0);
     }
-
-    byteBuffer.position(PAGE_SIZE_BYTES);
-    byteBuffer.flip();
-    return byteBuffer;
   }
 
-  private Optional<BTreeNode<K>> reBalanceLeafNode(
+  private BTreeNode<K> reBalanceLeafNode(
       @NonNull BTreeNode<K> underflowNode,
       @NonNull BTreeNode<K> nodeToRebalanceWith
   ) {
@@ -488,10 +711,10 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
       underflowNode.parent.keys.set(parentKeyIndexToChange, keyToPromote);
     }
 
-    return Optional.empty();
+    return null;
   }
 
-  private Optional<BTreeNode<K>> mergeLeafNodes(
+  private BTreeNode<K> mergeLeafNodes(
       @NonNull BTreeNode<K> underFlowNode,
       @NonNull BTreeNode<K> nodeToMergeWith
   ) {
@@ -508,40 +731,56 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
       nodeToMergeWith.records.addAll(underFlowNode.records);
       nodeToMergeWith.keys.addAll(underFlowNode.keys);
       parentPointerIndexToDelete = this.parent.pointers.indexOf(this);
+      unlinkLeafNode(underFlowNode);
     } else {
       // Merge into the sibling
       nodeToPossiblyBeRoot = underFlowNode;
       underFlowNode.records.addAll(nodeToMergeWith.records);
       underFlowNode.keys.addAll(nodeToMergeWith.keys);
       parentPointerIndexToDelete = underFlowNode.parent.pointers.indexOf(nodeToMergeWith);
+      unlinkLeafNode(nodeToMergeWith);
     }
 
     underFlowNode.parent.pointers.remove(parentPointerIndexToDelete);
     underFlowNode.parent.keys.remove(parentPointerIndexToDelete - 1);
     if (underFlowNode.parent.parent == null && underFlowNode.parent.keys.isEmpty()) {
       underFlowNode.parent = null;
-      return Optional.of(nodeToPossiblyBeRoot);
+      return nodeToPossiblyBeRoot;
     }
 
     return this.parent.mergeOrRebalance();
   }
 
+  /**
+   * Remove a merged leaf node from the linked list of leaf nodes.
+   */
+  private void unlinkLeafNode(@NonNull BTreeNode<K> mergedNode) {
+    if (mergedNode.prev != null) {
+      mergedNode.prev.next = mergedNode.next;
+    }
+    if (mergedNode.next != null) {
+      mergedNode.next.prev = mergedNode.prev;
+    }
+    mergedNode.prev = null;
+    mergedNode.next = null;
+  }
+
   /**
    * Merge or rebalance a non-leaf node.
    *
    * @return a node that will be a new root, null if root does not change
    */
-  private Optional<BTreeNode<K>> mergeOrRebalance() {
+  private BTreeNode<K> mergeOrRebalance() {
     if (isLeaf) {
       throw new InvalidMethodInvocationException("Cannot call mergeOrRebalance on leaf node");
     }
 
     if (this.parent == null) {
-      return Optional.empty();
+      return null;
     }
 
     // in case this is not root
-    boolean isUnderFlow = this.pointers.size() < Math.ceil(((double) FANOUT) / 2);
+    boolean isUnderFlow = this.pointers.size() < Math.ceil(((double) fanout) / 2);
 
     if (isUnderFlow) {
       // needs to merge/rebalance
@@ -559,10 +798,10 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
       return mergeInternalNodes(this, nodeToMergeWith);
     }
 
-    return Optional.empty();
+    return null;
   }
 
-  private Optional<BTreeNode<K>> mergeInternalNodes(
+  private BTreeNode<K> mergeInternalNodes(
       @NonNull BTreeNode<K> underflowNode,
       @NonNull BTreeNode<K> nodeToMergeWith
   ) {
@@ -585,7 +824,7 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
       underflowNode.parent.keys.remove(keyToDemoteFromParent);
       if (underflowNode.parent.parent == null && underflowNode.parent.keys.isEmpty()) {
         nodeToMergeWith.parent = null;
-        return Optional.of(nodeToMergeWith);
+        return nodeToMergeWith;
       }
     } else {
       // Merge into the current node
@@ -601,7 +840,7 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
       underflowNode.parent.keys.remove(keyToDemoteFromParent);
       if (underflowNode.parent.parent == null && underflowNode.parent.keys.isEmpty()) {
         underflowNode.parent = null;
-        return Optional.of(underflowNode);
+        return underflowNode;
       }
     }
     return underflowNode.parent.mergeOrRebalance();
@@ -610,7 +849,7 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
   /**
    * Rebalance internal node.
    */
-  private Optional<BTreeNode<K>> rebalanceInternalNode(
+  private BTreeNode<K> rebalanceInternalNode(
       @NonNull BTreeNode<K> underflowNode,
       @NonNull BTreeNode<K> nodeToRebalanceWith
   ) {
@@ -644,7 +883,7 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
       underflowNode.parent.keys.set(parentKeyIndexToChange, keyToMove);
     }
 
-    return Optional.empty();
+    return null;
   }
 
   private BTreeNode<K> findNodeToRebalanceWith(@NonNull BTreeNode<K> node) {
@@ -667,35 +906,35 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
 
     if (node.isLeaf) {
       if (leftSibling != null && rightSibling != null) {
-        if (rightSibling.records.size() > Math.ceil((double) FANOUT / 2)) {
+        if (rightSibling.records.size() > Math.ceil((double) fanout / 2)) {
           return rightSibling;
         }
-        if (leftSibling.records.size() > Math.ceil((double) FANOUT / 2)) {
+        if (leftSibling.records.size() > Math.ceil((double) fanout / 2)) {
           return leftSibling;
         }
       } else if (rightSibling != null) {
-        if (rightSibling.records.size() > Math.ceil((double) FANOUT / 2)) {
+        if (rightSibling.records.size() > Math.ceil((double) fanout / 2)) {
           return rightSibling;
         }
       } else if (leftSibling != null) {
-        if (leftSibling.records.size() > Math.ceil((double) FANOUT / 2)) {
+        if (leftSibling.records.size() > Math.ceil((double) fanout / 2)) {
           return leftSibling;
         }
       }
     } else {
       if (leftSibling != null && rightSibling != null) {
-        if (rightSibling.pointers.size() >= Math.ceil((double) (FANOUT + 1) / 2)) {
+        if (rightSibling.pointers.size() >= Math.ceil((double) (fanout + 1) / 2)) {
           return rightSibling;
         }
-        if (leftSibling.pointers.size() >= Math.ceil((double) (FANOUT + 1) / 2)) {
+        if (leftSibling.pointers.size() >= Math.ceil((double) (fanout + 1) / 2)) {
           return leftSibling;
         }
       } else if (rightSibling != null) {
-        if (rightSibling.pointers.size() >= Math.ceil((double) (FANOUT + 1) / 2)) {
+        if (rightSibling.pointers.size() >= Math.ceil((double) (fanout + 1) / 2)) {
           return rightSibling;
         }
       } else if (leftSibling != null) {
-        if (leftSibling.pointers.size() >= Math.ceil((double) (FANOUT + 1) / 2)) {
+        if (leftSibling.pointers.size() >= Math.ceil((double) (fanout + 1) / 2)) {
           return leftSibling;
         }
       }
@@ -729,35 +968,35 @@ public class BTreeNode<K extends Comparable<K>> implements Serializable {
 
     if (node.isLeaf) {
       if (leftSibling != null && rightSibling != null) {
-        if (rightSibling.records.size() + node.records.size() <= FANOUT) {
+        if (rightSibling.records.size() + node.records.size() <= fanout) {
           return rightSibling;
         }
-        if (leftSibling.records.size() + node.records.size() <= FANOUT) {
+        if (leftSibling.records.size() + node.records.size() <= fanout) {
           return leftSibling;
         }
       } else if (rightSibling != null) {
-        if (rightSibling.records.size() + node.records.size() <= FANOUT) {
+        if (rightSibling.records.size() + node.records.size() <= fanout) {
           return rightSibling;
         }
       } else if (leftSibling != null) {
-        if (leftSibling.records.size() + node.records.size() <= FANOUT) {
+        if (leftSibling.records.size() + node.records.size() <= fanout) {
           return leftSibling;
         }
       }
     } else {
       if (leftSibling != null && rightSibling != null) {
-        if (rightSibling.pointers.size() + node.pointers.size() <= FANOUT) {
+        if (rightSibling.pointers.size() + node.pointers.size() <= fanout) {
           return rightSibling;
         }
-        if (leftSibling.pointers.size() + node.pointers.size() <= FANOUT) {
+        if (leftSibling.pointers.size() + node.pointers.size() <= fanout) {
           return leftSibling;
         }
       } else if (rightSibling != null) {
-        if (rightSibling.pointers.size() + node.pointers.size() <= FANOUT) {
+        if (rightSibling.pointers.size() + node.pointers.size() <= fanout) {
           return rightSibling;
         }
       } else if (leftSibling != null) {
-        if (leftSibling.pointers.size() + node.pointers.size() <= FANOUT) {
+        if (leftSibling.pointers.size() + node.pointers.size() <= fanout) {
           return leftSibling;
         }
       }
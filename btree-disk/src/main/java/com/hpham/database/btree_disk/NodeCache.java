@@ -0,0 +1,208 @@
+package com.hpham.database.btree_disk;
+
+import com.hpham.database.btree_disk.constants.DataConstants;
+import com.hpham.database.btree_disk.file_formats.index.IndexFile;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded cache of the nodes of a tree read from an {@link IndexFile}, by page offset.
+ * <br>
+ * Nodes are read from the file the first time they are needed, and the least recently used
+ * node is dropped once the cache holds {@code capacity} nodes, so that only the nodes on the
+ * hot paths of the tree stay in memory. Nodes read from the file only know their children,
+ * siblings and records by offset.
+ * <br>
+ * A node changed by a write is {@link #markDirty marked dirty}, and written back to its page
+ * when it is dropped, or when the cache is {@link #flush flushed}, so that a tree larger than
+ * the cache can be written to as well as read. The pages of nodes merged away are
+ * {@link #free freed} in the index file, and reused by the next nodes allocated.
+ * <br>
+ * The cache is thread-safe, but the nodes it returns are not: the tree lets many threads read
+ * them at once, and only one thread change them.
+ */
+public class NodeCache<K extends Comparable<K>> {
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  private final IndexFile indexFile;
+  private final byte keyType;
+  private final int fanout;
+  private final Map<Long, BTreeNode<K>> nodes;
+
+  /**
+   * Offsets of the cached nodes that changed since they were read or last written back.
+   */
+  private final Set<Long> dirtyOffsets = new HashSet<>();
+
+  /**
+   * Page every node is serialized into before it is written back, as the index file copies
+   * what it writes.
+   */
+  private final ByteBuffer page = ByteBuffer.allocate(DataConstants.PAGE_SIZE_BYTES);
+
+  /**
+   * Lookups of a node that was already in the cache.
+   */
+  @Getter
+  private volatile long hits;
+
+  /**
+   * Lookups of a node that had to be read from the index file.
+   */
+  @Getter
+  private volatile long misses;
+
+  /**
+   * Initialize a cache of up to {@code capacity} nodes of a tree with the given key type and
+   * fanout.
+   *
+   * @throws IllegalArgumentException if {@code capacity} is smaller than 1
+   */
+  NodeCache(IndexFile indexFile, byte keyType, int fanout, int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException(
+          String.format("A node cache needs room for at least 1 node, got %d", capacity)
+      );
+    }
+    this.indexFile = indexFile;
+    this.keyType = keyType;
+    this.fanout = fanout;
+    this.nodes = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, BTreeNode<K>> eldest) {
+        if (size() <= capacity) {
+          return false;
+        }
+        if (dirtyOffsets.contains(eldest.getKey())) {
+          try {
+            writeBack(eldest.getKey(), eldest.getValue());
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          dirtyOffsets.remove(eldest.getKey());
+        }
+        return true;
+      }
+    };
+  }
+
+  /**
+   * Number of nodes in the cache.
+   */
+  public synchronized int size() {
+    return nodes.size();
+  }
+
+  /**
+   * Number of nodes in the cache that are not written back yet.
+   */
+  public synchronized int dirtySize() {
+    return dirtyOffsets.size();
+  }
+
+  /**
+   * Get the node in page {@code offset} of the index file, reading it if it is not cached.
+   */
+  synchronized BTreeNode<K> get(long offset) {
+    BTreeNode<K> node = nodes.get(offset);
+    if (node != null) {
+      hits++;
+      return node;
+    }
+
+    misses++;
+    try {
+      node = BTreeNode.deserialize(indexFile.read(offset), keyType, fanout);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    nodes.put(offset, node);
+    return node;
+  }
+
+  /**
+   * Cache {@code node}, which changed since it was read from page {@code offset} or is new, to
+   * be written back to that page later. The node is cached again if it was dropped while it
+   * was being changed, so it is marked once all its changes are made.
+   */
+  synchronized void markDirty(long offset, BTreeNode<K> node) {
+    if (dirtyOffsets.add(offset)) {
+      ownInlineRecords(node);
+    }
+    nodes.put(offset, node);
+  }
+
+  /**
+   * Take a page of the index file for a new node, to {@link #markDirty mark dirty} once it is
+   * filled in.
+   *
+   * @return offset of the page
+   */
+  synchronized long allocate() throws IOException {
+    return indexFile.append(ByteBuffer.allocate(DataConstants.PAGE_SIZE_BYTES), keyType, fanout);
+  }
+
+  /**
+   * Drop the node in page {@code offset}, without writing it back, and free its page for a
+   * later {@link #allocate} to reuse.
+   */
+  synchronized void free(long offset) throws IOException {
+    nodes.remove(offset);
+    dirtyOffsets.remove(offset);
+    indexFile.delete(offset);
+  }
+
+  /**
+   * Record in the header of the index file which page holds the root of the tree.
+   */
+  synchronized void setRootOffset(long offset) throws IOException {
+    indexFile.setRootOffset(offset);
+  }
+
+  /**
+   * Write every dirty node back to its page, then flush the index file.
+   */
+  synchronized void flush() throws IOException {
+    for (Long offset : List.copyOf(dirtyOffsets)) {
+      writeBack(offset, nodes.get(offset));
+      dirtyOffsets.remove(offset);
+    }
+    indexFile.flush();
+  }
+
+  /**
+   * Write back every dirty node, drop every cached node and close the index file.
+   */
+  synchronized void close() throws IOException {
+    flush();
+    nodes.clear();
+    indexFile.close();
+  }
+
+  private void writeBack(long offset, BTreeNode<K> node) throws IOException {
+    node.writeTo(page.clear());
+    indexFile.update(page.flip(), offset);
+  }
+
+  /**
+   * Copy the inline records of a leaf node read from a memory-mapped file, which are views of
+   * its page, before the page is written over.
+   */
+  private static void ownInlineRecords(BTreeNode<?> node) {
+    List<ByteBuffer> inlineRecords = node.getInlineRecords();
+    if (inlineRecords == null) {
+      return;
+    }
+    inlineRecords.replaceAll(record -> record == null
+        ? null
+        : ByteBuffer.allocate(record.remaining()).put(record.duplicate()).flip());
+  }
+}
@@ -0,0 +1,67 @@
+package com.hpham.database.btree_disk;
+
+import com.hpham.database.btree_disk.data_types.SortableField;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over the records of a B-Tree, in key order, that walks the linked list of leaf nodes
+ * instead of descending from the root for every record.
+ * <br>
+ * The iterator does not support concurrent modification of the tree. For a tree loaded from
+ * disk, the records and leaf nodes are read as the iterator reaches them.
+ */
+class RangeScanIterator<K extends Comparable<K>> implements Iterator<Record<K>> {
+  private final BTree<K> bTree;
+  private final SortableField<K> toKey;
+  private BTreeNode<K> currentNode;
+  private int currentIndex;
+
+  /**
+   * Create an iterator.
+   *
+   * @param bTree      tree to iterate over
+   * @param startNode  leaf node containing the first record
+   * @param startIndex index of the first record in {@code startNode}
+   * @param toKey      exclusive upper bound, {@code null} for no upper bound
+   */
+  RangeScanIterator(
+      BTree<K> bTree,
+      BTreeNode<K> startNode,
+      int startIndex,
+      SortableField<K> toKey
+  ) {
+    this.bTree = bTree;
+    this.currentNode = startNode;
+    this.currentIndex = startIndex;
+    this.toKey = toKey;
+    skipExhaustedNodes();
+  }
+
+  @Override
+  public boolean hasNext() {
+    return currentNode != null
+        && (toKey == null || currentNode.getKeys().get(currentIndex).compareTo(toKey) < 0);
+  }
+
+  @Override
+  public Record<K> next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    Record<K> record = bTree.recordAt(currentNode, currentIndex);
+    currentIndex++;
+    skipExhaustedNodes();
+
+    return record;
+  }
+
+  private void skipExhaustedNodes() {
+    while (currentNode != null && currentIndex >= currentNode.getKeys().size()) {
+      currentNode = bTree.nextLeafNode(currentNode);
+      currentIndex = 0;
+    }
+  }
+}
@@ -5,12 +5,14 @@ import com.hpham.database.btree_disk.data_types.IntField;
 import com.hpham.database.btree_disk.data_types.LongField;
 import com.hpham.database.btree_disk.data_types.SortableField;
 import com.hpham.database.btree_disk.data_types.StringField;
+import com.hpham.database.btree_disk.file_formats.schema.SchemaCatalog;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -18,6 +20,7 @@ import java.util.Map;
 import static com.hpham.database.btree_disk.constants.DataConstants.INT_TYPE_SIGNAL;
 import static com.hpham.database.btree_disk.constants.DataConstants.LONG_TYPE_SIGNAL;
 import static com.hpham.database.btree_disk.constants.DataConstants.STRING_TYPE_SIGNAL;
+import static com.hpham.database.btree_disk.constants.DataConstants.TYPE_SIGNAL_SIZE_BYTES;
 
 /**
  * Class representing a record that is stored in the leaf node.
@@ -36,41 +39,91 @@ public class Record<K extends Comparable<K>> implements Comparable<Record<K>> {
   }
 
   public ByteBuffer serialize() {
-    ByteBuffer serializedValue = value.serialize();
+    ByteBuffer bb = ByteBuffer.allocate(getSerializedSize());
+    writeTo(bb);
+    bb.position(0);
+
+    return bb;
+  }
 
-    ByteBuffer bb = ByteBuffer.allocateDirect(
-        serializedValue.limit()
-            + key.getTypeSignal()
-            + key.getSize()
-    );
+  /**
+   * Size of the record once serialized with {@link #serialize()}.
+   */
+  public int getSerializedSize() {
+    return TYPE_SIGNAL_SIZE_BYTES + key.getSize() + value.getSerializedSize();
+  }
 
-    bb.put((byte) (char) key.getTypeSignal());
-    bb.put(key.serialize());
-    bb.put(serializedValue);
+  /**
+   * Serialize the record like {@link #serialize()}, into {@code dst} at its position, which
+   * needs {@link #getSerializedSize()} bytes remaining.
+   */
+  public void writeTo(ByteBuffer dst) {
+    dst.put((byte) (char) key.getTypeSignal());
+    key.writeTo(dst);
+    value.writeTo(dst);
+  }
 
+  /**
+   * Serialize the record like {@link #serialize()}, but with only the values of its fields,
+   * packed against their schema in {@code catalog}, instead of their names and types.
+   *
+   * @see RecordValue#serialize(SchemaCatalog)
+   */
+  public ByteBuffer serialize(SchemaCatalog catalog) throws IOException {
+    ByteBuffer bb = ByteBuffer.allocate(getPackedSize());
+    writeTo(bb, catalog);
     bb.position(0);
 
     return bb;
   }
 
-  @SuppressWarnings("unchecked")
-  public static <K extends Comparable<K>> Record<K> deserialize(ByteBuffer bb) {
-    // key
-    char keyTypeSignal = (char) bb.get();
-    SortableField<K> key;
+  /**
+   * Size of the record once serialized with {@link #serialize(SchemaCatalog)}.
+   */
+  public int getPackedSize() {
+    return TYPE_SIGNAL_SIZE_BYTES + key.getSize() + Short.BYTES + value.getSize();
+  }
 
-    switch (keyTypeSignal) {
-      case INT_TYPE_SIGNAL -> key = (SortableField<K>) IntField.fromValue(bb.getInt());
-      case STRING_TYPE_SIGNAL -> key = (SortableField<K>) StringField.fromValue(StringField.deserialize(bb,
-          bb.position()));
-      case LONG_TYPE_SIGNAL -> key = (SortableField<K>) LongField.fromValue(bb.getLong());
-      default -> key = null; // TODO: do something better!
-    }
+  /**
+   * Serialize the record like {@link #serialize(SchemaCatalog)}, into {@code dst} at its
+   * position.
+   */
+  public void writeTo(ByteBuffer dst, SchemaCatalog catalog) throws IOException {
+    dst.put((byte) (char) key.getTypeSignal());
+    key.writeTo(dst);
+    value.writeTo(dst, catalog);
+  }
+
+  /**
+   * Deserialize a record serialized with {@link #serialize(SchemaCatalog)}.
+   */
+  public static <K extends Comparable<K>> Record<K> deserialize(
+      ByteBuffer bb,
+      SchemaCatalog catalog
+  ) {
+    SortableField<K> key = deserializeKey(bb);
+
+    return Record.<K>builder()
+        .key(key)
+        .value(RecordValue.deserialize(bb, catalog))
+        .build();
+  }
+
+  /**
+   * Deserialize a record serialized with {@link #serialize()}, from {@code offset} up to the
+   * limit of {@code src}, without moving its position.
+   */
+  public static <K extends Comparable<K>> Record<K> readFrom(ByteBuffer src, int offset) {
+    return deserialize(src.duplicate().position(offset));
+  }
+
+  public static <K extends Comparable<K>> Record<K> deserialize(ByteBuffer bb) {
+    SortableField<K> key = deserializeKey(bb);
 
     Map<String, Field<?>> fields = new LinkedHashMap<>();
 
-    // values
-    while (bb.position() < bb.limit() - 1) {
+    // values, up to the zero padding of a fixed-width RecordFile slot, if any
+    while (bb.position() < bb.limit() - 1 && bb.get(bb.position()) != 0) {
       // get field name
       String fieldName = StringField.deserialize(bb, bb.position());
       char valueTypeSignal = (char) bb.get();
@@ -93,4 +146,20 @@ public class Record<K extends Comparable<K>> implements Comparable<Record<K>> {
         .value(RecordValue.recordValueWithFields(fields))
         .build();
   }
+
+  @SuppressWarnings("unchecked")
+  static <K extends Comparable<K>> SortableField<K> deserializeKey(ByteBuffer bb) {
+    char keyTypeSignal = (char) bb.get();
+    SortableField<K> key;
+
+    switch (keyTypeSignal) {
+      case INT_TYPE_SIGNAL -> key = (SortableField<K>) IntField.fromValue(bb.getInt());
+      case STRING_TYPE_SIGNAL -> key = (SortableField<K>) StringField.fromValue(StringField.deserialize(bb,
+          bb.position()));
+      case LONG_TYPE_SIGNAL -> key = (SortableField<K>) LongField.fromValue(bb.getLong());
+      default -> key = null; // TODO: do something better!
+    }
+
+    return key;
+  }
 }
@@ -2,15 +2,21 @@ package com.hpham.database.btree_disk;
 
 import com.hpham.database.btree_disk.data_types.Field;
 import com.hpham.database.btree_disk.data_types.IntField;
+import com.hpham.database.btree_disk.data_types.LongField;
 import com.hpham.database.btree_disk.data_types.StringField;
+import com.hpham.database.btree_disk.file_formats.schema.Column;
+import com.hpham.database.btree_disk.file_formats.schema.Schema;
+import com.hpham.database.btree_disk.file_formats.schema.SchemaCatalog;
 import lombok.Setter;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 
-import static com.hpham.database.btree_disk.constants.DataConstants.STRING_SIZE_BYTES;
+import static com.hpham.database.btree_disk.constants.DataConstants.INT_TYPE_SIGNAL;
+import static com.hpham.database.btree_disk.constants.DataConstants.LONG_TYPE_SIGNAL;
+import static com.hpham.database.btree_disk.constants.DataConstants.STRING_TYPE_SIGNAL;
 import static com.hpham.database.btree_disk.constants.DataConstants.TYPE_SIGNAL_SIZE_BYTES;
 
 @Setter
@@ -58,24 +64,87 @@ public class RecordValue {
         .orElse(0);
   }
 
+  /**
+   * Size of the fields once serialized with {@link #serialize()}, with their names and type
+   * signals.
+   */
+  int getSerializedSize() {
+    int size = 0;
+    for (Map.Entry<String, Field<?>> field : fields.entrySet()) {
+      size += StringField.serializedSize(field.getKey()); // fieldName
+      size += TYPE_SIGNAL_SIZE_BYTES;                      // signal
+      size += field.getValue().getSize();                  // field
+    }
+    return size;
+  }
+
   ByteBuffer serialize() {
-    AtomicInteger size = new AtomicInteger();
-    fields.forEach((fieldName, field) -> {
-      size.getAndAdd(STRING_SIZE_BYTES);        // fieldName
-      size.getAndAdd(TYPE_SIGNAL_SIZE_BYTES);   // signal
-      size.getAndAdd(field.getSize());          // field
-    });
+    ByteBuffer bb = ByteBuffer.allocate(getSerializedSize());
+    writeTo(bb);
+    bb.position(0);
 
-    ByteBuffer bb = ByteBuffer.allocateDirect(size.get());
+    return bb;
+  }
 
+  /**
+   * Serialize like {@link #serialize()}, into {@code dst} at its position.
+   */
+  void writeTo(ByteBuffer dst) {
     fields.forEach((fieldName, field) -> {
-      bb.put(StringField.fromValue(fieldName).serialize());
-      bb.put((byte) (char) field.getTypeSignal());
-      bb.put(field.serialize());
+      StringField.write(dst, fieldName);
+      dst.put((byte) (char) field.getTypeSignal());
+      field.writeTo(dst);
     });
+  }
 
-    bb.position(0);
+  /**
+   * Serialize the values only, after the version of their schema in {@code catalog}, which is
+   * added to the catalog if it is new.
+   * <pre>
+   *      PackedRecordValue {
+   *        byte[2]   schemaVersion;
+   *        Field[]   values;
+   *      }
+   * </pre>
+   * The values are in the order of the columns of the schema.
+   */
+  ByteBuffer serialize(SchemaCatalog catalog) throws IOException {
+    ByteBuffer bb = ByteBuffer.allocate(Short.BYTES + getSize());
+    writeTo(bb, catalog);
+    bb.flip();
 
     return bb;
   }
+
+  /**
+   * Serialize like {@link #serialize(SchemaCatalog)}, into {@code dst} at its position.
+   */
+  void writeTo(ByteBuffer dst, SchemaCatalog catalog) throws IOException {
+    Schema schema = catalog.schemaOf(fields);
+    dst.putShort((short) schema.version());
+    fields.values().forEach(field -> field.writeTo(dst));
+  }
+
+  /**
+   * Deserialize values serialized with {@link #serialize(SchemaCatalog)}, from the position of
+   * {@code bb} to its limit, naming them after the columns of their schema.
+   */
+  static RecordValue deserialize(ByteBuffer bb, SchemaCatalog catalog) {
+    Schema schema = catalog.getSchema(Short.toUnsignedInt(bb.getShort()));
+    Map<String, Field<?>> fields = new LinkedHashMap<>();
+    for (Column column : schema.columns()) {
+      Field<?> field = switch (column.typeSignal()) {
+        case INT_TYPE_SIGNAL -> IntField.fromValue(bb.getInt());
+        case LONG_TYPE_SIGNAL -> LongField.fromValue(bb.getLong());
+        case STRING_TYPE_SIGNAL ->
+            StringField.fromValue(StringField.deserialize(bb, bb.position()));
+        default -> throw new IllegalArgumentException(
+            String.format("Unsupported field type %d", column.typeSignal())
+        );
+      };
+      fields.put(column.name(), field);
+    }
+
+    return recordValueWithFields(fields);
+  }
 }
@@ -0,0 +1,226 @@
+package com.hpham.database.btree_disk;
+
+import com.hpham.database.btree_disk.data_types.Field;
+import com.hpham.database.btree_disk.data_types.IntField;
+import com.hpham.database.btree_disk.data_types.LongField;
+import com.hpham.database.btree_disk.data_types.SortableField;
+import com.hpham.database.btree_disk.data_types.StringField;
+import com.hpham.database.btree_disk.file_formats.schema.Column;
+import com.hpham.database.btree_disk.file_formats.schema.Schema;
+import com.hpham.database.btree_disk.file_formats.schema.SchemaCatalog;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static com.hpham.database.btree_disk.constants.DataConstants.INT_SIZE_BYTES;
+import static com.hpham.database.btree_disk.constants.DataConstants.INT_TYPE_SIGNAL;
+import static com.hpham.database.btree_disk.constants.DataConstants.LONG_SIZE_BYTES;
+import static com.hpham.database.btree_disk.constants.DataConstants.LONG_TYPE_SIGNAL;
+import static com.hpham.database.btree_disk.constants.DataConstants.STRING_SIZE_BYTES;
+import static com.hpham.database.btree_disk.constants.DataConstants.STRING_TYPE_SIGNAL;
+import static com.hpham.database.btree_disk.constants.DataConstants.TYPE_SIGNAL_SIZE_BYTES;
+
+/**
+ * Read-only view of a serialized {@link Record}, which decodes a field only when it is asked
+ * for, at an offset found by skipping the fields before it, without building the other fields
+ * or a map of them.
+ * <br>
+ * The view reads the buffer it wraps, such as the one returned by
+ * {@link com.hpham.database.btree_disk.file_formats.record.SlottedRecordFile#read}, with
+ * absolute gets, so it is only valid as long as the buffer is. {@link #toRecord()} decodes
+ * every field for callers that need them all.
+ */
+public final class RecordView<K extends Comparable<K>> {
+  private final ByteBuffer bytes;
+  private final int start;
+
+  /**
+   * Catalog the record was packed against, {@code null} if it holds the names and types of its
+   * fields.
+   */
+  private final SchemaCatalog catalog;
+
+  private RecordView(ByteBuffer bytes, SchemaCatalog catalog) {
+    this.bytes = bytes;
+    this.start = bytes.position();
+    this.catalog = catalog;
+  }
+
+  /**
+   * View a record serialized with {@link Record#serialize()}, from the position of
+   * {@code bytes} to its limit.
+   */
+  public static <K extends Comparable<K>> RecordView<K> of(ByteBuffer bytes) {
+    return new RecordView<>(bytes, null);
+  }
+
+  /**
+   * View a record serialized with {@link Record#serialize(SchemaCatalog)}, from the position of
+   * {@code bytes} to its limit.
+   */
+  public static <K extends Comparable<K>> RecordView<K> of(
+      ByteBuffer bytes,
+      SchemaCatalog catalog
+  ) {
+    return new RecordView<>(bytes, catalog);
+  }
+
+  public SortableField<K> getKey() {
+    return Record.deserializeKey(bytes.duplicate().position(start));
+  }
+
+  public boolean hasField(String fieldName) {
+    return valuePosition(fieldName) >= 0;
+  }
+
+  /**
+   * @throws IllegalArgumentException if the record has no int field named {@code fieldName}
+   */
+  public int getInt(String fieldName) {
+    return bytes.getInt(checkedValuePosition(fieldName, INT_TYPE_SIGNAL));
+  }
+
+  /**
+   * @throws IllegalArgumentException if the record has no long field named {@code fieldName}
+   */
+  public long getLong(String fieldName) {
+    return bytes.getLong(checkedValuePosition(fieldName, LONG_TYPE_SIGNAL));
+  }
+
+  /**
+   * @throws IllegalArgumentException if the record has no string field named {@code fieldName}
+   */
+  public String getString(String fieldName) {
+    int position = checkedValuePosition(fieldName, STRING_TYPE_SIGNAL);
+    return StringField.deserialize(bytes.duplicate(), position);
+  }
+
+  /**
+   * Decode a single field, {@code null} if the record has no field named {@code fieldName}.
+   */
+  public Field<?> getField(String fieldName) {
+    int position = valuePosition(fieldName);
+    if (position < 0) {
+      return null;
+    }
+    return switch (typeSignalOf(fieldName, position)) {
+      case INT_TYPE_SIGNAL -> IntField.fromValue(bytes.getInt(position));
+      case LONG_TYPE_SIGNAL -> LongField.fromValue(bytes.getLong(position));
+      default -> StringField.fromValue(StringField.deserialize(bytes.duplicate(), position));
+    };
+  }
+
+  /**
+   * Width of a slot that still holds the record after any of its strings, the key or a value,
+   * changes to another string of up to {@code STRING_SIZE_BYTES} bytes, for a record that holds
+   * the names and types of its fields.
+   */
+  public int fixedWidthSize() {
+    int keyStart = start + TYPE_SIGNAL_SIZE_BYTES;
+    int size = TYPE_SIGNAL_SIZE_BYTES + fixedWidth(bytes.get(start), keyStart);
+    int position = valuesStart();
+    while (position < bytes.limit() && bytes.get(position) != 0) {
+      int nameSize = StringField.serializedSize(bytes, position);
+      byte typeSignal = bytes.get(position + nameSize);
+      int valuePosition = position + nameSize + TYPE_SIGNAL_SIZE_BYTES;
+      size += nameSize + TYPE_SIGNAL_SIZE_BYTES + fixedWidth(typeSignal, valuePosition);
+      position = valuePosition + valueSize(typeSignal, valuePosition);
+    }
+    return size;
+  }
+
+  /**
+   * Decode the whole record.
+   */
+  public Record<K> toRecord() {
+    ByteBuffer bb = bytes.duplicate().position(start);
+    return catalog == null ? Record.deserialize(bb) : Record.deserialize(bb, catalog);
+  }
+
+  private int checkedValuePosition(String fieldName, byte typeSignal) {
+    int position = valuePosition(fieldName);
+    if (position < 0 || typeSignalOf(fieldName, position) != typeSignal) {
+      throw new IllegalArgumentException(String.format(
+          "The record has no field %s of type %d", fieldName, typeSignal
+      ));
+    }
+    return position;
+  }
+
+  /**
+   * Position of the value of the field named {@code fieldName}, {@code -1} if there is none.
+   */
+  private int valuePosition(String fieldName) {
+    int position = valuesStart();
+
+    if (catalog != null) {
+      Schema schema = schema();
+      position += Short.BYTES;
+      int columnIndex = schema.columnIndex(fieldName);
+      if (columnIndex < 0) {
+        return -1;
+      }
+      List<Column> columns = schema.columns();
+      for (int i = 0; i < columnIndex; i++) {
+        position += valueSize(columns.get(i).typeSignal(), position);
+      }
+      return position;
+    }
+
+    while (position < bytes.limit()) {
+      if (bytes.get(position) == 0) {
+        // an empty name is the zero padding after the last field in a fixed-length RecordFile
+        return -1;
+      }
+      int nameSize = StringField.serializedSize(bytes, position);
+      byte typeSignal = bytes.get(position + nameSize);
+      int valuePosition = position + nameSize + TYPE_SIGNAL_SIZE_BYTES;
+      if (StringField.serializedEquals(bytes, position, fieldName)) {
+        return valuePosition;
+      }
+      position = valuePosition + valueSize(typeSignal, valuePosition);
+    }
+    return -1;
+  }
+
+  /**
+   * Type signal of the field named {@code fieldName}, whose value is at {@code valuePosition}.
+   */
+  private byte typeSignalOf(String fieldName, int valuePosition) {
+    if (catalog == null) {
+      // the type signal is right before the value
+      return bytes.get(valuePosition - TYPE_SIGNAL_SIZE_BYTES);
+    }
+    Schema schema = schema();
+    return schema.columns().get(schema.columnIndex(fieldName)).typeSignal();
+  }
+
+  /**
+   * Position right after the key, where the fields, or the schema version of a packed record,
+   * start.
+   */
+  private int valuesStart() {
+    int keyStart = start + TYPE_SIGNAL_SIZE_BYTES;
+    return keyStart + valueSize(bytes.get(start), keyStart);
+  }
+
+  private Schema schema() {
+    return catalog.getSchema(Short.toUnsignedInt(bytes.getShort(valuesStart())));
+  }
+
+  private int fixedWidth(byte typeSignal, int position) {
+    int size = valueSize(typeSignal, position);
+    return typeSignal == STRING_TYPE_SIGNAL ? Math.max(size, STRING_SIZE_BYTES) : size;
+  }
+
+  private int valueSize(byte typeSignal, int position) {
+    return switch (typeSignal) {
+      case INT_TYPE_SIGNAL -> INT_SIZE_BYTES;
+      case LONG_TYPE_SIGNAL -> LONG_SIZE_BYTES;
+      case STRING_TYPE_SIGNAL -> StringField.serializedSize(bytes, position);
+      default -> throw new IllegalArgumentException(
+          String.format("Unsupported field type %d", typeSignal)
+      );
+    };
+  }
+}
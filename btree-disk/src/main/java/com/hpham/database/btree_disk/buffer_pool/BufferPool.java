@@ -0,0 +1,696 @@
+package com.hpham.database.btree_disk.buffer_pool;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import static com.hpham.database.btree_disk.buffer_pool.Page.NO_PAGE;
+import static com.hpham.database.btree_disk.constants.DataConstants.PAGE_SIZE_BYTES;
+
+/**
+ * Fixed number of page-sized frames caching the pages of one or more files.
+ * <br>
+ * A page is read from its file the first time it is pinned, and stays in the pool while it is
+ * pinned. Writes only mark pages dirty; dirty pages are written back when they are evicted,
+ * flushed, or when their file is unregistered.
+ * <br>
+ * Eviction follows 2Q, so that a one-off scan over many pages does not evict the frequently
+ * used ones, such as the upper levels of a b-tree:
+ * <ul>
+ *   <li>a page that is read in joins a FIFO probation queue. Pinning it again while it is there
+ *   does not count, since reading consecutive records pins the same page many times in a row</li>
+ *   <li>while the probation queue holds at least a quarter of the frames, it gives up its oldest
+ *   page, and remembers its id in a ghost queue of up to half as many ids as frames</li>
+ *   <li>a page that is read in again while its id is in the ghost queue is protected</li>
+ *   <li>otherwise, a protected page is evicted with CLOCK</li>
+ * </ul>
+ * <br>
+ * A pool can be shared by files used from different threads. Its state is guarded by the lock
+ * of the pool, but pages are read from their files without holding it, so that threads
+ * missing different pages wait for the disk in parallel. The same goes for a dirty page evicted
+ * to make room for another one: it is written back by the thread reading the other page into
+ * its frame, and is not read again before that.
+ */
+public class BufferPool {
+  public static final int DEFAULT_NUMBER_OF_FRAMES = 256;
+  private static final int PAGE_NUMBER_BITS = 40;
+
+  /**
+   * Threads reading the pages of {@link #pinAsync}, virtual so that any number of reads can wait
+   * for the disk at the same time.
+   */
+  private static final Executor LOADERS = Executors.newVirtualThreadPerTaskExecutor();
+
+  private final Page[] frames;
+  private final int probationLimit;
+  private final int ghostLimit;
+  private final Deque<Page> freeFrames = new ArrayDeque<>();
+  private final Deque<Page> probationQueue = new ArrayDeque<>();
+  private final LinkedHashSet<Long> ghostQueue = new LinkedHashSet<>();
+  private final Map<Long, Page> pageTable = new HashMap<>();
+  /**
+   * Keys of the dirty pages evicted from the pool, while they are being written back.
+   */
+  private final Set<Long> writingBack = new HashSet<>();
+  private final List<FileChannel> files = new ArrayList<>();
+  private int clockHand;
+
+  /**
+   * Pins of a page that was already in the pool.
+   */
+  private long hits;
+
+  /**
+   * Pins of a page that had to be read from its file.
+   */
+  private long misses;
+
+  /**
+   * Pages removed from the pool to make room for another page.
+   */
+  private long evictions;
+
+  /**
+   * Dirty pages written back to their file.
+   */
+  private long writeBacks;
+
+  public BufferPool() {
+    this(DEFAULT_NUMBER_OF_FRAMES);
+  }
+
+  /**
+   * Initialize a pool of {@code numberOfFrames} pages, allocated up front.
+   */
+  public BufferPool(int numberOfFrames) {
+    if (numberOfFrames < 1) {
+      throw new IllegalArgumentException(
+          String.format("A buffer pool needs at least 1 frame, got %d", numberOfFrames)
+      );
+    }
+    frames = new Page[numberOfFrames];
+    probationLimit = Math.max(1, numberOfFrames / 4);
+    ghostLimit = Math.max(1, numberOfFrames / 2);
+    for (int i = 0; i < numberOfFrames; i++) {
+      frames[i] = new Page();
+      freeFrames.add(frames[i]);
+    }
+  }
+
+  public int getNumberOfFrames() {
+    return frames.length;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  public synchronized long getWriteBacks() {
+    return writeBacks;
+  }
+
+  /**
+   * Fraction of pins served without reading from a file, {@code 0} before the first pin.
+   */
+  public synchronized double getHitRatio() {
+    long pins = hits + misses;
+    return pins == 0 ? 0 : (double) hits / pins;
+  }
+
+  public synchronized void resetCounters() {
+    hits = 0;
+    misses = 0;
+    evictions = 0;
+    writeBacks = 0;
+  }
+
+  /**
+   * Start caching the pages of a file.
+   *
+   * @return id of the file in this pool
+   */
+  public synchronized int register(FileChannel channel) {
+    files.add(channel);
+    return files.size() - 1;
+  }
+
+  /**
+   * Stop caching the pages of a file, and free their frames.
+   *
+   * @param writeBack whether to write back dirty pages, or drop them as when the file is deleted
+   * @throws IllegalStateException if a page of the file is still pinned
+   */
+  public synchronized void unregister(int fileId, boolean writeBack) throws IOException {
+    awaitWriteBacks(fileId);
+    for (Page page : frames) {
+      if (page.getFileId() != fileId) {
+        continue;
+      }
+      if (page.pinCount > 0) {
+        throw new IllegalStateException(String.format(
+            "Page %d of file %d is still pinned", page.getPageNumber(), fileId
+        ));
+      }
+      if (writeBack && page.isDirty) {
+        writeBack(page);
+      }
+      pageTable.remove(pageKey(fileId, page.getPageNumber()));
+      if (!page.isProtected) {
+        probationQueue.remove(page);
+      }
+      page.reset();
+      freeFrames.add(page);
+    }
+    files.set(fileId, null);
+  }
+
+  /**
+   * Pin a page, reading it from its file if it is not in the pool. The page stays in the pool
+   * until it is unpinned as many times as it was pinned.
+   * <br>
+   * The page is read without holding the lock of the pool, so that threads missing different
+   * pages read them in parallel. Threads pinning a page that is being read wait for it.
+   *
+   * @throws IllegalStateException if every frame is pinned
+   */
+  public Page pin(int fileId, long pageNumber) throws IOException {
+    long key = pageKey(fileId, pageNumber);
+    Page page;
+    FileChannel channel;
+    synchronized (this) {
+      while ((page = pageTable.get(key)) != null || writingBack.contains(key)) {
+        if (page == null) {
+          // the page was evicted, and is read again once it is written back
+          awaitPool();
+          continue;
+        }
+        pinCached(page);
+        if (awaitLoaded(page, key)) {
+          return page;
+        }
+      }
+
+      page = reserve(fileId, pageNumber, key);
+      channel = files.get(fileId);
+    }
+
+    loadReserved(page, key, channel);
+    return page;
+  }
+
+  /**
+   * Pin a page like {@link #pin}, but without waiting for it to be read from its file: a page
+   * that is not in the pool is read on a virtual thread, and a page that is being read
+   * completes the future once it is read.
+   *
+   * @return future of the pinned page, completed exceptionally with the {@link IOException} of a
+   *     failed read, or an {@link IllegalStateException} if every frame is pinned
+   */
+  public CompletableFuture<Page> pinAsync(int fileId, long pageNumber) {
+    long key = pageKey(fileId, pageNumber);
+    Page page;
+    FileChannel channel;
+    synchronized (this) {
+      page = pageTable.get(key);
+      if (page == null && writingBack.contains(key)) {
+        // waiting for the page to be written back before it is read again takes a thread
+        return onLoader(() -> pin(fileId, pageNumber));
+      }
+      if (page != null) {
+        pinCached(page);
+        if (!page.isLoading) {
+          return CompletableFuture.completedFuture(page);
+        }
+        Page loadingPage = page;
+        return page.loaded.thenCompose(ignored -> {
+          synchronized (this) {
+            if (pageTable.get(key) == loadingPage) {
+              return CompletableFuture.completedFuture(loadingPage);
+            }
+            release(loadingPage);
+          }
+          // reading the page failed, so it is read again
+          return pinAsync(fileId, pageNumber);
+        });
+      }
+
+      try {
+        page = reserve(fileId, pageNumber, key);
+      } catch (IllegalStateException e) {
+        return CompletableFuture.failedFuture(e);
+      }
+      channel = files.get(fileId);
+    }
+
+    Page reservedPage = page;
+    return onLoader(() -> {
+      loadReserved(reservedPage, key, channel);
+      return reservedPage;
+    });
+  }
+
+  /**
+   * Release a pin on a page.
+   *
+   * @param isDirty whether the page was modified while pinned
+   */
+  public synchronized void unpin(Page page, boolean isDirty) {
+    if (page.pinCount == 0) {
+      throw new IllegalStateException(String.format(
+          "Page %d of file %d is not pinned", page.getPageNumber(), page.getFileId()
+      ));
+    }
+    page.pinCount--;
+    page.isDirty |= isDirty;
+  }
+
+  /**
+   * Write back every dirty page of a file. The pages stay in the pool.
+   */
+  public synchronized void flush(int fileId) throws IOException {
+    awaitWriteBacks(fileId);
+    for (Page page : frames) {
+      if (page.getFileId() == fileId && page.isDirty) {
+        writeBack(page);
+      }
+    }
+  }
+
+  /**
+   * Copy {@code dst.remaining()} bytes of a file, starting at byte {@code position}, into
+   * {@code dst}, pinning every page in the range in turn. Only the copy out of each page is
+   * atomic: it holds the latch of the page rather than the lock of the pool, so that copies out
+   * of different pages run in parallel.
+   */
+  public void read(int fileId, long position, ByteBuffer dst) throws IOException {
+    while (dst.hasRemaining()) {
+      int offsetInPage = (int) (position % PAGE_SIZE_BYTES);
+      int length = Math.min(dst.remaining(), PAGE_SIZE_BYTES - offsetInPage);
+      Page page = pin(fileId, position / PAGE_SIZE_BYTES);
+      synchronized (page) {
+        dst.put(dst.position(), page.getBuffer(), offsetInPage, length);
+      }
+      unpin(page, false);
+
+      dst.position(dst.position() + length);
+      position += length;
+    }
+  }
+
+  /**
+   * Read {@code length} bytes of a file like {@link #read}, pinning the pages in the range with
+   * {@link #pinAsync}, so that the pages missing from the pool are read in parallel.
+   *
+   * @return future of a buffer with the bytes, from position {@code 0} to {@code length}
+   */
+  public CompletableFuture<ByteBuffer> readAsync(int fileId, long position, int length) {
+    List<CompletableFuture<Page>> pins = new ArrayList<>();
+    for (long offset = position - position % PAGE_SIZE_BYTES; offset < position + length;
+        offset += PAGE_SIZE_BYTES) {
+      pins.add(pinAsync(fileId, offset / PAGE_SIZE_BYTES));
+    }
+
+    return CompletableFuture.allOf(pins.toArray(CompletableFuture[]::new))
+        .handle((ignored, failure) -> {
+          ByteBuffer dst = ByteBuffer.allocate(length);
+          long bytePosition = position;
+          for (CompletableFuture<Page> pin : pins) {
+            if (pin.isCompletedExceptionally()) {
+              continue;
+            }
+            Page page = pin.join();
+            int offsetInPage = (int) (bytePosition % PAGE_SIZE_BYTES);
+            int lengthInPage = Math.min(dst.remaining(), PAGE_SIZE_BYTES - offsetInPage);
+            synchronized (page) {
+              dst.put(dst.position(), page.getBuffer(), offsetInPage, lengthInPage);
+            }
+            dst.position(dst.position() + lengthInPage);
+            bytePosition += lengthInPage;
+            unpin(page, false);
+          }
+          if (failure != null) {
+            // the pages that were pinned are unpinned all the same
+            throw failure instanceof CompletionException e ? e : new CompletionException(failure);
+          }
+          return dst.flip();
+        });
+  }
+
+  /**
+   * Copy {@code src.remaining()} bytes into a file, starting at byte {@code position}. The
+   * bytes reach the file when their pages are written back. Only the copy into each page is
+   * atomic, under the latch of the page like in {@link #read}.
+   */
+  public void write(int fileId, long position, ByteBuffer src) throws IOException {
+    while (src.hasRemaining()) {
+      int offsetInPage = (int) (position % PAGE_SIZE_BYTES);
+      int length = Math.min(src.remaining(), PAGE_SIZE_BYTES - offsetInPage);
+      Page page = pin(fileId, position / PAGE_SIZE_BYTES);
+      synchronized (page) {
+        page.getBuffer().put(offsetInPage, src, src.position(), length);
+      }
+      unpin(page, true);
+
+      src.position(src.position() + length);
+      position += length;
+    }
+  }
+
+  /**
+   * Count a pin of a page that is in the pool, which may still be being read.
+   */
+  private void pinCached(Page page) {
+    hits++;
+    if (page.isProtected) {
+      page.isReferenced = true;
+    }
+    page.pinCount++;
+  }
+
+  /**
+   * Give a frame to a page that is not in the pool, pinned and marked as being read, for the
+   * caller to read it with {@link #loadReserved} without holding the lock of the pool. If the
+   * frame held a dirty page, {@link #loadReserved} writes that page back first.
+   */
+  private Page reserve(int fileId, long pageNumber, long key) {
+    misses++;
+    Page page;
+    long evictedKey = NO_PAGE;
+    if (freeFrames.isEmpty()) {
+      page = evict();
+      if (page.isDirty) {
+        evictedKey = pageKey(page.getFileId(), page.getPageNumber());
+        writingBack.add(evictedKey);
+      }
+    } else {
+      page = freeFrames.poll();
+    }
+    page.assign(fileId, pageNumber);
+    page.evictedKey = evictedKey;
+    pageTable.put(key, page);
+    if (ghostQueue.remove(key)) {
+      page.isProtected = true;
+    } else {
+      probationQueue.add(page);
+    }
+    page.pinCount = 1;
+    page.isLoading = true;
+    page.loaded = new CompletableFuture<>();
+
+    return page;
+  }
+
+  /**
+   * Write back the page evicted from the frame given by {@link #reserve}, if it was dirty, then
+   * read the reserved page and wake up those waiting for it. If the read fails, the page is
+   * removed from the pool, and the waiters try again. If the write back fails, the evicted page
+   * takes its frame back, still dirty.
+   */
+  private void loadReserved(Page page, long key, FileChannel channel) throws IOException {
+    boolean isLoaded = false;
+    CompletableFuture<Void> loaded;
+    try {
+      if (page.evictedKey != NO_PAGE) {
+        writeBackEvicted(page);
+      }
+      load(page, channel);
+      isLoaded = true;
+    } finally {
+      synchronized (this) {
+        page.isLoading = false;
+        loaded = page.loaded;
+        page.loaded = null;
+        if (!isLoaded) {
+          // the waiting threads find the page gone from the pool, and try again
+          pageTable.remove(key);
+          if (!page.isProtected) {
+            probationQueue.remove(page);
+          }
+          if (page.evictedKey != NO_PAGE) {
+            restoreEvicted(page);
+          } else {
+            release(page);
+          }
+        }
+        notifyAll();
+      }
+      // completed without the lock, as the waiters of the future take it
+      loaded.complete(null);
+    }
+  }
+
+  /**
+   * Write back the dirty page whose bytes are still in the frame of a reserved page, and let
+   * the threads waiting to read it again go on.
+   */
+  private void writeBackEvicted(Page page) throws IOException {
+    long evictedKey = page.evictedKey;
+    FileChannel evictedChannel;
+    synchronized (this) {
+      evictedChannel = files.get(fileIdOf(evictedKey));
+    }
+
+    write(page, evictedChannel, pageNumberOf(evictedKey));
+    synchronized (this) {
+      writingBack.remove(evictedKey);
+      page.evictedKey = NO_PAGE;
+      writeBacks++;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Give the frame of a reserved page back to the dirty page evicted from it, which failed to
+   * be written back. The pins of the threads that waited for the reserved page move to the
+   * evicted page, until they find the reserved page gone and release them.
+   */
+  private void restoreEvicted(Page page) {
+    long evictedKey = page.evictedKey;
+    int waiters = page.pinCount - 1;
+    page.assign(fileIdOf(evictedKey), pageNumberOf(evictedKey));
+    page.pinCount = waiters;
+    page.isDirty = true;
+    pageTable.put(evictedKey, page);
+    probationQueue.add(page);
+    ghostQueue.remove(evictedKey);
+    writingBack.remove(evictedKey);
+  }
+
+  /**
+   * Wait until no evicted page of a file is being written back.
+   */
+  private void awaitWriteBacks(int fileId) throws InterruptedIOException {
+    while (writingBack.stream().anyMatch(key -> fileIdOf(key) == fileId)) {
+      awaitPool();
+    }
+  }
+
+  /**
+   * Wait for another thread to change the state of the pool.
+   */
+  private void awaitPool() throws InterruptedIOException {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a page");
+    }
+  }
+
+  /**
+   * Wait until a pinned page has been read from its file.
+   *
+   * @return whether the page was read, otherwise it is unpinned, as reading it failed
+   */
+  private boolean awaitLoaded(Page page, long key) throws IOException {
+    while (page.isLoading) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        page.pinCount--;
+        throw new InterruptedIOException("Interrupted while waiting for a page to be read");
+      }
+    }
+    if (pageTable.get(key) == page) {
+      return true;
+    }
+
+    release(page);
+    return false;
+  }
+
+  /**
+   * Release a pin on a page that is no longer in the page table, and free its frame once no
+   * one else has it pinned, unless the frame went back to a page of the table meanwhile.
+   */
+  private void release(Page page) {
+    page.pinCount--;
+    if (page.pinCount == 0
+        && pageTable.get(pageKey(page.getFileId(), page.getPageNumber())) != page) {
+      page.reset();
+      freeFrames.add(page);
+    }
+  }
+
+  /**
+   * Choose an unpinned page, and remove it from the pool. A dirty page keeps its bytes and
+   * dirty flag, for the caller to write it back.
+   */
+  private Page evict() {
+    Page victim = probationQueue.size() >= probationLimit ? evictFromProbation() : null;
+    if (victim == null) {
+      victim = evictProtected();
+    }
+    if (victim == null) {
+      victim = evictFromProbation();
+    }
+    if (victim == null) {
+      throw new IllegalStateException(
+          String.format("All %d frames of the buffer pool are pinned", frames.length)
+      );
+    }
+
+    pageTable.remove(pageKey(victim.getFileId(), victim.getPageNumber()));
+    evictions++;
+    return victim;
+  }
+
+  /**
+   * Take the oldest unpinned page out of the probation queue, and remember its id in the ghost
+   * queue.
+   *
+   * @return the page, {@code null} if every page in the queue is pinned
+   */
+  private Page evictFromProbation() {
+    for (int i = 0; i < probationQueue.size(); i++) {
+      Page page = probationQueue.poll();
+      if (page.pinCount > 0) {
+        // pinned pages go to the back of the queue
+        probationQueue.add(page);
+        continue;
+      }
+
+      ghostQueue.add(pageKey(page.getFileId(), page.getPageNumber()));
+      if (ghostQueue.size() > ghostLimit) {
+        Iterator<Long> oldest = ghostQueue.iterator();
+        oldest.next();
+        oldest.remove();
+      }
+      return page;
+    }
+    return null;
+  }
+
+  /**
+   * Find an unpinned protected page with CLOCK.
+   *
+   * @return the page, {@code null} if every protected page is pinned
+   */
+  private Page evictProtected() {
+    // two rounds: the first one may only clear reference bits
+    for (int i = 0; i < 2 * frames.length; i++) {
+      Page page = frames[clockHand];
+      clockHand = (clockHand + 1) % frames.length;
+
+      if (!page.isProtected || page.pinCount > 0) {
+        continue;
+      }
+      if (page.isReferenced) {
+        page.isReferenced = false;
+        continue;
+      }
+      return page;
+    }
+    return null;
+  }
+
+  /**
+   * Read a page from its file. The part of the page past the end of the file is zeroed.
+   */
+  private static void load(Page page, FileChannel channel) throws IOException {
+    ByteBuffer buffer = page.getBuffer().duplicate().clear();
+    long position = page.getPageNumber() * PAGE_SIZE_BYTES;
+
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        break;
+      }
+    }
+    while (buffer.hasRemaining()) {
+      buffer.put((byte) 0);
+    }
+  }
+
+  private void writeBack(Page page) throws IOException {
+    // a pinned page may be copied into meanwhile, and is dirty again once it is unpinned
+    synchronized (page) {
+      write(page, files.get(page.getFileId()), page.getPageNumber());
+    }
+    page.isDirty = false;
+    writeBacks++;
+  }
+
+  /**
+   * Write the bytes of a frame to a page of a file.
+   */
+  private static void write(Page page, FileChannel channel, long pageNumber) throws IOException {
+    ByteBuffer buffer = page.getBuffer().duplicate().clear();
+    long position = pageNumber * PAGE_SIZE_BYTES;
+
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, position + buffer.position());
+    }
+  }
+
+  /**
+   * Run {@code task} on one of the {@link #LOADERS}.
+   */
+  private static CompletableFuture<Page> onLoader(Callable<Page> task) {
+    CompletableFuture<Page> future = new CompletableFuture<>();
+    LOADERS.execute(() -> {
+      try {
+        future.complete(task.call());
+      } catch (Exception e) {
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  private static long pageKey(int fileId, long pageNumber) {
+    return ((long) fileId << PAGE_NUMBER_BITS) | pageNumber;
+  }
+
+  private static int fileIdOf(long pageKey) {
+    return (int) (pageKey >>> PAGE_NUMBER_BITS);
+  }
+
+  private static long pageNumberOf(long pageKey) {
+    return pageKey & ((1L << PAGE_NUMBER_BITS) - 1);
+  }
+}
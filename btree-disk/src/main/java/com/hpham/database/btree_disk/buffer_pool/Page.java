@@ -0,0 +1,81 @@
+package com.hpham.database.btree_disk.buffer_pool;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+import static com.hpham.database.btree_disk.constants.DataConstants.PAGE_SIZE_BYTES;
+
+/**
+ * Frame of a {@link BufferPool}, holding one page of a file while it is cached.
+ * <br>
+ * The buffer is shared by everyone who pinned the page, so it must be accessed with absolute
+ * gets and puts, or through a {@link ByteBuffer#duplicate()}, and only while the page is pinned.
+ * The page itself is the latch that {@link BufferPool} holds while copying bytes in or out of the
+ * buffer, or writing it back; it is only ever taken after the lock of the pool, if at all.
+ */
+@Getter
+public class Page {
+  static final int NO_FILE = -1;
+  static final long NO_PAGE = -1;
+
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(PAGE_SIZE_BYTES);
+  private int fileId = NO_FILE;
+  private long pageNumber;
+
+  @Getter(AccessLevel.NONE)
+  int pinCount;
+  @Getter(AccessLevel.NONE)
+  boolean isDirty;
+
+  /**
+   * Whether the page is being read from its file, during which it must not be accessed.
+   */
+  @Getter(AccessLevel.NONE)
+  boolean isLoading;
+
+  /**
+   * Completed once the page is read, or failed to be, while {@link #isLoading}.
+   */
+  @Getter(AccessLevel.NONE)
+  CompletableFuture<Void> loaded;
+
+  /**
+   * Key in the {@link BufferPool} of the dirty page evicted from this frame, whose bytes the
+   * buffer still holds until they are written back, right before this page is read.
+   * {@link #NO_PAGE} otherwise.
+   */
+  @Getter(AccessLevel.NONE)
+  long evictedKey = NO_PAGE;
+
+  /**
+   * Whether the page is one of the protected pages of the {@link BufferPool}, rather than in its
+   * probation queue.
+   */
+  @Getter(AccessLevel.NONE)
+  boolean isProtected;
+
+  /**
+   * Reference bit of the CLOCK over protected pages, set whenever a protected page is pinned.
+   */
+  @Getter(AccessLevel.NONE)
+  boolean isReferenced;
+
+  void assign(int fileId, long pageNumber) {
+    this.fileId = fileId;
+    this.pageNumber = pageNumber;
+    this.pinCount = 0;
+    this.isDirty = false;
+    this.isLoading = false;
+    this.loaded = null;
+    this.evictedKey = NO_PAGE;
+    this.isProtected = false;
+    this.isReferenced = false;
+  }
+
+  void reset() {
+    assign(NO_FILE, 0);
+  }
+}
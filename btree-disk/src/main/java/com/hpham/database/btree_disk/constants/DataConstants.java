@@ -5,6 +5,7 @@ public class DataConstants {
   public static final int LONG_SIZE_BYTES = 8;
   public static final int POINTER_SIZE_BYTES = 8;
   public static final int CHAR_SIZE_BYTES = 1;
+  // Largest serialized string key, so that a full node of a string-keyed tree fits in a page
   public static final int STRING_SIZE_BYTES = 50;
   public static final int TYPE_SIGNAL_SIZE_BYTES = 1;
   public static final int INDEX_FILE_HEADER_SIZE_BYTES = 1;
@@ -13,17 +13,29 @@ public final class IntField extends SortableField<Integer> {
 
   @Override
   public ByteBuffer serialize() {
-    ByteBuffer bb = ByteBuffer.allocateDirect(INT_SIZE_BYTES);
-    bb.putInt(value);
+    ByteBuffer bb = ByteBuffer.allocate(INT_SIZE_BYTES);
+    writeTo(bb);
     bb.flip();
 
     return bb;
   }
 
+  @Override
+  public void writeTo(ByteBuffer dst) {
+    dst.putInt(value);
+  }
+
   public static Integer deserialize(ByteBuffer bb, int start) {
     return bb.getInt(start);
   }
 
+  /**
+   * Read the field at {@code offset} of {@code src}, leaving its position unchanged.
+   */
+  public static IntField readFrom(ByteBuffer src, int offset) {
+    return fromValue(src.getInt(offset));
+  }
+
   @Override
   public int compareTo(SortableField<Integer> o) {
     return this.value.compareTo(o.getValue());
@@ -14,17 +14,29 @@ public final class LongField extends SortableField<Long> {
 
   @Override
   public ByteBuffer serialize() {
-    ByteBuffer bb = ByteBuffer.allocateDirect(LONG_SIZE_BYTES);
-    bb.putLong(value);
+    ByteBuffer bb = ByteBuffer.allocate(LONG_SIZE_BYTES);
+    writeTo(bb);
     bb.flip();
 
     return bb;
   }
 
+  @Override
+  public void writeTo(ByteBuffer dst) {
+    dst.putLong(value);
+  }
+
   public static Long deserialize(ByteBuffer bb, int start) {
     return bb.getLong(start);
   }
 
+  /**
+   * Read the field at {@code offset} of {@code src}, leaving its position unchanged.
+   */
+  public static LongField readFrom(ByteBuffer src, int offset) {
+    return fromValue(src.getLong(offset));
+  }
+
   @Override
   public int compareTo(SortableField<Long> o) {
     return this.value.compareTo(o.getValue());
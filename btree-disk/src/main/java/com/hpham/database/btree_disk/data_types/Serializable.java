@@ -3,5 +3,18 @@ package com.hpham.database.btree_disk.data_types;
 import java.nio.ByteBuffer;
 
 public interface Serializable {
+  /**
+   * Serialize into a new buffer, with position {@code 0} and limit the serialized size.
+   */
   ByteBuffer serialize();
+
+  /**
+   * Serialize into {@code dst} at its position, and move the position past the written bytes.
+   * Writing into a buffer reused across calls allocates nothing, unlike {@link #serialize()}.
+   *
+   * @throws java.nio.BufferOverflowException if {@code dst} has no room left for the bytes
+   */
+  default void writeTo(ByteBuffer dst) {
+    dst.put(serialize());
+  }
 }
@@ -3,68 +3,169 @@ package com.hpham.database.btree_disk.data_types;
 import lombok.Builder;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
-import static com.hpham.database.btree_disk.constants.DataConstants.INT_SIZE_BYTES;
-import static com.hpham.database.btree_disk.constants.DataConstants.INT_TYPE_SIGNAL;
-import static com.hpham.database.btree_disk.constants.DataConstants.STRING_SIZE_BYTES;
 import static com.hpham.database.btree_disk.constants.DataConstants.STRING_TYPE_SIGNAL;
 
 /**
  * Class representing a string field.
- * String has maximum length of {@code Integer.MAX_VALUE}.
+ * <br>
+ * Strings are ordered by code point, which is also the order of their UTF-8 encodings compared
+ * byte by byte, so serialized strings can be compared with {@link #compareSerialized} without
+ * decoding them. This only differs from {@link String#compareTo} for strings with
+ * supplementary characters.
  * */
-@Builder
 public final class StringField extends SortableField<String> {
-  String value;
+  private static final int VARINT_PAYLOAD_BITS = 7;
+  private static final int VARINT_PAYLOAD_MASK = 0x7F;
+  private static final int VARINT_CONTINUATION_BIT = 0x80;
+
+  final String value;
 
   /**
-   * String is deserialized in the following way:
+   * UTF-8 encoding of the value, computed once since both the size and the serialized form of
+   * the field need it.
+   */
+  private byte[] utf8;
+
+  @Builder
+  private StringField(String value) {
+    this.value = value;
+  }
+
+  /**
+   * String is serialized in the following way:
    * <pre>
    *      String {
-   *        byte[4]       length;
+   *        varint        length;
    *        byte[length]  content;
    *      }
    * </pre>
-   * Padding is added to make sure size is {@code STRING_SIZE_BYTES}
+   * {@code content} is the UTF-8 encoding of the string, and {@code length} its number of bytes,
+   * 7 bits per byte from the lowest ones, with the high bit set on every byte but the last.
+   * Strings of up to 127 bytes thus take a single byte more than their content.
    * */
   @Override
   public ByteBuffer serialize() {
-    int stringLength = value.length();
-    assert stringLength < 46;
-
-    byte[] bytes = new byte[50];
-    int currentByteIndex = 0;
-    for (int i = INT_SIZE_BYTES - 1; i >= 0; i--) {
-      bytes[currentByteIndex] = (byte) ((stringLength >> (i * 8)));
-      currentByteIndex++;
-    }
+    ByteBuffer bb = ByteBuffer.allocate(getSize());
+    writeTo(bb);
+    bb.flip();
 
-    for (int i = 0; i < stringLength; i++) {
-      bytes[currentByteIndex] = (byte) value.charAt(i);
-      currentByteIndex++;
-    }
+    return bb;
+  }
 
-    return ByteBuffer.wrap(bytes);
+  @Override
+  public void writeTo(ByteBuffer dst) {
+    byte[] content = utf8();
+    putVarInt(dst, content.length);
+    dst.put(content);
   }
 
   /**
-   * Static method to deserialize a sequence of bytes to {@code String}.
+   * Static method to deserialize a sequence of bytes to {@code String}, leaving the position of
+   * {@code bb} right after the string.
    *
    * @param bb underlying bytes to deserialize.
    * @param start position the underlying byte array to start the deserialization.
    * */
   public static String deserialize(ByteBuffer bb, int start) {
-    int stringLength = bb.getInt(start);
+    bb.position(start);
+    int length = getVarInt(bb);
+
+    byte[] content = new byte[length];
+    bb.get(content);
+
+    return new String(content, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Size of {@code value} once serialized, which only encodes a value with characters outside of
+   * ASCII to tell.
+   */
+  public static int serializedSize(String value) {
+    int length = isAscii(value) ? value.length() : value.getBytes(StandardCharsets.UTF_8).length;
+    return varIntSize(length) + length;
+  }
+
+  /**
+   * Serialize {@code value} into {@code dst} like {@link #writeTo}, without building a field.
+   */
+  public static void write(ByteBuffer dst, String value) {
+    if (!isAscii(value)) {
+      fromValue(value).writeTo(dst);
+      return;
+    }
+    putVarInt(dst, value.length());
+    for (int i = 0; i < value.length(); i++) {
+      dst.put((byte) value.charAt(i));
+    }
+  }
+
+  /**
+   * Read the string at {@code offset} of {@code src}, leaving its position unchanged.
+   */
+  public static StringField readFrom(ByteBuffer src, int offset) {
+    int length = getVarInt(src, offset);
+    byte[] content = new byte[length];
+    src.get(offset + varIntSize(length), content);
+
+    StringField field = fromValue(new String(content, StandardCharsets.UTF_8));
+    field.utf8 = content;
+    return field;
+  }
+
+  /**
+   * Compare two serialized strings without decoding them, in the same order as
+   * {@link #compareTo}.
+   *
+   * @param a bytes of the first string, starting at {@code aStart}
+   * @param b bytes of the second string, starting at {@code bStart}
+   */
+  public static int compareSerialized(ByteBuffer a, int aStart, ByteBuffer b, int bStart) {
+    int aLength = getVarInt(a, aStart);
+    int bLength = getVarInt(b, bStart);
+    int aContentStart = aStart + varIntSize(aLength);
+    int bContentStart = bStart + varIntSize(bLength);
 
-    StringBuilder sb = new StringBuilder();
-    bb.position(start + INT_SIZE_BYTES);
-    for (int i = 0; i < stringLength; i++) {
-      sb.append((char) bb.get());
+    int commonLength = Math.min(aLength, bLength);
+    for (int i = 0; i < commonLength; i++) {
+      int comparison = Byte.compareUnsigned(a.get(aContentStart + i), b.get(bContentStart + i));
+      if (comparison != 0) {
+        return comparison;
+      }
     }
+    return Integer.compare(aLength, bLength);
+  }
 
-    bb.position(start + STRING_SIZE_BYTES);
+  /**
+   * Number of bytes of the serialized string starting at {@code start}, without decoding it.
+   */
+  public static int serializedSize(ByteBuffer bb, int start) {
+    int length = getVarInt(bb, start);
+    return varIntSize(length) + length;
+  }
 
-    return sb.toString();
+  /**
+   * Whether the serialized string starting at {@code start} is {@code value}, without decoding
+   * it. Only a value with characters outside of ASCII is encoded to compare it.
+   */
+  public static boolean serializedEquals(ByteBuffer bb, int start, String value) {
+    int length = getVarInt(bb, start);
+    int contentStart = start + varIntSize(length);
+    if (isAscii(value)) {
+      // the encoding of an ASCII string is its chars
+      if (length != value.length()) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (bb.get(contentStart + i) != value.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return bb.slice(contentStart, length)
+        .equals(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
   }
 
   @Override
@@ -74,7 +175,22 @@ public final class StringField extends SortableField<String> {
 
   @Override
   public int compareTo(SortableField<String> o) {
-    return this.value.compareTo(o.getValue());
+    String other = o.getValue();
+    int commonLength = Math.min(value.length(), other.length());
+    for (int i = 0; i < commonLength; i++) {
+      char c1 = value.charAt(i);
+      char c2 = other.charAt(i);
+      if (c1 == c2) {
+        continue;
+      }
+      if (c1 >= Character.MIN_SURROGATE && c2 >= Character.MIN_SURROGATE) {
+        // surrogates stand for code points above every other char
+        c1 = codePointOrder(c1);
+        c2 = codePointOrder(c2);
+      }
+      return c1 - c2;
+    }
+    return value.length() - other.length();
   }
 
   @Override
@@ -92,11 +208,70 @@ public final class StringField extends SortableField<String> {
 
   @Override
   public Integer getSize() {
-    return STRING_SIZE_BYTES;
+    int length = utf8().length;
+    return varIntSize(length) + length;
   }
 
   @Override
   public Character getTypeSignal() {
     return STRING_TYPE_SIGNAL;
   }
+
+  private byte[] utf8() {
+    if (utf8 == null) {
+      utf8 = value.getBytes(StandardCharsets.UTF_8);
+    }
+    return utf8;
+  }
+
+  /**
+   * Move surrogates above the other chars from {@code U+D800} on, which keeps the order of chars
+   * in the same group.
+   */
+  private static char codePointOrder(char c) {
+    return (char) (c >= 0xE000 ? c - 0x800 : c + 0x2000);
+  }
+
+  private static boolean isAscii(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      if (value.charAt(i) >= 0x80) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static int varIntSize(int value) {
+    int size = 1;
+    while ((value >>>= VARINT_PAYLOAD_BITS) != 0) {
+      size++;
+    }
+    return size;
+  }
+
+  static void putVarInt(ByteBuffer bb, int value) {
+    while ((value & ~VARINT_PAYLOAD_MASK) != 0) {
+      bb.put((byte) ((value & VARINT_PAYLOAD_MASK) | VARINT_CONTINUATION_BIT));
+      value >>>= VARINT_PAYLOAD_BITS;
+    }
+    bb.put((byte) value);
+  }
+
+  static int getVarInt(ByteBuffer bb) {
+    int value = getVarInt(bb, bb.position());
+    bb.position(bb.position() + varIntSize(value));
+    return value;
+  }
+
+  static int getVarInt(ByteBuffer bb, int start) {
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = bb.get(start++);
+      value |= (b & VARINT_PAYLOAD_MASK) << shift;
+      shift += VARINT_PAYLOAD_BITS;
+    } while ((b & VARINT_CONTINUATION_BIT) != 0);
+    return value;
+  }
 }
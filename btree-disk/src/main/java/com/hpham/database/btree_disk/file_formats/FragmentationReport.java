@@ -0,0 +1,28 @@
+package com.hpham.database.btree_disk.file_formats;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * How much of a file of fixed-size slots is taken by freed slots waiting to be reused.
+ */
+@Builder
+@Getter
+@ToString
+public class FragmentationReport {
+  private long totalSlots;
+  private long freeSlots;
+  private int slotSize;
+
+  public long getFreeBytes() {
+    return freeSlots * slotSize;
+  }
+
+  /**
+   * Fraction of the slots that are free, {@code 0} for an empty file.
+   */
+  public double getFreeRatio() {
+    return totalSlots == 0 ? 0 : (double) freeSlots / totalSlots;
+  }
+}
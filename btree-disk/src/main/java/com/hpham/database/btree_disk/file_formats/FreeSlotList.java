@@ -0,0 +1,140 @@
+package com.hpham.database.btree_disk.file_formats;
+
+import com.hpham.database.btree_disk.storage.FileStorage;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+import static com.hpham.database.btree_disk.constants.DataConstants.LONG_SIZE_BYTES;
+
+/**
+ * Availability list of the freed slots of a file of fixed-size slots, such as the pages of an
+ * index file or the records of a record file.
+ * <br>
+ * The list is chained through the freed slots themselves: a freed slot is zeroed, except for
+ * its first 8 bytes, which hold the number of the next free slot plus one. The last slot of the
+ * list is thus all zeros. The file only has to store the number of the first free slot, the
+ * {@link #getHead() head}, in its header to keep the list across reopening.
+ * <br>
+ * Freed slots are reused last freed first, as they are the most likely to still be cached.
+ * <br>
+ * Taking a slot only reads the slot after it, so the list is only walked, once, the first time
+ * a slot is freed or the free slots are counted, and opening a file does not take longer as it
+ * has more free slots.
+ */
+public class FreeSlotList {
+  public static final long NO_SLOT = -1;
+
+  private final FileStorage storage;
+  private final long slotsStart;
+  private final int slotSize;
+
+  /**
+   * The free slots, to reject freeing a slot twice, which would make the list a cycle.
+   * {@code null} until the list is walked.
+   */
+  private BitSet freeSlots;
+
+  @Getter
+  private long head;
+
+  private long size;
+
+  /**
+   * Open the list of the slots of {@code slotSize} bytes starting at byte {@code slotsStart},
+   * from its first slot {@code head}.
+   */
+  public FreeSlotList(FileStorage storage, long slotsStart, int slotSize, long head) {
+    if (slotSize < LONG_SIZE_BYTES) {
+      throw new IllegalArgumentException(String.format(
+          "Slots need at least %d bytes to be chained, got %d", LONG_SIZE_BYTES, slotSize
+      ));
+    }
+    this.storage = storage;
+    this.slotsStart = slotsStart;
+    this.slotSize = slotSize;
+    this.head = head;
+    if (head == NO_SLOT) {
+      freeSlots = new BitSet();
+    }
+  }
+
+  public boolean isFree(long slot) throws IOException {
+    walk();
+    return slot >= 0 && slot <= Integer.MAX_VALUE && freeSlots.get((int) slot);
+  }
+
+  /**
+   * Number of free slots.
+   */
+  public long getSize() throws IOException {
+    walk();
+    return size;
+  }
+
+  /**
+   * Take the first slot out of the list.
+   *
+   * @return the slot, {@link #NO_SLOT} if the list is empty
+   */
+  public long allocate() throws IOException {
+    if (head == NO_SLOT) {
+      return NO_SLOT;
+    }
+
+    long slot = head;
+    head = nextFreeSlot(slot);
+    if (freeSlots != null) {
+      freeSlots.clear((int) slot);
+      size--;
+    }
+    return slot;
+  }
+
+  /**
+   * Zero a slot and put it first in the list.
+   *
+   * @throws IllegalArgumentException if the slot is not in the file, or is already free
+   */
+  public void free(long slot) throws IOException {
+    long numberOfSlots = Math.ceilDiv(storage.size() - slotsStart, slotSize);
+    if (slot < 0 || slot >= numberOfSlots) {
+      throw new IllegalArgumentException(String.format(
+          "Slot %d is not in the file, which has %d slots", slot, numberOfSlots
+      ));
+    }
+    if (isFree(slot)) {
+      throw new IllegalArgumentException(String.format("Slot %d is already free", slot));
+    }
+
+    ByteBuffer freedSlot = ByteBuffer.allocate(slotSize);
+    freedSlot.putLong(0, head + 1);
+    storage.write(slotsStart + slot * slotSize, freedSlot);
+    freeSlots.set(Math.toIntExact(slot));
+    head = slot;
+    size++;
+  }
+
+  /**
+   * Find every free slot, from the head of the list, if it was not done yet.
+   */
+  private void walk() throws IOException {
+    if (freeSlots != null) {
+      return;
+    }
+    BitSet slots = new BitSet();
+    long count = 0;
+    for (long slot = head; slot != NO_SLOT; slot = nextFreeSlot(slot)) {
+      slots.set(Math.toIntExact(slot));
+      count++;
+    }
+    freeSlots = slots;
+    size = count;
+  }
+
+  private long nextFreeSlot(long slot) throws IOException {
+    return storage.read(slotsStart + slot * slotSize, LONG_SIZE_BYTES).getLong(0) - 1;
+  }
+}
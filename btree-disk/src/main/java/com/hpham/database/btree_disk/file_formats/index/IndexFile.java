@@ -1,30 +1,100 @@
 package com.hpham.database.btree_disk.file_formats.index;
 
-import com.hpham.database.btree_disk.file_formats.record.RecordFileHeader;
+import com.hpham.database.btree_disk.BTreeNode;
+import com.hpham.database.btree_disk.buffer_pool.BufferPool;
+import com.hpham.database.btree_disk.file_formats.FragmentationReport;
+import com.hpham.database.btree_disk.file_formats.FreeSlotList;
+import com.hpham.database.btree_disk.storage.BufferedFileStorage;
+import com.hpham.database.btree_disk.storage.CompressedFileStorage;
+import com.hpham.database.btree_disk.storage.FileStorage;
+import com.hpham.database.btree_disk.storage.MappedFileStorage;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.SeekableByteChannel;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.OpenOption;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static com.hpham.database.btree_disk.constants.DataConstants.PAGE_SIZE_BYTES;
 import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.READ;
 import static java.nio.file.StandardOpenOption.WRITE;
 
+/**
+ * File of b-tree nodes, one page each, after an {@link IndexFileHeader}.
+ * <br>
+ * By default, every read and write goes through a {@link BufferPool}, so writes reach the file
+ * when their pages are evicted, or when the file is flushed or closed. A file created with
+ * {@link #memoryMapped()} is read and written through a {@link MappedFileStorage} instead,
+ * and one created with {@link #compressed()} through a {@link CompressedFileStorage}.
+ * <br>
+ * Deleted pages are kept in a {@link FreeSlotList}, and reused by later appends before the file
+ * grows.
+ */
 public class IndexFile {
+  private final FileStorage.Factory storageFactory;
   private File file;
-  private SeekableByteChannel byteChannel;
+  private FileStorage storage;
   private Boolean isDirty = Boolean.FALSE;
   private Long indexStart;
+  private IndexFileHeader header;
+  private FreeSlotList freeSlots;
+  private boolean wasClosedCleanly = true;
 
+  /**
+   * Create an index file with a buffer pool of its own.
+   */
+  public IndexFile() {
+    this(new BufferPool());
+  }
+
+  /**
+   * Create an index file caching its pages in {@code bufferPool}, which may be shared with
+   * other files.
+   */
+  public IndexFile(BufferPool bufferPool) {
+    this(channel -> new BufferedFileStorage(bufferPool, channel));
+  }
+
+  /**
+   * Create an index file read and written through the storages opened by {@code storageFactory},
+   * such as a {@link com.hpham.database.btree_disk.storage.LoggedFileStorage}.
+   */
+  public IndexFile(FileStorage.Factory storageFactory) {
+    this.storageFactory = storageFactory;
+  }
+
+  /**
+   * Create an index file mapped into memory, whose reads are views of the mapping rather than
+   * copies.
+   */
+  public static IndexFile memoryMapped() {
+    return new IndexFile(MappedFileStorage::new);
+  }
+
+  /**
+   * Create an index file whose pages are compressed on disk by a
+   * {@link CompressedFileStorage}.
+   */
+  public static IndexFile compressed() {
+    return new IndexFile(CompressedFileStorage::new);
+  }
+
+  /**
+   * Open the file, reading the header of an existing one.
+   *
+   * @throws IllegalArgumentException if the file exists but is not an index file
+   * @throws IllegalStateException    if the file was closed cleanly, but some of its pages are
+   *                                  missing since
+   */
   public void openFile(String fileName) throws IOException {
     file = new File(fileName);
     file.createNewFile();
@@ -40,67 +110,253 @@ public class IndexFile {
     FileAttribute<Set<PosixFilePermission>> attr =
         PosixFilePermissions.asFileAttribute(perms);
 
-    byteChannel = Files.newByteChannel(file.toPath(), options, attr);
+    storage = storageFactory.open(FileChannel.open(file.toPath(), options, attr));
+    if (storage.size() > 0) {
+      // the file already has a header, which tells where its root and free pages are
+      try {
+        header = readHeader();
+      } catch (IllegalArgumentException e) {
+        storage.close();
+        throw e;
+      }
+      indexStart = (long) IndexFileHeader.size();
+      if (header.isCleanShutdown() && header.getNumberOfPages() != numberOfPages()) {
+        long numberOfPages = numberOfPages();
+        storage.close();
+        throw new IllegalStateException(String.format(
+            "%s was closed with %d pages, but has %d", fileName, header.getNumberOfPages(),
+            numberOfPages
+        ));
+      }
+      freeSlots = new FreeSlotList(storage, indexStart, PAGE_SIZE_BYTES, header.getFreeListHead());
+      isDirty = true;
+      // the header is left as is until the first write, so reading the file leaves it clean
+      wasClosedCleanly = header.isCleanShutdown();
+    }
+  }
+
+  /**
+   * Whether the file was closed cleanly before it was opened, which is always the case for a
+   * new file. A file that was not may hold a partly written tree, so it stays marked as not
+   * closed cleanly when it is closed again, unless it is {@link #markConsistent marked
+   * consistent}.
+   * <br>
+   * A file is only marked as not closed cleanly once it is written to, so that a process that
+   * only reads it may stop without closing it.
+   */
+  public boolean wasClosedCleanly() {
+    return wasClosedCleanly;
   }
 
+  /**
+   * Take the file as consistent although it was not closed cleanly, such as once a write-ahead
+   * log replayed the writes a crash cut short, so that it is marked as closed cleanly again when
+   * it is closed.
+   */
+  public void markConsistent() {
+    wasClosedCleanly = true;
+  }
+
+  /**
+   * Read the node at {@code offset}. For a memory-mapped file, this is a read-only view of the
+   * mapping, which sees later writes to the same node.
+   */
   public ByteBuffer read(long offset) throws IOException {
     long actualPosition = offset * PAGE_SIZE_BYTES + indexStart;
-    byteChannel.position(actualPosition);
 
-    ByteBuffer readBuffer = ByteBuffer.allocateDirect(PAGE_SIZE_BYTES);
-    byteChannel.read(readBuffer);
+    return storage.read(actualPosition, PAGE_SIZE_BYTES);
+  }
+
+  /**
+   * Read the node at {@code offset} like {@link #read}, without waiting for it to be read from
+   * the file.
+   */
+  public CompletableFuture<ByteBuffer> readAsync(long offset) {
+    return storage.readAsync(offset * PAGE_SIZE_BYTES + indexStart, PAGE_SIZE_BYTES);
+  }
 
-    readBuffer.flip();
+  /**
+   * Start reading the nodes at every one of {@code offsets} at once, so that reading many
+   * nodes, such as the children of a node, waits for the disk about once rather than once per
+   * node.
+   *
+   * @return futures of the nodes, in the order of {@code offsets}, which complete as the nodes
+   *     are read
+   */
+  public List<CompletableFuture<ByteBuffer>> readAll(long[] offsets) {
+    long[] positions = new long[offsets.length];
+    for (int i = 0; i < offsets.length; i++) {
+      positions[i] = offsets[i] * PAGE_SIZE_BYTES + indexStart;
+    }
+    return storage.readAll(positions, PAGE_SIZE_BYTES);
+  }
 
-    return readBuffer;
+  public IndexFileHeader readHeader() throws IOException {
+    return IndexFileHeader.deserialize(storage.read(0, IndexFileHeader.size()));
   }
 
   /**
-   * TODO: Instead of only appending, have a mechanism to write in empty slots.
+   * Append a node to a tree using the largest fanout allowed for {@code keyType}.
    */
   public Long append(ByteBuffer bytes, byte keyType) throws IOException {
+    return append(bytes, keyType, BTreeNode.maxFanout(keyType));
+  }
+
+  /**
+   * Write a node into the most recently deleted page, or at the end of the file if no page is
+   * free.
+   *
+   * @return offset of the page, to {@link #read}, {@link #update} or {@link #delete} it with
+   */
+  public Long append(ByteBuffer bytes, byte keyType, int fanout) throws IOException {
     if (!isDirty) {
-      // this is the first record, thus it needs to set Record size in the record file header
-      IndexFileHeader indexHeader = IndexFileHeader.builder()
-          .rootOffset(IndexFileHeader.size())
+      // this is the first node, thus it needs to set key type and fanout in the index file header
+      header = IndexFileHeader.builder()
+          .rootOffset(0)
           .keyType(keyType)
+          .fanout(fanout)
           .build();
 
-      byteChannel.write(indexHeader.serialize());
-      indexStart = byteChannel.position();
+      ByteBuffer serializedHeader = header.serialize();
+      indexStart = (long) serializedHeader.remaining();
+      storage.write(0, serializedHeader);
+      freeSlots = new FreeSlotList(storage, indexStart, PAGE_SIZE_BYTES, FreeSlotList.NO_SLOT);
       isDirty = true;
     }
-    Long newIndexPosition = byteChannel.size();
-    byteChannel.position(newIndexPosition);
-    byteChannel.write(bytes);
+    markOpenForWriting();
+    long offset = freeSlots.allocate();
+    if (offset == FreeSlotList.NO_SLOT) {
+      offset = numberOfPages();
+    } else {
+      writeFreeListHead();
+    }
+    storage.write(offset * PAGE_SIZE_BYTES + indexStart, bytes);
 
-    return newIndexPosition;
+    return offset;
   }
 
   public Long update(ByteBuffer bytes, long offset) throws IOException {
+    markOpenForWriting();
     long actualPosition = offset * PAGE_SIZE_BYTES + indexStart;
-    byteChannel.position(actualPosition);
-    byteChannel.write(bytes);
+    storage.write(actualPosition, bytes);
 
     return actualPosition;
   }
 
-  // TODO: Save empty slots in header/metadata file
+  /**
+   * Zero a page and add it to the free pages, for a later append to reuse.
+   *
+   * @throws IllegalArgumentException if the page is not in the file, or is already deleted
+   */
   public Long delete(long offset) throws IOException {
-    long actualPosition = offset * PAGE_SIZE_BYTES + indexStart;
-    byteChannel.position(actualPosition);
-    byteChannel.write(ByteBuffer.wrap(new byte[PAGE_SIZE_BYTES]));
+    if (freeSlots == null) {
+      throw new IllegalArgumentException(
+          String.format("Page %d is not in the file, which has no pages", offset)
+      );
+    }
+    markOpenForWriting();
+    freeSlots.free(offset);
+    writeFreeListHead();
 
-    return actualPosition;
+    return offset * PAGE_SIZE_BYTES + indexStart;
+  }
+
+  /**
+   * Record in the header which page holds the root of the tree.
+   *
+   * @throws IllegalStateException if no page was appended yet
+   */
+  public void setRootOffset(long offset) throws IOException {
+    if (header == null) {
+      throw new IllegalStateException("The index file has no header before the first append");
+    }
+    markOpenForWriting();
+    header = header.toBuilder().rootOffset(offset).build();
+    storage.write(0, header.serialize());
+  }
+
+  /**
+   * Free every page that is not in {@code livePages}, and only those, such as after a crash
+   * left the free pages half written, then {@link #markConsistent mark the file consistent}.
+   * The lowest free pages are reused first.
+   *
+   * @throws IllegalStateException if no page was appended yet
+   */
+  public void rebuildFreeList(BitSet livePages) throws IOException {
+    if (header == null) {
+      throw new IllegalStateException("The index file has no header before the first append");
+    }
+    markOpenForWriting();
+    freeSlots = new FreeSlotList(storage, indexStart, PAGE_SIZE_BYTES, FreeSlotList.NO_SLOT);
+    for (long offset = numberOfPages() - 1; offset >= 0; offset--) {
+      if (!livePages.get(Math.toIntExact(offset))) {
+        freeSlots.free(offset);
+      }
+    }
+    writeFreeListHead();
+    markConsistent();
   }
 
+  /**
+   * Report how many pages of the file are deleted and waiting to be reused.
+   */
+  public FragmentationReport fragmentation() throws IOException {
+    return FragmentationReport.builder()
+        .totalSlots(indexStart == null ? 0 : numberOfPages())
+        .freeSlots(freeSlots == null ? 0 : freeSlots.getSize())
+        .slotSize(PAGE_SIZE_BYTES)
+        .build();
+  }
+
+  /**
+   * Make every write so far reach the file.
+   */
+  public void flush() throws IOException {
+    storage.flush();
+  }
+
+  /**
+   * Flush the file, then mark it as closed cleanly with its number of pages in the header. The
+   * header of a file that was only read is left as is.
+   */
   public void close() throws IOException {
-    byteChannel.close();
+    if (header != null && !header.isCleanShutdown()) {
+      // every page reaches the file before the header tells that it was closed cleanly
+      storage.flush();
+      header = header.toBuilder()
+          .numberOfPages(numberOfPages())
+          .cleanShutdown(wasClosedCleanly)
+          .build();
+      storage.write(0, header.serialize());
+    }
+    storage.close();
   }
 
   public void deleteAll() throws IOException {
-    close();
+    storage.discard();
     file.delete();
   }
 
+  private long numberOfPages() {
+    return Math.ceilDiv(storage.size() - indexStart, PAGE_SIZE_BYTES);
+  }
+
+  /**
+   * Clear the clean shutdown flag of the header before the first write since the file was
+   * opened, as a crash from then on may leave the file half written.
+   */
+  private void markOpenForWriting() throws IOException {
+    if (header == null || !header.isCleanShutdown()) {
+      return;
+    }
+    header = header.toBuilder().cleanShutdown(false).build();
+    storage.write(0, header.serialize());
+    storage.flush();
+  }
+
+  private void writeFreeListHead() throws IOException {
+    header = header.toBuilder().freeListHead(freeSlots.getHead()).build();
+    storage.write(0, header.serialize());
+  }
+
 }
@@ -1,27 +1,82 @@
 package com.hpham.database.btree_disk.file_formats.index;
 
 import com.hpham.database.btree_disk.data_types.Serializable;
+import com.hpham.database.btree_disk.file_formats.FreeSlotList;
 import lombok.Builder;
-import lombok.Data;
+import lombok.Getter;
 
 import java.nio.ByteBuffer;
 
-@Builder
+/**
+ * Header of the index file, the superblock telling how to read the rest of it.
+ * <pre>
+ *      IndexFileHeader {
+ *        byte[4]   magic;
+ *        byte[1]   keyType;
+ *        byte[8]   rootOffset;
+ *        byte[4]   fanout;
+ *        byte[8]   freeListHead;
+ *        byte[8]   numberOfPages;
+ *        byte[1]   cleanShutdown;
+ *      }
+ * </pre>
+ * {@code rootOffset} is the page holding the root node of the tree, and {@code freeListHead}
+ * is the first page of the {@link FreeSlotList} of deleted pages.
+ * <br>
+ * {@code cleanShutdown} is cleared by the first write after the file is opened, and set again with
+ * {@code numberOfPages} once every page reached the file on close, so a file left by a crash
+ * is told apart from one that can be served as it is.
+ */
+@Builder(toBuilder = true)
+@Getter
 public class IndexFileHeader implements Serializable {
+  public static final int MAGIC = 0x54434958; // "TCIX"
+
   private byte keyType;
   private long rootOffset;
+  private int fanout;
+  @Builder.Default
+  private long freeListHead = FreeSlotList.NO_SLOT;
+  private long numberOfPages;
+  private boolean cleanShutdown;
 
   @Override
   public ByteBuffer serialize() {
-    ByteBuffer bb = ByteBuffer.allocate(9);
+    ByteBuffer bb = ByteBuffer.allocate(size());
+    bb.putInt(MAGIC);
     bb.put(keyType);
     bb.putLong(rootOffset);
+    bb.putInt(fanout);
+    bb.putLong(freeListHead);
+    bb.putLong(numberOfPages);
+    bb.put((byte) (cleanShutdown ? 1 : 0));
     bb.flip();
 
     return bb;
   }
 
+  /**
+   * @throws IllegalArgumentException if {@code bb} does not start with {@link #MAGIC}
+   */
+  public static IndexFileHeader deserialize(ByteBuffer bb) {
+    int magic = bb.getInt();
+    if (magic != MAGIC) {
+      throw new IllegalArgumentException(String.format(
+          "Not an index file header, magic number is %#x instead of %#x", magic, MAGIC
+      ));
+    }
+
+    return IndexFileHeader.builder()
+        .keyType(bb.get())
+        .rootOffset(bb.getLong())
+        .fanout(bb.getInt())
+        .freeListHead(bb.getLong())
+        .numberOfPages(bb.getLong())
+        .cleanShutdown(bb.get() != 0)
+        .build();
+  }
+
   public static Integer size() {
-    return 9;
+    return 34;
   }
 }
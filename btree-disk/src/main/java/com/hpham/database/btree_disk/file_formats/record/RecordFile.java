@@ -1,30 +1,99 @@
 package com.hpham.database.btree_disk.file_formats.record;
 
+import com.hpham.database.btree_disk.RecordView;
+import com.hpham.database.btree_disk.buffer_pool.BufferPool;
+import com.hpham.database.btree_disk.file_formats.FragmentationReport;
+import com.hpham.database.btree_disk.file_formats.FreeSlotList;
+import com.hpham.database.btree_disk.storage.BufferedFileStorage;
+import com.hpham.database.btree_disk.storage.CompressedFileStorage;
+import com.hpham.database.btree_disk.storage.FileStorage;
+import com.hpham.database.btree_disk.storage.MappedFileStorage;
 import lombok.Getter;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.SeekableByteChannel;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.OpenOption;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.READ;
 import static java.nio.file.StandardOpenOption.WRITE;
 
+/**
+ * File of fixed-size slots of records, after a {@link RecordFileHeader}.
+ * <br>
+ * The slot width is set by the first record: it is the {@link RecordView#fixedWidthSize() fixed
+ * width} of the record, in which every string may take up to
+ * {@link com.hpham.database.btree_disk.constants.DataConstants#STRING_SIZE_BYTES} bytes. A record
+ * is zero-padded to fill its slot, so records of the same fields keep fitting in their slots
+ * when their strings change. See {@link SlottedRecordFile} for records of unrelated sizes.
+ * <br>
+ * By default, every read and write goes through a {@link BufferPool}, so writes reach the file
+ * when their pages are evicted, or when the file is flushed or closed. A file created with
+ * {@link #memoryMapped()} is read and written through a {@link MappedFileStorage} instead,
+ * and one created with {@link #compressed()} through a {@link CompressedFileStorage}.
+ * A record may span two pages.
+ * <br>
+ * Deleted records are kept in a {@link FreeSlotList}, and reused by later appends before the
+ * file grows.
+ */
 public class RecordFile {
+  private final FileStorage.Factory storageFactory;
   private File file;
-  private SeekableByteChannel byteChannel;
+  private FileStorage storage;
   private Boolean isDirty = Boolean.FALSE;
   private Long recordStart;
   @Getter
   private Integer recordSize;
+  private RecordFileHeader header;
+  private FreeSlotList freeSlots;
+
+  /**
+   * Create a record file with a buffer pool of its own.
+   */
+  public RecordFile() {
+    this(new BufferPool());
+  }
+
+  /**
+   * Create a record file caching its pages in {@code bufferPool}, which may be shared with
+   * other files.
+   */
+  public RecordFile(BufferPool bufferPool) {
+    this(channel -> new BufferedFileStorage(bufferPool, channel));
+  }
+
+  /**
+   * Create a record file read and written through the storages opened by {@code storageFactory},
+   * such as a {@link com.hpham.database.btree_disk.storage.LoggedFileStorage}.
+   */
+  public RecordFile(FileStorage.Factory storageFactory) {
+    this.storageFactory = storageFactory;
+  }
+
+  /**
+   * Create a record file mapped into memory, whose reads are views of the mapping rather than
+   * copies.
+   */
+  public static RecordFile memoryMapped() {
+    return new RecordFile(MappedFileStorage::new);
+  }
+
+  /**
+   * Create a record file whose pages are compressed on disk by a
+   * {@link CompressedFileStorage}.
+   */
+  public static RecordFile compressed() {
+    return new RecordFile(CompressedFileStorage::new);
+  }
 
   public void openFile(String fileName) throws IOException {
     file = new File(fileName);
@@ -41,66 +110,167 @@ public class RecordFile {
     FileAttribute<Set<PosixFilePermission>> attr =
         PosixFilePermissions.asFileAttribute(perms);
 
-    byteChannel = Files.newByteChannel(file.toPath(), options, attr);
+    storage = storageFactory.open(FileChannel.open(file.toPath(), options, attr));
+    if (storage.size() > 0) {
+      // the file already has a header, which tells where its free records are
+      header = RecordFileHeader.deserialize(storage.read(0, RecordFileHeader.size()));
+      recordSize = header.getRecordSize();
+      recordStart = (long) RecordFileHeader.size();
+      freeSlots = new FreeSlotList(storage, recordStart, recordSize, header.getFreeListHead());
+      isDirty = true;
+    }
   }
 
+  /**
+   * Read the record at {@code offset}. For a memory-mapped file, this is a read-only view of the
+   * mapping, which sees later writes to the same record.
+   */
   public ByteBuffer read(long offset) throws IOException {
     long actualPosition = offset * recordSize;
-    byteChannel.position(actualPosition + recordStart);
 
-    ByteBuffer readBuffer = ByteBuffer.allocateDirect(recordSize);
-    byteChannel.read(readBuffer);
+    return storage.read(actualPosition + recordStart, recordSize);
+  }
 
-    readBuffer.flip();
+  /**
+   * Read the record at {@code offset} like {@link #read}, without waiting for it to be read from
+   * the file.
+   */
+  public CompletableFuture<ByteBuffer> readAsync(long offset) {
+    return storage.readAsync(offset * recordSize + recordStart, recordSize);
+  }
 
-    return readBuffer;
+  /**
+   * Start reading the records at every one of {@code offsets} at once, rather than one after
+   * the other.
+   *
+   * @return futures of the records, in the order of {@code offsets}, which complete as the
+   *     records are read
+   */
+  public List<CompletableFuture<ByteBuffer>> readAll(long[] offsets) {
+    long[] positions = new long[offsets.length];
+    for (int i = 0; i < offsets.length; i++) {
+      positions[i] = offsets[i] * recordSize + recordStart;
+    }
+    return storage.readAll(positions, recordSize);
   }
 
   /**
-   * TODO: Instead of only appending, have a mechanism to write in empty slots.
+   * Write a record into the most recently deleted record, or at the end of the file if no record
+   * is free.
+   *
+   * @return offset of the record, to {@link #read}, {@link #update} or {@link #delete} it with
+   * @throws IllegalArgumentException if the record is larger than a slot
    */
   public Long append(ByteBuffer bytes) throws IOException {
     if (!isDirty) {
-      recordSize = bytes.limit();
+      recordSize = RecordView.of(bytes.duplicate()).fixedWidthSize();
       // this is the first record, thus it needs to set Record size in the record file header
-      RecordFileHeader recordHeader = RecordFileHeader.builder()
+      header = RecordFileHeader.builder()
           .recordSize(recordSize)
           .build();
 
-      byteChannel.write(recordHeader.serialize());
-      recordStart = byteChannel.position();
+      ByteBuffer serializedHeader = header.serialize();
+      recordStart = (long) serializedHeader.remaining();
+      storage.write(0, serializedHeader);
+      freeSlots = new FreeSlotList(storage, recordStart, recordSize, FreeSlotList.NO_SLOT);
       isDirty = true;
     }
-    Long newIndexPosition = byteChannel.size();
-    byteChannel.position(newIndexPosition);
-    byteChannel.write(bytes);
+    checkRecordSize(bytes);
+    long offset = freeSlots.allocate();
+    if (offset == FreeSlotList.NO_SLOT) {
+      offset = numberOfRecords();
+    } else {
+      writeFreeListHead();
+    }
+    storage.write(offset * recordSize + recordStart, padToSlot(bytes));
 
-    return newIndexPosition;
+    return offset;
   }
 
+  /**
+   * Overwrite the record at {@code offset}.
+   *
+   * @throws IllegalArgumentException if the record is larger than a slot of
+   *                                  {@link #getRecordSize()} bytes
+   */
   public Long update(ByteBuffer bytes, long offset) throws IOException {
+    checkRecordSize(bytes);
     long actualPosition = offset * recordSize + recordStart;
-    byteChannel.position(actualPosition);
-    byteChannel.write(bytes);
+    storage.write(actualPosition, padToSlot(bytes));
 
     return actualPosition;
   }
 
+  /**
+   * Zero a record and add it to the free records, for a later append to reuse.
+   *
+   * @throws IllegalArgumentException if the record is not in the file, or is already deleted
+   */
   public Long delete(long offset) throws IOException {
-    long actualPosition = offset * recordSize + recordStart;
-    byteChannel.position(actualPosition);
-    byteChannel.write(ByteBuffer.wrap(new byte[recordSize]));
+    if (freeSlots == null) {
+      throw new IllegalArgumentException(
+          String.format("Record %d is not in the file, which has no records", offset)
+      );
+    }
+    freeSlots.free(offset);
+    writeFreeListHead();
 
-    return actualPosition;
+    return offset * recordSize + recordStart;
+  }
+
+  /**
+   * Report how many records of the file are deleted and waiting to be reused.
+   */
+  public FragmentationReport fragmentation() throws IOException {
+    return FragmentationReport.builder()
+        .totalSlots(recordStart == null ? 0 : numberOfRecords())
+        .freeSlots(freeSlots == null ? 0 : freeSlots.getSize())
+        .slotSize(recordSize == null ? 0 : recordSize)
+        .build();
+  }
+
+  /**
+   * Make every write so far reach the file.
+   */
+  public void flush() throws IOException {
+    storage.flush();
   }
 
   public void close() throws IOException {
-    byteChannel.close();
+    storage.close();
   }
 
   public void delete() throws IOException {
-    close();
+    storage.discard();
     file.delete();
   }
 
+  private void checkRecordSize(ByteBuffer bytes) {
+    if (bytes.remaining() > recordSize) {
+      throw new IllegalArgumentException(String.format(
+          "Records of this file take at most %d bytes, got %d; larger records go into a %s",
+          recordSize, bytes.remaining(), SlottedRecordFile.class.getSimpleName()
+      ));
+    }
+  }
+
+  /**
+   * The record followed by the zeros that fill the rest of its slot, so that no byte of a
+   * longer record it replaces is left behind.
+   */
+  private ByteBuffer padToSlot(ByteBuffer bytes) {
+    ByteBuffer slot = ByteBuffer.allocate(recordSize);
+    slot.put(bytes);
+    return slot.clear();
+  }
+
+  private long numberOfRecords() {
+    return Math.ceilDiv(storage.size() - recordStart, recordSize);
+  }
+
+  private void writeFreeListHead() throws IOException {
+    header = header.toBuilder().freeListHead(freeSlots.getHead()).build();
+    storage.write(0, header.serialize());
+  }
+
 }
@@ -1,18 +1,46 @@
 package com.hpham.database.btree_disk.file_formats.record;
 
 import com.hpham.database.btree_disk.data_types.Serializable;
+import com.hpham.database.btree_disk.file_formats.FreeSlotList;
 import lombok.Builder;
+import lombok.Getter;
+
 import java.nio.ByteBuffer;
 
-@Builder
+/**
+ * Header of the record file.
+ * <pre>
+ *      RecordFileHeader {
+ *        byte[4]   recordSize;
+ *        byte[8]   freeListHead;
+ *      }
+ * </pre>
+ * {@code freeListHead} is the first record of the {@link FreeSlotList} of deleted records.
+ */
+@Builder(toBuilder = true)
+@Getter
 public class RecordFileHeader implements Serializable {
   private Integer recordSize;
+  @Builder.Default
+  private long freeListHead = FreeSlotList.NO_SLOT;
 
   @Override
   public ByteBuffer serialize() {
-    ByteBuffer bb = ByteBuffer.allocate(4);
+    ByteBuffer bb = ByteBuffer.allocate(size());
     bb.putInt(recordSize);
+    bb.putLong(freeListHead);
     bb.flip();
     return bb;
   }
+
+  public static RecordFileHeader deserialize(ByteBuffer bb) {
+    return RecordFileHeader.builder()
+        .recordSize(bb.getInt())
+        .freeListHead(bb.getLong())
+        .build();
+  }
+
+  public static Integer size() {
+    return 12;
+  }
 }
@@ -0,0 +1,24 @@
+package com.hpham.database.btree_disk.file_formats.record;
+
+/**
+ * Address of a record in a {@link SlottedRecordFile}: the page it is in, and its slot in the
+ * slot directory of the page. The id of a record stays the same while the record moves within
+ * its page.
+ */
+public record RecordId(long pageNumber, int slot) {
+  /**
+   * A page has fewer slots than fit in 16 bits, which leaves 48 bits for the page number.
+   */
+  private static final int SLOT_BITS = 16;
+
+  /**
+   * Pack the id into a {@code long}, e.g. to store it as a record offset of a leaf node.
+   */
+  public long toLong() {
+    return (pageNumber << SLOT_BITS) | slot;
+  }
+
+  public static RecordId fromLong(long packedId) {
+    return new RecordId(packedId >>> SLOT_BITS, (int) (packedId & ((1 << SLOT_BITS) - 1)));
+  }
+}
@@ -0,0 +1,218 @@
+package com.hpham.database.btree_disk.file_formats.record;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+
+import static com.hpham.database.btree_disk.constants.DataConstants.PAGE_SIZE_BYTES;
+
+/**
+ * Page of variable-length cells, addressed by slot.
+ * <pre>
+ *      SlottedPage {
+ *        byte[2]   numberOfSlots;
+ *        byte[2]   cellsStart;
+ *        byte[2]   fragmentedBytes;
+ *        Slot[numberOfSlots] {
+ *          byte[2]   offset;
+ *          byte[2]   length;
+ *        }
+ *        ... free space ...
+ *        cells, from cellsStart to the end of the page
+ *      }
+ * </pre>
+ * The slot directory grows from the start of the page, and cells grow from its end towards
+ * the directory. A deleted cell only empties its slot; its bytes become fragmented, and are
+ * reclaimed by {@link #compact() compacting} the page when a cell does not fit in the free
+ * space between the directory and the cells.
+ */
+class SlottedPage {
+  static final int HEADER_SIZE = 6;
+  static final int SLOT_SIZE = 4;
+  static final int MAX_CELL_SIZE = PAGE_SIZE_BYTES - HEADER_SIZE - SLOT_SIZE;
+  static final int NO_SLOT = -1;
+
+  /**
+   * Offset of an empty slot, which no cell can have since it is in the header.
+   */
+  private static final int NO_CELL = 0;
+
+  @Getter
+  private final ByteBuffer page;
+
+  SlottedPage(ByteBuffer page) {
+    this.page = page;
+  }
+
+  /**
+   * Format {@code page} as a page without cells.
+   */
+  static SlottedPage initialize(ByteBuffer page) {
+    SlottedPage slottedPage = new SlottedPage(page);
+    slottedPage.setNumberOfSlots(0);
+    slottedPage.setCellsStart(PAGE_SIZE_BYTES);
+    slottedPage.setFragmentedBytes(0);
+    return slottedPage;
+  }
+
+  int getNumberOfSlots() {
+    return page.getShort(0);
+  }
+
+  /**
+   * Bytes a new cell and its slot can take, once the page is compacted.
+   */
+  int getFreeSpace() {
+    return getCellsStart() - directoryEnd() + getFragmentedBytes();
+  }
+
+  boolean isLive(int slot) {
+    return slot >= 0 && slot < getNumberOfSlots() && cellOffset(slot) != NO_CELL;
+  }
+
+  /**
+   * View of the cell in a slot.
+   */
+  ByteBuffer read(int slot) {
+    return page.slice(cellOffset(slot), cellLength(slot));
+  }
+
+  /**
+   * Copy {@code cell} into the page, in an empty slot if there is one.
+   *
+   * @return the slot of the cell, {@link #NO_SLOT} if it does not fit in the page
+   */
+  int insert(ByteBuffer cell) {
+    int slot = 0;
+    while (slot < getNumberOfSlots() && cellOffset(slot) != NO_CELL) {
+      slot++;
+    }
+    boolean isNewSlot = slot == getNumberOfSlots();
+    int neededSpace = cell.remaining() + (isNewSlot ? SLOT_SIZE : 0);
+    if (neededSpace > getFreeSpace()) {
+      return NO_SLOT;
+    }
+
+    if (getCellsStart() - directoryEnd() < neededSpace) {
+      compact();
+    }
+    if (isNewSlot) {
+      setNumberOfSlots(slot + 1);
+    }
+    place(slot, cell);
+    return slot;
+  }
+
+  /**
+   * Replace the cell in a slot, in place if it is not longer than the previous one.
+   *
+   * @return whether the cell fits in the page. If it does not, the page is unchanged
+   */
+  boolean update(int slot, ByteBuffer cell) {
+    int length = cell.remaining();
+    int previousLength = cellLength(slot);
+    if (length <= previousLength) {
+      int offset = cellOffset(slot);
+      page.put(offset, cell, cell.position(), length);
+      setSlot(slot, offset, length);
+      setFragmentedBytes(getFragmentedBytes() + previousLength - length);
+      return true;
+    }
+    if (length > getFreeSpace() + previousLength) {
+      return false;
+    }
+
+    setSlot(slot, NO_CELL, 0);
+    setFragmentedBytes(getFragmentedBytes() + previousLength);
+    if (getCellsStart() - directoryEnd() < length) {
+      compact();
+    }
+    place(slot, cell);
+    return true;
+  }
+
+  /**
+   * Empty a slot. Empty slots at the end of the directory are removed, so that their space can
+   * be taken by cells.
+   */
+  void delete(int slot) {
+    setFragmentedBytes(getFragmentedBytes() + cellLength(slot));
+    setSlot(slot, NO_CELL, 0);
+
+    int numberOfSlots = getNumberOfSlots();
+    while (numberOfSlots > 0 && cellOffset(numberOfSlots - 1) == NO_CELL) {
+      numberOfSlots--;
+    }
+    setNumberOfSlots(numberOfSlots);
+  }
+
+  /**
+   * Move the cells next to each other at the end of the page, so that all the free space is
+   * between the directory and the cells.
+   */
+  void compact() {
+    byte[] cells = new byte[PAGE_SIZE_BYTES];
+    int cellsStart = PAGE_SIZE_BYTES;
+    for (int slot = 0; slot < getNumberOfSlots(); slot++) {
+      if (cellOffset(slot) == NO_CELL) {
+        continue;
+      }
+      int length = cellLength(slot);
+      cellsStart -= length;
+      page.get(cellOffset(slot), cells, cellsStart, length);
+      setSlot(slot, cellsStart, length);
+    }
+
+    page.put(cellsStart, cells, cellsStart, PAGE_SIZE_BYTES - cellsStart);
+    setCellsStart(cellsStart);
+    setFragmentedBytes(0);
+  }
+
+  /**
+   * Copy a cell right before the other cells, which must leave room for it.
+   */
+  private void place(int slot, ByteBuffer cell) {
+    int length = cell.remaining();
+    int offset = getCellsStart() - length;
+    page.put(offset, cell, cell.position(), length);
+    setCellsStart(offset);
+    setSlot(slot, offset, length);
+  }
+
+  private int directoryEnd() {
+    return HEADER_SIZE + getNumberOfSlots() * SLOT_SIZE;
+  }
+
+  private int cellOffset(int slot) {
+    return page.getShort(HEADER_SIZE + slot * SLOT_SIZE);
+  }
+
+  private int cellLength(int slot) {
+    return page.getShort(HEADER_SIZE + slot * SLOT_SIZE + 2);
+  }
+
+  private void setSlot(int slot, int offset, int length) {
+    page.putShort(HEADER_SIZE + slot * SLOT_SIZE, (short) offset);
+    page.putShort(HEADER_SIZE + slot * SLOT_SIZE + 2, (short) length);
+  }
+
+  private int getCellsStart() {
+    return page.getShort(2);
+  }
+
+  private int getFragmentedBytes() {
+    return page.getShort(4);
+  }
+
+  private void setNumberOfSlots(int numberOfSlots) {
+    page.putShort(0, (short) numberOfSlots);
+  }
+
+  private void setCellsStart(int cellsStart) {
+    page.putShort(2, (short) cellsStart);
+  }
+
+  private void setFragmentedBytes(int fragmentedBytes) {
+    page.putShort(4, (short) fragmentedBytes);
+  }
+}
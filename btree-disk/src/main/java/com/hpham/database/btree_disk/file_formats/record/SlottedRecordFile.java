@@ -0,0 +1,348 @@
+package com.hpham.database.btree_disk.file_formats.record;
+
+import com.hpham.database.btree_disk.buffer_pool.BufferPool;
+import com.hpham.database.btree_disk.storage.BufferedFileStorage;
+import com.hpham.database.btree_disk.storage.CompressedFileStorage;
+import com.hpham.database.btree_disk.storage.FileStorage;
+import com.hpham.database.btree_disk.storage.MappedFileStorage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+import static com.hpham.database.btree_disk.constants.DataConstants.PAGE_SIZE_BYTES;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * File of variable-length records, packed into {@link SlottedPage slotted pages}, and addressed
+ * by {@link RecordId}.
+ * <br>
+ * Unlike a {@link RecordFile}, records of any length up to {@link #MAX_RECORD_SIZE} can be
+ * mixed, and the space of deleted records is reused within their page. A new record goes into
+ * the last page, or else into the first page that deletes left at least a quarter free, before
+ * the file grows by a page.
+ * <br>
+ * Reads and writes go through a {@link FileStorage} like those of a {@link RecordFile}.
+ */
+public class SlottedRecordFile {
+  public static final int MAX_RECORD_SIZE = SlottedPage.MAX_CELL_SIZE;
+  private static final int ROOMY_PAGE_FREE_SPACE = PAGE_SIZE_BYTES / 4;
+
+  private final FileStorage.Factory storageFactory;
+  private File file;
+  private FileStorage storage;
+
+  /**
+   * Free space of every page, to choose a page for a new record without reading the pages. It
+   * is read from the pages of an existing file on the first write, so that opening the file to
+   * read it does not read every page.
+   */
+  private final List<Integer> freeSpace = new ArrayList<>();
+  private boolean isFreeSpaceLoaded;
+
+  /**
+   * Pages other than the last one that new records go into. A page joins once deletes leave it
+   * at least {@link #ROOMY_PAGE_FREE_SPACE} bytes free, and leaves once a new record does not
+   * fit in it, so that it is filled up again.
+   */
+  private final TreeSet<Integer> roomyPages = new TreeSet<>();
+
+  /**
+   * Create a record file with a buffer pool of its own.
+   */
+  public SlottedRecordFile() {
+    this(new BufferPool());
+  }
+
+  /**
+   * Create a record file caching its pages in {@code bufferPool}, which may be shared with
+   * other files.
+   */
+  public SlottedRecordFile(BufferPool bufferPool) {
+    this(channel -> new BufferedFileStorage(bufferPool, channel));
+  }
+
+  /**
+   * Create a record file read and written through the storages opened by {@code storageFactory},
+   * such as a {@link com.hpham.database.btree_disk.storage.LoggedFileStorage}.
+   */
+  public SlottedRecordFile(FileStorage.Factory storageFactory) {
+    this.storageFactory = storageFactory;
+  }
+
+  /**
+   * Create a record file mapped into memory, whose reads are views of the mapping rather than
+   * copies.
+   */
+  public static SlottedRecordFile memoryMapped() {
+    return new SlottedRecordFile(MappedFileStorage::new);
+  }
+
+  /**
+   * Create a record file whose slotted pages are compressed on disk by a
+   * {@link CompressedFileStorage}.
+   */
+  public static SlottedRecordFile compressed() {
+    return new SlottedRecordFile(CompressedFileStorage::new);
+  }
+
+  public void openFile(String fileName) throws IOException {
+    file = new File(fileName);
+    file.createNewFile();
+
+    Set<OpenOption> options = new HashSet<>();
+    options.add(READ);
+    options.add(WRITE);
+    options.add(CREATE);
+
+    // Create the custom permissions attribute.
+    Set<PosixFilePermission> perms =
+        PosixFilePermissions.fromString("rw-r-----");
+    FileAttribute<Set<PosixFilePermission>> attr =
+        PosixFilePermissions.asFileAttribute(perms);
+
+    storage = storageFactory.open(FileChannel.open(file.toPath(), options, attr));
+    freeSpace.clear();
+    roomyPages.clear();
+    isFreeSpaceLoaded = false;
+  }
+
+  public int getNumberOfPages() {
+    return Math.toIntExact(storage.size() / PAGE_SIZE_BYTES);
+  }
+
+  /**
+   * Read a record. For a memory-mapped file, this is a read-only view of the mapping, which is
+   * only valid until the page of the record is next written to.
+   *
+   * @throws IllegalArgumentException if there is no record with id {@code recordId}
+   */
+  public ByteBuffer read(RecordId recordId) throws IOException {
+    SlottedPage page = readPage(checkPageNumber(recordId));
+    checkIsLive(page, recordId);
+
+    return page.read(recordId.slot());
+  }
+
+  /**
+   * Start reading every one of {@code recordIds} at once, so that the pages they are in are
+   * read from the file in parallel. Each page is read once, however many of the records it
+   * holds.
+   *
+   * @return futures of the records, in the order of {@code recordIds}, which complete as their
+   *     pages are read, or fail with an {@link IllegalArgumentException} if there is no such
+   *     record
+   * @throws IllegalArgumentException if a record id is past the last page
+   */
+  public List<CompletableFuture<ByteBuffer>> readAll(List<RecordId> recordIds) {
+    Map<Integer, Integer> pageIndexes = new LinkedHashMap<>();
+    for (RecordId recordId : recordIds) {
+      pageIndexes.putIfAbsent(checkPageNumber(recordId), pageIndexes.size());
+    }
+    long[] positions = pageIndexes.keySet().stream()
+        .mapToLong(pageNumber -> (long) pageNumber * PAGE_SIZE_BYTES)
+        .toArray();
+    List<CompletableFuture<ByteBuffer>> pages = storage.readAll(positions, PAGE_SIZE_BYTES);
+
+    return recordIds.stream()
+        .map(recordId -> pages.get(pageIndexes.get((int) recordId.pageNumber()))
+            .thenApply(bytes -> {
+              SlottedPage page = new SlottedPage(bytes);
+              checkIsLive(page, recordId);
+              return page.read(recordId.slot());
+            }))
+        .toList();
+  }
+
+  /**
+   * Write a record into the first page with room for it.
+   *
+   * @throws IllegalArgumentException if the record is larger than {@link #MAX_RECORD_SIZE}
+   */
+  public RecordId append(ByteBuffer bytes) throws IOException {
+    checkRecordSize(bytes);
+    loadFreeSpace();
+    int pageNumber = choosePage(bytes.remaining());
+    SlottedPage page = pageNumber == getNumberOfPages()
+        ? SlottedPage.initialize(ByteBuffer.allocate(PAGE_SIZE_BYTES))
+        : readWritablePage(pageNumber);
+    int slot = page.insert(bytes);
+    writePage(pageNumber, page);
+
+    return new RecordId(pageNumber, slot);
+  }
+
+  /**
+   * Replace a record. The record keeps its id if it still fits in its page, and is moved to
+   * another page otherwise. A moved record is written at its new id before it is deleted from
+   * the old one, so a failed update leaves the old record in place.
+   *
+   * @return the id of the record from now on
+   * @throws IllegalArgumentException if there is no record with id {@code recordId}, or if the
+   *                                  record is larger than {@link #MAX_RECORD_SIZE}
+   */
+  public RecordId update(ByteBuffer bytes, RecordId recordId) throws IOException {
+    if (updateInPlace(bytes, recordId)) {
+      return recordId;
+    }
+    RecordId movedRecordId = append(bytes);
+    delete(recordId);
+    return movedRecordId;
+  }
+
+  /**
+   * Replace a record if it still fits in its page, and leave it as is otherwise, for the caller
+   * to append it elsewhere and delete the old one when it sees fit.
+   *
+   * @return whether the record was replaced
+   * @throws IllegalArgumentException if there is no record with id {@code recordId}, or if the
+   *                                  record is larger than {@link #MAX_RECORD_SIZE}
+   */
+  public boolean updateInPlace(ByteBuffer bytes, RecordId recordId) throws IOException {
+    checkRecordSize(bytes);
+    loadFreeSpace();
+    int pageNumber = checkPageNumber(recordId);
+    SlottedPage page = readWritablePage(pageNumber);
+    checkIsLive(page, recordId);
+
+    if (!page.update(recordId.slot(), bytes)) {
+      return false;
+    }
+    writePage(pageNumber, page);
+    return true;
+  }
+
+  /**
+   * Delete a record. Its id may be given to a record appended later.
+   *
+   * @throws IllegalArgumentException if there is no record with id {@code recordId}
+   */
+  public void delete(RecordId recordId) throws IOException {
+    loadFreeSpace();
+    int pageNumber = checkPageNumber(recordId);
+    SlottedPage page = readWritablePage(pageNumber);
+    checkIsLive(page, recordId);
+
+    page.delete(recordId.slot());
+    writePage(pageNumber, page);
+  }
+
+  /**
+   * Make every write so far reach the file.
+   */
+  public void flush() throws IOException {
+    storage.flush();
+  }
+
+  public void close() throws IOException {
+    storage.close();
+  }
+
+  public void delete() throws IOException {
+    storage.discard();
+    file.delete();
+  }
+
+  private void loadFreeSpace() throws IOException {
+    if (isFreeSpaceLoaded) {
+      return;
+    }
+    int numberOfPages = getNumberOfPages();
+    for (int pageNumber = 0; pageNumber < numberOfPages; pageNumber++) {
+      setFreeSpace(pageNumber, readPage(pageNumber).getFreeSpace());
+    }
+    isFreeSpaceLoaded = true;
+  }
+
+  /**
+   * Choose the page for a new record of {@code length} bytes.
+   *
+   * @return the page number, {@link #getNumberOfPages()} for a new page
+   */
+  private int choosePage(int length) {
+    int neededSpace = length + SlottedPage.SLOT_SIZE;
+    int lastPage = getNumberOfPages() - 1;
+    if (lastPage >= 0 && freeSpace.get(lastPage) >= neededSpace) {
+      return lastPage;
+    }
+    while (!roomyPages.isEmpty()) {
+      int pageNumber = roomyPages.first();
+      if (freeSpace.get(pageNumber) >= neededSpace) {
+        return pageNumber;
+      }
+      // the page is full, until deletes free a quarter of it again
+      roomyPages.pollFirst();
+    }
+    return getNumberOfPages();
+  }
+
+  private static void checkRecordSize(ByteBuffer bytes) {
+    if (bytes.remaining() > MAX_RECORD_SIZE) {
+      throw new IllegalArgumentException(String.format(
+          "Records take at most %d bytes, got %d", MAX_RECORD_SIZE, bytes.remaining()
+      ));
+    }
+  }
+
+  private int checkPageNumber(RecordId recordId) {
+    if (recordId.pageNumber() < 0 || recordId.pageNumber() >= getNumberOfPages()) {
+      throw new IllegalArgumentException(String.format("No record at %s", recordId));
+    }
+    return (int) recordId.pageNumber();
+  }
+
+  private static void checkIsLive(SlottedPage page, RecordId recordId) {
+    if (!page.isLive(recordId.slot())) {
+      throw new IllegalArgumentException(String.format("No record at %s", recordId));
+    }
+  }
+
+  private SlottedPage readPage(int pageNumber) throws IOException {
+    return new SlottedPage(storage.read((long) pageNumber * PAGE_SIZE_BYTES, PAGE_SIZE_BYTES));
+  }
+
+  /**
+   * Copy a page, as reads from the storage may be read-only views.
+   */
+  private SlottedPage readWritablePage(int pageNumber) throws IOException {
+    ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE_BYTES);
+    page.put(storage.read((long) pageNumber * PAGE_SIZE_BYTES, PAGE_SIZE_BYTES));
+    return new SlottedPage(page.clear());
+  }
+
+  private void writePage(int pageNumber, SlottedPage page) throws IOException {
+    storage.write((long) pageNumber * PAGE_SIZE_BYTES, page.getPage().duplicate().clear());
+    setFreeSpace(pageNumber, page.getFreeSpace());
+  }
+
+  private void setFreeSpace(int pageNumber, int pageFreeSpace) {
+    if (pageNumber == freeSpace.size()) {
+      // the previous last page only gets new records through roomyPages from now on
+      if (pageNumber > 0 && freeSpace.get(pageNumber - 1) >= ROOMY_PAGE_FREE_SPACE) {
+        roomyPages.add(pageNumber - 1);
+      }
+      freeSpace.add(pageFreeSpace);
+    } else {
+      freeSpace.set(pageNumber, pageFreeSpace);
+    }
+
+    if (pageNumber < freeSpace.size() - 1 && pageFreeSpace >= ROOMY_PAGE_FREE_SPACE) {
+      roomyPages.add(pageNumber);
+    }
+  }
+}
@@ -0,0 +1,11 @@
+package com.hpham.database.btree_disk.file_formats.schema;
+
+/**
+ * Column of a {@link Schema}. A column keeps its id in every schema of a {@link SchemaCatalog}
+ * that has a column with the same name and type.
+ *
+ * @param typeSignal type signal of the values, see
+ *                   {@link com.hpham.database.btree_disk.constants.DataConstants}
+ */
+public record Column(int id, String name, byte typeSignal) {
+}
@@ -0,0 +1,76 @@
+package com.hpham.database.btree_disk.file_formats.schema;
+
+import com.hpham.database.btree_disk.data_types.Serializable;
+import com.hpham.database.btree_disk.data_types.StringField;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Names and types of the fields of the records packed against it, in the order their values
+ * are packed in.
+ * <pre>
+ *      Schema {
+ *        byte[4]   numberOfColumns;
+ *        Column {
+ *          byte[4]   id;
+ *          byte[1]   typeSignal;
+ *          String    name;
+ *        }[numberOfColumns];
+ *      }
+ * </pre>
+ * The version of a schema is its position in its {@link SchemaCatalog}, so it is not
+ * serialized.
+ */
+public record Schema(int version, List<Column> columns) implements Serializable {
+  @Override
+  public ByteBuffer serialize() {
+    int size = Integer.BYTES + columns.stream()
+        .mapToInt(column -> Integer.BYTES + Byte.BYTES + StringField.serializedSize(column.name()))
+        .sum();
+
+    ByteBuffer bb = ByteBuffer.allocate(size);
+    writeTo(bb);
+    bb.flip();
+
+    return bb;
+  }
+
+  @Override
+  public void writeTo(ByteBuffer dst) {
+    dst.putInt(columns.size());
+    for (Column column : columns) {
+      dst.putInt(column.id());
+      dst.put(column.typeSignal());
+      StringField.write(dst, column.name());
+    }
+  }
+
+  /**
+   * Position of the column named {@code name} among the columns, {@code -1} if there is none.
+   */
+  public int columnIndex(String name) {
+    for (int i = 0; i < columns.size(); i++) {
+      if (columns.get(i).name().equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Read the schema at the position of {@code bb}, leaving the position right after it.
+   */
+  public static Schema deserialize(ByteBuffer bb, int version) {
+    int numberOfColumns = bb.getInt();
+    List<Column> columns = new ArrayList<>(numberOfColumns);
+    for (int i = 0; i < numberOfColumns; i++) {
+      int id = bb.getInt();
+      byte typeSignal = bb.get();
+      columns.add(new Column(id, StringField.deserialize(bb, bb.position()), typeSignal));
+    }
+
+    return new Schema(version, List.copyOf(columns));
+  }
+}
@@ -0,0 +1,174 @@
+package com.hpham.database.btree_disk.file_formats.schema;
+
+import com.hpham.database.btree_disk.buffer_pool.BufferPool;
+import com.hpham.database.btree_disk.data_types.Field;
+import com.hpham.database.btree_disk.storage.BufferedFileStorage;
+import com.hpham.database.btree_disk.storage.FileStorage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Catalog of the {@link Schema schemas} of the records of a table, so that records store the
+ * version of their schema and their values, rather than the name and type of every field.
+ * <br>
+ * A schema is added the first time a record has fields that no schema has, and never changes
+ * afterwards. The file of the catalog is the list of its schemas, in version order; it is read
+ * once when it is opened, and appended to as schemas are added. A catalog that was not opened
+ * keeps its schemas in memory only.
+ * <br>
+ * The catalog is thread-safe.
+ */
+public class SchemaCatalog {
+  /**
+   * Versions are stored in two bytes in every record.
+   */
+  public static final int MAX_NUMBER_OF_SCHEMAS = 1 << Short.SIZE;
+
+  private final FileStorage.Factory storageFactory;
+  private File file;
+  private FileStorage storage;
+
+  private final List<Schema> schemas = new ArrayList<>();
+  private final Map<List<NameAndType>, Schema> schemasByFields = new HashMap<>();
+  private final Map<NameAndType, Integer> columnIds = new HashMap<>();
+
+  /**
+   * Create a catalog with a buffer pool of a single page, as it is only read once.
+   */
+  public SchemaCatalog() {
+    this(channel -> new BufferedFileStorage(new BufferPool(1), channel));
+  }
+
+  /**
+   * Create a catalog read and written through the storages opened by {@code storageFactory}.
+   */
+  public SchemaCatalog(FileStorage.Factory storageFactory) {
+    this.storageFactory = storageFactory;
+  }
+
+  public synchronized void openFile(String fileName) throws IOException {
+    file = new File(fileName);
+    file.createNewFile();
+
+    Set<OpenOption> options = new HashSet<>();
+    options.add(READ);
+    options.add(WRITE);
+    options.add(CREATE);
+
+    // Create the custom permissions attribute.
+    Set<PosixFilePermission> perms =
+        PosixFilePermissions.fromString("rw-r-----");
+    FileAttribute<Set<PosixFilePermission>> attr =
+        PosixFilePermissions.asFileAttribute(perms);
+
+    storage = storageFactory.open(FileChannel.open(file.toPath(), options, attr));
+    schemas.clear();
+    schemasByFields.clear();
+    columnIds.clear();
+    ByteBuffer bb = storage.read(0, Math.toIntExact(storage.size()));
+    while (bb.hasRemaining()) {
+      add(Schema.deserialize(bb, schemas.size()));
+    }
+  }
+
+  /**
+   * Get the schema of {@code version}.
+   *
+   * @throws IllegalArgumentException if the catalog has no such schema
+   */
+  public synchronized Schema getSchema(int version) {
+    if (version < 0 || version >= schemas.size()) {
+      throw new IllegalArgumentException(String.format(
+          "No schema of version %d, the catalog has %d schemas", version, schemas.size()
+      ));
+    }
+    return schemas.get(version);
+  }
+
+  /**
+   * Get the schema of records with {@code fields}, in their iteration order, adding it to the
+   * catalog and its file if there is none yet.
+   *
+   * @throws IllegalStateException if the catalog already has {@link #MAX_NUMBER_OF_SCHEMAS}
+   */
+  public synchronized Schema schemaOf(Map<String, ? extends Field<?>> fields) throws IOException {
+    List<NameAndType> key = fields.entrySet().stream()
+        .map(field -> new NameAndType(field.getKey(), typeSignal(field.getValue())))
+        .toList();
+    Schema schema = schemasByFields.get(key);
+    if (schema != null) {
+      return schema;
+    }
+    if (schemas.size() == MAX_NUMBER_OF_SCHEMAS) {
+      throw new IllegalStateException(String.format(
+          "A catalog holds at most %d schemas", MAX_NUMBER_OF_SCHEMAS
+      ));
+    }
+
+    List<Column> columns = new ArrayList<>(key.size());
+    int nextColumnId = columnIds.size();
+    for (NameAndType field : key) {
+      Integer columnId = columnIds.get(field);
+      columns.add(new Column(
+          columnId == null ? nextColumnId++ : columnId, field.name(), field.typeSignal()
+      ));
+    }
+    schema = new Schema(schemas.size(), List.copyOf(columns));
+    if (storage != null) {
+      storage.write(storage.size(), schema.serialize());
+      // records refer to the schema from now on
+      storage.flush();
+    }
+    add(schema);
+
+    return schema;
+  }
+
+  public synchronized int getNumberOfSchemas() {
+    return schemas.size();
+  }
+
+  public synchronized void close() throws IOException {
+    storage.close();
+  }
+
+  public synchronized void delete() throws IOException {
+    storage.discard();
+    file.delete();
+  }
+
+  private void add(Schema schema) {
+    List<NameAndType> key = schema.columns().stream()
+        .map(column -> new NameAndType(column.name(), column.typeSignal()))
+        .toList();
+    schemas.add(schema);
+    schemasByFields.put(key, schema);
+    for (int i = 0; i < key.size(); i++) {
+      columnIds.putIfAbsent(key.get(i), schema.columns().get(i).id());
+    }
+  }
+
+  private static byte typeSignal(Field<?> field) {
+    return (byte) (char) field.getTypeSignal();
+  }
+
+  private record NameAndType(String name, byte typeSignal) {
+  }
+}
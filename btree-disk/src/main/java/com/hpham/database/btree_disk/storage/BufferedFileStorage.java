@@ -0,0 +1,100 @@
+package com.hpham.database.btree_disk.storage;
+
+import com.hpham.database.btree_disk.buffer_pool.BufferPool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link FileStorage} caching the pages of a file in a {@link BufferPool}, so writes reach the
+ * file when their pages are evicted, or when the storage is flushed or closed. A flush also
+ * syncs the file, so that its writes are durable.
+ * <br>
+ * Reads are copied out of the pool into a buffer of their own. Asynchronous reads pin their
+ * pages without waiting for them, so the pages they miss are read from the file in parallel.
+ */
+public class BufferedFileStorage implements FileStorage {
+  private final BufferPool bufferPool;
+  private final FileChannel channel;
+  private final int fileId;
+  private long size;
+
+  public BufferedFileStorage(BufferPool bufferPool, FileChannel channel) throws IOException {
+    this.bufferPool = bufferPool;
+    this.channel = channel;
+    this.fileId = bufferPool.register(channel);
+    this.size = channel.size();
+  }
+
+  @Override
+  public ByteBuffer read(long position, int length) throws IOException {
+    ByteBuffer readBuffer = ByteBuffer.allocate(length);
+    bufferPool.read(fileId, position, readBuffer);
+
+    return readBuffer.flip();
+  }
+
+  /**
+   * Read like {@link #read}, reading the pages missing from the pool on virtual threads.
+   */
+  @Override
+  public CompletableFuture<ByteBuffer> readAsync(long position, int length) {
+    return bufferPool.readAsync(fileId, position, length);
+  }
+
+  /**
+   * Read like {@link FileStorage#readAll}, with at most a quarter as many reads at a time as the
+   * pool has frames, as every read keeps its pages pinned until it completes.
+   */
+  @Override
+  public List<CompletableFuture<ByteBuffer>> readAll(long[] positions, int length) {
+    int maxReadsInFlight = Math.max(1, bufferPool.getNumberOfFrames() / 4);
+    List<CompletableFuture<ByteBuffer>> reads = new ArrayList<>(positions.length);
+    for (int i = 0; i < positions.length; i++) {
+      long position = positions[i];
+      reads.add(i < maxReadsInFlight
+          ? readAsync(position, length)
+          // started once an earlier read is done, whether it failed or not
+          : reads.get(i - maxReadsInFlight)
+              .handle((bytes, failure) -> null)
+              .thenCompose(ignored -> readAsync(position, length)));
+    }
+    return reads;
+  }
+
+  @Override
+  public void write(long position, ByteBuffer src) throws IOException {
+    size = Math.max(size, position + src.remaining());
+    bufferPool.write(fileId, position, src);
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    bufferPool.flush(fileId);
+    // pages are written whole, so cut the last one back to the end of the file
+    channel.truncate(size);
+    channel.force(false);
+  }
+
+  @Override
+  public void close() throws IOException {
+    bufferPool.unregister(fileId, true);
+    channel.truncate(size);
+    channel.close();
+  }
+
+  @Override
+  public void discard() throws IOException {
+    bufferPool.unregister(fileId, false);
+    channel.close();
+  }
+}
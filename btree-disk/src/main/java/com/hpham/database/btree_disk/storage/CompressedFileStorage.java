@@ -0,0 +1,505 @@
+package com.hpham.database.btree_disk.storage;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static com.hpham.database.btree_disk.constants.DataConstants.PAGE_SIZE_BYTES;
+
+/**
+ * {@link FileStorage} compressing every page of a file with a {@link Deflater}, so that the
+ * file takes less disk, and fewer bytes are read and written for the same pages.
+ * <br>
+ * Compressed pages have different lengths, so a page translation table tells where each page
+ * of the file, as the file formats address it, is on disk:
+ * <pre>
+ *      CompressedFile {
+ *        byte[4]   magic;
+ *        byte[8]   size;
+ *        byte[8]   tableOffset;
+ *        byte[4]   numberOfPages;
+ *        byte[]    extents and free space;
+ *        {
+ *          byte[8]   offset;
+ *          byte[4]   capacity;
+ *          byte[4]   length;
+ *        }[numberOfPages] table;  // at tableOffset, among the extents
+ *      }
+ * </pre>
+ * A page written back is compressed into a free extent large enough for it, or at the end of
+ * the file, rather than over the extent the table on disk points to. It is only rewritten in
+ * place once it has its own extent since the last flush, and still fits in its
+ * {@code capacity}. A page of
+ * {@code length} {@link com.hpham.database.btree_disk.constants.DataConstants#PAGE_SIZE_BYTES}
+ * did not compress, and is stored as it is, and a page without an extent was never written, so
+ * it reads as zeros.
+ * <br>
+ * The last {@code cachedPages} pages used are kept decompressed, and the writes to them only
+ * compressed when they are evicted, or when the storage is flushed, which also writes the
+ * table. The table is written into one of two slots, the one the header does not point to,
+ * and the header is only written once the pages and the table are synced, so the header on
+ * disk always points to a whole table, whose extents are never written over. The extent a
+ * page moved out of is only reused once the table on disk no longer points to it, and the
+ * space of the file that no extent or table takes is found again when the file is opened. A
+ * crash thus leaves the file as of its last flush.
+ */
+public class CompressedFileStorage implements FileStorage {
+  public static final int MAGIC = 0x54435a50; // "TCZP"
+  public static final int DEFAULT_CACHED_PAGES = 64;
+  private static final int HEADER_SIZE = Integer.BYTES + 2 * Long.BYTES + Integer.BYTES;
+  private static final int TABLE_ENTRY_SIZE = Long.BYTES + 2 * Integer.BYTES;
+
+  /**
+   * Extents are rounded up to a multiple of this, so that a page whose compressed length grows
+   * by a few bytes still fits in its extent.
+   */
+  private static final int EXTENT_ALIGNMENT = 64;
+
+  private record Extent(long offset, int capacity, int length) {
+  }
+
+  private final FileChannel channel;
+  private final int cachedPages;
+  private final Deflater deflater;
+  private final Inflater inflater = new Inflater();
+  private final byte[] compressed = new byte[PAGE_SIZE_BYTES];
+
+  /**
+   * Extent of every page, {@code null} for a page that was never written.
+   */
+  private final List<Extent> table = new ArrayList<>();
+
+  /**
+   * Decompressed pages, from the least to the most recently used.
+   */
+  private final LinkedHashMap<Long, ByteBuffer> pages = new LinkedHashMap<>(16, 0.75f, true);
+  private final Set<Long> dirtyPages = new HashSet<>();
+  private long size;
+
+  /**
+   * End of the space taken by the extents and the tables, where space is taken from once no
+   * free extent is large enough.
+   */
+  private long extentsEnd = HEADER_SIZE;
+
+  /**
+   * Space for the table, by slot, {@code null} for a slot that has none yet. The
+   * {@code length} of a slot is the length of the table last written into it.
+   */
+  private final Extent[] tableSlots = new Extent[2];
+
+  /**
+   * Slot of the table the header on disk points to.
+   */
+  private int tableSlot;
+
+  /**
+   * Offsets of the free extents of the file, by capacity. No free extent is larger than a page.
+   */
+  private final TreeMap<Integer, Deque<Long>> freeExtents = new TreeMap<>();
+
+  /**
+   * Extents that pages moved out of since the last flush, which the table on disk still points
+   * to.
+   */
+  private final List<Extent> movedExtents = new ArrayList<>();
+
+  /**
+   * Pages written back into a new extent since the last flush, which the table on disk does
+   * not point to, so they can be written back into it again.
+   */
+  private final Set<Long> movedPages = new HashSet<>();
+
+  @Getter
+  private long compressedPages;
+  @Getter
+  private long compressionNanos;
+  @Getter
+  private long decompressedPages;
+  @Getter
+  private long decompressionNanos;
+
+  public CompressedFileStorage(FileChannel channel) throws IOException {
+    this(channel, Deflater.BEST_SPEED, DEFAULT_CACHED_PAGES);
+  }
+
+  /**
+   * @param level       {@link Deflater} compression level, from {@link Deflater#BEST_SPEED} to
+   *                    {@link Deflater#BEST_COMPRESSION}
+   * @param cachedPages number of pages kept decompressed
+   * @throws IllegalArgumentException if the file exists but was not written by this storage
+   */
+  public CompressedFileStorage(FileChannel channel, int level, int cachedPages)
+      throws IOException {
+    if (cachedPages < 1) {
+      throw new IllegalArgumentException(
+          String.format("At least 1 page must be cached, got %d", cachedPages)
+      );
+    }
+    this.channel = channel;
+    this.cachedPages = cachedPages;
+    this.deflater = new Deflater(level);
+    if (channel.size() > 0) {
+      try {
+        readTable();
+      } catch (IllegalArgumentException e) {
+        channel.close();
+        deflater.end();
+        inflater.end();
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Factory of storages compressing with {@code level}.
+   */
+  public static FileStorage.Factory factory(int level) {
+    return channel -> new CompressedFileStorage(channel, level, DEFAULT_CACHED_PAGES);
+  }
+
+  @Override
+  public synchronized ByteBuffer read(long position, int length) throws IOException {
+    ByteBuffer readBuffer = ByteBuffer.allocate(length);
+    while (readBuffer.hasRemaining()) {
+      int offsetInPage = (int) (position % PAGE_SIZE_BYTES);
+      int lengthInPage = Math.min(readBuffer.remaining(), PAGE_SIZE_BYTES - offsetInPage);
+      readBuffer.put(readBuffer.position(), page(position / PAGE_SIZE_BYTES), offsetInPage,
+          lengthInPage);
+
+      readBuffer.position(readBuffer.position() + lengthInPage);
+      position += lengthInPage;
+    }
+    evict();
+
+    return readBuffer.flip();
+  }
+
+  @Override
+  public synchronized void write(long position, ByteBuffer src) throws IOException {
+    size = Math.max(size, position + src.remaining());
+
+    while (src.hasRemaining()) {
+      long pageNumber = position / PAGE_SIZE_BYTES;
+      int offsetInPage = (int) (position % PAGE_SIZE_BYTES);
+      int length = Math.min(src.remaining(), PAGE_SIZE_BYTES - offsetInPage);
+      page(pageNumber).put(offsetInPage, src, src.position(), length);
+      dirtyPages.add(pageNumber);
+
+      src.position(src.position() + length);
+      position += length;
+    }
+    evict();
+  }
+
+  @Override
+  public synchronized long size() {
+    return size;
+  }
+
+  /**
+   * Bytes taken by the pages on disk, without the extents they moved out of, the header and
+   * the table.
+   */
+  public synchronized long getCompressedSize() {
+    return table.stream().filter(extent -> extent != null).mapToLong(Extent::length).sum();
+  }
+
+  /**
+   * Bytes of the file in free extents, which pages that move or are written for the first time
+   * reuse before the file grows.
+   */
+  public synchronized long getFreeSize() {
+    return freeExtents.entrySet().stream()
+        .mapToLong(entry -> (long) entry.getKey() * entry.getValue().size())
+        .sum();
+  }
+
+  /**
+   * How many times smaller than the pages they hold the extents are, as of the last write
+   * back, {@code 1} for a file without pages.
+   */
+  public synchronized double getCompressionRatio() {
+    long storedPages = table.stream().filter(extent -> extent != null).count();
+    long compressedSize = getCompressedSize();
+
+    return compressedSize == 0 ? 1 : (double) storedPages * PAGE_SIZE_BYTES / compressedSize;
+  }
+
+  /**
+   * Compress the dirty pages, write the table into the slot the header does not point to and
+   * sync the file, then point the header to the new table and sync the file again.
+   */
+  @Override
+  public synchronized void flush() throws IOException {
+    for (Long pageNumber : dirtyPages) {
+      writeBack(pageNumber, pages.get(pageNumber));
+    }
+    dirtyPages.clear();
+
+    int tableLength = table.size() * TABLE_ENTRY_SIZE;
+    int slot = 1 - tableSlot;
+    Extent tableExtent = tableSlots[slot];
+    if (tableExtent == null || tableExtent.capacity() < tableLength) {
+      if (tableExtent != null) {
+        freeSpace(tableExtent.offset(), tableExtent.capacity());
+      }
+      // room for the table to grow, so that the slot does not move on every flush
+      int capacity = Math.max(2 * tableLength, EXTENT_ALIGNMENT);
+      tableExtent = new Extent(extentsEnd, capacity, tableLength);
+      extentsEnd += capacity;
+    }
+    tableSlots[slot] = new Extent(tableExtent.offset(), tableExtent.capacity(), tableLength);
+
+    ByteBuffer tableBuffer = ByteBuffer.allocate(tableLength);
+    for (Extent extent : table) {
+      tableBuffer.putLong(extent == null ? -1 : extent.offset());
+      tableBuffer.putInt(extent == null ? 0 : extent.capacity());
+      tableBuffer.putInt(extent == null ? 0 : extent.length());
+    }
+    writeFully(tableBuffer.flip(), tableExtent.offset());
+    // the header must not point to a table or pages that are not on disk yet
+    channel.force(false);
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC);
+    header.putLong(size);
+    header.putLong(tableExtent.offset());
+    header.putInt(table.size());
+    writeFully(header.flip(), 0);
+    channel.force(false);
+    tableSlot = slot;
+
+    // the table on disk no longer points to the extents pages moved out of
+    movedExtents.forEach(extent -> freeSpace(extent.offset(), extent.capacity()));
+    movedExtents.clear();
+    movedPages.clear();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    flush();
+    channel.close();
+    deflater.end();
+    inflater.end();
+  }
+
+  @Override
+  public synchronized void discard() throws IOException {
+    pages.clear();
+    dirtyPages.clear();
+    channel.close();
+    deflater.end();
+    inflater.end();
+  }
+
+  /**
+   * Get a page from the cache, decompressing it first if it is not cached.
+   */
+  private ByteBuffer page(long pageNumber) throws IOException {
+    ByteBuffer page = pages.get(pageNumber);
+    if (page != null) {
+      return page;
+    }
+
+    page = ByteBuffer.allocate(PAGE_SIZE_BYTES);
+    Extent extent = pageNumber < table.size() ? table.get((int) pageNumber) : null;
+    if (extent != null) {
+      ByteBuffer bytes = ByteBuffer.allocate(extent.length());
+      readFully(bytes, extent.offset());
+      if (extent.length() == PAGE_SIZE_BYTES) {
+        page.put(0, bytes, 0, PAGE_SIZE_BYTES);
+      } else {
+        decompress(bytes.array(), extent.length(), page.array(), pageNumber);
+      }
+    }
+    pages.put(pageNumber, page);
+
+    return page;
+  }
+
+  private void decompress(byte[] bytes, int length, byte[] page, long pageNumber) {
+    long start = System.nanoTime();
+    inflater.reset();
+    inflater.setInput(bytes, 0, length);
+    try {
+      if (inflater.inflate(page) != PAGE_SIZE_BYTES || !inflater.finished()) {
+        throw new IllegalStateException(
+            String.format("Page %d does not decompress to a whole page", pageNumber)
+        );
+      }
+    } catch (DataFormatException e) {
+      throw new IllegalStateException(String.format("Page %d is corrupted", pageNumber), e);
+    }
+    decompressionNanos += System.nanoTime() - start;
+    decompressedPages++;
+  }
+
+  /**
+   * Drop the least recently used pages past {@code cachedPages}, writing back the dirty ones.
+   */
+  private void evict() throws IOException {
+    Iterator<Map.Entry<Long, ByteBuffer>> iterator = pages.entrySet().iterator();
+    while (pages.size() > cachedPages) {
+      Map.Entry<Long, ByteBuffer> eldest = iterator.next();
+      if (dirtyPages.remove(eldest.getKey())) {
+        writeBack(eldest.getKey(), eldest.getValue());
+      }
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Compress a page into a new extent, or into the extent it was moved to since the last flush
+   * if it still fits there.
+   */
+  private void writeBack(long pageNumber, ByteBuffer page) throws IOException {
+    long start = System.nanoTime();
+    deflater.reset();
+    deflater.setInput(page.array(), 0, PAGE_SIZE_BYTES);
+    deflater.finish();
+    int length = deflater.deflate(compressed);
+    compressionNanos += System.nanoTime() - start;
+    compressedPages++;
+
+    ByteBuffer bytes;
+    if (deflater.finished() && length < PAGE_SIZE_BYTES) {
+      bytes = ByteBuffer.wrap(compressed, 0, length);
+    } else {
+      // the page did not compress, so it is cheaper to store it as it is
+      length = PAGE_SIZE_BYTES;
+      bytes = page.duplicate().clear();
+    }
+
+    while (table.size() <= pageNumber) {
+      table.add(null);
+    }
+    Extent extent = table.get((int) pageNumber);
+    if (movedPages.contains(pageNumber) && extent.capacity() >= length) {
+      extent = new Extent(extent.offset(), extent.capacity(), length);
+    } else {
+      if (movedPages.contains(pageNumber)) {
+        freeSpace(extent.offset(), extent.capacity());
+      } else if (extent != null) {
+        // the table on disk points to the extent until the next flush
+        movedExtents.add(extent);
+      }
+      extent = allocate(length);
+      movedPages.add(pageNumber);
+    }
+    table.set((int) pageNumber, extent);
+    writeFully(bytes, extent.offset());
+  }
+
+  /**
+   * Take an extent for {@code length} bytes from the smallest free extent large enough, leaving
+   * the rest of it free, or from the end of the file if there is none.
+   */
+  private Extent allocate(int length) {
+    int capacity = Math.min(PAGE_SIZE_BYTES,
+        Math.ceilDiv(length, EXTENT_ALIGNMENT) * EXTENT_ALIGNMENT);
+    Map.Entry<Integer, Deque<Long>> freeExtent = freeExtents.ceilingEntry(capacity);
+    if (freeExtent == null) {
+      Extent extent = new Extent(extentsEnd, capacity, length);
+      extentsEnd += capacity;
+      return extent;
+    }
+
+    long offset = freeExtent.getValue().pop();
+    if (freeExtent.getValue().isEmpty()) {
+      freeExtents.remove(freeExtent.getKey());
+    }
+    freeSpace(offset + capacity, freeExtent.getKey() - capacity);
+    return new Extent(offset, capacity, length);
+  }
+
+  /**
+   * Add the {@code length} bytes at {@code offset} to the free extents, in extents of at most a
+   * page.
+   */
+  private void freeSpace(long offset, long length) {
+    while (length > 0) {
+      int capacity = (int) Math.min(length, PAGE_SIZE_BYTES);
+      freeExtents.computeIfAbsent(capacity, key -> new ArrayDeque<>()).push(offset);
+      offset += capacity;
+      length -= capacity;
+    }
+  }
+
+  /**
+   * @throws IllegalArgumentException if the file does not start with {@link #MAGIC}
+   */
+  private void readTable() throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    readFully(header, 0);
+    header.flip();
+    int magic = header.getInt();
+    if (magic != MAGIC) {
+      throw new IllegalArgumentException(String.format(
+          "Not a compressed file, magic number is %#x instead of %#x", magic, MAGIC
+      ));
+    }
+    size = header.getLong();
+    long tableOffset = header.getLong();
+    int numberOfPages = header.getInt();
+
+    int tableLength = numberOfPages * TABLE_ENTRY_SIZE;
+    ByteBuffer tableBuffer = ByteBuffer.allocate(tableLength);
+    readFully(tableBuffer, tableOffset);
+    tableBuffer.flip();
+    for (int i = 0; i < numberOfPages; i++) {
+      long offset = tableBuffer.getLong();
+      int capacity = tableBuffer.getInt();
+      int length = tableBuffer.getInt();
+      table.add(offset < 0 ? null : new Extent(offset, capacity, length));
+    }
+    tableSlots[tableSlot] = new Extent(tableOffset, tableLength, tableLength);
+
+    // the space between the extents and the table, such as the extents pages moved out of, is
+    // free
+    List<Extent> usedExtents = new ArrayList<>(table.stream().filter(extent -> extent != null)
+        .toList());
+    usedExtents.add(tableSlots[tableSlot]);
+    usedExtents.sort(Comparator.comparingLong(Extent::offset));
+    long usedEnd = HEADER_SIZE;
+    for (Extent extent : usedExtents) {
+      freeSpace(usedEnd, extent.offset() - usedEnd);
+      usedEnd = Math.max(usedEnd, extent.offset() + extent.capacity());
+    }
+    extentsEnd = Math.max(channel.size(), usedEnd);
+    freeSpace(usedEnd, extentsEnd - usedEnd);
+  }
+
+  private void readFully(ByteBuffer dst, long position) throws IOException {
+    while (dst.hasRemaining()) {
+      if (channel.read(dst, position + dst.position()) < 0) {
+        throw new IllegalStateException(String.format(
+            "The file ends at %d, before the %d bytes at %d", channel.size(), dst.limit(),
+            position
+        ));
+      }
+    }
+  }
+
+  private void writeFully(ByteBuffer src, long position) throws IOException {
+    while (src.hasRemaining()) {
+      position += channel.write(src, position);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.hpham.database.btree_disk.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Byte-addressed access to an open file, used by the file formats to read and write their
+ * pages and records.
+ * <br>
+ * The storage keeps track of the size of the file, which may be ahead of the size on disk until
+ * the storage is flushed or closed.
+ */
+public interface FileStorage {
+
+  /**
+   * Open a storage over a channel opened for reading and writing.
+   */
+  @FunctionalInterface
+  interface Factory {
+    FileStorage open(FileChannel channel) throws IOException;
+  }
+
+  /**
+   * Read {@code length} bytes starting at byte {@code position}. Bytes past the end of the file
+   * read as zeros.
+   *
+   * @return buffer with position {@code 0} and limit {@code length}, which may be a read-only
+   *     view of the storage, so that it sees later writes to the same bytes
+   */
+  ByteBuffer read(long position, int length) throws IOException;
+
+  /**
+   * Read like {@link #read}, without waiting for the bytes to be read from the file, so that
+   * many reads can be waiting for the disk at the same time.
+   * <br>
+   * By default, the bytes are read before this returns, which suits the storages that read from
+   * memory.
+   *
+   * @return future of the bytes, completed exceptionally with the {@link IOException} of a
+   *     failed read
+   */
+  default CompletableFuture<ByteBuffer> readAsync(long position, int length) {
+    try {
+      return CompletableFuture.completedFuture(read(position, length));
+    } catch (IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Start reading {@code length} bytes at each of {@code positions} with {@link #readAsync},
+   * so that the reads overlap instead of waiting for each other.
+   *
+   * @return futures of the bytes at each position, in the order of {@code positions}, which
+   *     complete as their reads do
+   */
+  default List<CompletableFuture<ByteBuffer>> readAll(long[] positions, int length) {
+    List<CompletableFuture<ByteBuffer>> reads = new ArrayList<>(positions.length);
+    for (long position : positions) {
+      reads.add(readAsync(position, length));
+    }
+    return reads;
+  }
+
+  /**
+   * Write {@code src.remaining()} bytes starting at byte {@code position}, growing the file if
+   * they go past its end.
+   */
+  void write(long position, ByteBuffer src) throws IOException;
+
+  /**
+   * Size of the file, including the bytes that have not reached the disk yet.
+   */
+  long size();
+
+  /**
+   * Make every write so far reach the file.
+   */
+  void flush() throws IOException;
+
+  /**
+   * Flush, cut the file back to {@link #size()}, and close its channel.
+   */
+  void close() throws IOException;
+
+  /**
+   * Close the channel, dropping the writes that did not reach the file, as when it is deleted.
+   */
+  void discard() throws IOException;
+}
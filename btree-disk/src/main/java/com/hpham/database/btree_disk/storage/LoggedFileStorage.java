@@ -0,0 +1,166 @@
+package com.hpham.database.btree_disk.storage;
+
+import com.hpham.database.btree_disk.wal.LogRecord;
+import com.hpham.database.btree_disk.wal.WriteAheadLog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static com.hpham.database.btree_disk.constants.DataConstants.PAGE_SIZE_BYTES;
+
+/**
+ * {@link FileStorage} making the writes to another storage durable through a
+ * {@link WriteAheadLog}.
+ * <br>
+ * Writes are held in memory, and {@link #flush()} commits all of them as one transaction: they
+ * are logged, and only applied to the other storage once the log is synced. The writes between
+ * two flushes, such as those of a node split, are thus durable together or not at all, while
+ * the other storage never needs to be synced, except at checkpoints of the log.
+ * <br>
+ * Reads see the writes that are not committed yet.
+ */
+public class LoggedFileStorage implements FileStorage {
+  private final WriteAheadLog writeAheadLog;
+  private final int fileId;
+  private final FileStorage storage;
+  private final List<LogRecord> uncommittedWrites = new ArrayList<>();
+
+  /**
+   * Pages changed by the uncommitted writes, as they will be once the writes are committed.
+   */
+  private final Map<Long, ByteBuffer> uncommittedPages = new HashMap<>();
+  private long size;
+
+  /**
+   * Log the writes to {@code storage}, after replaying those that were committed to it but may
+   * not have reached it.
+   *
+   * @param fileId id of the file in the log, the same every time the file is opened
+   */
+  public LoggedFileStorage(WriteAheadLog writeAheadLog, int fileId, FileStorage storage)
+      throws IOException {
+    this.writeAheadLog = writeAheadLog;
+    this.fileId = fileId;
+    this.storage = storage;
+    writeAheadLog.register(fileId, storage);
+    this.size = storage.size();
+  }
+
+  /**
+   * Factory of storages logging their writes to the storages opened by {@code factory}.
+   */
+  public static FileStorage.Factory factory(
+      WriteAheadLog writeAheadLog,
+      int fileId,
+      FileStorage.Factory factory
+  ) {
+    return channel -> new LoggedFileStorage(writeAheadLog, fileId, factory.open(channel));
+  }
+
+  @Override
+  public ByteBuffer read(long position, int length) throws IOException {
+    if (uncommittedPages.isEmpty()) {
+      return storage.read(position, length);
+    }
+
+    ByteBuffer readBuffer = ByteBuffer.allocate(length);
+    while (readBuffer.hasRemaining()) {
+      int offsetInPage = (int) (position % PAGE_SIZE_BYTES);
+      int lengthInPage = Math.min(readBuffer.remaining(), PAGE_SIZE_BYTES - offsetInPage);
+      ByteBuffer page = uncommittedPages.get(position / PAGE_SIZE_BYTES);
+      if (page != null) {
+        readBuffer.put(readBuffer.position(), page, offsetInPage, lengthInPage);
+      } else {
+        ByteBuffer bytes = storage.read(position, lengthInPage);
+        readBuffer.put(readBuffer.position(), bytes, bytes.position(), lengthInPage);
+      }
+
+      readBuffer.position(readBuffer.position() + lengthInPage);
+      position += lengthInPage;
+    }
+    return readBuffer.flip();
+  }
+
+  @Override
+  public CompletableFuture<ByteBuffer> readAsync(long position, int length) {
+    return uncommittedPages.isEmpty()
+        ? storage.readAsync(position, length)
+        : FileStorage.super.readAsync(position, length);
+  }
+
+  @Override
+  public List<CompletableFuture<ByteBuffer>> readAll(long[] positions, int length) {
+    return uncommittedPages.isEmpty()
+        ? storage.readAll(positions, length)
+        : FileStorage.super.readAll(positions, length);
+  }
+
+  @Override
+  public void write(long position, ByteBuffer src) throws IOException {
+    uncommittedWrites.add(LogRecord.of(fileId, position, src));
+    size = Math.max(size, position + src.remaining());
+
+    while (src.hasRemaining()) {
+      long pageNumber = position / PAGE_SIZE_BYTES;
+      int offsetInPage = (int) (position % PAGE_SIZE_BYTES);
+      int length = Math.min(src.remaining(), PAGE_SIZE_BYTES - offsetInPage);
+      ByteBuffer page = uncommittedPages.get(pageNumber);
+      if (page == null) {
+        page = ByteBuffer.allocate(PAGE_SIZE_BYTES);
+        page.put(storage.read(pageNumber * PAGE_SIZE_BYTES, PAGE_SIZE_BYTES));
+        uncommittedPages.put(pageNumber, page);
+      }
+      page.put(offsetInPage, src, src.position(), length);
+
+      src.position(src.position() + length);
+      position += length;
+    }
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Commit the writes since the last flush, which are durable once this returns.
+   */
+  @Override
+  public void flush() throws IOException {
+    if (uncommittedWrites.isEmpty()) {
+      return;
+    }
+    writeAheadLog.commit(uncommittedWrites, storage);
+    uncommittedWrites.clear();
+    uncommittedPages.clear();
+  }
+
+  /**
+   * Commit the writes since the last flush, and close the other storage once it is synced, so
+   * that the log no longer needs its writes.
+   */
+  @Override
+  public void close() throws IOException {
+    flush();
+    storage.flush();
+    writeAheadLog.unregister(fileId);
+    storage.close();
+  }
+
+  /**
+   * Drop the writes since the last flush, and close the other storage without writing back
+   * its changes, which the log keeps until the next checkpoint.
+   */
+  @Override
+  public void discard() throws IOException {
+    uncommittedWrites.clear();
+    uncommittedPages.clear();
+    writeAheadLog.unregister(fileId);
+    storage.discard();
+  }
+}
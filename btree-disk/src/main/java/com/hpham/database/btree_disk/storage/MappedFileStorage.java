@@ -0,0 +1,154 @@
+package com.hpham.database.btree_disk.storage;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * {@link FileStorage} mapping a file into memory with {@link FileChannel#map}, one chunk of
+ * {@code chunkSize} bytes at a time as the file grows.
+ * <br>
+ * Reads within a chunk are zero-copy read-only slices of the mapping; only a read across two
+ * chunks, or past the end of the file, is copied. Reads never map chunks past the end of the
+ * file, so they never grow it. Writes go to the mapping, and reach the disk when the OS writes
+ * the pages back, or when the storage is flushed or closed with {@link MappedByteBuffer#force()}.
+ * <br>
+ * Any number of threads may read at the same time.
+ * <br>
+ * Mapping a chunk grows the file on disk to the end of the chunk, so the file is only cut back
+ * to its size when it is closed: cutting a file that is still mapped would make the next access
+ * past its end crash.
+ */
+public class MappedFileStorage implements FileStorage {
+  public static final int DEFAULT_CHUNK_SIZE_BYTES = 1 << 24;
+
+  private final FileChannel channel;
+
+  /**
+   * Replaced rather than grown when a chunk is mapped, so that readers never see it change.
+   */
+  private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+  @Getter
+  private final int chunkSize;
+  private volatile long size;
+
+  public MappedFileStorage(FileChannel channel) throws IOException {
+    this(channel, DEFAULT_CHUNK_SIZE_BYTES);
+  }
+
+  public MappedFileStorage(FileChannel channel, int chunkSize) throws IOException {
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException(
+          String.format("Chunks need at least 1 byte, got %d", chunkSize)
+      );
+    }
+    this.channel = channel;
+    this.chunkSize = chunkSize;
+    this.size = channel.size();
+  }
+
+  public int getNumberOfChunks() {
+    return chunks.length;
+  }
+
+  @Override
+  public ByteBuffer read(long position, int length) throws IOException {
+    // the bytes past the end of the file are left as zeros, without mapping them
+    int lengthInFile = Math.clamp(size - position, 0, length);
+    if (lengthInFile == 0) {
+      return ByteBuffer.allocate(length);
+    }
+
+    MappedByteBuffer[] chunks = map(position + lengthInFile);
+    int chunkIndex = (int) (position / chunkSize);
+    int offsetInChunk = (int) (position % chunkSize);
+    if (lengthInFile == length && offsetInChunk + length <= chunkSize) {
+      return chunks[chunkIndex].slice(offsetInChunk, length).asReadOnlyBuffer();
+    }
+
+    ByteBuffer readBuffer = ByteBuffer.allocate(length);
+    while (readBuffer.position() < lengthInFile) {
+      int lengthInChunk = Math.min(
+          lengthInFile - readBuffer.position(),
+          chunkSize - offsetInChunk
+      );
+      readBuffer.put(readBuffer.position(), chunks[chunkIndex], offsetInChunk, lengthInChunk);
+      readBuffer.position(readBuffer.position() + lengthInChunk);
+      chunkIndex++;
+      offsetInChunk = 0;
+    }
+    return readBuffer.clear();
+  }
+
+  @Override
+  public void write(long position, ByteBuffer src) throws IOException {
+    MappedByteBuffer[] chunks = map(position + src.remaining());
+    size = Math.max(size, position + src.remaining());
+    while (src.hasRemaining()) {
+      int offsetInChunk = (int) (position % chunkSize);
+      int length = Math.min(src.remaining(), chunkSize - offsetInChunk);
+      chunks[(int) (position / chunkSize)].put(offsetInChunk, src, src.position(), length);
+
+      src.position(src.position() + length);
+      position += length;
+    }
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public void flush() {
+    for (MappedByteBuffer chunk : chunks) {
+      chunk.force();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+    // the mappings stay valid until they are garbage collected, but are never accessed again
+    chunks = new MappedByteBuffer[0];
+    channel.truncate(size);
+    channel.close();
+  }
+
+  @Override
+  public void discard() throws IOException {
+    chunks = new MappedByteBuffer[0];
+    channel.close();
+  }
+
+  /**
+   * Map chunks until the mapping covers the first {@code end} bytes of the file.
+   *
+   * @return the chunks mapped so far
+   */
+  private MappedByteBuffer[] map(long end) throws IOException {
+    MappedByteBuffer[] mapped = chunks;
+    if ((long) mapped.length * chunkSize >= end) {
+      return mapped;
+    }
+
+    synchronized (this) {
+      mapped = chunks;
+      if ((long) mapped.length * chunkSize < end) {
+        int numberOfChunks = Math.toIntExact(Math.ceilDiv(end, chunkSize));
+        int numberOfMappedChunks = mapped.length;
+        mapped = Arrays.copyOf(mapped, numberOfChunks);
+        for (int i = numberOfMappedChunks; i < numberOfChunks; i++) {
+          long chunkStart = (long) i * chunkSize;
+          mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, chunkSize);
+        }
+        chunks = mapped;
+      }
+      return mapped;
+    }
+  }
+}
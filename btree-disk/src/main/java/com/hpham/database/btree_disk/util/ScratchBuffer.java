@@ -0,0 +1,33 @@
+package com.hpham.database.btree_disk.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Buffer of each thread to serialize into before a write, instead of allocating a buffer per
+ * write. It grows to the largest capacity asked for, by doubling.
+ * <br>
+ * The buffer is only valid until the next call to {@link #get} on the same thread, so it must not
+ * be kept after the write, which is fine for every storage, as they all copy what they write.
+ */
+public class ScratchBuffer {
+  private static final int INITIAL_CAPACITY = 1 << 10;
+
+  private static final ThreadLocal<ByteBuffer> BUFFERS =
+      ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_CAPACITY));
+
+  private ScratchBuffer() {
+  }
+
+  /**
+   * Get the cleared buffer of the current thread, with at least {@code capacity} bytes remaining.
+   */
+  public static ByteBuffer get(int capacity) {
+    ByteBuffer buffer = BUFFERS.get();
+    if (buffer.capacity() < capacity) {
+      buffer = ByteBuffer.allocate(Math.max(capacity, 2 * buffer.capacity()));
+      BUFFERS.set(buffer);
+    }
+
+    return buffer.clear().limit(capacity);
+  }
+}
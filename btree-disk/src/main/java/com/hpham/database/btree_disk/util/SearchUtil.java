@@ -34,6 +34,28 @@ public class SearchUtil {
   }
 
 
+  /**
+   * Find the index of the first key that is larger than or equal to the search key,
+   * using binary search. Returns the size of the list if there is no such key.
+   */
+  public static <K extends Comparable<K>> int findFirstNotSmallerIndex(K key, List<K> keyList) {
+    int start = 0;
+    int end = keyList.size();
+
+    while (start < end) {
+      int mid = (start + end) >>> 1;
+
+      if (keyList.get(mid).compareTo(key) < 0) {
+        start = mid + 1;
+      } else {
+        end = mid;
+      }
+    }
+
+    return start;
+  }
+
+
   /**
    * Find the index of the first key that is larger than the search key,
    * using binary search. Returns <code>-1</code> if there is no key in the list larger
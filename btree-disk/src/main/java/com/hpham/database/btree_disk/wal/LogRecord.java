@@ -0,0 +1,22 @@
+package com.hpham.database.btree_disk.wal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Change to a file in the {@link WriteAheadLog}: {@code bytes} written at byte {@code position}
+ * of the file with id {@code fileId}.
+ * <br>
+ * Records carry the bytes after the change, so replaying a record twice leaves the file as
+ * replaying it once.
+ */
+public record LogRecord(int fileId, long position, byte[] bytes) {
+
+  /**
+   * Record of a write of the remaining bytes of {@code src}, which are copied.
+   */
+  public static LogRecord of(int fileId, long position, ByteBuffer src) {
+    byte[] bytes = new byte[src.remaining()];
+    src.get(src.position(), bytes);
+    return new LogRecord(fileId, position, bytes);
+  }
+}
@@ -0,0 +1,343 @@
+package com.hpham.database.btree_disk.wal;
+
+import com.hpham.database.btree_disk.storage.FileStorage;
+import lombok.Getter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
+
+import static com.hpham.database.btree_disk.constants.DataConstants.INT_SIZE_BYTES;
+import static com.hpham.database.btree_disk.constants.DataConstants.LONG_SIZE_BYTES;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Redo log of the changes to a set of files, so that their changes are durable without
+ * syncing the files themselves.
+ * <br>
+ * Changes are committed in transactions: the {@link LogRecord log records} of a transaction are
+ * appended at once, followed by a commit marker, and only applied to their files once they are
+ * durable. A file thus never holds changes that are not in the log, and a transaction is either
+ * entirely in the log or not at all.
+ * <br>
+ * The log is synced with group commit: while a sync is in progress, the transactions committed
+ * by other threads are queued, and the first of them to wake up syncs all of them at once. The
+ * more threads commit at the same time, the fewer syncs per transaction.
+ * <br>
+ * On opening, the transactions in the log are read back, and replayed into each file when it is
+ * {@link #register registered}. A transaction cut short by a crash, without a commit marker or
+ * with a wrong checksum, ends the log.
+ * <pre>
+ *      Entry {
+ *        byte[4]       length;
+ *        byte[4]       fileId;     // -1 for a commit marker
+ *        byte[8]       position;
+ *        byte[length]  bytes;
+ *        byte[4]       checksum;   // CRC32C of the fields above
+ *      }
+ * </pre>
+ */
+public class WriteAheadLog {
+  private static final int COMMIT_MARKER = -1;
+  private static final int ENTRY_HEADER_SIZE = INT_SIZE_BYTES + INT_SIZE_BYTES + LONG_SIZE_BYTES;
+  private static final int ENTRY_OVERHEAD = ENTRY_HEADER_SIZE + INT_SIZE_BYTES;
+  private static final int PREALLOCATION_SIZE = 1 << 20;
+
+  /**
+   * Commits hold the read lock from appending to the log until their changes are applied to
+   * their files, so that a checkpoint never truncates changes that are not in their files yet.
+   */
+  private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+  private final Map<Integer, FileStorage> files = new HashMap<>();
+  private final Map<Integer, List<LogRecord>> recoveredRecords = new HashMap<>();
+  private FileChannel channel;
+
+  /**
+   * Transactions appended since the last sync started, serialized.
+   */
+  private List<ByteBuffer> queuedTransactions = new ArrayList<>();
+  private long appendedLsn;
+  private long durableLsn;
+  private boolean isSyncing;
+
+  /**
+   * End of the zeros written past the end of the log, so that most syncs do not have to sync
+   * a new file size too. Only the thread syncing the log changes it.
+   */
+  private long allocatedSize;
+
+  /**
+   * Whether a sync failed, after which the transactions it held may or may not be durable.
+   */
+  private boolean isBroken;
+
+  /**
+   * Transactions committed.
+   */
+  @Getter
+  private long commits;
+
+  /**
+   * Syncs of the log, at most one per transaction.
+   */
+  @Getter
+  private long syncs;
+
+  /**
+   * Open a log, reading back its committed transactions, and cutting off what follows them.
+   */
+  public void openFile(String fileName) throws IOException {
+    File file = new File(fileName);
+    channel = FileChannel.open(file.toPath(), READ, WRITE, CREATE);
+
+    ByteBuffer log = ByteBuffer.allocate(Math.toIntExact(channel.size()));
+    while (log.hasRemaining() && channel.read(log, log.position()) >= 0) {
+      // read the whole log
+    }
+    long end = recover(log.flip());
+
+    channel.truncate(end);
+    channel.force(false);
+    appendedLsn = end;
+    durableLsn = end;
+    allocatedSize = end;
+  }
+
+  /**
+   * Start logging the changes to a file, after replaying its committed changes into
+   * {@code file}.
+   *
+   * @param fileId id of the file in the log, the same every time the file is opened
+   * @throws IllegalArgumentException if a file is already registered with {@code fileId}
+   */
+  public synchronized void register(int fileId, FileStorage file) throws IOException {
+    if (fileId == COMMIT_MARKER || files.containsKey(fileId)) {
+      throw new IllegalArgumentException(
+          String.format("A file is already registered with id %d", fileId)
+      );
+    }
+
+    for (LogRecord logRecord : recoveredRecords.getOrDefault(fileId, List.of())) {
+      file.write(logRecord.position(), ByteBuffer.wrap(logRecord.bytes()));
+    }
+    recoveredRecords.remove(fileId);
+    files.put(fileId, file);
+  }
+
+  public synchronized void unregister(int fileId) {
+    files.remove(fileId);
+  }
+
+  /**
+   * Log a transaction, wait until it is durable, and apply it to {@code file}.
+   */
+  public void commit(List<LogRecord> logRecords, FileStorage file) throws IOException {
+    checkpointLock.readLock().lock();
+    try {
+      awaitDurable(append(logRecords));
+      for (LogRecord logRecord : logRecords) {
+        file.write(logRecord.position(), ByteBuffer.wrap(logRecord.bytes()));
+      }
+    } finally {
+      checkpointLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Flush every registered file, and empty the log.
+   *
+   * @throws IllegalStateException if the log holds changes to a file that is not registered
+   *     since the log was opened, which would be lost
+   */
+  public void checkpoint() throws IOException {
+    checkpointLock.writeLock().lock();
+    try {
+      synchronized (this) {
+        if (!recoveredRecords.isEmpty()) {
+          throw new IllegalStateException(String.format(
+              "The log holds changes to files %s, which have not been registered",
+              recoveredRecords.keySet()
+          ));
+        }
+        for (FileStorage file : files.values()) {
+          file.flush();
+        }
+        channel.truncate(0);
+        channel.force(false);
+        appendedLsn = 0;
+        durableLsn = 0;
+        allocatedSize = 0;
+      }
+    } finally {
+      checkpointLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Size of the log, including transactions waiting for a sync.
+   */
+  public synchronized long size() {
+    return appendedLsn;
+  }
+
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Queue a transaction for the next sync.
+   *
+   * @return position in the log of the end of the transaction
+   */
+  private synchronized long append(List<LogRecord> logRecords) {
+    int size = ENTRY_OVERHEAD;
+    for (LogRecord logRecord : logRecords) {
+      size += ENTRY_OVERHEAD + logRecord.bytes().length;
+    }
+
+    ByteBuffer transaction = ByteBuffer.allocate(size);
+    for (LogRecord logRecord : logRecords) {
+      putEntry(transaction, logRecord.fileId(), logRecord.position(), logRecord.bytes());
+    }
+    putEntry(transaction, COMMIT_MARKER, 0, new byte[0]);
+    queuedTransactions.add(transaction.flip());
+    appendedLsn += size;
+    commits++;
+
+    return appendedLsn;
+  }
+
+  /**
+   * Wait until the log is durable up to {@code lsn}, syncing it if no other thread does.
+   */
+  private void awaitDurable(long lsn) throws IOException {
+    List<ByteBuffer> transactions;
+    long position;
+    long end;
+    synchronized (this) {
+      while (isSyncing && durableLsn < lsn && !isBroken) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while waiting for the log to be synced", e);
+        }
+      }
+      if (durableLsn >= lsn) {
+        return;
+      }
+      if (isBroken) {
+        throw new IOException("A previous sync of the log failed");
+      }
+
+      // sync every transaction queued so far, including those of the threads waiting
+      isSyncing = true;
+      transactions = queuedTransactions;
+      queuedTransactions = new ArrayList<>();
+      position = durableLsn;
+      end = appendedLsn;
+    }
+
+    boolean isSynced = false;
+    try {
+      for (ByteBuffer transaction : transactions) {
+        while (transaction.hasRemaining()) {
+          position += channel.write(transaction, position);
+        }
+      }
+      if (position > allocatedSize) {
+        preallocate(position);
+      }
+      channel.force(false);
+      isSynced = true;
+    } finally {
+      synchronized (this) {
+        isSyncing = false;
+        if (isSynced) {
+          durableLsn = end;
+          syncs++;
+        } else {
+          isBroken = true;
+        }
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Write zeros from {@code position} up to the next multiple of {@link #PREALLOCATION_SIZE}.
+   * Zeros end the log when it is recovered, since their checksum does not match.
+   */
+  private void preallocate(long position) throws IOException {
+    long end = (position / PREALLOCATION_SIZE + 1) * PREALLOCATION_SIZE;
+    ByteBuffer zeros = ByteBuffer.allocate(Math.toIntExact(end - position));
+    while (zeros.hasRemaining()) {
+      channel.write(zeros, position + zeros.position());
+    }
+    allocatedSize = end;
+  }
+
+  /**
+   * Read back the committed transactions of a log.
+   *
+   * @return position of the end of the last committed transaction
+   */
+  private long recover(ByteBuffer log) {
+    Map<Integer, List<LogRecord>> transaction = new HashMap<>();
+    long end = 0;
+    CRC32C checksum = new CRC32C();
+
+    while (log.remaining() >= ENTRY_OVERHEAD) {
+      int start = log.position();
+      int length = log.getInt(start);
+      if (length < 0 || length > log.remaining() - ENTRY_OVERHEAD) {
+        break;
+      }
+      checksum.reset();
+      checksum.update(log.slice(start, ENTRY_HEADER_SIZE + length));
+      if ((int) checksum.getValue() != log.getInt(start + ENTRY_HEADER_SIZE + length)) {
+        break;
+      }
+
+      int fileId = log.getInt(start + INT_SIZE_BYTES);
+      long position = log.getLong(start + 2 * INT_SIZE_BYTES);
+      byte[] bytes = new byte[length];
+      log.get(start + ENTRY_HEADER_SIZE, bytes);
+      log.position(start + ENTRY_OVERHEAD + length);
+
+      if (fileId == COMMIT_MARKER) {
+        transaction.forEach((id, logRecords) ->
+            recoveredRecords.computeIfAbsent(id, k -> new ArrayList<>()).addAll(logRecords)
+        );
+        transaction.clear();
+        end = log.position();
+      } else {
+        transaction.computeIfAbsent(fileId, k -> new ArrayList<>())
+            .add(new LogRecord(fileId, position, bytes));
+      }
+    }
+    return end;
+  }
+
+  private static void putEntry(ByteBuffer bb, int fileId, long position, byte[] bytes) {
+    int start = bb.position();
+    bb.putInt(bytes.length);
+    bb.putInt(fileId);
+    bb.putLong(position);
+    bb.put(bytes);
+
+    CRC32C checksum = new CRC32C();
+    checksum.update(bb.slice(start, ENTRY_HEADER_SIZE + bytes.length));
+    bb.putInt((int) checksum.getValue());
+  }
+}
@@ -1,24 +1,49 @@
 package com.hpham.database.btree_disk;
 
+import com.hpham.database.btree_disk.constants.DataConstants;
 import com.hpham.database.btree_disk.data_types.IntField;
+import com.hpham.database.btree_disk.data_types.LongField;
+import com.hpham.database.btree_disk.data_types.SortableField;
 import com.hpham.database.btree_disk.data_types.StringField;
+import com.hpham.database.btree_disk.exceptions.InvalidMethodInvocationException;
 import com.hpham.database.btree_disk.exceptions.RecordAlreadyExistException;
 import com.hpham.database.btree_disk.exceptions.RecordNotFoundException;
+import com.hpham.database.btree_disk.file_formats.index.IndexFile;
+import com.hpham.database.btree_disk.file_formats.record.SlottedRecordFile;
+import com.hpham.database.btree_disk.wal.WriteAheadLog;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
-import static com.hpham.database.btree_disk.BTree.FANOUT;
+import static com.hpham.database.btree_disk.constants.DataConstants.INT_TYPE_SIGNAL;
+import static com.hpham.database.btree_disk.constants.DataConstants.STRING_TYPE_SIGNAL;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -28,10 +53,14 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 public class BTreeTest {
   private BTree<Integer> bTree;
   private static final Integer NUMBER_OF_TEST_RECORDS = 10000;
+  private static final Integer FANOUT = 5;
+
+  @TempDir
+  Path directory;
 
   @BeforeEach
   void setup() {
-    bTree = new BTree<>();
+    bTree = new BTree<>(INT_TYPE_SIGNAL, FANOUT);
   }
 
   @ParameterizedTest
@@ -65,17 +94,44 @@ public class BTreeTest {
     });
   }
 
+  @ParameterizedTest
+  @MethodSource("testRecords")
+  void testTreeIntegrityWithPageSizeDrivenFanout(List<Record<Integer>> testRecords) {
+    bTree = new BTree<>(INT_TYPE_SIGNAL);
+    assertThat(bTree.getFanout()).isEqualTo(BTreeNode.maxFanout(INT_TYPE_SIGNAL));
+
+    testRecords.forEach(record -> bTree.insert(record));
+    checkTreeIntegrity(bTree.getRoot());
+
+    testRecords.forEach(record -> {
+      assertThat(bTree.findRecord(record.getKey())).isEqualTo(record);
+      bTree.delete(record.getKey());
+    });
+    checkTreeIntegrity(bTree.getRoot());
+  }
+
+  @Test
+  void testFanoutMustFitInPage() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new BTree<Integer>(INT_TYPE_SIGNAL, BTreeNode.maxFanout(INT_TYPE_SIGNAL) + 1)
+    );
+  }
+
   private <K extends Comparable<K>> void checkTreeIntegrity(BTreeNode<K> root) {
     if (root == null) {
       return;
     }
+    int fanout = root.getFanout();
     Queue<BTreeNode<K>> queue = new LinkedList<>();
+    List<BTreeNode<K>> leafNodes = new ArrayList<>();
     queue.offer(root);
 
     while (!queue.isEmpty()) {
       // check for ordering, occupancies, and parent-child relationship
       BTreeNode<K> currentNode = queue.poll();
       if (currentNode.getIsLeaf()) {
+        leafNodes.add(currentNode);
         var records = currentNode.getRecords();
         var keys = currentNode.getKeys();
         assertThat(records.size()).isEqualTo(keys.size());
@@ -85,12 +141,12 @@ public class BTreeTest {
         }
         if (!currentNode.isRootNode()) {
           assertThat(records.size())
-              .isGreaterThanOrEqualTo(FANOUT / 2)
-              .isLessThanOrEqualTo(FANOUT);
+              .isGreaterThanOrEqualTo(fanout / 2)
+              .isLessThanOrEqualTo(fanout);
         } else {
           assertThat(records.size())
               .isGreaterThanOrEqualTo(1)
-              .isLessThanOrEqualTo(FANOUT);
+              .isLessThanOrEqualTo(fanout);
         }
       } else {
         var keys = currentNode.getKeys();
@@ -104,7 +160,7 @@ public class BTreeTest {
               .isGreaterThanOrEqualTo(1);
         } else {
           assertThat(pointers.size())
-              .isGreaterThanOrEqualTo((int) Math.ceil(((double) FANOUT) / 2));
+              .isGreaterThanOrEqualTo((int) Math.ceil(((double) fanout) / 2));
         }
 
         assertThat(pointers.size()).isEqualTo(keys.size() + 1);
@@ -120,6 +176,14 @@ public class BTreeTest {
         }
       }
     }
+
+    // leaf nodes are visited from left to right, so they must be linked in the same order
+    assertThat(leafNodes.getFirst().getPrev()).isNull();
+    assertThat(leafNodes.getLast().getNext()).isNull();
+    for (int i = 1; i < leafNodes.size(); i++) {
+      assertThat(leafNodes.get(i - 1).getNext()).isSameAs(leafNodes.get(i));
+      assertThat(leafNodes.get(i).getPrev()).isSameAs(leafNodes.get(i - 1));
+    }
   }
 
   @ParameterizedTest
@@ -270,4 +334,705 @@ public class BTreeTest {
         () -> bTree.delete(IntField.fromValue(2))
     );
   }
+
+  @ParameterizedTest
+  @MethodSource("testRecords")
+  void testScan(List<Record<Integer>> records) {
+    records.forEach(record -> bTree.insert(record));
+    List<SortableField<Integer>> sortedKeys = records.stream()
+        .map(Record::getKey)
+        .sorted()
+        .toList();
+
+    assertThat(scanKeys(bTree.scan(null, null))).containsExactlyElementsOf(sortedKeys);
+
+    SortableField<Integer> fromKey = sortedKeys.get(sortedKeys.size() / 4);
+    SortableField<Integer> toKey = sortedKeys.get(sortedKeys.size() / 2);
+    assertThat(scanKeys(bTree.scan(fromKey, toKey)))
+        .containsExactlyElementsOf(sortedKeys.subList(sortedKeys.size() / 4, sortedKeys.size() / 2));
+    assertThat(scanKeys(bTree.scan(toKey, null)))
+        .containsExactlyElementsOf(sortedKeys.subList(sortedKeys.size() / 2, sortedKeys.size()));
+    assertThat(scanKeys(bTree.scan(toKey, fromKey))).isEmpty();
+  }
+
+  @ParameterizedTest
+  @MethodSource("testRecords")
+  void testScanAfterDelete(List<Record<Integer>> records) {
+    records.forEach(record -> bTree.insert(record));
+    records.subList(0, records.size() / 2).forEach(record -> bTree.delete(record.getKey()));
+    checkTreeIntegrity(bTree.getRoot());
+
+    List<SortableField<Integer>> remainingKeys = records.subList(records.size() / 2, records.size()).stream()
+        .map(Record::getKey)
+        .sorted()
+        .toList();
+    assertThat(scanKeys(bTree.scan(null, null))).containsExactlyElementsOf(remainingKeys);
+  }
+
+  @Test
+  void scanEmptyTree() {
+    assertThat(bTree.scan(null, null).hasNext()).isFalse();
+  }
+
+  private static List<SortableField<Integer>> scanKeys(Iterator<Record<Integer>> iterator) {
+    List<SortableField<Integer>> keys = new ArrayList<>();
+    iterator.forEachRemaining(record -> keys.add(record.getKey()));
+    return keys;
+  }
+
+  @ParameterizedTest
+  @MethodSource("testRecords")
+  void testBulkLoad(List<Record<Integer>> records) {
+    List<Record<Integer>> sortedRecords = records.stream()
+        .sorted(Comparator.comparing(Record::getKey))
+        .toList();
+    bTree.bulkLoad(sortedRecords.iterator());
+
+    checkTreeIntegrity(bTree.getRoot());
+    records.forEach(record -> assertThat(bTree.findRecord(record.getKey())).isEqualTo(record));
+    assertThat(scanKeys(bTree.scan(null, null)))
+        .containsExactlyElementsOf(sortedRecords.stream().map(Record::getKey).toList());
+
+    // the tree must still support regular updates after a bulk load
+    records.subList(0, records.size() / 2).forEach(record -> bTree.delete(record.getKey()));
+    checkTreeIntegrity(bTree.getRoot());
+    records.subList(0, records.size() / 2).forEach(record -> bTree.insert(record));
+    checkTreeIntegrity(bTree.getRoot());
+    records.forEach(record -> assertThat(bTree.findRecord(record.getKey())).isEqualTo(record));
+  }
+
+  @ParameterizedTest
+  @MethodSource("bulkLoadSizes")
+  void testBulkLoadSizesAndFillFactors(int numberOfRecords, double fillFactor) {
+    List<Record<Integer>> records = IntStream.range(0, numberOfRecords)
+        .mapToObj(key -> Record.<Integer>builder()
+            .key(IntField.fromValue(key))
+            .value(RecordValue.emptyRecordValue())
+            .build())
+        .toList();
+    bTree.bulkLoad(records.iterator(), fillFactor);
+
+    checkTreeIntegrity(bTree.getRoot());
+    assertThat(scanKeys(bTree.scan(null, null)))
+        .containsExactlyElementsOf(records.stream().map(Record::getKey).toList());
+  }
+
+  @Test
+  void bulkLoadNoRecords() {
+    bTree.bulkLoad(Collections.emptyIterator());
+    assertThat(bTree.scan(null, null).hasNext()).isFalse();
+  }
+
+  @Test
+  void bulkLoadIntoNonEmptyTree() {
+    bTree.insert(Record.<Integer>builder()
+        .key(IntField.fromValue(1))
+        .value(RecordValue.emptyRecordValue())
+        .build()
+    );
+    assertThrows(
+        IllegalStateException.class,
+        () -> bTree.bulkLoad(List.of(Record.<Integer>builder()
+            .key(IntField.fromValue(2))
+            .value(RecordValue.emptyRecordValue())
+            .build()
+        ).iterator())
+    );
+  }
+
+  @Test
+  void bulkLoadUnsortedRecords() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> bTree.bulkLoad(List.of(
+            Record.<Integer>builder()
+                .key(IntField.fromValue(2))
+                .value(RecordValue.emptyRecordValue())
+                .build(),
+            Record.<Integer>builder()
+                .key(IntField.fromValue(1))
+                .value(RecordValue.emptyRecordValue())
+                .build()
+        ).iterator())
+    );
+  }
+
+  private static Stream<Arguments> bulkLoadSizes() {
+    return Stream.of(1, 2, 3, 5, 6, 7, 11, 26, 126, 1000)
+        .flatMap(size -> Stream.of(0.01, 0.5, 0.7, 1.0).map(fill -> Arguments.of(size, fill)));
+  }
+
+  @ParameterizedTest
+  @MethodSource("testRecords")
+  void testSaveAndLoad(List<Record<Integer>> records) throws IOException {
+    records.forEach(record -> bTree.insert(record));
+    IndexFile indexFile = new IndexFile();
+    indexFile.openFile(directory.resolve("index.tc").toString());
+    SlottedRecordFile recordFile = new SlottedRecordFile();
+    recordFile.openFile(directory.resolve("records.tc").toString());
+    bTree.save(indexFile, recordFile);
+
+    int nodeCacheSize = 16;
+    BTree<Integer> loadedTree = BTree.load(indexFile, recordFile, nodeCacheSize);
+
+    assertThat(loadedTree.getFanout()).isEqualTo(FANOUT);
+    records.forEach(record -> {
+      Record<Integer> loadedRecord = loadedTree.findRecord(record.getKey());
+      assertThat(loadedRecord.getKey()).isEqualTo(record.getKey());
+      assertThat(loadedRecord.getValue().getField("testField"))
+          .isEqualTo(record.getValue().getField("testField"));
+    });
+    assertThat(loadedTree.findRecord(IntField.fromValue(-1))).isNull();
+    assertThat(scanKeys(loadedTree.scan(null, null)))
+        .containsExactlyElementsOf(scanKeys(bTree.scan(null, null)));
+    assertThat(loadedTree.getNodeCache().size()).isEqualTo(nodeCacheSize);
+    assertThat(loadedTree.getNodeCache().getMisses()).isGreaterThan(nodeCacheSize);
+
+    assertThrows(
+        RecordAlreadyExistException.class,
+        () -> loadedTree.insert(records.getFirst())
+    );
+    assertThrows(
+        RecordNotFoundException.class,
+        () -> loadedTree.delete(IntField.fromValue(-1))
+    );
+    assertThrows(
+        InvalidMethodInvocationException.class,
+        () -> loadedTree.bulkLoad(Collections.emptyIterator())
+    );
+    indexFile.deleteAll();
+    recordFile.delete();
+  }
+
+  @Test
+  void saveIntoNonEmptyIndexFile() throws IOException {
+    IndexFile indexFile = new IndexFile();
+    indexFile.openFile(directory.resolve("index.tc").toString());
+    SlottedRecordFile recordFile = new SlottedRecordFile();
+    recordFile.openFile(directory.resolve("records.tc").toString());
+    bTree.save(indexFile, recordFile);
+
+    assertThrows(IllegalStateException.class, () -> bTree.save(indexFile, recordFile));
+    indexFile.deleteAll();
+    recordFile.delete();
+  }
+
+  @Test
+  void testSaveAndOpen() throws IOException {
+    IntStream.range(0, 500).forEach(i -> bTree.insert(Record.<Integer>builder()
+        .key(IntField.fromValue(i))
+        .value(RecordValue.emptyRecordValue().withField("testField", IntField.fromValue(i)))
+        .build()));
+    bTree.save(directory);
+
+    BTree<Integer> openedTree = BTree.open(directory);
+    // only the root is read up front
+    assertThat(openedTree.getNodeCache().getMisses()).isEqualTo(1);
+    // the records share a single schema, rather than repeating the name of their field
+    assertThat(openedTree.getSchemaCatalog().getNumberOfSchemas()).isEqualTo(1);
+    assertThat(openedTree.findRecord(IntField.fromValue(42)).getValue().getField("testField"))
+        .isEqualTo(IntField.fromValue(42));
+    assertThat(scanKeys(openedTree.scan(null, null)))
+        .containsExactlyElementsOf(scanKeys(bTree.scan(null, null)));
+    assertThat(openedTree.findRecordView(IntField.fromValue(42)).getInt("testField"))
+        .isEqualTo(42);
+    assertThat(openedTree.findRecordView(IntField.fromValue(500))).isNull();
+    List<Record<Integer>> found = openedTree.findRecords(List.of(
+        IntField.fromValue(499), IntField.fromValue(500), IntField.fromValue(3)
+    ));
+    assertThat(found.get(0).getValue().getField("testField")).isEqualTo(IntField.fromValue(499));
+    assertThat(found.get(1)).isNull();
+    assertThat(found.get(2).getValue().getField("testField")).isEqualTo(IntField.fromValue(3));
+    openedTree.close();
+
+    // the tree can be opened again after it was closed
+    BTree<Integer> reopenedTree = BTree.open(directory);
+    assertThat(reopenedTree.findRecord(IntField.fromValue(499))).isNotNull();
+    reopenedTree.close();
+    assertThrows(IllegalStateException.class, () -> bTree.save(directory));
+  }
+
+  @ParameterizedTest
+  @EnumSource(BTree.RecordLayout.class)
+  void testInsertAndUpdateOpenedTree(BTree.RecordLayout layout) throws IOException {
+    IntStream.range(0, 250).forEach(i -> bTree.insert(recordOf(2 * i, "value")));
+    bTree.save(directory, layout);
+
+    // a cache much smaller than the tree writes nodes back as it drops them
+    BTree<Integer> openedTree = BTree.open(directory, 4);
+    IntStream.range(0, 250).forEach(i -> openedTree.insert(recordOf(2 * i + 1, "value")));
+    assertThrows(RecordAlreadyExistException.class, () -> openedTree.insert(recordOf(1, "value")));
+    String largeValue = "x".repeat(BTree.MAX_INLINE_RECORD_SIZE);
+    IntStream.range(0, 500).filter(i -> i % 7 == 0)
+        .forEach(i -> openedTree.update(recordOf(i, i % 2 == 0 ? largeValue : "updated")));
+    assertThrows(RecordNotFoundException.class, () -> openedTree.update(recordOf(500, "value")));
+    assertThat(openedTree.findRecord(IntField.fromValue(7)).getValue().getField("testField"))
+        .isEqualTo(StringField.fromValue("updated"));
+    openedTree.close();
+
+    BTree<Integer> reopenedTree = BTree.open(directory);
+    IntStream.range(0, 500).forEach(i -> {
+      String value = i % 7 != 0 ? "value" : i % 2 == 0 ? largeValue : "updated";
+      assertThat(reopenedTree.findRecord(IntField.fromValue(i)).getValue().getField("testField"))
+          .isEqualTo(StringField.fromValue(value));
+    });
+    assertThat(scanKeys(reopenedTree.scan(null, null)))
+        .containsExactlyElementsOf(IntStream.range(0, 500).mapToObj(IntField::fromValue).toList());
+    checkPagedTreeIntegrity(reopenedTree);
+    reopenedTree.close();
+  }
+
+  @ParameterizedTest
+  @EnumSource(BTree.RecordLayout.class)
+  void testDeleteFromOpenedTree(BTree.RecordLayout layout) throws IOException {
+    IntStream.range(0, 500).forEach(i -> bTree.insert(recordOf(i, "value")));
+    bTree.save(directory, layout);
+    List<Integer> deletedKeys = new ArrayList<>(
+        IntStream.range(0, 500).filter(i -> i % 10 != 0).boxed().toList()
+    );
+    Collections.shuffle(deletedKeys, new Random(42));
+
+    // a cache much smaller than the tree writes merged nodes back as it drops them
+    BTree<Integer> openedTree = BTree.open(directory, 4);
+    for (int i = 0; i < deletedKeys.size(); i++) {
+      openedTree.delete(IntField.fromValue(deletedKeys.get(i)));
+      if (i % 50 == 0) {
+        checkPagedTreeIntegrity(openedTree);
+      }
+    }
+    assertThrows(
+        RecordNotFoundException.class,
+        () -> openedTree.delete(IntField.fromValue(deletedKeys.getFirst()))
+    );
+    openedTree.close();
+    long indexFileSize = Files.size(directory.resolve(BTree.INDEX_FILE_NAME));
+    long recordFileSize = Files.size(directory.resolve(BTree.RECORD_FILE_NAME));
+
+    BTree<Integer> reopenedTree = BTree.open(directory, 4);
+    checkPagedTreeIntegrity(reopenedTree);
+    List<IntField> remainingKeys = IntStream.range(0, 50).mapToObj(i -> IntField.fromValue(10 * i))
+        .toList();
+    assertThat(scanKeys(reopenedTree.scan(null, null))).containsExactlyElementsOf(remainingKeys);
+    assertThat(reopenedTree.findRecord(IntField.fromValue(deletedKeys.getLast()))).isNull();
+
+    // the pages of merged nodes and the deleted records are reused before the files grow
+    deletedKeys.subList(0, 100).forEach(key -> reopenedTree.insert(recordOf(key, "value")));
+    reopenedTree.close();
+    assertThat(Files.size(directory.resolve(BTree.INDEX_FILE_NAME))).isEqualTo(indexFileSize);
+    assertThat(Files.size(directory.resolve(BTree.RECORD_FILE_NAME)))
+        .isLessThanOrEqualTo(recordFileSize);
+
+    // the tree shrinks down to an empty leaf node, and can be written to again
+    BTree<Integer> emptiedTree = BTree.open(directory, 4);
+    scanKeys(emptiedTree.scan(null, null)).forEach(emptiedTree::delete);
+    assertThat(emptiedTree.scan(null, null).hasNext()).isFalse();
+    assertThat(emptiedTree.getNodeCache().get(emptiedTree.getRootOffset()).getIsLeaf()).isTrue();
+    emptiedTree.insert(recordOf(1, "value"));
+    assertThat(emptiedTree.findRecord(IntField.fromValue(1)).getKey())
+        .isEqualTo(IntField.fromValue(1));
+    emptiedTree.close();
+  }
+
+  @ParameterizedTest
+  @EnumSource(BTree.RecordLayout.class)
+  void testChurnOnOpenedTree(BTree.RecordLayout layout) throws IOException {
+    Set<Integer> keys = new TreeSet<>();
+    IntStream.range(0, 300).forEach(i -> {
+      bTree.insert(recordOf(2 * i, "value"));
+      keys.add(2 * i);
+    });
+    bTree.save(directory, layout);
+
+    BTree<Integer> openedTree = BTree.open(directory, 8);
+    Random rand = new Random(42);
+    for (int i = 1; i <= 5_000; i++) {
+      int key = rand.nextInt(1_000);
+      if (keys.remove(key)) {
+        openedTree.delete(IntField.fromValue(key));
+      } else {
+        openedTree.insert(recordOf(key, "x".repeat(rand.nextInt(100))));
+        keys.add(key);
+      }
+      if (i % 500 == 0) {
+        checkPagedTreeIntegrity(openedTree);
+        assertThat(scanKeys(openedTree.scan(null, null)))
+            .containsExactlyElementsOf(keys.stream().map(IntField::fromValue).toList());
+      }
+    }
+    openedTree.close();
+
+    BTree<Integer> reopenedTree = BTree.open(directory);
+    checkPagedTreeIntegrity(reopenedTree);
+    assertThat(scanKeys(reopenedTree.scan(null, null)))
+        .containsExactlyElementsOf(keys.stream().map(IntField::fromValue).toList());
+    reopenedTree.close();
+  }
+
+  @Test
+  void splitOfOpenedTreeOnlyWritesNodesOnItsPath() throws IOException {
+    bTree.save(directory);
+    BTree<Integer> openedTree = BTree.open(directory);
+
+    // a leaf split writes the leaf, its new sibling and the next leaf, every other split the
+    // node and its new sibling, and the last one the parent it adds a key to, or the new root,
+    // but none of them writes the children of a split node
+    Random rand = new Random(42);
+    int numberOfNodes = 1;
+    for (int i = 0; i < 2_000; i++) {
+      int key = rand.nextInt();
+      if (openedTree.findRecord(IntField.fromValue(key)) != null) {
+        continue;
+      }
+      long rootOffset = openedTree.getRootOffset();
+      openedTree.insert(recordOf(key, "value"));
+
+      int newNodes = countNodes(openedTree, openedTree.getRootOffset()) - numberOfNodes;
+      numberOfNodes += newNodes;
+      int maxWrittenNodes = newNodes == 0 ? 1 : 2 * newNodes + 2;
+      if (openedTree.getRootOffset() != rootOffset) {
+        maxWrittenNodes -= 2;
+      }
+      assertThat(openedTree.getNodeCache().dirtySize()).isLessThanOrEqualTo(maxWrittenNodes);
+      openedTree.flush();
+    }
+    assertThat(numberOfNodes).isGreaterThan(500);
+    checkPagedTreeIntegrity(openedTree);
+    openedTree.close();
+  }
+
+  private static int countNodes(BTree<Integer> tree, long offset) {
+    BTreeNode<Integer> node = tree.getNodeCache().get(offset);
+    if (node.getIsLeaf()) {
+      return 1;
+    }
+    int numberOfNodes = 1;
+    for (var childOffset : node.getPointerOffsets()) {
+      numberOfNodes += countNodes(tree, childOffset.getValue());
+    }
+    return numberOfNodes;
+  }
+
+  @Test
+  void testConcurrentReadsOfOpenedTree() throws Exception {
+    IntStream.range(0, 1_000).forEach(i -> bTree.insert(recordOf(i, "value")));
+    bTree.save(directory);
+    BTree<Integer> openedTree = BTree.open(directory, 8);
+
+    // the threads keep dropping each other's nodes from the cache
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int thread = 0; thread < 8; thread++) {
+      futures.add(executor.submit(() -> {
+        for (int i = 0; i < 1_000; i++) {
+          int key = ThreadLocalRandom.current().nextInt(1_000);
+          assertThat(openedTree.findRecord(IntField.fromValue(key)).getKey())
+              .isEqualTo(IntField.fromValue(key));
+        }
+        return null;
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    assertThat(openedTree.getNodeCache().size()).isEqualTo(8);
+    openedTree.close();
+  }
+
+  /**
+   * Check that every node of a tree read from disk holds at most a fanout of entries, and at
+   * least half of it unless it is the root, that keys are ordered within and across nodes, that
+   * every leaf node is at the same depth, and that leaf nodes are linked in key order.
+   */
+  private static void checkPagedTreeIntegrity(BTree<Integer> tree) {
+    List<Long> leafOffsets = new ArrayList<>();
+    Set<Integer> leafDepths = new HashSet<>();
+    checkPagedSubtree(tree, tree.getRootOffset(), null, null, 0, leafOffsets, leafDepths);
+
+    assertThat(leafDepths).hasSize(1);
+    for (int i = 0; i < leafOffsets.size(); i++) {
+      BTreeNode<Integer> leafNode = tree.getNodeCache().get(leafOffsets.get(i));
+      assertThat(leafNode.getPrevOffset() == null ? null : leafNode.getPrevOffset().getValue())
+          .isEqualTo(i == 0 ? null : leafOffsets.get(i - 1));
+      assertThat(leafNode.getNextOffset() == null ? null : leafNode.getNextOffset().getValue())
+          .isEqualTo(i == leafOffsets.size() - 1 ? null : leafOffsets.get(i + 1));
+    }
+  }
+
+  /**
+   * Check the subtree of the node in page {@code offset}, whose keys are in
+   * {@code [lowerBound, upperBound)}.
+   */
+  private static void checkPagedSubtree(
+      BTree<Integer> tree,
+      long offset,
+      SortableField<Integer> lowerBound,
+      SortableField<Integer> upperBound,
+      int depth,
+      List<Long> leafOffsets,
+      Set<Integer> leafDepths
+  ) {
+    BTreeNode<Integer> node = tree.getNodeCache().get(offset);
+    boolean isRoot = offset == tree.getRootOffset();
+    List<SortableField<Integer>> keys = node.getKeys();
+    assertThat(keys).isSortedAccordingTo(Comparator.naturalOrder());
+    assertThat(keys).doesNotHaveDuplicates();
+    if (!keys.isEmpty() && lowerBound != null) {
+      assertThat(keys.getFirst()).isGreaterThanOrEqualTo(lowerBound);
+    }
+    if (!keys.isEmpty() && upperBound != null) {
+      assertThat(keys.getLast()).isLessThan(upperBound);
+    }
+
+    if (node.getIsLeaf()) {
+      assertThat(node.getRecordOffsets()).hasSameSizeAs(keys);
+      assertThat(keys).hasSizeLessThanOrEqualTo(tree.getFanout());
+      if (!isRoot) {
+        assertThat(keys).hasSizeGreaterThanOrEqualTo(tree.getFanout() / 2);
+      }
+      leafOffsets.add(offset);
+      leafDepths.add(depth);
+      return;
+    }
+    List<LongField> pointerOffsets = node.getPointerOffsets();
+    assertThat(keys).hasSize(pointerOffsets.size() - 1);
+    assertThat(pointerOffsets).hasSizeLessThanOrEqualTo(tree.getFanout());
+    assertThat(pointerOffsets).hasSizeGreaterThanOrEqualTo(isRoot ? 2 : (tree.getFanout() + 1) / 2);
+    for (int i = 0; i < pointerOffsets.size(); i++) {
+      checkPagedSubtree(
+          tree,
+          pointerOffsets.get(i).getValue(),
+          i == 0 ? lowerBound : keys.get(i - 1),
+          i == keys.size() ? upperBound : keys.get(i),
+          depth + 1,
+          leafOffsets,
+          leafDepths
+      );
+    }
+  }
+
+  private static Record<Integer> recordOf(int key, String value) {
+    return Record.<Integer>builder()
+        .key(IntField.fromValue(key))
+        .value(RecordValue.emptyRecordValue().withField("testField", StringField.fromValue(value)))
+        .build();
+  }
+
+  @Test
+  void openTreeThatWasNotClosedCleanly() throws IOException {
+    bTree.save(directory);
+    BTree<Integer> openedTree = BTree.open(directory);
+    // a tree that is only read can be opened again, even if it is never closed
+    BTree<Integer> readTree = BTree.open(directory);
+    assertThat(readTree.findRecord(IntField.fromValue(0))).isNull();
+
+    openedTree.insert(recordOf(0, "value"));
+    openedTree.flush();
+    // the files of the written tree are still open, as if the process crashed
+    assertThrows(IllegalStateException.class, () -> BTree.open(directory));
+    openedTree.close();
+  }
+
+  @ParameterizedTest
+  @EnumSource(BTree.RecordLayout.class)
+  void testOpenLoggedTreeAfterCrash(BTree.RecordLayout layout) throws IOException {
+    IntStream.range(0, 500).forEach(i -> bTree.insert(recordOf(i, "value")));
+    WriteAheadLog writeAheadLog = new WriteAheadLog();
+    writeAheadLog.openFile(directory.resolve("wal.tc").toString());
+    bTree.save(directory, layout, writeAheadLog);
+
+    BTree<Integer> openedTree = BTree.open(directory, 4, writeAheadLog);
+    IntStream.range(0, 250).forEach(i -> openedTree.delete(IntField.fromValue(2 * i)));
+    // records too large for their page move, and those too large for their leaf leave it
+    String largeValue = "x".repeat(BTree.MAX_INLINE_RECORD_SIZE);
+    IntStream.range(0, 50).forEach(i -> openedTree.update(recordOf(10 * i + 1, largeValue)));
+    openedTree.flush();
+    IntStream.range(500, 600).forEach(i -> openedTree.insert(recordOf(i, "value")));
+    IntStream.range(0, 100).forEach(i -> openedTree.delete(IntField.fromValue(2 * i + 1)));
+
+    // the flushed writes may only be in the log, and the writes since the last flush are lost
+    Path crashDirectory = copyAsCrashed("crash", "wal.tc");
+    openedTree.close();
+    writeAheadLog.close();
+
+    WriteAheadLog recoveredLog = new WriteAheadLog();
+    recoveredLog.openFile(crashDirectory.resolve("wal.tc").toString());
+    BTree<Integer> recoveredTree = BTree.open(crashDirectory, recoveredLog);
+    checkPagedTreeIntegrity(recoveredTree);
+    List<Integer> keys = IntStream.range(0, 250).map(i -> 2 * i + 1).boxed().toList();
+    assertThat(scanKeys(recoveredTree.scan(null, null)))
+        .containsExactlyElementsOf(keys.stream().map(IntField::fromValue).toList());
+    keys.forEach(key -> assertThat(
+        recoveredTree.findRecord(IntField.fromValue(key)).getValue().getField("testField")
+    ).isEqualTo(StringField.fromValue(key % 10 == 1 ? largeValue : "value")));
+    recoveredTree.insert(recordOf(0, "value"));
+    recoveredTree.close();
+    recoveredLog.close();
+
+    // the recovered tree is closed cleanly, so it opens without its log too
+    BTree<Integer> reopenedTree = BTree.open(crashDirectory);
+    checkPagedTreeIntegrity(reopenedTree);
+    assertThat(reopenedTree.findRecord(IntField.fromValue(0))).isNotNull();
+    assertThat(reopenedTree.findRecord(IntField.fromValue(499))).isNotNull();
+    reopenedTree.close();
+  }
+
+  @Test
+  void repairTreeThatWasNotClosedCleanly() throws IOException {
+    IntStream.range(0, 500).forEach(i -> bTree.insert(recordOf(i, "value")));
+    bTree.save(directory);
+    BTree<Integer> openedTree = BTree.open(directory, 4);
+    IntStream.range(0, 400).forEach(i -> openedTree.delete(IntField.fromValue(i)));
+    openedTree.flush();
+    Path crashDirectory = copyAsCrashed("crash");
+    openedTree.close();
+
+    assertThrows(IllegalStateException.class, () -> BTree.open(crashDirectory));
+    BTree.repair(crashDirectory);
+
+    BTree<Integer> repairedTree = BTree.open(crashDirectory, 4);
+    checkPagedTreeIntegrity(repairedTree);
+    assertThat(scanKeys(repairedTree.scan(null, null))).containsExactlyElementsOf(
+        IntStream.range(400, 500).mapToObj(IntField::fromValue).toList()
+    );
+    // the pages of the merged nodes are free again, and reused before the file grows
+    long indexFileSize = Files.size(crashDirectory.resolve(BTree.INDEX_FILE_NAME));
+    IntStream.range(0, 100).forEach(i -> repairedTree.insert(recordOf(i, "value")));
+    repairedTree.close();
+    assertThat(Files.size(crashDirectory.resolve(BTree.INDEX_FILE_NAME)))
+        .isEqualTo(indexFileSize);
+
+    // the repaired tree is closed cleanly
+    BTree<Integer> reopenedTree = BTree.open(crashDirectory);
+    checkPagedTreeIntegrity(reopenedTree);
+    assertThat(scanKeys(reopenedTree.scan(null, null))).hasSize(200);
+    reopenedTree.close();
+  }
+
+  @Test
+  void repairDamagedTree() throws IOException {
+    IntStream.range(0, 500).forEach(i -> bTree.insert(recordOf(i, "value")));
+    bTree.save(directory);
+    BTree<Integer> openedTree = BTree.open(directory);
+    openedTree.insert(recordOf(500, "value"));
+    openedTree.flush();
+    Path crashDirectory = copyAsCrashed("crash");
+    openedTree.close();
+
+    // the last pages of the file never reached the disk
+    Path indexFile = crashDirectory.resolve(BTree.INDEX_FILE_NAME);
+    try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 2L * DataConstants.PAGE_SIZE_BYTES);
+    }
+    assertThrows(IllegalStateException.class, () -> BTree.repair(crashDirectory));
+    assertThrows(IllegalStateException.class, () -> BTree.open(crashDirectory));
+  }
+
+  /**
+   * Copy the files of the tree in {@code directory}, and the other files in it named
+   * {@code fileNames}, as they are on disk, as a crash would leave them.
+   *
+   * @return the directory of the copies
+   */
+  private Path copyAsCrashed(String directoryName, String... fileNames) throws IOException {
+    Path crashDirectory = Files.createDirectory(directory.resolve(directoryName));
+    List<String> copiedFileNames = new ArrayList<>(List.of(
+        BTree.INDEX_FILE_NAME, BTree.RECORD_FILE_NAME, BTree.SCHEMA_FILE_NAME
+    ));
+    copiedFileNames.addAll(List.of(fileNames));
+    for (String fileName : copiedFileNames) {
+      Files.copy(directory.resolve(fileName), crashDirectory.resolve(fileName));
+    }
+    return crashDirectory;
+  }
+
+  @ParameterizedTest
+  @MethodSource("testRecords")
+  void testSaveAndLoadClustered(List<Record<Integer>> records) throws IOException {
+    records.forEach(record -> bTree.insert(record));
+    IndexFile indexFile = new IndexFile();
+    indexFile.openFile(directory.resolve("index.tc").toString());
+    SlottedRecordFile recordFile = new SlottedRecordFile();
+    recordFile.openFile(directory.resolve("records.tc").toString());
+    bTree.save(indexFile, recordFile, BTree.RecordLayout.CLUSTERED);
+
+    // every record fits in its leaf page
+    assertThat(recordFile.getNumberOfPages()).isZero();
+    BTree<Integer> loadedTree = BTree.load(indexFile, recordFile);
+    records.forEach(record -> {
+      Record<Integer> loadedRecord = loadedTree.findRecord(record.getKey());
+      assertThat(loadedRecord.getValue().getField("testField"))
+          .isEqualTo(record.getValue().getField("testField"));
+    });
+    assertThat(scanKeys(loadedTree.scan(null, null)))
+        .containsExactlyElementsOf(scanKeys(bTree.scan(null, null)));
+    indexFile.deleteAll();
+    recordFile.delete();
+  }
+
+  @Test
+  void testFanoutDerivedFromMaxKeySize() throws IOException {
+    BTree<String> stringTree = BTree.withMaxKeySize(STRING_TYPE_SIGNAL, 12);
+    int fanout = stringTree.getFanout();
+    assertThat(fanout).isGreaterThan(BTreeNode.maxFanout(STRING_TYPE_SIGNAL));
+    assertThrows(IllegalArgumentException.class, () -> stringTree.insert(Record.<String>builder()
+        .key(StringField.fromValue("x".repeat(BTreeNode.maxKeySize(STRING_TYPE_SIGNAL, fanout))))
+        .value(RecordValue.emptyRecordValue())
+        .build()));
+
+    // full nodes of the longest keys still fit in their pages
+    stringTree.bulkLoad(IntStream.range(0, 4 * fanout)
+        .mapToObj(i -> Record.<String>builder()
+            .key(StringField.fromValue(String.format("key-%07d", i)))
+            .value(RecordValue.emptyRecordValue().withField("f", IntField.fromValue(i)))
+            .build())
+        .iterator(), 1.0);
+    stringTree.save(directory);
+
+    BTree<String> openedTree = BTree.open(directory);
+    assertThat(openedTree.getFanout()).isEqualTo(fanout);
+    assertThat(openedTree.findRecord(StringField.fromValue("key-0000042")).getValue().getField("f"))
+        .isEqualTo(IntField.fromValue(42));
+  }
+
+  @Test
+  void testClusteredRecordsOverflow() throws IOException {
+    int fanout = BTreeNode.maxFanout(INT_TYPE_SIGNAL);
+    BTree<Integer> fullTree = new BTree<>(INT_TYPE_SIGNAL, fanout);
+    // a leaf full of keys has no room for its records, but half full leaves do
+    fullTree.bulkLoad(IntStream.range(0, 4 * fanout)
+        .mapToObj(i -> Record.<Integer>builder()
+            .key(IntField.fromValue(i))
+            .value(RecordValue.emptyRecordValue().withField("f", IntField.fromValue(i)))
+            .build())
+        .iterator(), 1.0);
+    fullTree.insert(Record.<Integer>builder()
+        .key(IntField.fromValue(-1))
+        .value(RecordValue.emptyRecordValue()
+            .withField("f", StringField.fromValue("x".repeat(BTree.MAX_INLINE_RECORD_SIZE))))
+        .build());
+    fullTree.save(directory, BTree.RecordLayout.CLUSTERED);
+
+    BTree<Integer> openedTree = BTree.open(directory);
+    assertThat(openedTree.getRecordFile().getNumberOfPages()).isPositive();
+    assertThat(openedTree.findRecord(IntField.fromValue(-1)).getValue().getField("f"))
+        .isEqualTo(StringField.fromValue("x".repeat(BTree.MAX_INLINE_RECORD_SIZE)));
+    // records read from the record file and from the leaf pages come back in the order asked
+    assertThat(openedTree.findRecords(List.of(IntField.fromValue(5), IntField.fromValue(-1)))
+        .stream()
+        .map(Record::getKey)
+        .toList())
+        .containsExactly(IntField.fromValue(5), IntField.fromValue(-1));
+    assertThat(scanKeys(openedTree.scan(null, null)))
+        .containsExactlyElementsOf(scanKeys(fullTree.scan(null, null)));
+    BTreeNode<Integer> firstLeaf = openedTree.getRoot();
+    while (!firstLeaf.getIsLeaf()) {
+      firstLeaf = openedTree.getNodeCache().get(firstLeaf.getPointerOffsets().getFirst().getValue());
+    }
+    // the oversized record, first in key order, went to the record file
+    assertThat(firstLeaf.getInlineRecords().getFirst()).isNull();
+    assertThat(firstLeaf.getInlineRecords().get(1)).isNotNull();
+    openedTree.close();
+  }
 }
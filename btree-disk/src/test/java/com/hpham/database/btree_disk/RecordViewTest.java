@@ -0,0 +1,98 @@
+package com.hpham.database.btree_disk;
+
+import com.hpham.database.btree_disk.data_types.IntField;
+import com.hpham.database.btree_disk.data_types.LongField;
+import com.hpham.database.btree_disk.data_types.StringField;
+import com.hpham.database.btree_disk.file_formats.schema.SchemaCatalog;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test suite for {@link RecordView}.
+ */
+public class RecordViewTest {
+  private static final Record<String> RECORD = Record.<String>builder()
+      .key(StringField.fromValue("key"))
+      .value(RecordValue.emptyRecordValue()
+          .withField("name", StringField.fromValue("Grace"))
+          .withField("age", IntField.fromValue(85))
+          .withField("visits", LongField.fromValue(1L << 40))
+          .withField("city", StringField.fromValue("Zürich")))
+      .build();
+
+  @Test
+  void testViewRecordWithFieldNames() {
+    checkView(RecordView.of(withPrefix(RECORD.serialize())));
+  }
+
+  @Test
+  void testViewPackedRecord() throws IOException {
+    SchemaCatalog catalog = new SchemaCatalog();
+    checkView(RecordView.of(withPrefix(RECORD.serialize(catalog)), catalog));
+  }
+
+  @Test
+  void testViewPaddedRecord() {
+    ByteBuffer serialized = RECORD.serialize();
+    ByteBuffer padded = ByteBuffer.allocate(serialized.remaining() + 10).put(serialized).clear();
+
+    RecordView<String> view = RecordView.of(padded);
+    assertThat(view.getString("city")).isEqualTo("Zürich");
+    assertThat(view.hasField("missing")).isFalse();
+  }
+
+  @Test
+  void testRecordWrittenAtOffset() throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + RECORD.getSerializedSize());
+    buffer.putInt(-1);
+    RECORD.writeTo(buffer);
+
+    assertThat(buffer.hasRemaining()).isFalse();
+    Record<String> read = Record.readFrom(buffer, Integer.BYTES);
+    assertThat(read.getKey()).isEqualTo(RECORD.getKey());
+    assertThat(read.getValue().getField("city")).isEqualTo(StringField.fromValue("Zürich"));
+    checkView(RecordView.of(buffer.position(Integer.BYTES).slice()));
+
+    SchemaCatalog catalog = new SchemaCatalog();
+    ByteBuffer packed = ByteBuffer.allocate(Integer.BYTES + RECORD.getPackedSize());
+    packed.putInt(-1);
+    RECORD.writeTo(packed, catalog);
+    assertThat(packed.hasRemaining()).isFalse();
+    checkView(RecordView.of(packed.position(Integer.BYTES).slice(), catalog));
+  }
+
+  private static void checkView(RecordView<String> view) {
+    assertThat(view.getKey()).isEqualTo(StringField.fromValue("key"));
+    assertThat(view.getString("name")).isEqualTo("Grace");
+    assertThat(view.getInt("age")).isEqualTo(85);
+    assertThat(view.getLong("visits")).isEqualTo(1L << 40);
+    assertThat(view.getString("city")).isEqualTo("Zürich");
+    assertThat(view.getField("age")).isEqualTo(IntField.fromValue(85));
+    assertThat(view.hasField("missing")).isFalse();
+    assertThat(view.getField("missing")).isNull();
+    assertThrows(IllegalArgumentException.class, () -> view.getInt("name"));
+    assertThrows(IllegalArgumentException.class, () -> view.getLong("missing"));
+
+    Record<String> record = view.toRecord();
+    assertThat(record.getKey()).isEqualTo(RECORD.getKey());
+    for (String fieldName : new String[] {"name", "age", "visits", "city"}) {
+      assertThat(record.getValue().getField(fieldName))
+          .isEqualTo(RECORD.getValue().getField(fieldName));
+    }
+  }
+
+  /**
+   * Put the record after other bytes, as in a page, so that the view starts at the position of
+   * its buffer.
+   */
+  private static ByteBuffer withPrefix(ByteBuffer serialized) {
+    ByteBuffer page = ByteBuffer.allocate(16 + serialized.remaining());
+    page.position(16).put(serialized);
+    return page.position(16);
+  }
+}
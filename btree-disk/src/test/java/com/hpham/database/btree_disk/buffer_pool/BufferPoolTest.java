@@ -0,0 +1,322 @@
+package com.hpham.database.btree_disk.buffer_pool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.hpham.database.btree_disk.constants.DataConstants.PAGE_SIZE_BYTES;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BufferPoolTest {
+  private static final int NUMBER_OF_FRAMES = 4;
+
+  @TempDir
+  Path directory;
+
+  private FileChannel channel;
+  private BufferPool bufferPool;
+  private int fileId;
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    channel = FileChannel.open(directory.resolve("pages.tc"), READ, WRITE, CREATE);
+    bufferPool = new BufferPool(NUMBER_OF_FRAMES);
+    fileId = bufferPool.register(channel);
+  }
+
+  @AfterEach
+  void afterEach() throws IOException {
+    channel.close();
+  }
+
+  @Test
+  void testReadWriteAcrossPages() throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate(3 * PAGE_SIZE_BYTES);
+    for (int i = 0; i < bytes.capacity(); i++) {
+      bytes.put((byte) i);
+    }
+    bytes.flip();
+    long position = PAGE_SIZE_BYTES / 2;
+
+    bufferPool.write(fileId, position, bytes);
+    // nothing reaches the file before the pages are written back
+    assertThat(channel.size()).isZero();
+
+    ByteBuffer read = ByteBuffer.allocate(bytes.capacity());
+    bufferPool.read(fileId, position, read);
+    assertThat(read.flip()).isEqualTo(bytes.flip());
+
+    bufferPool.flush(fileId);
+    ByteBuffer fromFile = ByteBuffer.allocate(bytes.capacity());
+    channel.read(fromFile, position);
+    assertThat(fromFile.flip()).isEqualTo(bytes);
+    assertThat(bufferPool.getWriteBacks()).isEqualTo(4);
+  }
+
+  @Test
+  void testReadAsync() throws Exception {
+    ByteBuffer bytes = ByteBuffer.allocate(3 * PAGE_SIZE_BYTES);
+    for (int i = 0; i < bytes.capacity(); i++) {
+      bytes.put((byte) i);
+    }
+    channel.write(bytes.flip(), 0);
+    // the first page is cached, and dirty
+    bufferPool.write(fileId, 0, ByteBuffer.wrap(new byte[] {42}));
+    bytes.put(0, (byte) 42);
+
+    CompletableFuture<ByteBuffer> read = bufferPool.readAsync(fileId, 1, 3 * PAGE_SIZE_BYTES - 2);
+
+    assertThat(read.get()).isEqualTo(bytes.clear().position(1).limit(3 * PAGE_SIZE_BYTES - 1));
+    assertThat(bufferPool.getMisses()).isEqualTo(3);
+    // every page is unpinned once read, so they can all be evicted
+    for (long pageNumber = 3; pageNumber < 3 + NUMBER_OF_FRAMES; pageNumber++) {
+      bufferPool.pin(fileId, pageNumber);
+    }
+  }
+
+  @Test
+  void testPinAsyncOfPageBeingRead() throws Exception {
+    channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, 7), 0);
+
+    // the second pin finds the page being read by the first one, and waits for it
+    CompletableFuture<Page> first = bufferPool.pinAsync(fileId, 0);
+    CompletableFuture<Page> second = bufferPool.pinAsync(fileId, 0);
+
+    assertThat(second.get()).isSameAs(first.get());
+    assertThat(first.get().getBuffer().getInt(0)).isEqualTo(7);
+    assertThat(bufferPool.getMisses()).isEqualTo(1);
+    bufferPool.unpin(first.get(), false);
+    bufferPool.unpin(second.get(), false);
+    assertThrows(IllegalStateException.class, () -> bufferPool.unpin(first.get(), false));
+  }
+
+  @Test
+  void testFailedReadAsyncUnpinsPages() throws IOException {
+    bufferPool.write(fileId, 0, ByteBuffer.wrap(new byte[] {1}));
+    channel.close();
+
+    CompletableFuture<ByteBuffer> read = bufferPool.readAsync(fileId, 0, 2 * PAGE_SIZE_BYTES);
+
+    ExecutionException e = assertThrows(ExecutionException.class, read::get);
+    assertThat(e.getCause()).isInstanceOf(IOException.class);
+    channel = FileChannel.open(directory.resolve("pages.tc"), READ, WRITE);
+    int otherFileId = bufferPool.register(channel);
+    // the cached page was unpinned, and the frame of the page that failed was freed
+    for (long pageNumber = 0; pageNumber < NUMBER_OF_FRAMES - 1; pageNumber++) {
+      bufferPool.pin(otherFileId, pageNumber);
+    }
+    assertThat(bufferPool.getEvictions()).isZero();
+  }
+
+  @Test
+  void testDirtyPageIsWrittenBackOnEviction() throws IOException {
+    bufferPool.write(fileId, 0, ByteBuffer.wrap(new byte[] {1, 2, 3}));
+
+    for (long pageNumber = 1; pageNumber <= NUMBER_OF_FRAMES; pageNumber++) {
+      bufferPool.unpin(bufferPool.pin(fileId, pageNumber), false);
+    }
+
+    assertThat(bufferPool.getEvictions()).isEqualTo(1);
+    assertThat(bufferPool.getWriteBacks()).isEqualTo(1);
+    ByteBuffer fromFile = ByteBuffer.allocate(3);
+    channel.read(fromFile, 0);
+    assertThat(fromFile.array()).containsExactly(1, 2, 3);
+
+    // the page is read back from the file
+    ByteBuffer read = ByteBuffer.allocate(3);
+    bufferPool.read(fileId, 0, read);
+    assertThat(read.array()).containsExactly(1, 2, 3);
+  }
+
+  @Test
+  void testFailedWriteBackKeepsEvictedPage() throws IOException {
+    bufferPool.write(fileId, 0, ByteBuffer.wrap(new byte[] {1, 2, 3}));
+    channel.close();
+
+    FileChannel otherChannel = FileChannel.open(directory.resolve("other.tc"), READ, WRITE, CREATE);
+    int otherFileId = bufferPool.register(otherChannel);
+    for (long pageNumber = 0; pageNumber < NUMBER_OF_FRAMES - 1; pageNumber++) {
+      bufferPool.unpin(bufferPool.pin(otherFileId, pageNumber), false);
+    }
+    assertThrows(IOException.class, () -> bufferPool.pin(otherFileId, NUMBER_OF_FRAMES));
+
+    // the evicted page is still in the pool, and still dirty
+    assertThat(bufferPool.getWriteBacks()).isZero();
+    ByteBuffer read = ByteBuffer.allocate(3);
+    bufferPool.read(fileId, 0, read);
+    assertThat(read.array()).containsExactly(1, 2, 3);
+    bufferPool.unregister(fileId, false);
+    otherChannel.close();
+  }
+
+  @Test
+  void testScanDoesNotEvictFrequentlyUsedPage() throws IOException {
+    bufferPool.unpin(bufferPool.pin(fileId, 0), false);
+    for (long pageNumber = 1; pageNumber < NUMBER_OF_FRAMES; pageNumber++) {
+      bufferPool.unpin(bufferPool.pin(fileId, pageNumber), false);
+    }
+    // read in again soon after it was evicted, so it is protected from now on
+    bufferPool.unpin(bufferPool.pin(fileId, NUMBER_OF_FRAMES), false);
+    assertThat(bufferPool.getEvictions()).isEqualTo(1);
+    Page hotPage = bufferPool.pin(fileId, 0);
+    bufferPool.unpin(hotPage, false);
+
+    for (long pageNumber = 1; pageNumber <= 10 * NUMBER_OF_FRAMES; pageNumber++) {
+      // consecutive pins of a page, as when reading consecutive records, do not protect it
+      bufferPool.unpin(bufferPool.pin(fileId, NUMBER_OF_FRAMES + pageNumber), false);
+      bufferPool.unpin(bufferPool.pin(fileId, NUMBER_OF_FRAMES + pageNumber), false);
+    }
+
+    long hits = bufferPool.getHits();
+    assertThat(bufferPool.pin(fileId, 0)).isSameAs(hotPage);
+    assertThat(bufferPool.getHits()).isEqualTo(hits + 1);
+  }
+
+  @Test
+  void testPinnedPageIsNotEvicted() throws IOException {
+    Page pinnedPage = bufferPool.pin(fileId, 0);
+    pinnedPage.getBuffer().put(0, (byte) 42);
+
+    for (long pageNumber = 1; pageNumber <= 10 * NUMBER_OF_FRAMES; pageNumber++) {
+      bufferPool.unpin(bufferPool.pin(fileId, pageNumber), false);
+    }
+
+    assertThat(pinnedPage.getPageNumber()).isZero();
+    assertThat(pinnedPage.getBuffer().get(0)).isEqualTo((byte) 42);
+  }
+
+  @Test
+  void testAllFramesPinned() throws IOException {
+    for (long pageNumber = 0; pageNumber < NUMBER_OF_FRAMES; pageNumber++) {
+      bufferPool.pin(fileId, pageNumber);
+    }
+
+    assertThrows(IllegalStateException.class, () -> bufferPool.pin(fileId, NUMBER_OF_FRAMES));
+  }
+
+  @Test
+  void testUnpinPageThatIsNotPinned() throws IOException {
+    Page page = bufferPool.pin(fileId, 0);
+    bufferPool.unpin(page, false);
+
+    assertThrows(IllegalStateException.class, () -> bufferPool.unpin(page, false));
+  }
+
+  @Test
+  void testHitRatio() throws IOException {
+    assertThat(bufferPool.getHitRatio()).isZero();
+
+    for (int i = 0; i < 4; i++) {
+      bufferPool.unpin(bufferPool.pin(fileId, 0), false);
+    }
+
+    assertThat(bufferPool.getMisses()).isEqualTo(1);
+    assertThat(bufferPool.getHits()).isEqualTo(3);
+    assertThat(bufferPool.getHitRatio()).isEqualTo(0.75);
+  }
+
+  @Test
+  void testUnregisterFreesFrames() throws IOException {
+    bufferPool.write(fileId, 0, ByteBuffer.wrap(new byte[] {1}));
+    bufferPool.unregister(fileId, true);
+
+    ByteBuffer fromFile = ByteBuffer.allocate(1);
+    channel.read(fromFile, 0);
+    assertThat(fromFile.array()).containsExactly(1);
+
+    int otherFileId = bufferPool.register(channel);
+    for (long pageNumber = 0; pageNumber < NUMBER_OF_FRAMES; pageNumber++) {
+      bufferPool.pin(otherFileId, pageNumber);
+    }
+    assertThat(bufferPool.getEvictions()).isZero();
+  }
+
+  @Test
+  void testConcurrentReads() throws Exception {
+    int numberOfPages = 10 * NUMBER_OF_FRAMES;
+    for (int pageNumber = 0; pageNumber < numberOfPages; pageNumber++) {
+      channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, pageNumber),
+          (long) pageNumber * PAGE_SIZE_BYTES);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(NUMBER_OF_FRAMES - 1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int thread = 0; thread < NUMBER_OF_FRAMES - 1; thread++) {
+      futures.add(executor.submit(() -> {
+        for (int i = 0; i < 1_000; i++) {
+          int pageNumber = ThreadLocalRandom.current().nextInt(numberOfPages);
+          ByteBuffer read = ByteBuffer.allocate(Integer.BYTES);
+          bufferPool.read(fileId, (long) pageNumber * PAGE_SIZE_BYTES, read);
+          assertThat(read.getInt(0)).isEqualTo(pageNumber);
+        }
+        return null;
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    assertThat(bufferPool.getHits() + bufferPool.getMisses())
+        .isEqualTo((NUMBER_OF_FRAMES - 1) * 1_000L);
+  }
+
+  @Test
+  void testConcurrentWrites() throws Exception {
+    int numberOfThreads = NUMBER_OF_FRAMES - 1;
+    int numberOfPages = 2 * NUMBER_OF_FRAMES;
+
+    // every thread owns one int of every page, so the threads keep copying into the same pages
+    ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int thread = 0; thread < numberOfThreads; thread++) {
+      long offsetInPage = (long) thread * Integer.BYTES;
+      futures.add(executor.submit(() -> {
+        for (int i = 0; i < 1_000; i++) {
+          long position = (long) (i % numberOfPages) * PAGE_SIZE_BYTES + offsetInPage;
+          bufferPool.write(fileId, position, ByteBuffer.allocate(Integer.BYTES).putInt(0, i));
+          ByteBuffer read = ByteBuffer.allocate(Integer.BYTES);
+          bufferPool.read(fileId, position, read);
+          assertThat(read.getInt(0)).isEqualTo(i);
+        }
+        return null;
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+  }
+
+  @Test
+  void testFailedReadFreesFrame() throws IOException {
+    channel.close();
+
+    assertThrows(IOException.class, () -> bufferPool.pin(fileId, 0));
+
+    channel = FileChannel.open(directory.resolve("pages.tc"), READ, WRITE);
+    int otherFileId = bufferPool.register(channel);
+    for (long pageNumber = 0; pageNumber < NUMBER_OF_FRAMES; pageNumber++) {
+      bufferPool.pin(otherFileId, pageNumber);
+    }
+    assertThat(bufferPool.getEvictions()).isZero();
+  }
+}
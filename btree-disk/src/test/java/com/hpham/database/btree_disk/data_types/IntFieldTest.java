@@ -18,4 +18,16 @@ public class IntFieldTest {
 
     assertThat(IntField.deserialize(serialized, 0)).isEqualTo(2842);
   }
+
+  @Test
+  void testWriteToAndReadFrom() {
+    ByteBuffer buffer = ByteBuffer.allocate(3 * Integer.BYTES);
+    buffer.putInt(-1);
+    IntField.fromValue(2842).writeTo(buffer);
+
+    assertThat(buffer.position()).isEqualTo(2 * Integer.BYTES);
+    assertThat(IntField.readFrom(buffer, Integer.BYTES)).isEqualTo(IntField.fromValue(2842));
+    // reading does not move the position
+    assertThat(buffer.position()).isEqualTo(2 * Integer.BYTES);
+  }
 }
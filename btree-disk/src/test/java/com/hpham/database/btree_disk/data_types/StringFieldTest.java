@@ -3,6 +3,9 @@ package com.hpham.database.btree_disk.data_types;
 import org.junit.jupiter.api.Test;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import static com.hpham.database.btree_disk.constants.DataConstants.INT_SIZE_BYTES;
 import static com.hpham.database.btree_disk.constants.DataConstants.LONG_SIZE_BYTES;
@@ -37,4 +40,91 @@ public class StringFieldTest {
 
     assertThat(deserialized).isEqualTo(testString);
   }
+
+  @Test
+  void testSerializationWithoutPadding() {
+    StringField field = StringField.fromValue("short");
+    ByteBuffer serialized = field.serialize();
+
+    assertThat(serialized.remaining()).isEqualTo(6);
+    assertThat(field.getSize()).isEqualTo(6);
+  }
+
+  @Test
+  void testSerializationOfNonAsciiString() {
+    String testString = "naïve café, 東京, \uD83D\uDE00";
+    ByteBuffer serialized = StringField.fromValue(testString).serialize();
+
+    assertThat(StringField.deserialize(serialized, 0)).isEqualTo(testString);
+    // the position is left right after the string
+    assertThat(serialized.hasRemaining()).isFalse();
+  }
+
+  @Test
+  void testSerializationOfLongString() {
+    String testString = "x".repeat(300);
+    StringField field = StringField.fromValue(testString);
+    ByteBuffer serialized = field.serialize();
+
+    // the length takes two bytes from 128 bytes on
+    assertThat(field.getSize()).isEqualTo(302);
+    assertThat(StringField.deserialize(serialized, 0)).isEqualTo(testString);
+  }
+
+  @Test
+  void testWriteAndReadFrom() {
+    ByteBuffer buffer = ByteBuffer.allocate(100);
+    buffer.putInt(2);
+    StringField.write(buffer, "field");
+    StringField.fromValue("héllo").writeTo(buffer);
+
+    assertThat(buffer.position())
+        .isEqualTo(INT_SIZE_BYTES + StringField.serializedSize("field")
+            + StringField.serializedSize("héllo"));
+    assertThat(StringField.serializedSize("héllo")).isEqualTo(7);
+    assertThat(StringField.readFrom(buffer, INT_SIZE_BYTES).getValue()).isEqualTo("field");
+    assertThat(StringField.readFrom(buffer, INT_SIZE_BYTES + 6).getValue()).isEqualTo("héllo");
+    assertThat(buffer.position()).isEqualTo(INT_SIZE_BYTES + 6 + 7);
+  }
+
+  @Test
+  void testSerializedEquals() {
+    ByteBuffer buffer = ByteBuffer.allocate(100);
+    buffer.putInt(2);
+    buffer.put(StringField.fromValue("field").serialize());
+    buffer.put(StringField.fromValue("héllo").serialize());
+
+    assertThat(StringField.serializedEquals(buffer, INT_SIZE_BYTES, "field")).isTrue();
+    assertThat(StringField.serializedEquals(buffer, INT_SIZE_BYTES, "fiel")).isFalse();
+    assertThat(StringField.serializedEquals(buffer, INT_SIZE_BYTES, "fielD")).isFalse();
+    assertThat(StringField.serializedSize(buffer, INT_SIZE_BYTES)).isEqualTo(6);
+    assertThat(StringField.serializedEquals(buffer, INT_SIZE_BYTES + 6, "héllo")).isTrue();
+    assertThat(StringField.serializedEquals(buffer, INT_SIZE_BYTES + 6, "hello")).isFalse();
+  }
+
+  @Test
+  void testCompareSerializedMatchesCompareTo() {
+    Random rand = new Random(42);
+    List<StringField> fields = new ArrayList<>();
+    fields.add(StringField.fromValue(""));
+    fields.add(StringField.fromValue("\uFFFD"));
+    fields.add(StringField.fromValue("\uD83D\uDE00"));
+    for (int i = 0; i < 200; i++) {
+      StringBuilder sb = new StringBuilder();
+      int length = rand.nextInt(5);
+      for (int j = 0; j < length; j++) {
+        // a few code points, from ASCII to supplementary characters
+        int[] codePoints = {'a', 'b', 0xE9, 0x6771, 0xFFFD, 0x1F600};
+        sb.appendCodePoint(codePoints[rand.nextInt(codePoints.length)]);
+      }
+      fields.add(StringField.fromValue(sb.toString()));
+    }
+
+    for (StringField a : fields) {
+      for (StringField b : fields) {
+        int comparison = StringField.compareSerialized(a.serialize(), 0, b.serialize(), 0);
+        assertThat(Integer.signum(comparison)).isEqualTo(Integer.signum(a.compareTo(b)));
+      }
+    }
+  }
 }
@@ -1,29 +1,39 @@
 package com.hpham.database.btree_disk.file_formats.index;
 
 import com.hpham.database.btree_disk.BTreeNode;
+import com.hpham.database.btree_disk.buffer_pool.BufferPool;
 import com.hpham.database.btree_disk.data_types.IntField;
 import com.hpham.database.btree_disk.data_types.LongField;
 import com.hpham.database.btree_disk.data_types.SortableField;
 import com.hpham.database.btree_disk.data_types.StringField;
+import com.hpham.database.btree_disk.file_formats.FragmentationReport;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.IntStream;
 
 import static com.hpham.database.btree_disk.constants.DataConstants.INT_TYPE_SIGNAL;
 import static com.hpham.database.btree_disk.constants.DataConstants.PAGE_SIZE_BYTES;
 import static com.hpham.database.btree_disk.constants.DataConstants.STRING_TYPE_SIGNAL;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 
 public class IndexFileTest {
   private IndexFile indexFile;
   private static final Random rand = new Random();
+  private static final int INT_KEY_FANOUT = BTreeNode.maxFanout(INT_TYPE_SIGNAL);
+  private static final int STRING_KEY_FANOUT = BTreeNode.maxFanout(STRING_TYPE_SIGNAL);
 
   @BeforeEach
   void beforeEach() {
@@ -40,7 +50,7 @@ public class IndexFileTest {
     indexFile.openFile(String.format("index-%d.tc", rand.nextInt()));
     IntStream.range(0, 10).forEach(
         i -> {
-          BTreeNode<Integer> node = BTreeNode.createLeafNode();
+          BTreeNode<Integer> node = BTreeNode.createLeafNode(INT_KEY_FANOUT);
           node.setKeys(
               List.of(
                   IntField.fromValue(rand.nextInt()),
@@ -78,7 +88,7 @@ public class IndexFileTest {
     indexFile.openFile(String.format("index-%d.tc", rand.nextInt()));
     IntStream.range(0, 10).forEach(
         i -> {
-          BTreeNode<String> node = BTreeNode.createInternalNode();
+          BTreeNode<String> node = BTreeNode.createInternalNode(STRING_KEY_FANOUT);
           node.setKeys(
               List.of(
                   StringField.fromValue(String.format("%d", rand.nextInt())),
@@ -111,12 +121,62 @@ public class IndexFileTest {
     );
   }
 
+  @Test
+  void testHeaderStoresFanout() throws IOException {
+    indexFile.openFile(String.format("index-%d.tc", rand.nextInt()));
+    BTreeNode<Integer> node = BTreeNode.createLeafNode(INT_KEY_FANOUT);
+    node.setKeys(List.of(IntField.fromValue(rand.nextInt())));
+    node.setRecordOffsets(List.of(LongField.fromValue(rand.nextLong())));
+
+    indexFile.append(node.serialize(), INT_TYPE_SIGNAL, 100);
+
+    IndexFileHeader header = indexFile.readHeader();
+    assertThat(header.getKeyType()).isEqualTo(INT_TYPE_SIGNAL);
+    assertThat(header.getFanout()).isEqualTo(100);
+  }
+
+  @Test
+  void testFullNodeFitsInPage() throws IOException {
+    indexFile.openFile(String.format("index-%d.tc", rand.nextInt()));
+    BTreeNode<Integer> node = BTreeNode.createLeafNode(INT_KEY_FANOUT);
+    node.setKeys(IntStream.range(0, INT_KEY_FANOUT)
+        .mapToObj(i -> (SortableField<Integer>) IntField.fromValue(i))
+        .toList());
+    node.setRecordOffsets(IntStream.range(0, INT_KEY_FANOUT)
+        .mapToObj(i -> LongField.fromValue((long) i))
+        .toList());
+
+    indexFile.append(node.serialize(), INT_TYPE_SIGNAL);
+    BTreeNode<Integer> deserializedNode = BTreeNode.deserialize(indexFile.read(0), INT_TYPE_SIGNAL);
+
+    assertThat(INT_KEY_FANOUT).isGreaterThan(300);
+    assertThat(deserializedNode.getKeys()).containsExactlyElementsOf(node.getKeys());
+    assertThat(deserializedNode.getRecordOffsets())
+        .containsExactlyElementsOf(node.getRecordOffsets());
+  }
+
+  @Test
+  void testLeafSiblingOffsetsRoundTrip() throws IOException {
+    indexFile.openFile(String.format("index-%d.tc", rand.nextInt()));
+    BTreeNode<Integer> node = BTreeNode.createLeafNode(INT_KEY_FANOUT);
+    node.setKeys(List.of(IntField.fromValue(rand.nextInt())));
+    node.setRecordOffsets(List.of(LongField.fromValue(rand.nextLong())));
+    node.setNextOffset(LongField.fromValue(7L));
+
+    indexFile.append(node.serialize(), INT_TYPE_SIGNAL);
+    BTreeNode<Integer> deserializedNode = BTreeNode.deserialize(indexFile.read(0), INT_TYPE_SIGNAL);
+
+    assertThat(deserializedNode.getPrevOffset()).isNull();
+    assertThat(deserializedNode.getNextOffset()).isEqualTo(LongField.fromValue(7L));
+    assertThat(deserializedNode.getKeys()).containsExactlyElementsOf(node.getKeys());
+  }
+
   @Test
   void testUpdateIndex() throws IOException {
     indexFile.openFile(String.format("index-%d.tc", rand.nextInt()));
     IntStream.range(0, 5).forEach(
         i -> {
-          BTreeNode<Integer> node = BTreeNode.createLeafNode();
+          BTreeNode<Integer> node = BTreeNode.createLeafNode(INT_KEY_FANOUT);
           node.setKeys(
               List.of(
                   IntField.fromValue(rand.nextInt()),
@@ -177,7 +237,7 @@ public class IndexFileTest {
     indexFile.openFile(String.format("index-%d.tc", rand.nextInt()));
     IntStream.range(0, 5).forEach(
         i -> {
-          BTreeNode<Integer> node = BTreeNode.createLeafNode();
+          BTreeNode<Integer> node = BTreeNode.createLeafNode(INT_KEY_FANOUT);
           node.setKeys(
               List.of(
                   IntField.fromValue(rand.nextInt()),
@@ -214,4 +274,301 @@ public class IndexFileTest {
       assertThat(b).isEqualTo((byte) 0);
     }
   }
+
+  @Test
+  void testPagesThroughSmallBufferPool() throws IOException {
+    BufferPool bufferPool = new BufferPool(4);
+    indexFile = new IndexFile(bufferPool);
+    String fileName = String.format("index-%d.tc", rand.nextInt());
+    indexFile.openFile(fileName);
+    List<BTreeNode<Integer>> nodes = IntStream.range(0, 20)
+        .mapToObj(i -> {
+          BTreeNode<Integer> node = BTreeNode.createLeafNode(INT_KEY_FANOUT);
+          node.setKeys(List.of(IntField.fromValue(i)));
+          node.setRecordOffsets(List.of(LongField.fromValue((long) i)));
+          return node;
+        })
+        .toList();
+    for (BTreeNode<Integer> node : nodes) {
+      indexFile.append(node.serialize(), INT_TYPE_SIGNAL);
+    }
+
+    for (int i = 0; i < nodes.size(); i++) {
+      BTreeNode<Integer> deserializedNode =
+          BTreeNode.deserialize(indexFile.read(i), INT_TYPE_SIGNAL);
+      assertThat(deserializedNode.getKeys()).containsExactlyElementsOf(nodes.get(i).getKeys());
+    }
+    assertThat(bufferPool.getEvictions()).isPositive();
+    assertThat(bufferPool.getWriteBacks()).isPositive();
+
+    // every page reaches the file, which ends right after the last node
+    indexFile.flush();
+    assertThat(Files.size(Path.of(fileName)))
+        .isEqualTo(IndexFileHeader.size() + (long) nodes.size() * PAGE_SIZE_BYTES);
+  }
+
+  @Test
+  void testMemoryMapped() throws IOException {
+    indexFile = IndexFile.memoryMapped();
+    String fileName = String.format("index-%d.tc", rand.nextInt());
+    indexFile.openFile(fileName);
+    List<BTreeNode<Integer>> nodes = IntStream.range(0, 20)
+        .mapToObj(i -> {
+          BTreeNode<Integer> node = BTreeNode.createLeafNode(INT_KEY_FANOUT);
+          node.setKeys(List.of(IntField.fromValue(i)));
+          node.setRecordOffsets(List.of(LongField.fromValue((long) i)));
+          return node;
+        })
+        .toList();
+    for (BTreeNode<Integer> node : nodes) {
+      indexFile.append(node.serialize(), INT_TYPE_SIGNAL);
+    }
+    indexFile.update(nodes.get(0).serialize(), 5);
+
+    for (int i = 0; i < nodes.size(); i++) {
+      BTreeNode<Integer> deserializedNode =
+          BTreeNode.deserialize(indexFile.read(i), INT_TYPE_SIGNAL);
+      BTreeNode<Integer> expectedNode = nodes.get(i == 5 ? 0 : i);
+      assertThat(deserializedNode.getKeys()).containsExactlyElementsOf(expectedNode.getKeys());
+    }
+    assertThat(indexFile.readHeader().getKeyType()).isEqualTo(INT_TYPE_SIGNAL);
+
+    // the file is cut back from the end of the mapping when it is closed
+    indexFile.close();
+    assertThat(Files.size(Path.of(fileName)))
+        .isEqualTo(IndexFileHeader.size() + (long) nodes.size() * PAGE_SIZE_BYTES);
+    // reopen, so that the file is deleted after the test
+    indexFile = IndexFile.memoryMapped();
+    indexFile.openFile(fileName);
+  }
+
+  @Test
+  void testCompressed() throws IOException {
+    indexFile = IndexFile.compressed();
+    String fileName = String.format("index-%d.tc", rand.nextInt());
+    indexFile.openFile(fileName);
+    List<BTreeNode<Integer>> nodes = IntStream.range(0, 200)
+        .mapToObj(IndexFileTest::leafNode)
+        .toList();
+    for (BTreeNode<Integer> node : nodes) {
+      indexFile.append(node.serialize(), INT_TYPE_SIGNAL);
+    }
+    indexFile.setRootOffset(7);
+    indexFile.close();
+
+    // mostly empty nodes take a small part of their pages on disk
+    assertThat(Files.size(Path.of(fileName)))
+        .isLessThan((long) nodes.size() * PAGE_SIZE_BYTES / 10);
+
+    indexFile = IndexFile.compressed();
+    indexFile.openFile(fileName);
+    assertThat(indexFile.wasClosedCleanly()).isTrue();
+    assertThat(indexFile.readHeader().getRootOffset()).isEqualTo(7);
+    for (int i = 0; i < nodes.size(); i++) {
+      assertThat(BTreeNode.<Integer>deserialize(indexFile.read(i), INT_TYPE_SIGNAL).getKeys())
+          .containsExactlyElementsOf(nodes.get(i).getKeys());
+    }
+  }
+
+  @Test
+  void testReadAll() throws IOException {
+    String fileName = String.format("index-%d.tc", rand.nextInt());
+    indexFile.openFile(fileName);
+    for (int i = 0; i < 100; i++) {
+      indexFile.append(leafNode(i).serialize(), INT_TYPE_SIGNAL);
+    }
+    indexFile.close();
+    // a small pool, so that most of the nodes are read from the file
+    indexFile = new IndexFile(new BufferPool(16));
+    indexFile.openFile(fileName);
+
+    long[] offsets = {99, 0, 42, 42, 7};
+    List<CompletableFuture<ByteBuffer>> reads = indexFile.readAll(offsets);
+
+    assertThat(reads).hasSameSizeAs(offsets);
+    for (int i = 0; i < offsets.length; i++) {
+      assertThat(BTreeNode.<Integer>deserialize(reads.get(i).join(), INT_TYPE_SIGNAL).getKeys())
+          .containsExactly(IntField.fromValue((int) offsets[i]));
+    }
+    assertThat(BTreeNode.<Integer>deserialize(indexFile.readAsync(3).join(), INT_TYPE_SIGNAL)
+        .getKeys())
+        .containsExactly(IntField.fromValue(3));
+  }
+
+  @Test
+  void testDeletedPagesAreReused() throws IOException {
+    String fileName = String.format("index-%d.tc", rand.nextInt());
+    indexFile.openFile(fileName);
+    for (int i = 0; i < 5; i++) {
+      assertThat(indexFile.append(leafNode(i).serialize(), INT_TYPE_SIGNAL)).isEqualTo(i);
+    }
+
+    indexFile.delete(1);
+    indexFile.delete(3);
+
+    FragmentationReport report = indexFile.fragmentation();
+    assertThat(report.getTotalSlots()).isEqualTo(5);
+    assertThat(report.getFreeSlots()).isEqualTo(2);
+    assertThat(report.getFreeBytes()).isEqualTo(2L * PAGE_SIZE_BYTES);
+    assertThat(report.getFreeRatio()).isEqualTo(0.4);
+
+    // the last deleted page is reused first, and the file only grows once both are reused
+    assertThat(indexFile.append(leafNode(10).serialize(), INT_TYPE_SIGNAL)).isEqualTo(3);
+    assertThat(indexFile.append(leafNode(11).serialize(), INT_TYPE_SIGNAL)).isEqualTo(1);
+    assertThat(indexFile.append(leafNode(12).serialize(), INT_TYPE_SIGNAL)).isEqualTo(5);
+    assertThat(indexFile.fragmentation().getFreeSlots()).isZero();
+
+    assertThat(BTreeNode.<Integer>deserialize(indexFile.read(1), INT_TYPE_SIGNAL).getKeys())
+        .containsExactly(IntField.fromValue(11));
+    assertThat(BTreeNode.<Integer>deserialize(indexFile.read(3), INT_TYPE_SIGNAL).getKeys())
+        .containsExactly(IntField.fromValue(10));
+    indexFile.flush();
+    assertThat(Files.size(Path.of(fileName)))
+        .isEqualTo(IndexFileHeader.size() + 6L * PAGE_SIZE_BYTES);
+  }
+
+  @Test
+  void testFreePagesSurviveReopening() throws IOException {
+    String fileName = String.format("index-%d.tc", rand.nextInt());
+    indexFile.openFile(fileName);
+    for (int i = 0; i < 5; i++) {
+      indexFile.append(leafNode(i).serialize(), INT_TYPE_SIGNAL);
+    }
+    indexFile.delete(0);
+    indexFile.delete(4);
+    indexFile.close();
+
+    indexFile = new IndexFile();
+    indexFile.openFile(fileName);
+
+    assertThat(indexFile.readHeader().getFreeListHead()).isEqualTo(4);
+    assertThat(indexFile.fragmentation().getFreeSlots()).isEqualTo(2);
+    assertThat(indexFile.append(leafNode(10).serialize(), INT_TYPE_SIGNAL)).isEqualTo(4);
+    assertThat(indexFile.append(leafNode(11).serialize(), INT_TYPE_SIGNAL)).isEqualTo(0);
+    assertThat(indexFile.append(leafNode(12).serialize(), INT_TYPE_SIGNAL)).isEqualTo(5);
+    assertThat(BTreeNode.<Integer>deserialize(indexFile.read(2), INT_TYPE_SIGNAL).getKeys())
+        .containsExactly(IntField.fromValue(2));
+  }
+
+  @Test
+  void testFreePagesAreReusedBeforeTheyAreCounted() throws IOException {
+    String fileName = String.format("index-%d.tc", rand.nextInt());
+    indexFile.openFile(fileName);
+    for (int i = 0; i < 5; i++) {
+      indexFile.append(leafNode(i).serialize(), INT_TYPE_SIGNAL);
+    }
+    indexFile.delete(1);
+    indexFile.delete(2);
+    indexFile.delete(3);
+    indexFile.close();
+
+    // the free pages are only walked once they are counted or freed
+    indexFile = new IndexFile();
+    indexFile.openFile(fileName);
+    assertThat(indexFile.append(leafNode(10).serialize(), INT_TYPE_SIGNAL)).isEqualTo(3);
+    assertThat(indexFile.fragmentation().getFreeSlots()).isEqualTo(2);
+    indexFile.delete(3);
+    assertThat(indexFile.fragmentation().getFreeSlots()).isEqualTo(3);
+    assertThrows(IllegalArgumentException.class, () -> indexFile.delete(2));
+    assertThat(indexFile.append(leafNode(11).serialize(), INT_TYPE_SIGNAL)).isEqualTo(3);
+    assertThat(indexFile.append(leafNode(12).serialize(), INT_TYPE_SIGNAL)).isEqualTo(2);
+    assertThat(indexFile.fragmentation().getFreeSlots()).isEqualTo(1);
+  }
+
+  @Test
+  void testDeletePageNotInFile() throws IOException {
+    String fileName = String.format("index-%d.tc", rand.nextInt());
+    indexFile.openFile(fileName);
+    assertThrows(IllegalArgumentException.class, () -> indexFile.delete(0));
+    for (int i = 0; i < 3; i++) {
+      indexFile.append(leafNode(i).serialize(), INT_TYPE_SIGNAL);
+    }
+
+    assertThrows(IllegalArgumentException.class, () -> indexFile.delete(-1));
+    assertThrows(IllegalArgumentException.class, () -> indexFile.delete(3));
+    indexFile.delete(2);
+    assertThat(indexFile.fragmentation().getFreeSlots()).isEqualTo(1);
+    assertThat(indexFile.append(leafNode(3).serialize(), INT_TYPE_SIGNAL)).isEqualTo(2);
+    assertThat(indexFile.append(leafNode(4).serialize(), INT_TYPE_SIGNAL)).isEqualTo(3);
+  }
+
+  @Test
+  void testCleanShutdownIsRecorded() throws IOException {
+    String fileName = String.format("index-%d.tc", rand.nextInt());
+    indexFile.openFile(fileName);
+    assertThat(indexFile.wasClosedCleanly()).isTrue();
+    for (int i = 0; i < 3; i++) {
+      indexFile.append(leafNode(i).serialize(), INT_TYPE_SIGNAL);
+    }
+    indexFile.setRootOffset(2);
+    indexFile.close();
+
+    indexFile = new IndexFile();
+    indexFile.openFile(fileName);
+    assertThat(indexFile.wasClosedCleanly()).isTrue();
+    assertThat(indexFile.readHeader().getNumberOfPages()).isEqualTo(3);
+    assertThat(indexFile.readHeader().getRootOffset()).isEqualTo(2);
+    // a file that is only read stays clean, even if it is never closed
+    IndexFile readFile = new IndexFile();
+    readFile.openFile(fileName);
+    assertThat(readFile.wasClosedCleanly()).isTrue();
+
+    // once written, the file is marked as open until it is closed, as if the process crashed
+    indexFile.setRootOffset(1);
+    IndexFile crashedFile = new IndexFile();
+    crashedFile.openFile(fileName);
+    assertThat(crashedFile.wasClosedCleanly()).isFalse();
+
+    // a file that was not closed cleanly stays marked as such
+    crashedFile.close();
+    IndexFile reopenedFile = new IndexFile();
+    reopenedFile.openFile(fileName);
+    assertThat(reopenedFile.wasClosedCleanly()).isFalse();
+    reopenedFile.close();
+  }
+
+  @Test
+  void testOpenFileWithMissingPages() throws IOException {
+    String fileName = String.format("index-%d.tc", rand.nextInt());
+    indexFile.openFile(fileName);
+    for (int i = 0; i < 3; i++) {
+      indexFile.append(leafNode(i).serialize(), INT_TYPE_SIGNAL);
+    }
+    indexFile.close();
+    try (FileChannel channel = FileChannel.open(Path.of(fileName), WRITE)) {
+      channel.truncate(IndexFileHeader.size() + PAGE_SIZE_BYTES);
+    }
+
+    assertThrows(IllegalStateException.class, () -> new IndexFile().openFile(fileName));
+    Files.delete(Path.of(fileName));
+    indexFile = new IndexFile();
+    indexFile.openFile(fileName);
+  }
+
+  @Test
+  void testOpenFileThatIsNotAnIndexFile() throws IOException {
+    String fileName = String.format("index-%d.tc", rand.nextInt());
+    Files.write(Path.of(fileName), new byte[PAGE_SIZE_BYTES]);
+
+    assertThrows(IllegalArgumentException.class, () -> indexFile.openFile(fileName));
+    Files.delete(Path.of(fileName));
+    indexFile = new IndexFile();
+    indexFile.openFile(fileName);
+  }
+
+  @Test
+  void testDeletePageTwice() throws IOException {
+    indexFile.openFile(String.format("index-%d.tc", rand.nextInt()));
+    indexFile.append(leafNode(0).serialize(), INT_TYPE_SIGNAL);
+    indexFile.delete(0);
+
+    assertThrows(IllegalArgumentException.class, () -> indexFile.delete(0));
+  }
+
+  private static BTreeNode<Integer> leafNode(int key) {
+    BTreeNode<Integer> node = BTreeNode.createLeafNode(INT_KEY_FANOUT);
+    node.setKeys(List.of(IntField.fromValue(key)));
+    node.setRecordOffsets(List.of(LongField.fromValue((long) key)));
+    return node;
+  }
 }
@@ -4,6 +4,7 @@ import com.hpham.database.btree_disk.Record;
 import com.hpham.database.btree_disk.RecordValue;
 import com.hpham.database.btree_disk.data_types.Field;
 import com.hpham.database.btree_disk.data_types.IntField;
+import com.hpham.database.btree_disk.data_types.LongField;
 import com.hpham.database.btree_disk.data_types.StringField;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -16,7 +17,9 @@ import java.util.Map;
 import java.util.Random;
 import java.util.stream.IntStream;
 
+import static com.hpham.database.btree_disk.constants.DataConstants.STRING_SIZE_BYTES;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class RecordFileTest {
   private RecordFile recordFile;
@@ -61,6 +64,33 @@ public class RecordFileTest {
     );
   }
 
+  @Test
+  void testCreateRecordWithLongKey() throws IOException {
+    Map<String, Field<?>> fields = new LinkedHashMap<>();
+    fields.put("field1", StringField.fromValue("value1"));
+    fields.put("field2", LongField.fromValue(4L));
+    recordFile.openFile(String.format("record-%d.tc", rand.nextInt()));
+    IntStream.range(0, 10).forEach(
+        i -> {
+          var key = LongField.fromValue(rand.nextLong());
+          Record<Long> record = Record.<Long>builder()
+              .key(key)
+              .value(RecordValue.recordValueWithFields(fields))
+              .build();
+          try {
+            recordFile.append(record.serialize());
+            var read = Record.deserialize(recordFile.read(i));
+            assertThat(read.getKey()).isEqualTo(key);
+            fields.forEach((fieldName, fieldValue) -> {
+              assertThat(read.getValue().getField(fieldName)).isEqualTo(fieldValue);
+            });
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+    );
+  }
+
   @Test
   void testUpdateRecord() throws IOException {
     Map<String, Field<?>> fields = new LinkedHashMap<>();
@@ -141,4 +171,133 @@ public class RecordFileTest {
       assertThat(b).isEqualTo((byte) 0);
     }
   }
+
+  @Test
+  void testMemoryMapped() throws IOException {
+    recordFile = RecordFile.memoryMapped();
+    recordFile.openFile(String.format("record-%d.tc", rand.nextInt()));
+    Map<String, Field<?>> fields = new LinkedHashMap<>();
+    fields.put("field1", StringField.fromValue("value1"));
+    fields.put("field2", IntField.fromValue(4));
+    for (int i = 0; i < 10; i++) {
+      Record<Integer> record = Record.<Integer>builder()
+          .key(IntField.fromValue(i))
+          .value(RecordValue.recordValueWithFields(fields))
+          .build();
+      recordFile.append(record.serialize());
+    }
+    ByteBuffer deleted = recordFile.read(4);
+
+    recordFile.delete(4);
+
+    // the record read before it was deleted is a view of the mapping
+    assertThat(deleted.isReadOnly()).isTrue();
+    while (deleted.hasRemaining()) {
+      assertThat(deleted.get()).isZero();
+    }
+    for (int i = 5; i < 10; i++) {
+      var read = Record.deserialize(recordFile.read(i));
+      assertThat(read.getKey()).isEqualTo(IntField.fromValue(i));
+      fields.forEach((fieldName, fieldValue) -> {
+        assertThat(read.getValue().getField(fieldName)).isEqualTo(fieldValue);
+      });
+    }
+  }
+
+  @Test
+  void testDeletedRecordsAreReused() throws IOException {
+    String fileName = String.format("record-%d.tc", rand.nextInt());
+    recordFile.openFile(fileName);
+    for (int i = 0; i < 10; i++) {
+      assertThat(recordFile.append(record(i).serialize())).isEqualTo(i);
+    }
+    recordFile.delete(2);
+    recordFile.delete(7);
+    assertThat(recordFile.fragmentation().getFreeSlots()).isEqualTo(2);
+    assertThat(recordFile.fragmentation().getFreeRatio()).isEqualTo(0.2);
+    recordFile.close();
+
+    // the free records are kept in the file
+    recordFile = new RecordFile();
+    recordFile.openFile(fileName);
+    assertThat(recordFile.fragmentation().getTotalSlots()).isEqualTo(10);
+    assertThat(recordFile.append(record(20).serialize())).isEqualTo(7);
+    assertThat(recordFile.append(record(21).serialize())).isEqualTo(2);
+    assertThat(recordFile.append(record(22).serialize())).isEqualTo(10);
+
+    assertThat(Record.deserialize(recordFile.read(2)).getKey()).isEqualTo(IntField.fromValue(21));
+    assertThat(Record.deserialize(recordFile.read(7)).getKey()).isEqualTo(IntField.fromValue(20));
+    assertThat(Record.deserialize(recordFile.read(8)).getKey()).isEqualTo(IntField.fromValue(8));
+    assertThat(recordFile.fragmentation().getFreeSlots()).isZero();
+  }
+
+  @Test
+  void testDeleteRecordNotInFile() throws IOException {
+    String fileName = String.format("record-%d.tc", rand.nextInt());
+    recordFile.openFile(fileName);
+    assertThrows(IllegalArgumentException.class, () -> recordFile.delete(0));
+    for (int i = 0; i < 3; i++) {
+      recordFile.append(record(i).serialize());
+    }
+
+    assertThrows(IllegalArgumentException.class, () -> recordFile.delete(-1));
+    assertThrows(IllegalArgumentException.class, () -> recordFile.delete(3));
+    recordFile.delete(2);
+    assertThat(recordFile.fragmentation().getFreeSlots()).isEqualTo(1);
+    assertThat(recordFile.append(record(3).serialize())).isEqualTo(2);
+    assertThat(recordFile.append(record(4).serialize())).isEqualTo(3);
+  }
+
+  private static Record<Integer> record(int key) {
+    Map<String, Field<?>> fields = new LinkedHashMap<>();
+    fields.put("field1", StringField.fromValue("value1"));
+    return Record.<Integer>builder()
+        .key(IntField.fromValue(key))
+        .value(RecordValue.recordValueWithFields(fields))
+        .build();
+  }
+
+  @Test
+  void testUpdateWithShorterStrings() throws IOException {
+    Map<String, Field<?>> fields = new LinkedHashMap<>();
+    fields.put("field1", StringField.fromValue("a longer value"));
+    fields.put("field2", IntField.fromValue(4));
+    recordFile.openFile(String.format("record-%d.tc", rand.nextInt()));
+    recordFile.append(Record.<Integer>builder()
+        .key(IntField.fromValue(1))
+        .value(RecordValue.recordValueWithFields(fields))
+        .build()
+        .serialize());
+
+    fields.put("field1", StringField.fromValue("short"));
+    recordFile.update(Record.<Integer>builder()
+        .key(IntField.fromValue(1))
+        .value(RecordValue.recordValueWithFields(fields))
+        .build()
+        .serialize(), 0);
+
+    Record<Integer> updatedRecord = Record.deserialize(recordFile.read(0));
+    assertThat(updatedRecord.getValue().getField("field1"))
+        .isEqualTo(StringField.fromValue("short"));
+    assertThat(updatedRecord.getValue().getField("field2")).isEqualTo(IntField.fromValue(4));
+  }
+
+  @Test
+  void testRecordLargerThanSlot() throws IOException {
+    recordFile.openFile(String.format("record-%d.tc", rand.nextInt()));
+    recordFile.append(record(1).serialize());
+
+    Map<String, Field<?>> fields = new LinkedHashMap<>();
+    fields.put("field1", StringField.fromValue("x".repeat(STRING_SIZE_BYTES)));
+    Record<Integer> longerRecord = Record.<Integer>builder()
+        .key(IntField.fromValue(2))
+        .value(RecordValue.recordValueWithFields(fields))
+        .build();
+
+    assertThrows(IllegalArgumentException.class, () -> recordFile.append(longerRecord.serialize()));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> recordFile.update(longerRecord.serialize(), 0)
+    );
+  }
 }
@@ -0,0 +1,117 @@
+package com.hpham.database.btree_disk.file_formats.record;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.hpham.database.btree_disk.constants.DataConstants.PAGE_SIZE_BYTES;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SlottedPageTest {
+  private SlottedPage page;
+
+  @BeforeEach
+  void beforeEach() {
+    page = SlottedPage.initialize(ByteBuffer.allocate(PAGE_SIZE_BYTES));
+  }
+
+  @Test
+  void testInsertCellsOfDifferentLengths() {
+    List<ByteBuffer> cells = new ArrayList<>();
+    for (int length = 1; length <= 20; length++) {
+      ByteBuffer cell = cell(length, (byte) length);
+      cells.add(cell);
+      assertThat(page.insert(cell.duplicate())).isEqualTo(length - 1);
+    }
+
+    for (int slot = 0; slot < cells.size(); slot++) {
+      assertThat(page.read(slot)).isEqualTo(cells.get(slot));
+    }
+    int usedSpace = SlottedPage.HEADER_SIZE + 20 * SlottedPage.SLOT_SIZE + 20 * 21 / 2;
+    assertThat(page.getFreeSpace()).isEqualTo(PAGE_SIZE_BYTES - usedSpace);
+  }
+
+  @Test
+  void testDeletedSlotIsReused() {
+    page.insert(cell(10, (byte) 1));
+    page.insert(cell(10, (byte) 2));
+    page.insert(cell(10, (byte) 3));
+
+    page.delete(1);
+
+    assertThat(page.isLive(1)).isFalse();
+    assertThat(page.insert(cell(5, (byte) 4))).isEqualTo(1);
+    assertThat(page.read(1)).isEqualTo(cell(5, (byte) 4));
+    assertThat(page.read(2)).isEqualTo(cell(10, (byte) 3));
+  }
+
+  @Test
+  void testDeletingLastSlotsShrinksDirectory() {
+    page.insert(cell(10, (byte) 1));
+    page.insert(cell(10, (byte) 2));
+    page.insert(cell(10, (byte) 3));
+
+    page.delete(1);
+    page.delete(2);
+
+    assertThat(page.getNumberOfSlots()).isEqualTo(1);
+    assertThat(page.getFreeSpace())
+        .isEqualTo(PAGE_SIZE_BYTES - SlottedPage.HEADER_SIZE - SlottedPage.SLOT_SIZE - 10);
+  }
+
+  @Test
+  void testCompactionReclaimsDeletedCells() {
+    int cellLength = 100;
+    int slots = 0;
+    while (page.insert(cell(cellLength, (byte) slots)) != SlottedPage.NO_SLOT) {
+      slots++;
+    }
+    // every other cell is deleted, so no gap fits a cell twice as long
+    for (int slot = 0; slot < slots; slot += 2) {
+      page.delete(slot);
+    }
+
+    int slot = page.insert(cell(2 * cellLength, (byte) -1));
+
+    assertThat(slot).isZero();
+    assertThat(page.read(0)).isEqualTo(cell(2 * cellLength, (byte) -1));
+    for (int i = 1; i < slots; i += 2) {
+      assertThat(page.read(i)).isEqualTo(cell(cellLength, (byte) i));
+    }
+  }
+
+  @Test
+  void testUpdate() {
+    page.insert(cell(10, (byte) 1));
+    page.insert(cell(10, (byte) 2));
+
+    // a shorter cell stays in place, a longer one is moved
+    assertThat(page.update(0, cell(4, (byte) 3))).isTrue();
+    assertThat(page.read(0)).isEqualTo(cell(4, (byte) 3));
+    assertThat(page.update(0, cell(40, (byte) 4))).isTrue();
+    assertThat(page.read(0)).isEqualTo(cell(40, (byte) 4));
+    assertThat(page.read(1)).isEqualTo(cell(10, (byte) 2));
+
+    assertThat(page.update(1, cell(SlottedPage.MAX_CELL_SIZE, (byte) 5))).isFalse();
+    assertThat(page.read(1)).isEqualTo(cell(10, (byte) 2));
+  }
+
+  @Test
+  void testCellTooLargeForPage() {
+    page.insert(cell(10, (byte) 1));
+
+    assertThat(page.insert(cell(SlottedPage.MAX_CELL_SIZE, (byte) 2)))
+        .isEqualTo(SlottedPage.NO_SLOT);
+    assertThat(page.getNumberOfSlots()).isEqualTo(1);
+  }
+
+  private static ByteBuffer cell(int length, byte value) {
+    byte[] bytes = new byte[length];
+    Arrays.fill(bytes, value);
+    return ByteBuffer.wrap(bytes);
+  }
+}
@@ -0,0 +1,235 @@
+package com.hpham.database.btree_disk.file_formats.record;
+
+import com.hpham.database.btree_disk.Record;
+import com.hpham.database.btree_disk.RecordValue;
+import com.hpham.database.btree_disk.buffer_pool.BufferPool;
+import com.hpham.database.btree_disk.data_types.Field;
+import com.hpham.database.btree_disk.data_types.IntField;
+import com.hpham.database.btree_disk.data_types.LongField;
+import com.hpham.database.btree_disk.data_types.StringField;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.hpham.database.btree_disk.constants.DataConstants.PAGE_SIZE_BYTES;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SlottedRecordFileTest {
+  private SlottedRecordFile recordFile;
+  private String fileName;
+  private static final Random rand = new Random();
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    recordFile = new SlottedRecordFile();
+    fileName = String.format("slotted-record-%d.tc", rand.nextInt());
+    recordFile.openFile(fileName);
+  }
+
+  @AfterEach
+  void afterEach() throws IOException {
+    recordFile.delete();
+  }
+
+  @Test
+  void testRecordsWithDifferentFields() throws IOException {
+    List<Record<Integer>> records = new ArrayList<>();
+    List<RecordId> recordIds = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      Record<Integer> record = record(i, i % 5);
+      records.add(record);
+      recordIds.add(recordFile.append(record.serialize()));
+    }
+
+    for (int i = 0; i < records.size(); i++) {
+      Record<Integer> read = Record.deserialize(recordFile.read(recordIds.get(i)));
+      assertRecordEquals(read, records.get(i));
+    }
+    // records are packed, rather than taking as much room as the longest one
+    long totalSize = records.stream().mapToLong(record -> record.serialize().remaining()).sum();
+    assertThat((long) recordFile.getNumberOfPages() * PAGE_SIZE_BYTES)
+        .isLessThan(totalSize + totalSize / 4);
+  }
+
+  @Test
+  void testRecordIdToLong() {
+    RecordId recordId = new RecordId(123_456_789L, SlottedPage.MAX_CELL_SIZE / SlottedPage.SLOT_SIZE);
+
+    assertThat(RecordId.fromLong(recordId.toLong())).isEqualTo(recordId);
+  }
+
+  @Test
+  void testUpdateKeepsRecordIdWhileRecordFits() throws IOException {
+    RecordId shortRecordId = recordFile.append(record(1, 0).serialize());
+    RecordId otherRecordId = recordFile.append(record(2, 0).serialize());
+
+    Record<Integer> longRecord = record(1, 4);
+    assertThat(recordFile.update(longRecord.serialize(), shortRecordId)).isEqualTo(shortRecordId);
+
+    assertRecordEquals(Record.deserialize(recordFile.read(shortRecordId)), longRecord);
+    assertRecordEquals(Record.deserialize(recordFile.read(otherRecordId)), record(2, 0));
+  }
+
+  @Test
+  void testUpdateMovesRecordThatNoLongerFits() throws IOException {
+    int recordSize = SlottedRecordFile.MAX_RECORD_SIZE / 2 - SlottedPage.SLOT_SIZE;
+    RecordId first = recordFile.append(bytes(recordSize, (byte) 1));
+    RecordId second = recordFile.append(bytes(recordSize, (byte) 2));
+    assertThat(second.pageNumber()).isEqualTo(first.pageNumber());
+
+    RecordId moved = recordFile.update(bytes(recordSize + 100, (byte) 3), first);
+
+    assertThat(moved.pageNumber()).isNotEqualTo(first.pageNumber());
+    assertThat(recordFile.read(moved)).isEqualTo(bytes(recordSize + 100, (byte) 3));
+    assertThat(recordFile.read(second)).isEqualTo(bytes(recordSize, (byte) 2));
+    assertThrows(IllegalArgumentException.class, () -> recordFile.read(first));
+  }
+
+  @Test
+  void testDeletedSpaceIsReused() throws IOException {
+    List<RecordId> recordIds = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      recordIds.add(recordFile.append(record(i, i % 5).serialize()));
+    }
+    int numberOfPages = recordFile.getNumberOfPages();
+
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < recordIds.size(); i += 2) {
+        recordFile.delete(recordIds.get(i));
+      }
+      for (int i = 0; i < recordIds.size(); i += 2) {
+        recordIds.set(i, recordFile.append(record(i, (i + round) % 5).serialize()));
+      }
+    }
+
+    assertThat(recordFile.getNumberOfPages()).isLessThanOrEqualTo(numberOfPages + 1);
+    assertRecordEquals(Record.deserialize(recordFile.read(recordIds.get(1))), record(1, 1));
+  }
+
+  @Test
+  void testReopenFile() throws IOException {
+    List<RecordId> recordIds = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      recordIds.add(recordFile.append(record(i, i % 5).serialize()));
+    }
+    recordFile.delete(recordIds.get(10));
+    recordFile.delete(recordIds.get(99));
+    int numberOfPages = recordFile.getNumberOfPages();
+    recordFile.close();
+
+    recordFile = SlottedRecordFile.memoryMapped();
+    recordFile.openFile(fileName);
+
+    assertThat(recordFile.getNumberOfPages()).isEqualTo(numberOfPages);
+    assertRecordEquals(Record.deserialize(recordFile.read(recordIds.get(98))), record(98, 3));
+    assertThrows(IllegalArgumentException.class, () -> recordFile.read(recordIds.get(10)));
+    // the space of a deleted record is reused
+    assertThat(recordFile.append(record(99, 4).serialize()))
+        .isIn(recordIds.get(10), recordIds.get(99));
+    assertThat(recordFile.getNumberOfPages()).isEqualTo(numberOfPages);
+  }
+
+  @Test
+  void testReadAll() throws IOException {
+    List<RecordId> recordIds = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      recordIds.add(recordFile.append(record(i, i % 5).serialize()));
+    }
+    recordFile.delete(recordIds.get(7));
+    recordFile.flush();
+    recordFile.close();
+    // a small pool, so that most of the pages are read from the file
+    recordFile = new SlottedRecordFile(new BufferPool(8));
+    recordFile.openFile(fileName);
+
+    List<RecordId> reversed = new ArrayList<>(recordIds.reversed());
+    List<CompletableFuture<ByteBuffer>> reads = recordFile.readAll(reversed);
+
+    assertThat(reads).hasSameSizeAs(recordIds);
+    for (int i = 0; i < reads.size(); i++) {
+      int key = recordIds.size() - 1 - i;
+      if (key == 7) {
+        CompletionException e = assertThrows(CompletionException.class, reads.get(i)::join);
+        assertThat(e.getCause()).isInstanceOf(IllegalArgumentException.class);
+        continue;
+      }
+      assertRecordEquals(Record.deserialize(reads.get(i).join()), record(key, key % 5));
+    }
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> recordFile.readAll(List.of(new RecordId(recordFile.getNumberOfPages(), 0)))
+    );
+  }
+
+  @Test
+  void testRecordTooLarge() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> recordFile.append(bytes(SlottedRecordFile.MAX_RECORD_SIZE + 1, (byte) 1))
+    );
+  }
+
+  @Test
+  void testUpdateWithRecordTooLargeKeepsRecord() throws IOException {
+    RecordId recordId = recordFile.append(bytes(10, (byte) 1));
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> recordFile.update(bytes(SlottedRecordFile.MAX_RECORD_SIZE + 1, (byte) 2), recordId)
+    );
+
+    assertThat(recordFile.read(recordId)).isEqualTo(bytes(10, (byte) 1));
+  }
+
+  @Test
+  void testReadRecordThatDoesNotExist() {
+    assertThrows(IllegalArgumentException.class, () -> recordFile.read(new RecordId(0, 0)));
+  }
+
+  /**
+   * Record with {@code numberOfFields} fields of different types, so records of different
+   * lengths.
+   */
+  private static Record<Integer> record(int key, int numberOfFields) {
+    Map<String, Field<?>> fields = new LinkedHashMap<>();
+    for (int i = 0; i < numberOfFields; i++) {
+      fields.put("field" + i, switch (i % 3) {
+        case 0 -> StringField.fromValue("value" + key);
+        case 1 -> IntField.fromValue(key);
+        default -> LongField.fromValue((long) key);
+      });
+    }
+    return Record.<Integer>builder()
+        .key(IntField.fromValue(key))
+        .value(RecordValue.recordValueWithFields(fields))
+        .build();
+  }
+
+  private static void assertRecordEquals(Record<Integer> actual, Record<Integer> expected) {
+    assertThat(actual.getKey()).isEqualTo(expected.getKey());
+    for (int i = 0; i < 5; i++) {
+      String fieldName = "field" + i;
+      assertThat(actual.getValue().getField(fieldName))
+          .isEqualTo(expected.getValue().getField(fieldName));
+    }
+  }
+
+  private static ByteBuffer bytes(int length, byte value) {
+    ByteBuffer bytes = ByteBuffer.allocate(length);
+    while (bytes.hasRemaining()) {
+      bytes.put(value);
+    }
+    return bytes.flip();
+  }
+}
@@ -0,0 +1,106 @@
+package com.hpham.database.btree_disk.file_formats.schema;
+
+import com.hpham.database.btree_disk.Record;
+import com.hpham.database.btree_disk.RecordValue;
+import com.hpham.database.btree_disk.data_types.Field;
+import com.hpham.database.btree_disk.data_types.IntField;
+import com.hpham.database.btree_disk.data_types.LongField;
+import com.hpham.database.btree_disk.data_types.StringField;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.hpham.database.btree_disk.constants.DataConstants.INT_TYPE_SIGNAL;
+import static com.hpham.database.btree_disk.constants.DataConstants.LONG_TYPE_SIGNAL;
+import static com.hpham.database.btree_disk.constants.DataConstants.STRING_TYPE_SIGNAL;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SchemaCatalogTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  void testSchemasAreSharedAndKeepColumnIds() throws IOException {
+    SchemaCatalog catalog = new SchemaCatalog();
+
+    Schema schema =
+        catalog.schemaOf(fields("a", IntField.fromValue(1), "b", StringField.fromValue("x")));
+    assertThat(
+        catalog.schemaOf(fields("a", IntField.fromValue(2), "b", StringField.fromValue("y")))
+    ).isSameAs(schema);
+    assertThat(schema.columns()).containsExactly(
+        new Column(0, "a", INT_TYPE_SIGNAL),
+        new Column(1, "b", STRING_TYPE_SIGNAL)
+    );
+
+    // a column with the same name and type keeps its id in a new schema
+    Schema otherSchema =
+        catalog.schemaOf(fields("c", LongField.fromValue(3L), "a", IntField.fromValue(1)));
+    assertThat(otherSchema.version()).isEqualTo(1);
+    assertThat(otherSchema.columns()).containsExactly(
+        new Column(2, "c", LONG_TYPE_SIGNAL),
+        new Column(0, "a", INT_TYPE_SIGNAL)
+    );
+    assertThat(catalog.getNumberOfSchemas()).isEqualTo(2);
+    assertThrows(IllegalArgumentException.class, () -> catalog.getSchema(2));
+  }
+
+  @Test
+  void testReopenFile() throws IOException {
+    String fileName = directory.resolve("schema.tc").toString();
+    SchemaCatalog catalog = new SchemaCatalog();
+    catalog.openFile(fileName);
+    catalog.schemaOf(fields("a", IntField.fromValue(1), "b", StringField.fromValue("x")));
+    Schema schema = catalog.schemaOf(fields("b", StringField.fromValue("x")));
+    catalog.close();
+
+    catalog = new SchemaCatalog();
+    catalog.openFile(fileName);
+    assertThat(catalog.getNumberOfSchemas()).isEqualTo(2);
+    assertThat(catalog.getSchema(1)).isEqualTo(schema);
+    assertThat(catalog.schemaOf(fields("b", StringField.fromValue("y")))).isEqualTo(schema);
+    assertThat(catalog.schemaOf(fields("d", IntField.fromValue(1))).columns())
+        .containsExactly(new Column(2, "d", INT_TYPE_SIGNAL));
+    catalog.delete();
+  }
+
+  @Test
+  void testPackedRecord() throws IOException {
+    SchemaCatalog catalog = new SchemaCatalog();
+    Record<Integer> record = Record.<Integer>builder()
+        .key(IntField.fromValue(7))
+        .value(RecordValue.recordValueWithFields(fields(
+            "field1", IntField.fromValue(1),
+            "field2", IntField.fromValue(2),
+            "field3", IntField.fromValue(3),
+            "field4", StringField.fromValue("four")
+        )))
+        .build();
+
+    ByteBuffer packed = record.serialize(catalog);
+    // key, schema version and values only
+    assertThat(packed.remaining()).isEqualTo(1 + 4 + 2 + 3 * 4 + 5);
+    assertThat(packed.remaining()).isLessThan(record.serialize().remaining() / 2);
+
+    Record<Integer> deserialized = Record.deserialize(packed, catalog);
+    assertThat(deserialized.getKey()).isEqualTo(IntField.fromValue(7));
+    for (String name : new String[] {"field1", "field2", "field3", "field4"}) {
+      assertThat(deserialized.getValue().getField(name))
+          .isEqualTo(record.getValue().getField(name));
+    }
+  }
+
+  private static Map<String, Field<?>> fields(Object... namesAndValues) {
+    Map<String, Field<?>> fields = new LinkedHashMap<>();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      fields.put((String) namesAndValues[i], (Field<?>) namesAndValues[i + 1]);
+    }
+    return fields;
+  }
+}
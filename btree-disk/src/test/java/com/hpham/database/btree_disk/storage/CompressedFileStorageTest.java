@@ -0,0 +1,224 @@
+package com.hpham.database.btree_disk.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static com.hpham.database.btree_disk.constants.DataConstants.PAGE_SIZE_BYTES;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CompressedFileStorageTest {
+  private static final int CACHED_PAGES = 2;
+
+  @TempDir
+  Path directory;
+
+  private Path path;
+  private CompressedFileStorage storage;
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    path = directory.resolve("compressed.tc");
+    storage = open();
+  }
+
+  @AfterEach
+  void afterEach() throws IOException {
+    storage.discard();
+  }
+
+  @Test
+  void testReadWriteAcrossEvictedPages() throws IOException {
+    ByteBuffer bytes = repetitiveBytes(5 * PAGE_SIZE_BYTES);
+    long position = PAGE_SIZE_BYTES / 2;
+
+    storage.write(position, bytes);
+
+    // only the last pages are still cached, the others were compressed when they were evicted
+    assertThat(storage.getCompressedPages()).isEqualTo(6 - CACHED_PAGES);
+    assertThat(storage.size()).isEqualTo(position + bytes.capacity());
+    assertThat(storage.read(position, bytes.capacity())).isEqualTo(bytes.flip());
+    assertThat(storage.getDecompressedPages()).isPositive();
+  }
+
+  @Test
+  void testReadPastEndIsZero() throws IOException {
+    ByteBuffer read = storage.read(PAGE_SIZE_BYTES - 2, 4);
+
+    assertThat(read.remaining()).isEqualTo(4);
+    while (read.hasRemaining()) {
+      assertThat(read.get()).isZero();
+    }
+    assertThat(storage.size()).isZero();
+  }
+
+  @Test
+  void testReopenedFileIsSmallerThanItsPages() throws IOException {
+    ByteBuffer bytes = repetitiveBytes(10 * PAGE_SIZE_BYTES);
+    storage.write(0, bytes);
+    storage.close();
+
+    assertThat(storage.getCompressionRatio()).isGreaterThan(10);
+    assertThat(Files.size(path)).isLessThan(PAGE_SIZE_BYTES);
+
+    storage = open();
+    assertThat(storage.size()).isEqualTo(bytes.capacity());
+    assertThat(storage.read(0, bytes.capacity())).isEqualTo(bytes.flip());
+  }
+
+  @Test
+  void testPageThatNoLongerFitsItsExtentMoves() throws IOException {
+    storage.write(0, repetitiveBytes(2 * PAGE_SIZE_BYTES));
+    storage.flush();
+    long compressedSize = storage.getCompressedSize();
+
+    // random bytes do not compress, so the first page is stored as it is
+    byte[] randomBytes = new byte[PAGE_SIZE_BYTES];
+    new Random(42).nextBytes(randomBytes);
+    storage.write(0, ByteBuffer.wrap(randomBytes));
+    storage.close();
+
+    assertThat(storage.getCompressedSize()).isEqualTo(compressedSize / 2 + PAGE_SIZE_BYTES);
+    storage = open();
+    assertThat(storage.read(0, PAGE_SIZE_BYTES)).isEqualTo(ByteBuffer.wrap(randomBytes));
+    assertThat(storage.read(PAGE_SIZE_BYTES, PAGE_SIZE_BYTES))
+        .isEqualTo(repetitiveBytes(2 * PAGE_SIZE_BYTES).position(PAGE_SIZE_BYTES));
+  }
+
+  @Test
+  void testMovedPageDoesNotOverwriteTableOnDisk() throws IOException {
+    storage.write(0, repetitiveBytes(2 * PAGE_SIZE_BYTES));
+    storage.flush();
+
+    // the first page moves, and is written back once evicted, without a flush
+    storage.write(0, ByteBuffer.wrap(randomBytes(PAGE_SIZE_BYTES)));
+    storage.write(2 * PAGE_SIZE_BYTES, repetitiveBytes(2 * PAGE_SIZE_BYTES));
+    assertThat(storage.getCompressedPages()).isGreaterThan(2);
+
+    // the file as a crash would leave it still reads as it was flushed
+    CompressedFileStorage crashedStorage = open();
+    assertThat(crashedStorage.size()).isEqualTo(2 * PAGE_SIZE_BYTES);
+    assertThat(crashedStorage.read(0, 2 * PAGE_SIZE_BYTES))
+        .isEqualTo(repetitiveBytes(2 * PAGE_SIZE_BYTES));
+  }
+
+  @Test
+  void testEvictedPageDoesNotOverwriteItsExtentOnDisk() throws IOException {
+    storage.write(0, ByteBuffer.allocate(2 * PAGE_SIZE_BYTES));
+    storage.flush();
+
+    // the first page still fits its extent, and is written back twice, without a flush
+    for (int i = 0; i < 2; i++) {
+      storage.write(i, ByteBuffer.wrap(new byte[] {42}));
+      storage.write(2 * PAGE_SIZE_BYTES, repetitiveBytes(2 * PAGE_SIZE_BYTES));
+    }
+    assertThat(storage.getCompressedPages()).isGreaterThan(3);
+
+    // the file as a crash would leave it still reads as it was flushed
+    CompressedFileStorage crashedStorage = open();
+    assertThat(crashedStorage.read(0, 2 * PAGE_SIZE_BYTES))
+        .isEqualTo(ByteBuffer.allocate(2 * PAGE_SIZE_BYTES));
+    crashedStorage.discard();
+
+    storage.close();
+    storage = open();
+    assertThat(storage.read(0, 3)).isEqualTo(ByteBuffer.wrap(new byte[] {42, 42, 0}));
+  }
+
+  @Test
+  void testExtentsThatPagesMovedOutOfAreReused() throws IOException {
+    ByteBuffer halfRandomPage = ByteBuffer.allocate(PAGE_SIZE_BYTES)
+        .put(randomBytes(PAGE_SIZE_BYTES / 2))
+        .clear();
+    storage.write(0, halfRandomPage.duplicate());
+    storage.flush();
+    long capacity = Math.ceilDiv(storage.getCompressedSize(), 64) * 64;
+
+    // the extent the first page moved out of is free once the table no longer points to it
+    storage.write(0, ByteBuffer.wrap(randomBytes(PAGE_SIZE_BYTES)));
+    storage.flush();
+    assertThat(storage.getFreeSize()).isEqualTo(capacity);
+    storage.close();
+
+    // and is found again when the file is opened
+    storage = open();
+    long freeSize = storage.getFreeSize();
+    assertThat(freeSize).isGreaterThanOrEqualTo(capacity);
+    storage.write(PAGE_SIZE_BYTES, halfRandomPage.duplicate());
+    storage.flush();
+    assertThat(storage.getFreeSize()).isEqualTo(freeSize - capacity);
+    assertThat(storage.read(PAGE_SIZE_BYTES, PAGE_SIZE_BYTES)).isEqualTo(halfRandomPage);
+    assertThat(storage.read(0, PAGE_SIZE_BYTES))
+        .isEqualTo(ByteBuffer.wrap(randomBytes(PAGE_SIZE_BYTES)));
+  }
+
+  @Test
+  void testRepeatedFlushesDoNotGrowFile() throws IOException {
+    storage.write(0, repetitiveBytes(4 * PAGE_SIZE_BYTES));
+    storage.flush();
+    storage.flush();
+    // a page written back moves out of the extent the table on disk points to, which the next
+    // page written back reuses once the table no longer points to it
+    storage.write(0, repetitiveBytes(PAGE_SIZE_BYTES));
+    storage.flush();
+    long fileSize = Files.size(path);
+
+    for (int i = 0; i < 10; i++) {
+      storage.write(i % 4 * PAGE_SIZE_BYTES, repetitiveBytes(PAGE_SIZE_BYTES));
+      storage.flush();
+    }
+    assertThat(Files.size(path)).isEqualTo(fileSize);
+  }
+
+  @Test
+  void testOpenFileThatIsNotCompressed() throws IOException {
+    storage.discard();
+    Files.write(path, new byte[PAGE_SIZE_BYTES]);
+
+    assertThrows(IllegalArgumentException.class, this::open);
+    storage = open(path.resolveSibling("other.tc"));
+  }
+
+  private CompressedFileStorage open() throws IOException {
+    return open(path);
+  }
+
+  private static CompressedFileStorage open(Path path) throws IOException {
+    return new CompressedFileStorage(
+        FileChannel.open(path, READ, WRITE, CREATE), Deflater.BEST_SPEED, CACHED_PAGES
+    );
+  }
+
+  /**
+   * Bytes that do not compress, the same for the same length.
+   */
+  private static byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    new Random(42).nextBytes(bytes);
+    return bytes;
+  }
+
+  /**
+   * Bytes repeating a short pattern, as field names and padding do in the pages of the files.
+   */
+  private static ByteBuffer repetitiveBytes(int length) {
+    ByteBuffer bytes = ByteBuffer.allocate(length);
+    for (int i = 0; i < length; i++) {
+      bytes.put((byte) (i % 16 < 8 ? i % 8 : 0));
+    }
+    return bytes.flip();
+  }
+}
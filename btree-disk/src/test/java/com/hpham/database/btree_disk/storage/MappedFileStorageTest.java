@@ -0,0 +1,141 @@
+package com.hpham.database.btree_disk.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedFileStorageTest {
+  private static final int CHUNK_SIZE = 64;
+
+  @TempDir
+  Path directory;
+
+  private Path path;
+  private MappedFileStorage storage;
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    path = directory.resolve("mapped.tc");
+    storage = new MappedFileStorage(FileChannel.open(path, READ, WRITE, CREATE), CHUNK_SIZE);
+  }
+
+  @Test
+  void testReadWriteAcrossChunks() throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate(3 * CHUNK_SIZE);
+    for (int i = 0; i < bytes.capacity(); i++) {
+      bytes.put((byte) i);
+    }
+    bytes.flip();
+    long position = CHUNK_SIZE / 2;
+
+    storage.write(position, bytes);
+
+    assertThat(storage.getNumberOfChunks()).isEqualTo(4);
+    assertThat(storage.size()).isEqualTo(position + bytes.capacity());
+    assertThat(storage.read(position, bytes.capacity())).isEqualTo(bytes.flip());
+  }
+
+  @Test
+  void testReadWithinChunkIsView() throws IOException {
+    storage.write(0, ByteBuffer.wrap(new byte[] {1, 2, 3}));
+    ByteBuffer read = storage.read(1, 2);
+
+    storage.write(1, ByteBuffer.wrap(new byte[] {4, 5}));
+
+    assertThat(read.isReadOnly()).isTrue();
+    assertThat(read.position()).isZero();
+    assertThat(read.limit()).isEqualTo(2);
+    assertThat(read.get(0)).isEqualTo((byte) 4);
+    assertThat(read.get(1)).isEqualTo((byte) 5);
+  }
+
+  @Test
+  void testReadPastEndIsZero() throws IOException {
+    ByteBuffer read = storage.read(CHUNK_SIZE - 2, 4);
+
+    assertThat(read.remaining()).isEqualTo(4);
+    while (read.hasRemaining()) {
+      assertThat(read.get()).isZero();
+    }
+    assertThat(storage.size()).isZero();
+    assertThat(storage.getNumberOfChunks()).isZero();
+    assertThat(Files.size(path)).isZero();
+  }
+
+  @Test
+  void testReadAcrossEnd() throws IOException {
+    storage.write(0, ByteBuffer.wrap(new byte[] {1, 2, 3}));
+
+    ByteBuffer read = storage.read(1, 2 * CHUNK_SIZE);
+
+    assertThat(read.position()).isZero();
+    assertThat(read.limit()).isEqualTo(2 * CHUNK_SIZE);
+    assertThat(read.get(0)).isEqualTo((byte) 2);
+    assertThat(read.get(1)).isEqualTo((byte) 3);
+    for (int i = 2; i < read.limit(); i++) {
+      assertThat(read.get(i)).isZero();
+    }
+    assertThat(storage.getNumberOfChunks()).isEqualTo(1);
+  }
+
+  @Test
+  void testCloseCutsFileToSize() throws IOException {
+    storage.write(0, ByteBuffer.wrap(new byte[] {1, 2, 3}));
+    storage.flush();
+    // the whole chunk is mapped until the file is closed
+    assertThat(Files.size(path)).isEqualTo(CHUNK_SIZE);
+
+    storage.close();
+
+    assertThat(Files.readAllBytes(path)).containsExactly(1, 2, 3);
+  }
+
+  @Test
+  void testReopenedFileKeepsSize() throws IOException {
+    storage.write(0, ByteBuffer.wrap(new byte[] {1, 2, 3}));
+    storage.close();
+
+    storage = new MappedFileStorage(FileChannel.open(path, READ, WRITE), CHUNK_SIZE);
+    storage.write(storage.size(), ByteBuffer.wrap(new byte[] {4}));
+    storage.close();
+
+    assertThat(Files.readAllBytes(path)).containsExactly(1, 2, 3, 4);
+  }
+
+  @Test
+  void testConcurrentReadsMapChunksOnce() throws Exception {
+    int numberOfChunks = 64;
+    storage.discard();
+    Files.write(path, new byte[numberOfChunks * CHUNK_SIZE]);
+    storage = new MappedFileStorage(FileChannel.open(path, READ, WRITE), CHUNK_SIZE);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<ByteBuffer>> futures = new ArrayList<>();
+    for (int chunk = numberOfChunks - 1; chunk >= 0; chunk--) {
+      long position = (long) chunk * CHUNK_SIZE;
+      futures.add(executor.submit(() -> storage.read(position, CHUNK_SIZE)));
+    }
+    for (Future<ByteBuffer> future : futures) {
+      assertThat(future.get().remaining()).isEqualTo(CHUNK_SIZE);
+    }
+    executor.shutdown();
+
+    assertThat(storage.getNumberOfChunks()).isEqualTo(numberOfChunks);
+  }
+}
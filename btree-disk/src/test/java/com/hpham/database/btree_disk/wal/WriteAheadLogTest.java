@@ -0,0 +1,183 @@
+package com.hpham.database.btree_disk.wal;
+
+import com.hpham.database.btree_disk.buffer_pool.BufferPool;
+import com.hpham.database.btree_disk.storage.BufferedFileStorage;
+import com.hpham.database.btree_disk.storage.FileStorage;
+import com.hpham.database.btree_disk.storage.LoggedFileStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.hpham.database.btree_disk.constants.DataConstants.PAGE_SIZE_BYTES;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class WriteAheadLogTest {
+  private static final int FILE_ID = 1;
+
+  @TempDir
+  Path directory;
+
+  private Path logPath;
+  private WriteAheadLog writeAheadLog;
+  private BufferPool bufferPool;
+
+  @BeforeEach
+  void beforeEach() throws IOException {
+    logPath = directory.resolve("wal.tc");
+    writeAheadLog = new WriteAheadLog();
+    writeAheadLog.openFile(logPath.toString());
+    bufferPool = new BufferPool(16);
+  }
+
+  @AfterEach
+  void afterEach() throws IOException {
+    writeAheadLog.close();
+  }
+
+  @Test
+  void testUncommittedWritesAreReadButNotApplied() throws IOException {
+    FileStorage storage = openLogged(FILE_ID, "data.tc");
+    long position = PAGE_SIZE_BYTES - 2;
+    storage.write(position, ByteBuffer.wrap(new byte[] {1, 2, 3, 4}));
+
+    assertThat(storage.size()).isEqualTo(position + 4);
+    assertThat(storage.read(position - 1, 6).array()).containsExactly(0, 1, 2, 3, 4, 0);
+    assertThat(writeAheadLog.size()).isZero();
+
+    storage.flush();
+    assertThat(writeAheadLog.size()).isPositive();
+    assertThat(storage.read(position, 4).array()).containsExactly(1, 2, 3, 4);
+    assertThat(writeAheadLog.getCommits()).isEqualTo(1);
+    assertThat(writeAheadLog.getSyncs()).isEqualTo(1);
+  }
+
+  @Test
+  void testCommittedWritesAreRecovered() throws IOException {
+    FileStorage storage = openLogged(FILE_ID, "data.tc");
+    storage.write(10, ByteBuffer.wrap(new byte[] {1, 2, 3}));
+    storage.flush();
+    storage.write(20, ByteBuffer.wrap(new byte[] {4, 5, 6}));
+    // crash: neither the committed nor the uncommitted writes reach the file
+    storage.discard();
+    assertThat(Files.size(directory.resolve("data.tc"))).isZero();
+
+    reopenLog();
+    storage = openLogged(FILE_ID, "data.tc");
+
+    assertThat(storage.read(10, 3).array()).containsExactly(1, 2, 3);
+    assertThat(storage.read(20, 3).array()).containsExactly(0, 0, 0);
+  }
+
+  @Test
+  void testTornTransactionIsCutOff() throws IOException {
+    FileStorage storage = openLogged(FILE_ID, "data.tc");
+    storage.write(0, ByteBuffer.wrap(new byte[] {1}));
+    storage.flush();
+    long firstTransactionEnd = writeAheadLog.size();
+    storage.write(0, ByteBuffer.wrap(new byte[] {2}));
+    storage.write(PAGE_SIZE_BYTES, ByteBuffer.wrap(new byte[] {2}));
+    storage.flush();
+    storage.discard();
+
+    // crash while the second transaction was written, cutting its commit marker short
+    try (FileChannel log = FileChannel.open(logPath, WRITE)) {
+      log.truncate(writeAheadLog.size() - 1);
+    }
+    reopenLog();
+    storage = openLogged(FILE_ID, "data.tc");
+
+    assertThat(writeAheadLog.size()).isEqualTo(firstTransactionEnd);
+    assertThat(Files.size(logPath)).isEqualTo(firstTransactionEnd);
+    assertThat(storage.read(0, 1).get(0)).isEqualTo((byte) 1);
+    assertThat(storage.read(PAGE_SIZE_BYTES, 1).get(0)).isZero();
+  }
+
+  @Test
+  void testCheckpoint() throws IOException {
+    FileStorage storage = openLogged(FILE_ID, "data.tc");
+    storage.write(0, ByteBuffer.wrap(new byte[] {1, 2, 3}));
+    storage.flush();
+    storage.discard();
+    reopenLog();
+
+    // the changes would be lost, since the file is not there to write them to
+    assertThrows(IllegalStateException.class, () -> writeAheadLog.checkpoint());
+
+    openLogged(FILE_ID, "data.tc");
+    writeAheadLog.checkpoint();
+
+    assertThat(writeAheadLog.size()).isZero();
+    assertThat(Files.size(logPath)).isZero();
+    assertThat(Files.readAllBytes(directory.resolve("data.tc"))).containsExactly(1, 2, 3);
+  }
+
+  @Test
+  void testRegisterFileTwice() throws IOException {
+    openLogged(FILE_ID, "data.tc");
+
+    assertThrows(IllegalArgumentException.class, () -> openLogged(FILE_ID, "other.tc"));
+  }
+
+  @Test
+  void testConcurrentCommitsShareSyncs() throws Exception {
+    int numberOfThreads = 8;
+    int commitsPerThread = 50;
+    ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int fileId = 0; fileId < numberOfThreads; fileId++) {
+      FileStorage storage = openLogged(fileId, "data" + fileId + ".tc");
+      futures.add(executor.submit(() -> {
+        for (int i = 0; i < commitsPerThread; i++) {
+          storage.write((long) i * Integer.BYTES, ByteBuffer.allocate(Integer.BYTES).putInt(0, i));
+          storage.flush();
+        }
+        storage.discard();
+        return null;
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    assertThat(writeAheadLog.getCommits()).isEqualTo(numberOfThreads * commitsPerThread);
+    assertThat(writeAheadLog.getSyncs()).isLessThanOrEqualTo(writeAheadLog.getCommits());
+
+    reopenLog();
+    for (int fileId = 0; fileId < numberOfThreads; fileId++) {
+      FileStorage storage = openLogged(fileId, "data" + fileId + ".tc");
+      for (int i = 0; i < commitsPerThread; i++) {
+        assertThat(storage.read((long) i * Integer.BYTES, Integer.BYTES).getInt(0)).isEqualTo(i);
+      }
+    }
+  }
+
+  private FileStorage openLogged(int fileId, String fileName) throws IOException {
+    FileChannel channel = FileChannel.open(directory.resolve(fileName), READ, WRITE, CREATE);
+    return new LoggedFileStorage(
+        writeAheadLog, fileId, new BufferedFileStorage(bufferPool, channel)
+    );
+  }
+
+  private void reopenLog() throws IOException {
+    writeAheadLog.close();
+    writeAheadLog = new WriteAheadLog();
+    writeAheadLog.openFile(logPath.toString());
+  }
+}